@@ -67,10 +67,18 @@ public class AnnotateContigs extends Module {
             String[] pieces = rseq.getName().split("\\s+");
             String seq = rseq.getBaseString();
 
+            List<CortexKmer> cks = new ArrayList<>();
+            for (int i = 0; i <= seq.length() - GRAPH.getKmerSize(); i++) {
+                cks.add(new CortexKmer(seq.substring(i, i + GRAPH.getKmerSize()).toUpperCase()));
+            }
+
+            List<CortexRecord> crs = GRAPH.findRecords(cks);
+            List<CortexRecord> rrs = ROI.findRecords(cks);
+
             for (int i = 0; i <= seq.length() - GRAPH.getKmerSize(); i++) {
                 String sk = seq.substring(i, i + GRAPH.getKmerSize()).toUpperCase();
-                CortexKmer ck = new CortexKmer(sk);
-                CortexRecord cr = GRAPH.findRecord(ck);
+                CortexKmer ck = cks.get(i);
+                CortexRecord cr = crs.get(i);
 
                 List<Integer> coverages = new ArrayList<>();
                 coverages.add(cr != null ? cr.getCoverage(childColor) : 0);
@@ -94,7 +102,7 @@ public class AnnotateContigs extends Module {
                     allIntervals.add(Joiner.on(";").join(intervalStrings));
                 }
 
-                CortexRecord rr = ROI.findRecord(ck);
+                CortexRecord rr = rrs.get(i);
 
                 Set<String> childIncomingEdges = new HashSet<>();
                 Set<String> childOutgoingEdges = new HashSet<>();
@@ -28,10 +28,13 @@ import uk.ac.ox.well.cortexjdk.utils.traversal.CortexEdge;
 import uk.ac.ox.well.cortexjdk.utils.traversal.CortexVertex;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngine;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineFactory;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalExecutor;
 
 import java.io.File;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.GraphCombinationOperator.AND;
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.GraphCombinationOperator.OR;
@@ -57,6 +60,9 @@ public class CallBubbles extends Module {
     @Argument(fullName="references", shortName="R", doc="References")
     public HashMap<String, KmerLookup> REFERENCES;
 
+    @Argument(fullName="threads", shortName="t", doc="Number of traversal threads")
+    public Integer NUM_THREADS = 1;
+
     @Output
     public PrintStream out;
 
@@ -81,11 +87,15 @@ public class CallBubbles extends Module {
                 .rois(ROI)
                 .make();
 
+        // BubbleCaller reconfigures its closing engines on every call, so each worker thread gets its own
+        ThreadLocal<BubbleCaller> callers = ThreadLocal.withInitial(() -> new BubbleCaller(bc.getConfiguration()));
+        callers.set(bc);
+
         out.println(Joiner.on("\t").join("contig", "start", "type", "ref", "alt", "flank5p", "flank3p", "nkCount", "nk", "nks"));
 
         Map<CortexKmer, Boolean> used = loadRois();
-        int numBubbles = 0;
-        int numNovelKmersInVariants = 0;
+        AtomicInteger numBubbles = new AtomicInteger();
+        Set<CortexKmer> novelKmersInVariants = new HashSet<>();
 
         ProgressMeter pm = new ProgressMeterFactory()
                 .header("Processing novel kmers")
@@ -93,15 +103,31 @@ public class CallBubbles extends Module {
                 .maxRecord(used.size())
                 .make(log);
 
-        for (CortexKmer rk : used.keySet()) {
-            if (!used.get(rk)) {
-                Set<Bubble> bs = bc.call(rk.getKmerAsString());
-            }
+        TraversalExecutor<Set<Bubble>> ex = new TraversalExecutor<>(
+                bc.getOpeningConfiguration(),
+                (e, seed) -> callers.get().call(e, seed),
+                NUM_THREADS
+        );
 
+        List<String> seeds = used.keySet().stream().map(CortexKmer::getKmerAsString).collect(Collectors.toList());
+
+        // Every seed is called, as in a single-threaded loop, so no kmers are claimed
+        ex.execute(seeds, (seed, bs) -> {
             pm.update();
-        }
 
-        log.info("Found {} bubbles.  Used {}/{} novel kmers", numBubbles, numNovelKmersInVariants, used.size());
+            if (bs != null) {
+                numBubbles.addAndGet(bs.size());
+
+                for (Bubble b : bs) {
+                    novelKmersInVariants.addAll(b.getNovelKmers());
+                }
+            }
+
+            return null;
+        });
+
+        log.info("Found {} bubbles.  Used {}/{} novel kmers", numBubbles.get(), novelKmersInVariants.size(), used.size());
+        log.info("  {}", GRAPH.getCacheStatistics());
 
         CortexGraphWriter cgw = new CortexGraphWriter(rout);
         cgw.setHeader(ROI.getHeader());
@@ -92,6 +92,8 @@ public class RecoverExcludedKmers extends Module {
             pm.update();
         }
 
+        cgw.close();
+
         log.info("Number of dirty records recovered: {}/{}", numRecordsRecovered, DIRTY.getNumRecords());
     }
 
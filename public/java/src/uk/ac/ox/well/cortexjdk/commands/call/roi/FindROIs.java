@@ -12,6 +12,7 @@ import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeterFactory;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 @Description(text="Generate a (very liberal) list of kmers that identify potential de novo mutations")
 public class FindROIs extends Module {
@@ -44,39 +45,46 @@ public class FindROIs extends Module {
                 .maxRecord(GRAPH.getNumRecords())
                 .make(log);
 
-        long numNovelRecords = 0L;
-
         CortexGraphWriter cgw = new CortexGraphWriter(out);
         cgw.setHeader(makeCortexHeader(childColor));
 
-        for (CortexRecord cr : GRAPH) {
-            if (isNovel(cr, parentColors, childColor)) {
-                CortexRecord novelCr = new CortexRecord(
-                    cr.getBinaryKmer(),
-                    new int[] { cr.getCoverages()[childColor] },
-                    new byte[] { cr.getEdges()[childColor] },
-                    cr.getKmerSize(), cr.getKmerBits()
-                );
+        LongAdder numNovelRecords = new LongAdder();
 
-                cgw.addRecord(novelCr);
+        // Decode only the child (projected color 0) and the parents (projected colors 1..n)
+        List<Integer> colors = new ArrayList<>();
+        colors.add(childColor);
+        colors.addAll(parentColors);
 
-                numNovelRecords++;
-            }
+        GRAPH.parallelStream(colors)
+                .filter(cr -> {
+                    pm.update();
 
-            pm.update("records processed (" + numNovelRecords + " novel so far)");
-        }
+                    return isNovel(cr);
+                })
+                .map(cr -> new CortexRecord(
+                        cr.getBinaryKmer(),
+                        new int[] { cr.getCoverages()[0] },
+                        new byte[] { cr.getEdges()[0] },
+                        cr.getKmerSize(), cr.getKmerBits()
+                ))
+                .forEachOrdered(novelCr -> {
+                    cgw.addRecord(novelCr);
+                    numNovelRecords.increment();
+                });
+
+        log.info("  {} novel records", numNovelRecords.sum());
 
         cgw.close();
     }
 
-    private boolean isNovel(CortexRecord cr, List<Integer> parentColors, int childColor) {
+    private boolean isNovel(CortexRecord cr) {
         boolean parentsLackCoverage = true;
 
-        for (int c : parentColors) {
+        for (int c = 1; c < cr.getNumColors(); c++) {
             parentsLackCoverage &= cr.getCoverage(c) == 0;
         }
 
-        boolean childHasCoverage = cr.getCoverage(childColor) > 0;
+        boolean childHasCoverage = cr.getCoverage(0) > 0;
 
         return childHasCoverage && parentsLackCoverage;
     }
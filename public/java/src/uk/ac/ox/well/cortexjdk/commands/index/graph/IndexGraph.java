@@ -0,0 +1,68 @@
+package uk.ac.ox.well.cortexjdk.commands.index.graph;
+
+import uk.ac.ox.well.cortexjdk.commands.Module;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphBloomFilter;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphIndex;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphSortedMarker;
+
+import java.io.File;
+
+@Description(text="Build a minimal perfect hash kmer index (graph.ctx.mph), a sort marker (graph.ctx.sorted) for sorted graphs and an optional Bloom filter for fast record lookups.  Only missing or stale files are written, so a Bloom filter can be added to a graph that is already indexed.")
+public class IndexGraph extends Module {
+    @Argument(fullName="graph", shortName="g", doc="Graph")
+    public CortexGraph GRAPH;
+
+    @Argument(fullName="bloomFalsePositiveRate", shortName="b", doc="Also write a Bloom filter (graph.ctx.bloom) with this false-positive rate", required=false)
+    public Double BLOOM_FPR;
+
+    @Argument(fullName="force", shortName="f", doc="Rebuild files that already exist and are up to date", required=false)
+    public Boolean FORCE = false;
+
+    @Override
+    public void execute() {
+        File indexFile = CortexGraphIndex.getIndexFile(GRAPH.getFile());
+
+        if (GRAPH.hasIndex() && !FORCE) {
+            log.info("Kmer index {} is up to date (use --force to rebuild)", indexFile);
+        } else {
+            log.info("Indexing {} records in {}", GRAPH.getNumRecords(), GRAPH.getFile().getAbsolutePath());
+
+            CortexGraphIndex index = CortexGraphIndex.build(GRAPH);
+            index.store(indexFile);
+
+            log.info("  index written to {} ({} bits per kmer)", indexFile, String.format("%.2f", (double) index.numBits() / Math.max(1, index.getNumRecords())));
+        }
+
+        File markerFile = CortexGraphSortedMarker.getMarkerFile(GRAPH.getFile());
+        if (markerFile.exists() && !FORCE && CortexGraphSortedMarker.load(markerFile, GRAPH) != null) {
+            log.info("  sort marker {} is up to date (use --force to rebuild)", markerFile);
+        } else if (GRAPH.isSorted()) {
+            CortexGraphSortedMarker.build(GRAPH).store(markerFile);
+
+            log.info("  records are sorted, marker written to {}", markerFile);
+        } else {
+            if (markerFile.exists() && !markerFile.delete()) {
+                throw new CortexJDKException("Could not remove stale sort marker '" + markerFile.getAbsolutePath() + "'");
+            }
+
+            log.info("  records are not sorted");
+        }
+
+        if (BLOOM_FPR != null) {
+            File bloomFile = CortexGraphBloomFilter.getBloomFilterFile(GRAPH.getFile());
+
+            if (bloomFile.exists() && !FORCE && CortexGraphBloomFilter.load(bloomFile, GRAPH) != null) {
+                log.info("  Bloom filter {} is up to date (use --force to rebuild)", bloomFile);
+            } else {
+                CortexGraphBloomFilter bloom = CortexGraphBloomFilter.build(GRAPH, BLOOM_FPR);
+                bloom.store(bloomFile);
+
+                log.info("  Bloom filter written to {} ({} bits per kmer, {} hashes)", bloomFile, String.format("%.2f", (double) bloom.numBits() / Math.max(1, GRAPH.getNumRecords())), bloom.getNumHashes());
+            }
+        }
+    }
+}
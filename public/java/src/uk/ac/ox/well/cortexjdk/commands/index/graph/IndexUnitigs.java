@@ -0,0 +1,61 @@
+package uk.ac.ox.well.cortexjdk.commands.index.graph;
+
+import uk.ac.ox.well.cortexjdk.commands.Module;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphUnitigIndex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+@Description(text="Build an index of the maximal unitigs of each colour (graph.ctx.unitigs), which lets traversals skip over non-branching stretches of the graph")
+public class IndexUnitigs extends Module {
+    @Argument(fullName="graph", shortName="g", doc="Graph")
+    public CortexGraph GRAPH;
+
+    @Argument(fullName="sample", shortName="s", doc="Samples to index (default: all)", required=false)
+    public ArrayList<String> SAMPLES;
+
+    @Argument(fullName="force", shortName="f", doc="Overwrite an existing index that is up to date", required=false)
+    public Boolean FORCE = false;
+
+    @Override
+    public void execute() {
+        File unitigFile = CortexGraphUnitigIndex.getUnitigIndexFile(GRAPH.getFile());
+
+        if (!FORCE && GRAPH.getUnitigIndex() != null) {
+            throw new CortexJDKException("Unitig index '" + unitigFile.getAbsolutePath() + "' already exists and is up to date (use --force to overwrite)");
+        }
+
+        List<Integer> colors = new ArrayList<>();
+        if (SAMPLES == null || SAMPLES.isEmpty()) {
+            for (int c = 0; c < GRAPH.getNumColors(); c++) {
+                colors.add(c);
+            }
+        } else {
+            colors.addAll(GRAPH.getColorsForSampleNames(SAMPLES));
+        }
+
+        log.info("Finding unitigs in {} records of {} for colors {}", GRAPH.getNumRecords(), GRAPH.getFile().getAbsolutePath(), colors);
+
+        CortexGraphUnitigIndex unitigs = CortexGraphUnitigIndex.build(GRAPH, colors);
+
+        for (int c : unitigs.getColors()) {
+            long numKmers = 0;
+            int maxLength = 0;
+            for (int u = 0; u < unitigs.getNumUnitigs(c); u++) {
+                numKmers += unitigs.getLength(c, u);
+                maxLength = Math.max(maxLength, unitigs.getLength(c, u));
+            }
+
+            log.info("  {}: {} unitigs, {} kmers, mean length {}, max length {}", GRAPH.getSampleName(c), unitigs.getNumUnitigs(c), numKmers, String.format("%.2f", (double) numKmers / Math.max(1, unitigs.getNumUnitigs(c))), maxLength);
+        }
+
+        unitigs.store(unitigFile);
+
+        log.info("  index written to {}", unitigFile);
+    }
+}
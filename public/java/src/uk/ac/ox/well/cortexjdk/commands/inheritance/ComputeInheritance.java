@@ -59,11 +59,13 @@ public class ComputeInheritance extends Module {
         int numVariants = callVariants(parentColors, childColors, seeds);
 
         log.info("Found {} variants", numVariants);
+        log.info("  {}", GRAPH.getCacheStatistics());
     }
 
     private int callVariants(Set<Integer> parentColors, Set<Integer> childColors, Set<CortexKmer> seeds) {
         TraversalEngine e = new TraversalEngineFactory()
                 .graph(GRAPH)
+                .unitigs(GRAPH.getUnitigIndex())
                 .make();
 
         ProgressMeter pm = new ProgressMeterFactory()
@@ -1,7 +1,6 @@
 package uk.ac.ox.well.cortexjdk.commands.prefilter;
 
 import org.jetbrains.annotations.NotNull;
-import org.jgrapht.Graph;
 import uk.ac.ox.well.cortexjdk.commands.Module;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
@@ -10,15 +9,18 @@ import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeter;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeterFactory;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.ContaminantStopper;
-import uk.ac.ox.well.cortexjdk.utils.traversal.CortexEdge;
-import uk.ac.ox.well.cortexjdk.utils.traversal.CortexVertex;
+import uk.ac.ox.well.cortexjdk.utils.traversal.CortexSubgraph;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngine;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineFactory;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalExecutor;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.GraphCombinationOperator.OR;
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.TraversalDirection.BOTH;
@@ -40,6 +42,9 @@ public class RemoveContamination extends Module {
     @Argument(fullName="contamination", shortName="contam", doc="Contam")
     public CortexGraph CONTAM;
 
+    @Argument(fullName="threads", shortName="t", doc="Number of traversal threads")
+    public Integer NUM_THREADS = 1;
+
     @Output
     public File out;
 
@@ -55,19 +60,21 @@ public class RemoveContamination extends Module {
         log.info(" -   child: {}", GRAPH.getColorForSampleName(CHILD));
         log.info(" - parents: {}", GRAPH.getColorsForSampleNames(PARENTS));
 
-        ProgressMeter pm = new ProgressMeterFactory()
-                .header("Finding contamination")
-                .message("records processed")
-                .maxRecord(CONTAM.getNumRecords())
-                .make(log);
-
         Set<CortexKmer> roiKmers = new HashSet<>();
         for (CortexRecord rc : ROI) {
             roiKmers.add(rc.getCortexKmer());
         }
 
-        Set<CortexKmer> contamKmers = new HashSet<>();
-        int numContamChains = 0;
+        List<String> seeds = CONTAM.stream()
+                .filter(cr -> roiKmers.contains(cr.getCortexKmer()))
+                .map(CortexRecord::getKmerAsString)
+                .collect(Collectors.toList());
+
+        ProgressMeter pm = new ProgressMeterFactory()
+                .header("Finding contamination")
+                .message("records processed")
+                .maxRecord(seeds.size())
+                .make(log);
 
         TraversalEngine e = new TraversalEngineFactory()
                 .traversalDirection(BOTH)
@@ -79,25 +86,25 @@ public class RemoveContamination extends Module {
                 .graph(GRAPH)
                 .make();
 
-        for (CortexRecord cr : CONTAM) {
-            if (roiKmers.contains(cr.getCortexKmer()) && !contamKmers.contains(cr.getCortexKmer())) {
-                Graph<CortexVertex, CortexEdge> dfs = e.dfs(cr.getKmerAsString());
+        TraversalExecutor<CortexSubgraph> ex = new TraversalExecutor<>(e.getConfiguration(), TraversalEngine::dfsSubgraph, NUM_THREADS);
 
-                if (dfs.vertexSet().size() > 0) {
-                    for (CortexVertex av : dfs.vertexSet()) {
-                        CortexKmer ck = av.getCk();
+        AtomicInteger numContamChains = new AtomicInteger();
+        ex.execute(seeds, (seed, dfs) -> {
+            pm.update();
 
-                        contamKmers.add(ck);
-                    }
+            if (dfs != null && !dfs.isEmpty()) {
+                numContamChains.incrementAndGet();
 
-                    numContamChains++;
-                }
+                return dfs.getCortexKmers();
             }
 
-            pm.update();
-        }
+            return null;
+        });
+
+        Set<CortexKmer> contamKmers = ex.getClaimedKmers();
 
-        log.info("Found {} contamination kmer chains ({} kmers total)", numContamChains, contamKmers.size());
+        log.info("Found {} contamination kmer chains ({} kmers total)", numContamChains.get(), contamKmers.size());
+        log.info("  {}", GRAPH.getCacheStatistics());
 
         log.info("Writing...");
 
@@ -1,6 +1,5 @@
 package uk.ac.ox.well.cortexjdk.commands.prefilter;
 
-import org.jgrapht.Graph;
 import uk.ac.ox.well.cortexjdk.commands.Module;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
@@ -12,15 +11,18 @@ import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeter;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeterFactory;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.DustStopper;
-import uk.ac.ox.well.cortexjdk.utils.traversal.CortexEdge;
-import uk.ac.ox.well.cortexjdk.utils.traversal.CortexVertex;
+import uk.ac.ox.well.cortexjdk.utils.traversal.CortexSubgraph;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngine;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineFactory;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalExecutor;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.GraphCombinationOperator.AND;
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.TraversalDirection.BOTH;
@@ -39,6 +41,9 @@ public class RemoveDust extends Module {
     @Argument(fullName="roi", shortName="r", doc="ROI")
     public CortexGraph ROI;
 
+    @Argument(fullName="threads", shortName="t", doc="Number of traversal threads")
+    public Integer NUM_THREADS = 1;
+
     @Output
     public File out;
 
@@ -54,15 +59,17 @@ public class RemoveDust extends Module {
         log.info(" -   child: {}", GRAPH.getColorForSampleName(CHILD));
         log.info(" - parents: {}", GRAPH.getColorsForSampleNames(PARENTS));
 
+        List<String> seeds = ROI.stream()
+                .filter(rr -> isLowComplexity(rr, 0))
+                .map(CortexRecord::getKmerAsString)
+                .collect(Collectors.toList());
+
         ProgressMeter pm = new ProgressMeterFactory()
                 .header("Finding dust")
                 .message("records processed")
-                .maxRecord(ROI.getNumRecords())
+                .maxRecord(seeds.size())
                 .make(log);
 
-        Set<CortexKmer> dust = new HashSet<>();
-        int numDustChains = 0;
-
         TraversalEngine e = new TraversalEngineFactory()
                 .traversalDirection(BOTH)
                 .combinationOperator(AND)
@@ -73,26 +80,25 @@ public class RemoveDust extends Module {
                 .graph(GRAPH)
                 .make();
 
-        for (CortexRecord rr : ROI) {
-            if (!dust.contains(rr.getCortexKmer()) && isLowComplexity(rr, 0)) {
-                Graph<CortexVertex, CortexEdge> dfs = e.dfs(rr.getKmerAsString());
-
-                if (dfs != null && dfs.vertexSet().size() > 0) {
-                    numDustChains++;
+        TraversalExecutor<CortexSubgraph> ex = new TraversalExecutor<>(e.getConfiguration(), TraversalEngine::dfsSubgraph, NUM_THREADS);
 
-                    log.debug("    dust chain {}, seed {}, {} vertices", numDustChains, rr.getKmerAsString(), dfs.vertexSet().size());
+        AtomicInteger numDustChains = new AtomicInteger();
+        ex.execute(seeds, (seed, dfs) -> {
+            pm.update();
 
-                    for (CortexVertex av : dfs.vertexSet()) {
-                        dust.add(av.getCk());
-                    }
+            if (dfs != null && !dfs.isEmpty()) {
+                log.debug("    dust chain {}, seed {}, {} vertices", numDustChains.incrementAndGet(), seed, dfs.numVertices());
 
-                }
+                return dfs.getCortexKmers();
             }
 
-            pm.update();
-        }
+            return null;
+        });
+
+        Set<CortexKmer> dust = ex.getClaimedKmers();
 
-        log.info("Found {} dust kmer chains ({} kmers total)", numDustChains, dust.size());
+        log.info("Found {} dust kmer chains ({} kmers total)", numDustChains.get(), dust.size());
+        log.info("  {}", GRAPH.getCacheStatistics());
 
         log.info("Writing...");
 
@@ -1,6 +1,5 @@
 package uk.ac.ox.well.cortexjdk.commands.prefilter;
 
-import org.jgrapht.Graph;
 import uk.ac.ox.well.cortexjdk.commands.Module;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
@@ -12,15 +11,16 @@ import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeter;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeterFactory;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.OrphanStopper;
-import uk.ac.ox.well.cortexjdk.utils.traversal.CortexEdge;
-import uk.ac.ox.well.cortexjdk.utils.traversal.CortexVertex;
+import uk.ac.ox.well.cortexjdk.utils.traversal.CortexSubgraph;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngine;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineFactory;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalExecutor;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.GraphCombinationOperator.AND;
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.TraversalDirection.BOTH;
@@ -39,6 +39,9 @@ public class RemoveOrphans extends Module {
     @Argument(fullName="roi", shortName="r", doc="ROI")
     public CortexGraph ROI;
 
+    @Argument(fullName="threads", shortName="t", doc="Number of traversal threads")
+    public Integer NUM_THREADS = 1;
+
     @Output
     public File out;
 
@@ -60,9 +63,6 @@ public class RemoveOrphans extends Module {
                 .maxRecord(ROI.getNumRecords())
                 .make(log);
 
-        Set<CortexKmer> orphans = new HashSet<>();
-        int numOrphanChains = 0;
-
         TraversalEngine e = new TraversalEngineFactory()
                 .traversalDirection(BOTH)
                 .combinationOperator(AND)
@@ -73,23 +73,25 @@ public class RemoveOrphans extends Module {
                 .graph(GRAPH)
                 .make();
 
-        for (CortexRecord rr : ROI) {
-            if (!orphans.contains(rr.getCortexKmer())) {
-                Graph<CortexVertex, CortexEdge> dfs = e.dfs(rr.getKmerAsString());
+        TraversalExecutor<CortexSubgraph> ex = new TraversalExecutor<>(e.getConfiguration(), TraversalEngine::dfsSubgraph, NUM_THREADS);
 
-                if (dfs != null && dfs.vertexSet().size() > 0) {
-                    numOrphanChains++;
+        AtomicInteger numOrphanChains = new AtomicInteger();
+        ex.execute(() -> ROI.stream().map(CortexRecord::getKmerAsString).iterator(), (seed, dfs) -> {
+            pm.update();
 
-                    for (CortexVertex av : dfs.vertexSet()) {
-                        orphans.add(av.getCk());
-                    }
-                }
+            if (dfs != null && !dfs.isEmpty()) {
+                numOrphanChains.incrementAndGet();
+
+                return dfs.getCortexKmers();
             }
 
-            pm.update();
-        }
+            return null;
+        });
+
+        Set<CortexKmer> orphans = ex.getClaimedKmers();
 
-        log.info("Found {} orphaned kmer chains ({} kmers total)", numOrphanChains, orphans.size());
+        log.info("Found {} orphaned kmer chains ({} kmers total)", numOrphanChains.get(), orphans.size());
+        log.info("  {}", GRAPH.getCacheStatistics());
 
         log.info("Writing...");
 
@@ -60,7 +60,7 @@ public class RemoveShared extends Module {
 
         Set<CortexKmer> sharedKmers = new HashSet<>();
 
-        for (CortexRecord rr : ROI) {
+        for (CortexRecord rr : ROI.views()) {
             if (!sharedKmers.contains(rr.getCortexKmer())) {
                 CortexRecord cr = GRAPH.findRecord(rr.getCortexKmer());
 
@@ -100,7 +100,7 @@ public class RemoveShared extends Module {
         cgo.setHeader(ROI.getHeader());
 
         int numKept = 0, numExcluded = 0;
-        for (CortexRecord rr : ROI) {
+        for (CortexRecord rr : ROI.views()) {
             if (!sharedKmers.contains(rr.getCortexKmer())) {
                 cgw.addRecord(rr);
                 numKept++;
@@ -1,9 +1,5 @@
 package uk.ac.ox.well.cortexjdk.commands.prefilter;
 
-import org.jgrapht.DirectedGraph;
-import org.jgrapht.Graph;
-import org.jgrapht.Graphs;
-import org.jgrapht.graph.DirectedWeightedPseudograph;
 import uk.ac.ox.well.cortexjdk.commands.Module;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
@@ -16,16 +12,18 @@ import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeter;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeterFactory;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.TipBeginningStopper;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.TipEndStopper;
-import uk.ac.ox.well.cortexjdk.utils.traversal.CortexEdge;
-import uk.ac.ox.well.cortexjdk.utils.traversal.CortexVertex;
+import uk.ac.ox.well.cortexjdk.utils.traversal.CortexSubgraph;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngine;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineFactory;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalExecutor;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.GraphCombinationOperator.AND;
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.TraversalDirection.FORWARD;
@@ -45,6 +43,9 @@ public class RemoveTips extends Module {
     @Argument(fullName="roi", shortName="r", doc="ROI")
     public CortexGraph ROI;
 
+    @Argument(fullName="threads", shortName="t", doc="Number of traversal threads")
+    public Integer NUM_THREADS = 1;
+
     @Output
     public File out;
 
@@ -68,67 +69,33 @@ public class RemoveTips extends Module {
                 .maxRecord(ROI.getNumRecords())
                 .make(log);
 
-        Set<CortexKmer> tips = new HashSet<>();
-        int numTipChains = 0;
+        TraversalEngine e = new TraversalEngineFactory()
+                .combinationOperator(AND)
+                .traversalColor(childColor)
+                .joiningColors(parentColors)
+                .rois(ROI)
+                .graph(GRAPH)
+                .make();
 
-        for (CortexRecord rr : ROI) {
-            if (!tips.contains(rr.getCortexKmer())) {
-                Graph<CortexVertex, CortexEdge> dfsToParents = null;
-                Graph<CortexVertex, CortexEdge> dfsToFree = null;
-
-                for (boolean goForward : Arrays.asList(true, false)) {
-                    TraversalEngine eFwd = new TraversalEngineFactory()
-                            .traversalDirection(goForward ? FORWARD : REVERSE)
-                            .combinationOperator(AND)
-                            .traversalColor(childColor)
-                            .joiningColors(parentColors)
-                            .stoppingRule(TipBeginningStopper.class)
-                            .rois(ROI)
-                            .graph(GRAPH)
-                            .make();
-
-                    TraversalEngine eRev = new TraversalEngineFactory()
-                            .traversalDirection(goForward ? REVERSE : FORWARD)
-                            .combinationOperator(AND)
-                            .traversalColor(childColor)
-                            .joiningColors(parentColors)
-                            .stoppingRule(TipEndStopper.class)
-                            .rois(ROI)
-                            .graph(GRAPH)
-                            .make();
-
-                    dfsToParents = eFwd.dfs(rr.getKmerAsString());
-                    dfsToFree = eRev.dfs(rr.getKmerAsString());
-
-                    if (dfsToParents != null && dfsToParents.vertexSet().size() > 0 && dfsToFree != null && dfsToFree.vertexSet().size() > 0) {
-                        break;
-                    }
-                }
-
-                DirectedGraph<CortexVertex, CortexEdge> dfs = null;
-                if (dfsToParents != null && dfsToParents.vertexSet().size() > 0 && dfsToFree != null && dfsToFree.vertexSet().size() > 0) {
-                    dfs = new DirectedWeightedPseudograph<>(CortexEdge.class);
-
-                    Graphs.addGraph(dfs, dfsToParents);
-                    Graphs.addGraph(dfs, dfsToFree);
-                }
-
-
-                if (dfs != null && dfs.vertexSet().size() > 0) {
-                    numTipChains++;
-
-                    log.debug("    tip chain {}, seed {}, {} vertices", numTipChains, rr.getKmerAsString(), dfs.vertexSet().size());
-
-                    for (CortexVertex av : dfs.vertexSet()) {
-                        tips.add(av.getCk());
-                    }
-                }
-            }
+        TraversalExecutor<CortexSubgraph> ex = new TraversalExecutor<>(e.getConfiguration(), this::findTip, NUM_THREADS);
 
+        AtomicInteger numTipChains = new AtomicInteger();
+        ex.execute(() -> ROI.stream().map(CortexRecord::getKmerAsString).iterator(), (seed, dfs) -> {
             pm.update();
-        }
 
-        log.info("Found {} tip kmer chains ({} kmers total)", numTipChains, tips.size());
+            if (dfs != null && !dfs.isEmpty()) {
+                log.debug("    tip chain {}, seed {}, {} vertices", numTipChains.incrementAndGet(), seed, dfs.numVertices());
+
+                return dfs.getCortexKmers();
+            }
+
+            return null;
+        });
+
+        Set<CortexKmer> tips = ex.getClaimedKmers();
+
+        log.info("Found {} tip kmer chains ({} kmers total)", numTipChains.get(), tips.size());
+        log.info("  {}", GRAPH.getCacheStatistics());
 
         log.info("Writing...");
 
@@ -157,4 +124,29 @@ public class RemoveTips extends Module {
                 numExcluded, ROI.getNumRecords(), 100.0f * (float) numExcluded / (float) ROI.getNumRecords()
         );
     }
+
+    private CortexSubgraph findTip(TraversalEngine e, String seed) {
+        TraversalEngineConfiguration ec = e.getConfiguration();
+
+        for (boolean goForward : Arrays.asList(true, false)) {
+            ec.setTraversalDirection(goForward ? FORWARD : REVERSE);
+            ec.setStoppingRule(TipBeginningStopper.class);
+            CortexSubgraph dfsToParents = e.dfsSubgraph(seed);
+
+            ec.setTraversalDirection(goForward ? REVERSE : FORWARD);
+            ec.setStoppingRule(TipEndStopper.class);
+            CortexSubgraph dfsToFree = e.dfsSubgraph(seed);
+
+            if (dfsToParents != null && !dfsToParents.isEmpty() && dfsToFree != null && !dfsToFree.isEmpty()) {
+                CortexSubgraph dfs = new CortexSubgraph();
+
+                dfs.addSubgraph(dfsToParents);
+                dfs.addSubgraph(dfsToFree);
+
+                return dfs;
+            }
+        }
+
+        return null;
+    }
 }
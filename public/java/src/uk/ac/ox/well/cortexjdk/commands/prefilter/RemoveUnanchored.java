@@ -1,6 +1,7 @@
 package uk.ac.ox.well.cortexjdk.commands.prefilter;
 
 import htsjdk.samtools.util.Interval;
+import org.apache.commons.math3.util.Pair;
 import uk.ac.ox.well.cortexjdk.commands.Module;
 import uk.ac.ox.well.cortexjdk.utils.alignment.kmer.KmerLookup;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
@@ -17,6 +18,7 @@ import uk.ac.ox.well.cortexjdk.utils.traversal.*;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by kiran on 21/07/2017.
@@ -37,6 +39,9 @@ public class RemoveUnanchored extends Module {
     @Argument(fullName = "drafts", shortName = "d", doc = "Drafts")
     public HashMap<String, KmerLookup> LOOKUPS;
 
+    @Argument(fullName = "threads", shortName = "t", doc = "Number of traversal threads")
+    public Integer NUM_THREADS = 1;
+
     @Output
     public File out;
 
@@ -70,80 +75,32 @@ public class RemoveUnanchored extends Module {
                 .graph(GRAPH)
                 .make();
 
-        Set<CortexKmer> unanchored = new HashSet<>();
-        int numUnanchoredChains = 0;
-
         Set<CortexKmer> rois = new HashSet<>();
         for (CortexRecord rr : ROI) {
             rois.add(rr.getCortexKmer());
         }
 
-        for (CortexKmer rk : rois) {
-            if (!unanchored.contains(rk)) {
-                String contig = TraversalEngine.toContig(e.walk(rk.getKmerAsString()));
-                StringBuilder annb = new StringBuilder();
-
-                Set<CortexKmer> seenRois = new HashSet<>();
-
-                for (int i = 0; i <= contig.length() - GRAPH.getKmerSize(); i++) {
-                    String sk = contig.substring(i, i + GRAPH.getKmerSize());
-                    CortexKmer ck = new CortexKmer(sk);
-
-                    if (rois.contains(ck)) {
-                        annb.append(".");
-
-                        seenRois.add(ck);
-                    } else {
-                        String code = "?";
-                        for (String background : LOOKUPS.keySet()) {
-                            Set<Interval> intervals = LOOKUPS.get(background).findKmer(sk);
-
-                            if (intervals.size() == 1) {
-                                code = "1";
-                            } else if (intervals.size() == 0 && !code.equals("1")) {
-                                code = "?";
-                            } else if (intervals.size() > 1 && !code.equals("1")) {
-                                code = "_";
-                            }
-                        }
-
-                        annb.append(code);
-                    }
-                }
-
-                String ann = annb.toString();
+        TraversalExecutor<Pair<String, Set<CortexKmer>>> ex = new TraversalExecutor<>(e.getConfiguration(), (te, seed) -> findUnanchored(te, seed, rois), NUM_THREADS);
 
-                List<String> pieces = SequenceUtils.splitAtPositions(ann, SequenceUtils.computeSplits(ann, '.'));
-                boolean leftAnchored = false;
-                boolean novelsSeen = false;
-                boolean rightAnchored = false;
-
-                for (String piece : pieces) {
-                    if (!piece.contains(".") && piece.contains("1")) {
-                        if (!novelsSeen) {
-                            leftAnchored = true;
-                        } else {
-                            rightAnchored = true;
-                        }
-                    }
+        AtomicInteger numUnanchoredChains = new AtomicInteger();
+        ex.execute(() -> rois.stream().map(CortexKmer::getKmerAsString).iterator(), (seed, unanchoredRois) -> {
+            pm.update();
 
-                    if (piece.contains(".")) {
-                        novelsSeen = true;
-                    }
-                }
+            if (unanchoredRois != null) {
+                log.debug("    discard: {}", unanchoredRois.getFirst());
 
-                if (!leftAnchored || !rightAnchored) {
-                    log.debug("    discard: {}", ann);
+                numUnanchoredChains.incrementAndGet();
 
-                    unanchored.addAll(seenRois);
-                    numUnanchoredChains++;
-                }
+                return unanchoredRois.getSecond();
             }
 
-            pm.update();
-        }
+            return null;
+        });
 
-        log.info("Found {} unanchored kmer chains ({} kmers total)", numUnanchoredChains, unanchored.size());
+        Set<CortexKmer> unanchored = ex.getClaimedKmers();
+
+        log.info("Found {} unanchored kmer chains ({} kmers total)", numUnanchoredChains.get(), unanchored.size());
+        log.info("  {}", GRAPH.getCacheStatistics());
 
         log.info("Writing...");
 
@@ -172,4 +129,60 @@ public class RemoveUnanchored extends Module {
                 numExcluded, ROI.getNumRecords(), 100.0f * (float) numExcluded / (float) ROI.getNumRecords()
         );
     }
+
+    private Pair<String, Set<CortexKmer>> findUnanchored(TraversalEngine e, String seed, Set<CortexKmer> rois) {
+        String contig = TraversalEngine.toContig(e.walk(seed));
+        StringBuilder annb = new StringBuilder();
+
+        Set<CortexKmer> seenRois = new HashSet<>();
+
+        for (int i = 0; i <= contig.length() - GRAPH.getKmerSize(); i++) {
+            String sk = contig.substring(i, i + GRAPH.getKmerSize());
+            CortexKmer ck = new CortexKmer(sk);
+
+            if (rois.contains(ck)) {
+                annb.append(".");
+
+                seenRois.add(ck);
+            } else {
+                String code = "?";
+                for (String background : LOOKUPS.keySet()) {
+                    Set<Interval> intervals = LOOKUPS.get(background).findKmer(sk);
+
+                    if (intervals.size() == 1) {
+                        code = "1";
+                    } else if (intervals.size() == 0 && !code.equals("1")) {
+                        code = "?";
+                    } else if (intervals.size() > 1 && !code.equals("1")) {
+                        code = "_";
+                    }
+                }
+
+                annb.append(code);
+            }
+        }
+
+        String ann = annb.toString();
+
+        List<String> pieces = SequenceUtils.splitAtPositions(ann, SequenceUtils.computeSplits(ann, '.'));
+        boolean leftAnchored = false;
+        boolean novelsSeen = false;
+        boolean rightAnchored = false;
+
+        for (String piece : pieces) {
+            if (!piece.contains(".") && piece.contains("1")) {
+                if (!novelsSeen) {
+                    leftAnchored = true;
+                } else {
+                    rightAnchored = true;
+                }
+            }
+
+            if (piece.contains(".")) {
+                novelsSeen = true;
+            }
+        }
+
+        return !leftAnchored || !rightAnchored ? new Pair<>(ann, seenRois) : null;
+    }
 }
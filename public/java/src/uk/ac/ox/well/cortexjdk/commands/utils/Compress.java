@@ -0,0 +1,48 @@
+package uk.ac.ox.well.cortexjdk.commands.utils;
+
+import uk.ac.ox.well.cortexjdk.commands.Module;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Output;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.compressed.CortexCompressedGraphWriter;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecordView;
+import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeter;
+import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeterFactory;
+
+import java.io.File;
+
+@Description(text="Convert a sorted graph to the compressed, block-indexed graph format (.ctz)")
+public class Compress extends Module {
+    @Argument(fullName="graph", shortName="g", doc="Sorted graph")
+    public CortexGraph GRAPH;
+
+    @Argument(fullName="blockSize", shortName="b", doc="Number of records per compressed block", required=false)
+    public Integer BLOCK_SIZE = CortexCompressedGraphWriter.DEFAULT_BLOCK_SIZE;
+
+    @Output
+    public File out;
+
+    @Override
+    public void execute() {
+        CortexCompressedGraphWriter ccw = new CortexCompressedGraphWriter(out);
+        ccw.setHeader(GRAPH.getHeader());
+        ccw.setBlockSize(BLOCK_SIZE);
+
+        ProgressMeter pm = new ProgressMeterFactory()
+                .header("Compressing graph...")
+                .message("records processed")
+                .maxRecord(GRAPH.getNumRecords())
+                .make(log);
+
+        for (CortexRecordView cv : GRAPH.views()) {
+            ccw.addRecord(cv);
+
+            pm.update();
+        }
+
+        ccw.close();
+
+        log.info("Compressed {} bytes to {} bytes ({}x)", GRAPH.getFile().length(), out.length(), String.format("%.2f", (double) GRAPH.getFile().length() / Math.max(1, out.length())));
+    }
+}
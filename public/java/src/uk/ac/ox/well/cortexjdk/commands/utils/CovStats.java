@@ -13,6 +13,8 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
 
 public class CovStats extends Module {
     @Argument(fullName="graph", shortName="g", doc="Graph")
@@ -32,9 +34,6 @@ public class CovStats extends Module {
         int childColor = GRAPH.getColorForSampleName(CHILD);
         Set<Integer> parentColors = getColorsForSampleNames(PARENTS);
 
-        Map<Integer, Integer> hist = new TreeMap<>();
-        long sharedRecords = 0L;
-
         ProgressMeter pm = new ProgressMeterFactory()
                 .header("Processing graph...")
                 .message("records processed")
@@ -42,37 +41,41 @@ public class CovStats extends Module {
                 .maxRecord(GRAPH.getNumRecords())
                 .make(log);
 
-        for (CortexRecord cr : GRAPH) {
-            pm.update("records processed (" + sharedRecords + " shared records so far)");
-
-            boolean isInChild = cr.getCoverage(childColor) > 0;
-            int numberOfParents = 0;
-            int numberOfChildren = 0;
+        // For each child coverage: the number of shared records, and the number of colors sharing them
+        Map<Integer, long[]> counts = GRAPH.parallelStream()
+                .map(cr -> {
+                    pm.update();
 
-            for (int c = 0; c < cr.getNumColors(); c++) {
-                if (cr.getCoverage(c) > 0) {
-                    if (childColor == c) { isInChild = true; }
-                    else if (parentColors.contains(c)) { numberOfParents++; }
-                    else { numberOfChildren++; }
-                }
-            }
+                    return new int[] { cr.getCoverage(childColor), getNumberOfSharingColors(cr, childColor, parentColors) };
+                })
+                .filter(s -> s[1] > 0)
+                .collect(Collectors.groupingBy(s -> s[0], TreeMap::new, Collector.of(
+                        () -> new long[2],
+                        (a, s) -> { a[0]++; a[1] += s[1]; },
+                        (a, b) -> { a[0] += b[0]; a[1] += b[1]; return a; }
+                )));
 
-            int childCov = cr.getCoverage(childColor);
+        log.info("  {} shared records", counts.values().stream().mapToLong(a -> a[0]).sum());
 
-            if (isInChild && numberOfParents > 0 && numberOfChildren > 0) {
-                if (!hist.containsKey(childCov)) {
-                    hist.put(childCov, 0);
-                }
+        for (int cov : counts.keySet()) {
+            out.println(cov + "\t" + counts.get(cov)[1]);
+        }
+    }
 
-                hist.put(childCov, hist.get(childCov) + numberOfParents + numberOfChildren);
+    private int getNumberOfSharingColors(CortexRecord cr, int childColor, Set<Integer> parentColors) {
+        boolean isInChild = cr.getCoverage(childColor) > 0;
+        int numberOfParents = 0;
+        int numberOfChildren = 0;
 
-                sharedRecords++;
+        for (int c = 0; c < cr.getNumColors(); c++) {
+            if (cr.getCoverage(c) > 0) {
+                if (childColor == c) { isInChild = true; }
+                else if (parentColors.contains(c)) { numberOfParents++; }
+                else { numberOfChildren++; }
             }
         }
 
-        for (int cov : hist.keySet()) {
-            out.println(cov + "\t" + hist.get(cov));
-        }
+        return (isInChild && numberOfParents > 0 && numberOfChildren > 0) ? numberOfParents + numberOfChildren : 0;
     }
 
     private Set<Integer> getColorsForSampleNames(Set<String> samples) {
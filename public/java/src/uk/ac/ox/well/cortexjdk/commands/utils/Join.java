@@ -6,7 +6,7 @@ import uk.ac.ox.well.cortexjdk.utils.arguments.Output;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.collection.CortexCollection;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphWriter;
-import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecordView;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeter;
 import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeterFactory;
 
@@ -26,6 +26,7 @@ public class Join extends Module {
 
         CortexGraphWriter cgw = new CortexGraphWriter(out);
         cgw.setHeader(cc.getHeader());
+        cgw.setBackgroundWriting(true);
 
         log.info("Joining graphs:");
         for (int c = 0; c < cc.getNumColors(); c++) {
@@ -38,8 +39,8 @@ public class Join extends Module {
                 .updateRecord(cc.getGraph(0).getNumRecords() / 10)
                 .make(log);
 
-        for (CortexRecord cr : cc) {
-            cgw.addRecord(cr);
+        for (CortexRecordView cv : cc.views()) {
+            cgw.addRecord(cv);
 
             pm.update();
         }
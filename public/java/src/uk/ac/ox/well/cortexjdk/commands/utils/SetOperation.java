@@ -0,0 +1,170 @@
+package uk.ac.ox.well.cortexjdk.commands.utils;
+
+import uk.ac.ox.well.cortexjdk.commands.Module;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Output;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.collection.CortexCollection;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphWriter;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexHeader;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecordView;
+import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeter;
+import uk.ac.ox.well.cortexjdk.utils.progress.ProgressMeterFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+@Description(text="Compute the union, intersection or difference of sorted graphs in a single streaming pass")
+public class SetOperation extends Module {
+    @Argument(fullName="graphs", shortName="g", doc="Sorted graphs (for subtract, the first graph is the one subtracted from)")
+    public ArrayList<CortexGraph> GRAPHS;
+
+    @Argument(fullName="operation", shortName="op", doc="Set operation (union, intersect or subtract)")
+    public String OPERATION;
+
+    @Argument(fullName="minCoverage", shortName="c", doc="Minimum coverage for a kmer to be present in a color", required=false)
+    public Integer MIN_COVERAGE = 1;
+
+    @Argument(fullName="sampleMinCoverage", shortName="s", doc="Per-sample minimum coverage, as sample:coverage pairs", required=false)
+    public HashMap<String, Integer> SAMPLE_MIN_COVERAGE;
+
+    @Output
+    public File out;
+
+    private enum Operation { UNION, INTERSECT, SUBTRACT }
+
+    @Override
+    public void execute() {
+        Operation op = getOperation();
+
+        CortexCollection cc = new CortexCollection(GRAPHS);
+
+        // A kmer is present in a graph if any of the graph's colors meets that color's coverage threshold
+        int[] graphOfColor = new int[cc.getNumColors()];
+        int[] minCoverage = new int[cc.getNumColors()];
+        Set<String> samplesSeen = new HashSet<>();
+
+        CortexHeader header = new CortexHeader();
+        header.setVersion(6);
+        header.setKmerSize(cc.getKmerSize());
+        header.setKmerBits(cc.getKmerBits());
+        header.setNumColors(cc.getNumColors());
+
+        for (int g = 0, c = 0; g < GRAPHS.size(); g++) {
+            for (int lc = 0; lc < GRAPHS.get(g).getNumColors(); lc++, c++) {
+                String sampleName = GRAPHS.get(g).getSampleName(lc);
+
+                graphOfColor[c] = g;
+                minCoverage[c] = MIN_COVERAGE;
+
+                if (SAMPLE_MIN_COVERAGE != null && SAMPLE_MIN_COVERAGE.containsKey(sampleName)) {
+                    minCoverage[c] = SAMPLE_MIN_COVERAGE.get(sampleName);
+                    samplesSeen.add(sampleName);
+                }
+
+                header.addColor(GRAPHS.get(g).getColor(lc));
+            }
+        }
+
+        if (SAMPLE_MIN_COVERAGE != null) {
+            for (String sampleName : SAMPLE_MIN_COVERAGE.keySet()) {
+                if (!samplesSeen.contains(sampleName)) {
+                    throw new CortexJDKException("Sample '" + sampleName + "' is not present in any of the graphs");
+                }
+            }
+        }
+
+        CortexGraphWriter cgw = new CortexGraphWriter(out);
+        cgw.setHeader(header);
+        cgw.setBackgroundWriting(true);
+
+        log.info("Computing {} of graphs:", op.name().toLowerCase());
+        for (int g = 0; g < GRAPHS.size(); g++) {
+            log.info("  {}: {} ({} kmers)", g, GRAPHS.get(g).getFile().getName(), GRAPHS.get(g).getNumRecords());
+        }
+
+        ProgressMeter pm = new ProgressMeterFactory()
+                .header("Processing graphs...")
+                .message("records processed")
+                .updateRecord(Math.max(1, GRAPHS.get(0).getNumRecords() / 10))
+                .make(log);
+
+        boolean[] present = new boolean[GRAPHS.size()];
+        long[] previousKmer = null;
+        long numRecordsWritten = 0;
+
+        for (CortexRecordView cv : cc.views()) {
+            previousKmer = checkSorted(cv.getBinaryKmer(), previousKmer);
+
+            Arrays.fill(present, false);
+            for (int c = 0; c < graphOfColor.length; c++) {
+                if (cv.getCoverage(c) >= minCoverage[c]) {
+                    present[graphOfColor[c]] = true;
+                }
+            }
+
+            if (keep(op, present)) {
+                cgw.addRecord(cv);
+                numRecordsWritten++;
+            }
+
+            pm.update();
+        }
+
+        cgw.close();
+
+        log.info("Wrote {} records", numRecordsWritten);
+    }
+
+    private Operation getOperation() {
+        try {
+            return Operation.valueOf(OPERATION.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new CortexJDKException("Unknown set operation '" + OPERATION + "' (expected union, intersect or subtract)");
+        }
+    }
+
+    private boolean keep(Operation op, boolean[] present) {
+        switch (op) {
+            case UNION:
+                for (boolean p : present) { if (p) { return true; } }
+                return false;
+            case INTERSECT:
+                for (boolean p : present) { if (!p) { return false; } }
+                return true;
+            default:
+                if (!present[0]) { return false; }
+                for (int g = 1; g < present.length; g++) { if (present[g]) { return false; } }
+                return true;
+        }
+    }
+
+    /**
+     * The merge relies on every input being sorted, so stop as soon as the merged kmers stop increasing.
+     */
+    private long[] checkSorted(long[] binaryKmer, long[] previousKmer) {
+        if (previousKmer == null) {
+            return binaryKmer.clone();
+        }
+
+        for (int b = 0; b < binaryKmer.length; b++) {
+            int c = Long.compareUnsigned(Long.reverseBytes(binaryKmer[b]), Long.reverseBytes(previousKmer[b]));
+
+            if (c > 0) {
+                break;
+            } else if (c < 0) {
+                throw new CortexJDKException("Graphs must be sorted before set operations are applied (see the Sort command)");
+            }
+        }
+
+        System.arraycopy(binaryKmer, 0, previousKmer, 0, binaryKmer.length);
+
+        return previousKmer;
+    }
+}
@@ -0,0 +1,38 @@
+package uk.ac.ox.well.cortexjdk.commands.utils;
+
+import uk.ac.ox.well.cortexjdk.commands.Module;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Description;
+import uk.ac.ox.well.cortexjdk.utils.arguments.Output;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.shard.CortexShardManifest;
+
+import java.io.File;
+
+@Description(text="Split a sorted graph into kmer-range shards (prefix.shardN.ctx) and write a manifest (prefix.manifest)")
+public class Shard extends Module {
+    @Argument(fullName="graph", shortName="g", doc="Sorted graph")
+    public CortexGraph GRAPH;
+
+    @Argument(fullName="numShards", shortName="n", doc="Number of shards")
+    public Integer NUM_SHARDS;
+
+    @Output
+    public File out;
+
+    @Override
+    public void execute() {
+        log.info("Splitting {} records into {} shards...", GRAPH.getNumRecords(), NUM_SHARDS);
+
+        CortexShardManifest manifest = CortexShardManifest.build(GRAPH, NUM_SHARDS, out);
+
+        File manifestFile = CortexShardManifest.getManifestFile(out);
+        manifest.store(manifestFile);
+
+        for (CortexShardManifest.Shard s : manifest.getShards()) {
+            log.info("  {}: {} records ({} - {})", s.getFile().getName(), s.getNumRecords(), s.getFirstKmer(), s.getLastKmer());
+        }
+
+        log.info("Manifest written to {}", manifestFile.getAbsolutePath());
+    }
+}
@@ -4,47 +4,35 @@ import uk.ac.ox.well.cortexjdk.commands.Module;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Argument;
 import uk.ac.ox.well.cortexjdk.utils.arguments.Output;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphSorter;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphWriter;
-import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
 
-import java.util.Arrays;
+import java.io.File;
 
 public class Sort extends Module {
     @Argument(fullName="cortexGraph", shortName="cg", doc="Cortex graph")
     public CortexGraph CORTEX_GRAPH;
 
+    @Argument(fullName="memory", shortName="m", doc="Memory budget for sorting (in megabytes)", required=false)
+    public Long MEMORY = 1024L;
+
+    @Argument(fullName="tempDir", shortName="t", doc="Directory for temporary sorted runs", required=false)
+    public File TEMP_DIR;
+
     @Output
     public CortexGraphWriter out;
 
     @Override
     public void execute() {
-        CortexRecord[] records = new CortexRecord[(int) CORTEX_GRAPH.getNumRecords()];
-
-        log.info("Processing Cortex records...");
-        int recordsProcessed = 0;
-        for (CortexRecord cr : CORTEX_GRAPH) {
-            records[recordsProcessed] = cr;
-
-            recordsProcessed++;
-            if (recordsProcessed % (CORTEX_GRAPH.getNumRecords() / 10) == 0) {
-                log.info("  {}/{} records", recordsProcessed, CORTEX_GRAPH.getNumRecords());
-            }
-        }
-
-        log.info("Sorting records (this may take a while)...");
-        Arrays.sort(records, 0, records.length);
-
-        log.info("Writing records...");
-        recordsProcessed = 0;
-        out.setHeader(CORTEX_GRAPH.getHeader());
-        for (CortexRecord cr : records) {
-            recordsProcessed++;
-
-            out.addRecord(cr);
-
-            if (recordsProcessed % (records.length / 10) == 0) {
-                log.info("  {}/{} records", recordsProcessed, records.length);
-            }
-        }
+        CortexGraphSorter sorter = new CortexGraphSorter(CORTEX_GRAPH, MEMORY*1024L*1024L);
+        sorter.setTempDirectory(TEMP_DIR);
+
+        log.info("Sorting {} records in {} run(s) of up to {} records (this may take a while)...", CORTEX_GRAPH.getNumRecords(), sorter.getNumRuns(), sorter.getRunSize());
+
+        sorter.sort(out);
+
+        out.close();
+
+        log.info("Wrote {} records", CORTEX_GRAPH.getNumRecords());
     }
 }
@@ -98,7 +98,10 @@ public class KmerLookup {
         }
 
         if (interval.getStart() > 0 && interval.getEnd() <= ref.getSequenceDictionary().getSequence(interval.getContig()).getSequenceLength()) {
-            ReferenceSequence rseq = ref.getSubsequenceAt(interval.getContig(), interval.getStart(), interval.getEnd());
+            ReferenceSequence rseq;
+            synchronized (ref) {
+                rseq = ref.getSubsequenceAt(interval.getContig(), interval.getStart(), interval.getEnd());
+            }
 
             if (rseq != null) {
                 if (interval.isPositiveStrand()) {
@@ -126,7 +129,11 @@ public class KmerLookup {
                 String chr = ref.getSequenceDictionary().getSequence(l[i]).getSequenceName();
                 int pos = l[i + 1];
 
-                String fw = ref.getSubsequenceAt(chr, pos + 1, pos + sk.length()).getBaseString();
+                // The indexed fasta reader is not thread-safe, so lookups from concurrent traversals take turns
+                String fw;
+                synchronized (ref) {
+                    fw = ref.getSubsequenceAt(chr, pos + 1, pos + sk.length()).getBaseString();
+                }
                 String rc = SequenceUtils.reverseComplement(fw);
 
                 if (sk.equals(fw)) {
@@ -16,8 +16,11 @@ import uk.ac.ox.well.cortexjdk.commands.Command;
 import uk.ac.ox.well.cortexjdk.utils.alignment.kmer.KmerLookup;
 import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.collection.CortexCollection;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.compressed.CortexCompressedGraph;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphWriter;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.memory.CortexMemoryGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.shard.CortexShardedGraph;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexKmer;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.links.CortexLinks;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.links.CortexLinksIterable;
@@ -307,6 +310,12 @@ public class ArgumentHandler {
                 return new CortexGraphWriter(value);
             } else if (type.equals(CortexCollection.class)) {
                 return new CortexCollection(value);
+            } else if (type.equals(CortexMemoryGraph.class)) {
+                return new CortexMemoryGraph(value);
+            } else if (type.equals(CortexShardedGraph.class)) {
+                return new CortexShardedGraph(value);
+            } else if (type.equals(CortexCompressedGraph.class)) {
+                return new CortexCompressedGraph(value);
             } else if (type.equals(Expression.class)) {
                 initializeJexlEngine();
 
@@ -0,0 +1,136 @@
+package uk.ac.ox.well.cortexjdk.utils.assembler;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds graphs of random records, for exercising graph storage without a real assembly.  Records are generated from
+ * a generator seeded with the number of records requested, so the same call always returns the same records, and two
+ * calls with different sizes return (almost certainly) disjoint kmers.  Kmers are canonical, but records are not
+ * sorted; callers sort them if the graph must be.
+ */
+public class TempRandomGraphAssembler {
+    private TempRandomGraphAssembler() {}
+
+    /**
+     * Make records with coverage (from 1 to 100) and random edges in every color.
+     *
+     * @param numRecords  the number of records
+     * @param kmerSize    the kmer size
+     * @param numColors   the number of colors
+     * @return            the records, in generation order
+     */
+    public static List<CortexRecord> makeRecords(int numRecords, int kmerSize, int numColors) {
+        return makeRecords(numRecords, kmerSize, numColors, false);
+    }
+
+    /**
+     * Make records in which most colors are left empty, as in a graph with many samples.
+     *
+     * @param numRecords  the number of records
+     * @param kmerSize    the kmer size
+     * @param numColors   the number of colors
+     * @return            the records, in generation order
+     */
+    public static List<CortexRecord> makeSparseRecords(int numRecords, int kmerSize, int numColors) {
+        return makeRecords(numRecords, kmerSize, numColors, true);
+    }
+
+    private static List<CortexRecord> makeRecords(int numRecords, int kmerSize, int numColors, boolean sparse) {
+        Random rng = new Random(numRecords);
+
+        List<CortexRecord> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            byte[] kmer = new byte[kmerSize];
+            for (int j = 0; j < kmer.length; j++) {
+                kmer[j] = "ACGT".getBytes()[rng.nextInt(4)];
+            }
+
+            long[] binaryKmer = CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation(kmer));
+
+            int[] coverages = new int[numColors];
+            byte[] edges = new byte[numColors];
+            for (int c = sparse ? rng.nextInt(3) : 0; c < numColors; c += sparse ? 1 + rng.nextInt(10) : 1) {
+                coverages[c] = 1 + rng.nextInt(100);
+                edges[c] = (byte) rng.nextInt(256);
+            }
+
+            records.add(new CortexRecord(binaryKmer, coverages, edges, kmerSize, binaryKmer.length));
+        }
+
+        return records;
+    }
+
+    /**
+     * Make a header for a graph of random records, with samples named "sample0", "sample1", and so on.
+     *
+     * @param kmerSize   the kmer size
+     * @param numColors  the number of colors
+     * @return           the header
+     */
+    public static CortexHeader constructCortexHeader(int kmerSize, int numColors) {
+        CortexHeader header = new CortexHeader();
+        header.setVersion(6);
+        header.setKmerSize(kmerSize);
+        header.setKmerBits(CortexRecord.getKmerBits(kmerSize));
+        header.setNumColors(numColors);
+
+        for (int c = 0; c < numColors; c++) {
+            CortexColor color = new CortexColor();
+            color.setSampleName("sample" + c);
+            color.setCleanedAgainstGraphName("");
+
+            header.addColor(color);
+        }
+
+        return header;
+    }
+
+    /**
+     * Write records to a temporary graph file, deleted on exit.
+     *
+     * @param records    the records, in the order they should be stored
+     * @param kmerSize   the kmer size
+     * @param numColors  the number of colors
+     * @return           the graph file
+     */
+    public static File writeGraph(List<CortexRecord> records, int kmerSize, int numColors) {
+        File graphFile;
+        try {
+            graphFile = File.createTempFile("randomgraph", ".ctx");
+        } catch (IOException e) {
+            throw new CortexJDKException("Could not get a temp file for graph creation", e);
+        }
+        graphFile.deleteOnExit();
+
+        writeGraph(records, kmerSize, numColors, graphFile);
+
+        return graphFile;
+    }
+
+    /**
+     * Write records to a graph file, replacing any existing file.
+     *
+     * @param records    the records, in the order they should be stored
+     * @param kmerSize   the kmer size
+     * @param numColors  the number of colors
+     * @param graphFile  the graph file
+     */
+    public static void writeGraph(List<CortexRecord> records, int kmerSize, int numColors, File graphFile) {
+        CortexGraphWriter cgw = new CortexGraphWriter(graphFile);
+        cgw.setHeader(constructCortexHeader(kmerSize, numColors));
+
+        for (CortexRecord cr : records) {
+            cgw.addRecord(cr);
+        }
+
+        cgw.close();
+    }
+}
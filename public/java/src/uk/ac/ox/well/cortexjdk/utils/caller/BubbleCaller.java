@@ -1,6 +1,7 @@
 package uk.ac.ox.well.cortexjdk.utils.caller;
 
 import htsjdk.samtools.util.Interval;
+import org.jgrapht.DirectedGraph;
 import org.jgrapht.GraphPath;
 import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 import org.jgrapht.graph.DirectedWeightedPseudograph;
@@ -12,8 +13,10 @@ import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.BubbleClosingStopper;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.BubbleOpeningStopper;
 import uk.ac.ox.well.cortexjdk.utils.traversal.CortexEdge;
+import uk.ac.ox.well.cortexjdk.utils.traversal.CortexSubgraph;
 import uk.ac.ox.well.cortexjdk.utils.traversal.CortexVertex;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngine;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration;
 import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineFactory;
 
 import java.util.HashMap;
@@ -71,11 +74,33 @@ public class BubbleCaller {
         }
     }
 
+    public BubbleCallerConfiguration getConfiguration() { return bc; }
+
+    /**
+     * @return the configuration of the engine that opens bubbles, for making equivalent engines on other threads
+     */
+    public TraversalEngineConfiguration getOpeningConfiguration() { return eOpen.getConfiguration(); }
+
     public Set<Bubble> call(String seed) {
-        DirectedWeightedPseudograph<CortexVertex, CortexEdge> gc = eOpen.dfs(seed);
+        return call(eOpen, seed);
+    }
+
+    /**
+     * Call bubbles from a seed, opening them with the given engine rather than this caller's own.  The engine should
+     * be configured like the one described by {@link #getOpeningConfiguration()}; this lets a worker thread supply
+     * the engine it owns.
+     *
+     * @param e     the engine used to open bubbles
+     * @param seed  the seed kmer
+     * @return      the bubbles found
+     */
+    public Set<Bubble> call(TraversalEngine e, String seed) {
+        CortexSubgraph sc = e.dfsSubgraph(seed);
 
         Set<Bubble> bubbles = new HashSet<>();
-        if (gc != null) {
+        if (sc != null) {
+            DirectedGraph<CortexVertex, CortexEdge> gc = sc.asGraph();
+
             DepthFirstIterator<CortexVertex, CortexEdge> dFwd = null;
             DepthFirstIterator<CortexVertex, CortexEdge> dRev = null;
 
@@ -105,9 +130,11 @@ public class BubbleCaller {
                             if (soInterval.getContig().equals(siInterval.getContig())) {
                                 eCloses.get(pc).getConfiguration().setPreviousTraversal(s);
 
-                                DirectedWeightedPseudograph<CortexVertex, CortexEdge> gp = eCloses.get(pc).dfs(so.getSk());
+                                CortexSubgraph sp = eCloses.get(pc).dfsSubgraph(so.getSk());
+
+                                if (sp != null) {
+                                    DirectedGraph<CortexVertex, CortexEdge> gp = sp.asGraph();
 
-                                if (gp != null) {
                                     GraphPath<CortexVertex, CortexEdge> dgc = DijkstraShortestPath.findPathBetween(gc, so, si);
                                     GraphPath<CortexVertex, CortexEdge> dgp = DijkstraShortestPath.findPathBetween(gp, so, si);
 
@@ -3,6 +3,7 @@ package uk.ac.ox.well.cortexjdk.utils.io.cortex;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -27,6 +28,7 @@ public interface DeBruijnGraph extends Iterable<CortexRecord>, Iterator<CortexRe
     CortexRecord findRecord(CortexByteKmer bk);
     CortexRecord findRecord(CortexKmer ck);
     CortexRecord findRecord(String sk);
+    CortexRecord findRecord(long[] binaryKmer);
 
     // Graph information
     File getFile();
@@ -41,10 +43,77 @@ public interface DeBruijnGraph extends Iterable<CortexRecord>, Iterator<CortexRe
     List<CortexColor> getColors();
     boolean hasColor(int color);
     CortexColor getColor(int color);
-    int getColorForSampleName(String sampleName);
-    List<Integer> getColorsForSampleNames(List<String> sampleNames);
     String getSampleName(int color);
 
+    /**
+     * Find the color of a sample, by name (ignoring case) or by color number.
+     *
+     * @param sampleName  the sample name, or a color number
+     * @return            the color, or -1 if no color or more than one color has this name
+     */
+    default int getColorForSampleName(String sampleName) {
+        int sampleColor = -1;
+        int sampleCopies = 0;
+
+        for (int color = 0; color < getNumColors(); color++) {
+            if (getSampleName(color).equalsIgnoreCase(sampleName)) {
+                sampleColor = color;
+                sampleCopies++;
+            }
+        }
+
+        if (sampleColor == -1) {
+            try {
+                sampleColor = Integer.valueOf(sampleName);
+                sampleCopies = 1;
+            } catch (NumberFormatException e) {}
+        }
+
+        return (sampleCopies == 1) ? sampleColor : -1;
+    }
+
+    default List<Integer> getColorsForSampleNames(List<String> sampleNames) {
+        List<Integer> colors = new ArrayList<>();
+
+        if (sampleNames != null && !sampleNames.isEmpty()) {
+            for (String sampleName : sampleNames) {
+                colors.add(getColorForSampleName(sampleName));
+            }
+        }
+
+        return colors;
+    }
+
+    /**
+     * Describe the file, kmer size and colors of the graph.  Implementations start their toString() with this and
+     * append what is particular to their storage.
+     *
+     * @return  the header summary, one field per line
+     */
+    default String getHeaderSummary() {
+        String info = "file: " + (getFile() == null ? "(none)" : getFile().getAbsolutePath()) + "\n"
+                + "----" + "\n"
+                + "binary version: " + this.getVersion() + "\n"
+                + "kmer size: " + this.getKmerSize() + "\n"
+                + "bitfields: " + this.getKmerBits() + "\n"
+                + "colors: " + this.getNumColors() + "\n";
+
+        for (int color = 0; color < this.getNumColors(); color++) {
+            CortexColor cortexColor = this.getColors().get(color);
+            info += "-- Color " + color + " --\n"
+                    +  "  sample name: '" + cortexColor.getSampleName() + "'\n"
+                    +  "  mean read length: " + cortexColor.getMeanReadLength() + "\n"
+                    +  "  total sequence loaded: " + "(not parsed)" + "\n"
+                    +  "  sequence error rate: " + "(not parsed)" + "\n"
+                    +  "  tip clipping: " + (cortexColor.isTipClippingApplied() ? "yes" : "no") + "\n"
+                    +  "  remove_low_coverage_supernodes: " + (cortexColor.isLowCovgSupernodesRemoved() ? "yes" : "no") + "\n"
+                    +  "  remove_low_coverage_kmers: " + (cortexColor.isLowCovgKmersRemoved() ? "yes" : "no") + "\n"
+                    +  "  cleaned against graph: " + (cortexColor.isCleanedAgainstGraph() ? "yes" : "no") + "\n";
+        }
+
+        return info;
+    }
+
     String toString();
 }
 
@@ -6,16 +6,21 @@ import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
 import uk.ac.ox.well.cortexjdk.utils.io.utils.LineReader;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
 
 import java.io.File;
 import java.util.*;
+import java.util.stream.IntStream;
 
 public class CortexCollection implements DeBruijnGraph {
-    private CortexRecord[] nextRecs;
+    private static final int PARALLEL_LOOKUP_THRESHOLD = 4;
+
+    private CortexCollectionMerger merger;
 
     private List<CortexGraph> graphList = new ArrayList<>();
     private Map<CortexGraph, Pair<List<Integer>, List<Integer>>> graphs = new HashMap<>();
-    private Map<CortexGraph, Pair<List<Integer>, List<Integer>>> fgraphs = new HashMap<>();
+
+    private CortexRecordCache cache = new CortexRecordLRUCache(CortexRecordLRUCache.getConfiguredBudget());
 
     private int numColors = 0;
     private int kmerSize = 0;
@@ -53,7 +58,6 @@ public class CortexCollection implements DeBruijnGraph {
             }
 
             graphs.put(g, new Pair<>(accessColors, loadingColors));
-            fgraphs.put(new CortexGraph(g.getFile()), new Pair<>(accessColors, loadingColors));
             graphList.add(g);
 
             numColors += accessColors.size();
@@ -87,7 +91,7 @@ public class CortexCollection implements DeBruijnGraph {
 
                 for (int i = 0; i < parts.length; i++) {
                     if (new File(parts[i]).exists()) {
-                        graph = new CortexGraph(parts[i]);
+                        graph = openGraph(parts[i]);
                     } else {
                         if (graph == null) {
                             accessMap = parts[i];
@@ -137,7 +141,7 @@ public class CortexCollection implements DeBruijnGraph {
                 numColors += accessColors.size();
             }
         } else if (collectionFileString.endsWith(".ctx")) {
-            CortexGraph graph = new CortexGraph(collectionFileString);
+            CortexGraph graph = openGraph(collectionFileString);
 
             List<Integer> accessColors = new ArrayList<>();
             List<Integer> loadingColors = new ArrayList<>();
@@ -172,6 +176,16 @@ public class CortexCollection implements DeBruijnGraph {
         }
     }
 
+    private static CortexGraph openGraph(String path) {
+        CortexGraph graph = new CortexGraph(path);
+
+        // Lookups through the collection are cached as merged records, so graphs opened only for the collection
+        // don't need caches of their own
+        graph.setCache(new CortexRecordLRUCache(0));
+
+        return graph;
+    }
+
     public CortexGraph getGraph(int color) {
         for (CortexGraph g : graphs.keySet()) {
             Pair<List<Integer>, List<Integer>> p = graphs.get(g);
@@ -258,34 +272,87 @@ public class CortexCollection implements DeBruijnGraph {
         return 0;
     }
 
+    /**
+     * Find a kmer in every graph of the collection and merge the results into one record.  The kmer is encoded once,
+     * graphs whose Bloom filters rule it out are skipped, and the remaining graphs are searched concurrently when
+     * there are enough of them to be worth it.  Merged records are cached under their canonical binary kmer.
+     *
+     * @param bk  the kmer
+     * @return    the merged record, or null if the kmer is in none of the graphs
+     */
     public CortexRecord findRecord(byte[] bk) {
-        long[] binaryKmer = null;
+        if (graphList.isEmpty() || bk.length != kmerSize) {
+            return null;
+        }
+
+        long[] binaryKmer;
+        try {
+            binaryKmer = CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation(bk));
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        return findRecord(binaryKmer);
+    }
+
+    /**
+     * Find a binary kmer that has already been encoded in its canonical orientation, as {@link #findRecord(byte[])}
+     * does for a kmer given as bases.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the merged record, or null if the kmer is in none of the graphs
+     */
+    public CortexRecord findRecord(long[] binaryKmer) {
+        if (graphList.isEmpty() || binaryKmer.length != kmerBits) {
+            return null;
+        }
+
+        CortexRecord cr = cache.get(binaryKmer);
+        if (cr != null) {
+            return cr;
+        }
+
+        int[] candidates = IntStream.range(0, graphList.size()).filter(i -> graphList.get(i).mightContain(binaryKmer)).toArray();
+
+        CortexRecord[] found = new CortexRecord[graphList.size()];
+        if (candidates.length >= PARALLEL_LOOKUP_THRESHOLD) {
+            Arrays.stream(candidates).parallel().forEach(i -> found[i] = graphList.get(i).findCandidateRecord(binaryKmer));
+        } else {
+            for (int i : candidates) {
+                found[i] = graphList.get(i).findCandidateRecord(binaryKmer);
+            }
+        }
+
         int[] coverages = new int[numColors];
         byte[] edges = new byte[numColors];
+        boolean isPresent = false;
 
-        for (int assignmentColor = 0; assignmentColor <= numColors; assignmentColor++) {
-            for (CortexGraph g : fgraphs.keySet()) {
-                CortexRecord cr = g.findRecord(bk);
-
-                if (cr != null) {
-                    binaryKmer = cr.getBinaryKmer();
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] != null) {
+                isPresent = true;
 
-                    Pair<List<Integer>, List<Integer>> p = fgraphs.get(g);
-                    List<Integer> accessColors = p.getFirst();
-                    List<Integer> loadingColors = p.getSecond();
+                Pair<List<Integer>, List<Integer>> p = graphs.get(graphList.get(i));
+                List<Integer> accessColors = p.getFirst();
+                List<Integer> loadingColors = p.getSecond();
 
-                    for (int c = 0; c < accessColors.size(); c++) {
-                        int ac = accessColors.get(c);
-                        int lc = loadingColors.get(c);
+                for (int c = 0; c < accessColors.size(); c++) {
+                    int ac = accessColors.get(c);
+                    int lc = loadingColors.get(c);
 
-                        coverages[ac] = cr.getCoverage(lc);
-                        edges[ac] = cr.getEdges()[lc];
-                    }
+                    coverages[ac] = found[i].getCoverage(lc);
+                    edges[ac] = found[i].getEdges()[lc];
                 }
             }
         }
 
-        return (binaryKmer == null) ? null : new CortexRecord(binaryKmer, coverages, edges, kmerSize, kmerBits);
+        if (!isPresent) {
+            return null;
+        }
+
+        cr = new CortexRecord(binaryKmer, coverages, edges, kmerSize, kmerBits);
+        cache.put(cr);
+
+        return cr;
     }
 
     public CortexRecord findRecord(CortexByteKmer bk) {
@@ -303,14 +370,20 @@ public class CortexCollection implements DeBruijnGraph {
         throw new UnsupportedOperationException();
     }
 
-    private void moveToBeginningOfRecordsSection() {
-        nextRecs = new CortexRecord[graphs.keySet().size() + 1];
+    private CortexCollectionMerger newMerger() {
+        List<List<Integer>> accessColors = new ArrayList<>();
+        List<List<Integer>> loadingColors = new ArrayList<>();
 
-        int i = 0;
         for (CortexGraph g : graphList) {
-            nextRecs[i] = g.next();
-            i++;
+            accessColors.add(graphs.get(g).getFirst());
+            loadingColors.add(graphs.get(g).getSecond());
         }
+
+        return new CortexCollectionMerger(graphList, accessColors, loadingColors, kmerSize, kmerBits, numColors);
+    }
+
+    private void moveToBeginningOfRecordsSection() {
+        merger = newMerger();
     }
 
     @Override
@@ -330,66 +403,30 @@ public class CortexCollection implements DeBruijnGraph {
         return this;
     }
 
+    /**
+     * Iterate over the merged records of the collection without allocating a new record for every kmer.  The returned
+     * iterators are independent of the collection's own cursor and of each other, but each one hands back the same
+     * {@link CortexRecordView} on every call to next(), refilled in place.  Use {@link CortexRecordView#copy()} to keep
+     * a record.
+     *
+     * @return an iterable over reusable merged record views
+     */
+    public Iterable<CortexRecordView> views() {
+        return this::newMerger;
+    }
+
     @Override
     public boolean hasNext() {
-        for (int i = 0; i < nextRecs.length; i++) {
-            if (nextRecs[i] != null) {
-                return true;
-            }
+        if (merger == null) {
+            moveToBeginningOfRecordsSection();
         }
 
-        return false;
+        return merger.hasNext();
     }
 
     @Override
     public CortexRecord next() {
-        int lowc = -1;
-
-        for (int i = 0; i < nextRecs.length; i++) {
-            if (nextRecs[i] != null) {
-                if (lowc == -1 || nextRecs[i].getKmerAsString().compareTo(nextRecs[lowc].getKmerAsString()) < 0) {
-                    lowc = i;
-                }
-            }
-        }
-
-        if (lowc >= 0) {
-            String compKmer = nextRecs[lowc].getKmerAsString();
-
-            long[] binaryKmer = null;
-            int[] coverages = new int[numColors];
-            byte[] edges = new byte[numColors];
-
-            for (int i = 0; i < nextRecs.length; i++) {
-                if (nextRecs[i] != null && nextRecs[i].getKmerAsString().equals(compKmer)) {
-                    CortexRecord cr = nextRecs[i];
-
-                    if (cr != null) {
-                        binaryKmer = cr.getBinaryKmer();
-
-                        CortexGraph g = graphList.get(i);
-
-                        Pair<List<Integer>, List<Integer>> p = graphs.get(g);
-                        List<Integer> accessColors = p.getFirst();
-                        List<Integer> loadingColors = p.getSecond();
-
-                        for (int c = 0; c < accessColors.size(); c++) {
-                            int ac = accessColors.get(c);
-                            int lc = loadingColors.get(c);
-
-                            coverages[ac] = cr.getCoverage(lc);
-                            edges[ac] = cr.getEdges()[lc];
-                        }
-
-                        nextRecs[i] = graphList.get(i).next();
-                    }
-                }
-            }
-
-            return (binaryKmer == null) ? null : new CortexRecord(binaryKmer, coverages, edges, kmerSize, kmerBits);
-        }
-
-        return null;
+        return hasNext() ? merger.next().copy() : null;
     }
 
     @Override
@@ -404,6 +441,32 @@ public class CortexCollection implements DeBruijnGraph {
         }
     }
 
+    public void setCache(CortexRecordCache cache) {
+        this.cache = cache;
+    }
+
+    public CortexRecordCache getCache() {
+        return cache;
+    }
+
+    public long getBloomFilterRejections() {
+        long rejections = 0;
+        for (CortexGraph g : graphList) {
+            rejections += g.getBloomFilterRejections();
+        }
+
+        return rejections;
+    }
+
+    public long getBloomFilterFalsePositives() {
+        long falsePositives = 0;
+        for (CortexGraph g : graphList) {
+            falsePositives += g.getBloomFilterFalsePositives();
+        }
+
+        return falsePositives;
+    }
+
     @Override
     public CortexRecord getRecord(long i) {
         throw new UnsupportedOperationException();
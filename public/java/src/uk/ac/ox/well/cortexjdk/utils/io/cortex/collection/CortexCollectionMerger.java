@@ -0,0 +1,153 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.collection;
+
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecordView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * K-way merge of the sorted graphs in a collection.  Each graph is read through its own color-projected views, and the
+ * graphs are kept in a binary heap ordered by the binary kmer of their current record.  The heap keys are the kmer
+ * words cached in comparison order, so each merged record costs O(log G) word comparisons for G graphs and no kmer
+ * decoding.  Colors are remapped by copying straight into a single output record that is refilled on every call to
+ * next().
+ */
+class CortexCollectionMerger implements Iterator<CortexRecordView> {
+    private final int kmerBits;
+
+    private final List<Iterator<CortexRecordView>> sources;
+    private final CortexRecordView[] current;
+    private final int[][] accessColors;
+    private final long[][] keys;
+
+    private final int[] heap;
+    private int heapSize = 0;
+
+    private final long[] mergedKey;
+    private final MergedRecordView merged;
+
+    CortexCollectionMerger(List<CortexGraph> graphs, List<List<Integer>> accessColorLists, List<List<Integer>> loadingColorLists, int kmerSize, int kmerBits, int numColors) {
+        this.kmerBits = kmerBits;
+
+        int numGraphs = graphs.size();
+
+        sources = new ArrayList<>(numGraphs);
+        current = new CortexRecordView[numGraphs];
+        accessColors = new int[numGraphs][];
+        keys = new long[numGraphs][kmerBits];
+        heap = new int[numGraphs];
+
+        mergedKey = new long[kmerBits];
+        merged = new MergedRecordView(kmerSize, kmerBits, numColors);
+
+        for (int g = 0; g < numGraphs; g++) {
+            // Only the colors loaded into the collection are decoded from each graph
+            sources.add(graphs.get(g).views(loadingColorLists.get(g)).iterator());
+            accessColors[g] = accessColorLists.get(g).stream().mapToInt(Integer::intValue).toArray();
+
+            if (advance(g)) {
+                heap[heapSize++] = g;
+            }
+        }
+
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    @Override
+    public boolean hasNext() { return heapSize > 0; }
+
+    @Override
+    public CortexRecordView next() {
+        if (!hasNext()) { throw new NoSuchElementException(); }
+
+        System.arraycopy(keys[heap[0]], 0, mergedKey, 0, kmerBits);
+        System.arraycopy(current[heap[0]].getBinaryKmer(), 0, merged.getBinaryKmer(), 0, kmerBits);
+        Arrays.fill(merged.getCoverages(), 0);
+        Arrays.fill(merged.getEdges(), (byte) 0);
+
+        while (heapSize > 0 && Arrays.equals(keys[heap[0]], mergedKey)) {
+            int g = heap[0];
+
+            int[] coverages = current[g].getCoverages();
+            byte[] edges = current[g].getEdges();
+            int[] ac = accessColors[g];
+
+            for (int c = 0; c < ac.length; c++) {
+                merged.getCoverages()[ac[c]] = coverages[c];
+                merged.getEdges()[ac[c]] = edges[c];
+            }
+
+            if (!advance(g)) {
+                heap[0] = heap[--heapSize];
+            }
+
+            siftDown(0);
+        }
+
+        merged.refilled();
+
+        return merged;
+    }
+
+    private boolean advance(int g) {
+        if (!sources.get(g).hasNext()) {
+            return false;
+        }
+
+        current[g] = sources.get(g).next();
+
+        long[] binaryKmer = current[g].getBinaryKmer();
+        for (int b = 0; b < kmerBits; b++) {
+            keys[g][b] = Long.reverseBytes(binaryKmer[b]);
+        }
+
+        return true;
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2*i + 1;
+            int right = left + 1;
+
+            if (left < heapSize && compare(heap[left], heap[smallest]) < 0) { smallest = left; }
+            if (right < heapSize && compare(heap[right], heap[smallest]) < 0) { smallest = right; }
+
+            if (smallest == i) {
+                return;
+            }
+
+            int tmp = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = tmp;
+
+            i = smallest;
+        }
+    }
+
+    private int compare(int g1, int g2) {
+        for (int b = 0; b < kmerBits; b++) {
+            int c = Long.compareUnsigned(keys[g1][b], keys[g2][b]);
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+
+    private static class MergedRecordView extends CortexRecordView {
+        MergedRecordView(int kmerSize, int kmerBits, int numColors) {
+            super(kmerSize, kmerBits, numColors);
+        }
+
+        void refilled() { resetDecodedEdges(); }
+    }
+}
@@ -0,0 +1,286 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.compressed;
+
+import org.xerial.snappy.Snappy;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One block of sorted records in a compressed graph.  Within a block the kmers are stored first, as the full first
+ * kmer followed by the difference between each kmer and its predecessor; then each record's colors are stored
+ * sparsely as a list of (color gap, coverage, edges) entries for the colors with any coverage or edges.  Integers
+ * are written as varints and the whole block is compressed with snappy.
+ *
+ * Decoded blocks hold their kmers in comparison order (the natural 2-bit value of each word), so a block can be
+ * binary searched without decoding records, and keep their colors encoded until a record is asked for.
+ */
+class CortexCompressedBlock {
+    private final int kmerBits;
+    private final int numColors;
+    private final int size;
+
+    private final long[] kmers;
+    private final byte[] bytes;
+    private final int[] colorOffsets;
+
+    private CortexCompressedBlock(int kmerBits, int numColors, int size, long[] kmers, byte[] bytes, int[] colorOffsets) {
+        this.kmerBits = kmerBits;
+        this.numColors = numColors;
+        this.size = size;
+        this.kmers = kmers;
+        this.bytes = bytes;
+        this.colorOffsets = colorOffsets;
+    }
+
+    int size() { return size; }
+
+    /**
+     * Encode and compress a block of records.
+     *
+     * @param kmers      the kmers of the records, in comparison order, kmerBits words per record
+     * @param coverages  the coverages, numColors per record
+     * @param edges      the edges, numColors per record
+     * @param size       the number of records
+     * @param kmerBits   the number of words per kmer
+     * @param numColors  the number of colors per record
+     * @return           the compressed block
+     */
+    static byte[] encode(long[] kmers, int[] coverages, byte[] edges, int size, int kmerBits, int numColors) {
+        Sink sink = new Sink(size*(8*kmerBits + 2));
+
+        for (int i = 0; i < size; i++) {
+            int offset = i*kmerBits;
+
+            if (i == 0) {
+                for (int b = 0; b < kmerBits; b++) {
+                    sink.writeLong(kmers[b]);
+                }
+            } else {
+                int w = 0;
+                while (w < kmerBits - 1 && kmers[offset + w] == kmers[offset - kmerBits + w]) {
+                    w++;
+                }
+
+                if (kmerBits > 1) {
+                    sink.writeVarLong(w);
+                }
+
+                sink.writeVarLong(kmers[offset + w] - kmers[offset - kmerBits + w]);
+
+                for (int b = w + 1; b < kmerBits; b++) {
+                    sink.writeLong(kmers[offset + b]);
+                }
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            int offset = i*numColors;
+
+            int numEntries = 0;
+            for (int c = 0; c < numColors; c++) {
+                if (coverages[offset + c] != 0 || edges[offset + c] != 0) {
+                    numEntries++;
+                }
+            }
+
+            sink.writeVarLong(numEntries);
+
+            for (int c = 0, last = 0; c < numColors; c++) {
+                if (coverages[offset + c] != 0 || edges[offset + c] != 0) {
+                    sink.writeVarLong(c - last);
+                    sink.writeVarLong(coverages[offset + c] & 0xffffffffL);
+                    sink.writeByte(edges[offset + c]);
+
+                    last = c;
+                }
+            }
+        }
+
+        try {
+            return Snappy.compress(Arrays.copyOf(sink.bytes, sink.length));
+        } catch (IOException e) {
+            throw new CortexJDKException("Unable to compress block", e);
+        }
+    }
+
+    /**
+     * Decompress and decode a block of records.
+     *
+     * @param compressed  the compressed block
+     * @param size        the number of records in the block
+     * @param kmerBits    the number of words per kmer
+     * @param numColors   the number of colors per record
+     * @return            the decoded block
+     */
+    static CortexCompressedBlock decode(byte[] compressed, int size, int kmerBits, int numColors) {
+        byte[] bytes;
+        try {
+            bytes = Snappy.uncompress(compressed);
+        } catch (IOException e) {
+            throw new CortexJDKException("Unable to decompress block", e);
+        }
+
+        long[] kmers = new long[size*kmerBits];
+        int[] colorOffsets = new int[size];
+
+        Source source = new Source(bytes);
+
+        for (int i = 0; i < size; i++) {
+            int offset = i*kmerBits;
+
+            if (i == 0) {
+                for (int b = 0; b < kmerBits; b++) {
+                    kmers[b] = source.readLong();
+                }
+            } else {
+                int w = kmerBits > 1 ? (int) source.readVarLong() : 0;
+
+                System.arraycopy(kmers, offset - kmerBits, kmers, offset, w);
+                kmers[offset + w] = kmers[offset - kmerBits + w] + source.readVarLong();
+
+                for (int b = w + 1; b < kmerBits; b++) {
+                    kmers[offset + b] = source.readLong();
+                }
+            }
+        }
+
+        // Colors are only decoded for the records that are asked for, so just note where each record's colors start
+        for (int i = 0; i < size; i++) {
+            colorOffsets[i] = source.pos;
+
+            int numEntries = (int) source.readVarLong();
+            for (int e = 0; e < numEntries; e++) {
+                source.readVarLong();
+                source.readVarLong();
+                source.readByte();
+            }
+        }
+
+        return new CortexCompressedBlock(kmerBits, numColors, size, kmers, bytes, colorOffsets);
+    }
+
+    /**
+     * Find a kmer in the block.
+     *
+     * @param key  the kmer in comparison order
+     * @return     the position of the record within the block, or -1 if the kmer is not in the block
+     */
+    int find(long[] key) {
+        int lo = 0, hi = size - 1;
+
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(kmers, mid*kmerBits, key);
+
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    CortexRecord getRecord(int i, int kmerSize) {
+        long[] binaryKmer = new long[kmerBits];
+        for (int b = 0; b < kmerBits; b++) {
+            binaryKmer[b] = Long.reverseBytes(kmers[i*kmerBits + b]);
+        }
+
+        int[] coverages = new int[numColors];
+        byte[] edges = new byte[numColors];
+
+        Source source = new Source(bytes);
+        source.pos = colorOffsets[i];
+
+        int numEntries = (int) source.readVarLong();
+        for (int e = 0, c = 0; e < numEntries; e++) {
+            c += (int) source.readVarLong();
+
+            coverages[c] = (int) source.readVarLong();
+            edges[c] = source.readByte();
+        }
+
+        return new CortexRecord(binaryKmer, coverages, edges, kmerSize, kmerBits);
+    }
+
+    static int compare(long[] words, int offset, long[] key) {
+        for (int b = 0; b < key.length; b++) {
+            int c = Long.compareUnsigned(words[offset + b], key[b]);
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+
+    private static class Sink {
+        private byte[] bytes;
+        private int length = 0;
+
+        Sink(int capacity) { bytes = new byte[Math.max(16, capacity)]; }
+
+        private void ensure(int n) {
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2*bytes.length, length + n));
+            }
+        }
+
+        void writeByte(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for (int s = 56; s >= 0; s -= 8) {
+                bytes[length++] = (byte) (v >>> s);
+            }
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7fL) != 0) {
+                bytes[length++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            bytes[length++] = (byte) v;
+        }
+    }
+
+    private static class Source {
+        private final byte[] bytes;
+        private int pos = 0;
+
+        Source(byte[] bytes) { this.bytes = bytes; }
+
+        byte readByte() { return bytes[pos++]; }
+
+        long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (bytes[pos++] & 0xff);
+            }
+            return v;
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int s = 0; ; s += 7) {
+                byte b = bytes[pos++];
+                v |= (long) (b & 0x7f) << s;
+
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.compressed;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A sorted Cortex graph stored in compressed, independently readable blocks (graph.ctz).  Each block holds a run
+ * of consecutive records, delta-encoded and sparsely encoded per color, then snappy-compressed (see
+ * {@link CortexCompressedBlock}).  A block index at the end of the file records the position and first kmer of
+ * every block, so a lookup binary searches the index, reads and decodes one block, and binary searches within it.
+ * Recently decoded blocks are kept in a small LRU cache.
+ *
+ * The number of cached blocks can be set with the 'blockcache' system property (e.g. -Dblockcache=64).
+ *
+ * File layout: magic, format version, header, block size; the blocks, each preceded by its compressed length; the
+ * block index; the position of the block index and the magic again.
+ */
+public class CortexCompressedGraph implements DeBruijnGraph {
+    public static final String EXTENSION = ".ctz";
+
+    static final byte[] MAGIC = "CTXZ".getBytes();
+    static final int FORMAT_VERSION = 1;
+
+    private static final int DEFAULT_CACHED_BLOCKS = 32;
+
+    private final File file;
+    private final RandomAccessFile in;
+    private final FileChannel channel;
+
+    private final CortexHeader header;
+    private final int blockSize;
+    private final long numRecords;
+
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final long[][] firstKmers;
+
+    private final Map<Integer, CortexCompressedBlock> cache;
+    private final LongAdder bytesRead = new LongAdder();
+
+    private long recordsSeen = 0;
+
+    public CortexCompressedGraph(String filePath) {
+        this(new File(filePath));
+    }
+
+    public CortexCompressedGraph(File file) {
+        this.file = file;
+
+        try {
+            in = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            throw new CortexJDKException("Could not open compressed Cortex graph '" + file.getAbsolutePath() + "'", e);
+        }
+
+        channel = in.getChannel();
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length];
+            dis.readFully(magic);
+
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new CortexJDKException("The file '" + file.getAbsolutePath() + "' does not appear to be a compressed Cortex graph");
+            }
+
+            int formatVersion = dis.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new CortexJDKException("The file '" + file.getAbsolutePath() + "' is compressed graph format version " + formatVersion + ", expected " + FORMAT_VERSION);
+            }
+
+            header = readHeader(dis);
+            blockSize = dis.readInt();
+
+            // A file cut short while it was written has no trailer, or a trailer pointing outside the file
+            long trailerOffset = channel.size() - 8 - MAGIC.length;
+            if (trailerOffset < 0) {
+                throw new CortexJDKException("The file '" + file.getAbsolutePath() + "' is not a complete compressed Cortex graph");
+            }
+
+            ByteBuffer trailer = read(trailerOffset, 8 + MAGIC.length);
+            long indexOffset = trailer.getLong();
+
+            byte[] trailingMagic = new byte[MAGIC.length];
+            trailer.get(trailingMagic);
+
+            if (!Arrays.equals(trailingMagic, MAGIC) || indexOffset < 0 || indexOffset > trailerOffset - 12) {
+                throw new CortexJDKException("The file '" + file.getAbsolutePath() + "' is not a complete compressed Cortex graph");
+            }
+
+            ByteBuffer index = read(indexOffset, (int) (trailerOffset - indexOffset));
+            numRecords = index.getLong();
+
+            int numBlocks = index.getInt();
+            if (numBlocks < 0 || index.remaining() != (long) numBlocks*(12 + 8*header.getKmerBits())) {
+                throw new CortexJDKException("The file '" + file.getAbsolutePath() + "' is not a complete compressed Cortex graph");
+            }
+
+            blockOffsets = new long[numBlocks];
+            blockLengths = new int[numBlocks];
+            firstKmers = new long[numBlocks][header.getKmerBits()];
+
+            for (int i = 0; i < numBlocks; i++) {
+                blockOffsets[i] = index.getLong();
+                blockLengths[i] = index.getInt();
+
+                for (int b = 0; b < header.getKmerBits(); b++) {
+                    firstKmers[i][b] = index.getLong();
+                }
+            }
+        } catch (IOException e) {
+            closeQuietly();
+            throw new CortexJDKException("Error while reading compressed Cortex graph '" + file.getAbsolutePath() + "'", e);
+        } catch (RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+
+        int cachedBlocks = getConfiguredCachedBlocks();
+        cache = Collections.synchronizedMap(new LinkedHashMap<Integer, CortexCompressedBlock>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CortexCompressedBlock> eldest) { return size() > cachedBlocks; }
+        });
+    }
+
+    public static int getConfiguredCachedBlocks() {
+        String blocks = System.getProperty("blockcache");
+
+        if (blocks == null) {
+            return DEFAULT_CACHED_BLOCKS;
+        }
+
+        try {
+            return Integer.valueOf(blocks);
+        } catch (NumberFormatException e) {
+            throw new CortexJDKException("Block cache size must be a whole number of blocks (got '" + blocks + "')", e);
+        }
+    }
+
+    static void writeHeader(DataOutput out, CortexHeader header) throws IOException {
+        out.writeInt(header.getVersion());
+        out.writeInt(header.getKmerSize());
+        out.writeInt(header.getKmerBits());
+        out.writeInt(header.getNumColors());
+
+        for (CortexColor cc : header.getColors()) {
+            out.writeInt(cc.getMeanReadLength());
+            out.writeLong(cc.getTotalSequence());
+            out.writeUTF(cc.getSampleName());
+            out.writeBoolean(cc.isTipClippingApplied());
+            out.writeBoolean(cc.isLowCovgSupernodesRemoved());
+            out.writeBoolean(cc.isLowCovgKmersRemoved());
+            out.writeBoolean(cc.isCleanedAgainstGraph());
+            out.writeInt(cc.getLowCovSupernodesThreshold());
+            out.writeInt(cc.getLowCovKmerThreshold());
+            out.writeUTF(cc.getCleanedAgainstGraphName());
+        }
+    }
+
+    private static CortexHeader readHeader(DataInput in) throws IOException {
+        CortexHeader header = new CortexHeader();
+        header.setVersion(in.readInt());
+        header.setKmerSize(in.readInt());
+        header.setKmerBits(in.readInt());
+        header.setNumColors(in.readInt());
+
+        for (int c = 0; c < header.getNumColors(); c++) {
+            CortexColor cc = new CortexColor();
+            cc.setMeanReadLength(in.readInt());
+            cc.setTotalSequence(in.readLong());
+            cc.setSampleName(in.readUTF());
+            cc.setTipClippingApplied(in.readBoolean());
+            cc.setLowCovgSupernodesRemoved(in.readBoolean());
+            cc.setLowCovgKmersRemoved(in.readBoolean());
+            cc.setCleanedAgainstGraph(in.readBoolean());
+            cc.setLowCovSupernodesThreshold(in.readInt());
+            cc.setLowCovKmerThreshold(in.readInt());
+            cc.setCleanedAgainstGraphName(in.readUTF());
+
+            header.addColor(cc);
+        }
+
+        return header;
+    }
+
+    private void closeQuietly() {
+        try {
+            in.close();
+        } catch (IOException e) {}
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(length);
+
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, position + bb.position()) < 0) {
+                throw new EOFException("Unexpected end of file in '" + file.getAbsolutePath() + "'");
+            }
+        }
+
+        bytesRead.add(length);
+        bb.flip();
+
+        return bb;
+    }
+
+    private CortexCompressedBlock readBlock(int block) {
+        try {
+            ByteBuffer bb = read(blockOffsets[block] + 4, blockLengths[block]);
+
+            int size = (int) Math.min(blockSize, numRecords - (long) block*blockSize);
+
+            return CortexCompressedBlock.decode(bb.array(), size, header.getKmerBits(), header.getNumColors());
+        } catch (IOException e) {
+            throw new CortexJDKException("Error while reading block " + block + " of compressed Cortex graph '" + file.getAbsolutePath() + "'", e);
+        }
+    }
+
+    private CortexCompressedBlock getBlock(int block) {
+        CortexCompressedBlock cb = cache.get(block);
+
+        if (cb == null) {
+            cb = readBlock(block);
+            cache.put(block, cb);
+        }
+
+        return cb;
+    }
+
+    public int getBlockSize() { return blockSize; }
+    public int getNumBlocks() { return blockOffsets.length; }
+
+    /**
+     * @return the number of bytes read from the file since it was opened, including the header and block index
+     */
+    public long getBytesRead() { return bytesRead.sum(); }
+
+    public long position() { return recordsSeen; }
+
+    public void position(long i) {
+        if (i < 0) {
+            throw new CortexJDKException("Record index is prefix of range (" + i + " vs 0-" + (numRecords - 1) + ")");
+        }
+
+        recordsSeen = i;
+    }
+
+    public CortexRecord getRecord(long i) {
+        if (i < 0) {
+            throw new CortexJDKException("Record index is prefix of range (" + i + " vs 0-" + (numRecords - 1) + ")");
+        }
+
+        if (i >= numRecords) {
+            return null;
+        }
+
+        return getBlock((int) (i / blockSize)).getRecord((int) (i % blockSize), header.getKmerSize());
+    }
+
+    /**
+     * Iterate over the graph from the first record, decoding each block once.  Blocks read by an iterator bypass
+     * the cache, so a full scan does not evict the blocks used for lookups.  Each call returns a new iterator with
+     * its own position.
+     *
+     * @return an independent iterator over the records in sorted order
+     */
+    public Iterator<CortexRecord> iterator() {
+        return new Iterator<CortexRecord>() {
+            private int block = -1;
+            private CortexCompressedBlock current = null;
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return (current != null && index < current.size()) || block + 1 < blockOffsets.length;
+            }
+
+            @Override
+            public CortexRecord next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+
+                if (current == null || index == current.size()) {
+                    current = readBlock(++block);
+                    index = 0;
+                }
+
+                return current.getRecord(index++, header.getKmerSize());
+            }
+        };
+    }
+
+    public boolean hasNext() { return recordsSeen < numRecords; }
+
+    public CortexRecord next() { return getRecord(recordsSeen++); }
+
+    public void remove() { throw new UnsupportedOperationException(); }
+
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new CortexJDKException("Error while closing compressed graph file", e);
+        }
+    }
+
+    /**
+     * Find the record for a binary kmer that has already been encoded in its canonical orientation.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the record, or null if the kmer is not in the graph
+     */
+    public CortexRecord findRecord(long[] binaryKmer) {
+        long[] key = new long[binaryKmer.length];
+        for (int b = 0; b < binaryKmer.length; b++) {
+            key[b] = Long.reverseBytes(binaryKmer[b]);
+        }
+
+        // The last block whose first kmer is not greater than the key is the only one that can hold it
+        int lo = 0, hi = firstKmers.length - 1, block = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (CortexCompressedBlock.compare(firstKmers[mid], 0, key) <= 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        if (block < 0) {
+            return null;
+        }
+
+        CortexCompressedBlock cb = getBlock(block);
+        int i = cb.find(key);
+
+        return i < 0 ? null : cb.getRecord(i, header.getKmerSize());
+    }
+
+    public CortexRecord findRecord(byte[] bk) {
+        if (bk.length != getKmerSize()) {
+            return null;
+        }
+
+        long[] binaryKmer;
+        try {
+            binaryKmer = CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation(bk));
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        return findRecord(binaryKmer);
+    }
+
+    public CortexRecord findRecord(CortexByteKmer bk) { return findRecord(bk.getKmer()); }
+    public CortexRecord findRecord(CortexKmer ck) { return findRecord(ck.getKmerAsBytes()); }
+    public CortexRecord findRecord(String sk) { return findRecord(sk.getBytes()); }
+
+    public File getFile() { return file; }
+    public CortexHeader getHeader() { return header; }
+    public int getVersion() { return header.getVersion(); }
+    public int getKmerSize() { return header.getKmerSize(); }
+    public int getKmerBits() { return header.getKmerBits(); }
+    public String getSampleName(int color) { return getColor(color).getSampleName(); }
+    public int getNumColors() { return header.getNumColors(); }
+    public long getNumRecords() { return numRecords; }
+    public List<CortexColor> getColors() { return header.getColors(); }
+    public boolean hasColor(int color) { return header.hasColor(color); }
+    public CortexColor getColor(int color) { return header.getColor(color); }
+
+    public String toString() {
+        String info = getHeaderSummary();
+
+        info += "----" + "\n";
+        info += "kmers: " + getNumRecords() + "\n";
+        info += "blocks: " + getNumBlocks() + " of " + getBlockSize() + " records\n";
+        info += "file size: " + file.length() + " bytes (" + String.format("%.2f", (double) file.length() / Math.max(1, numRecords)) + " bytes per kmer)\n";
+        info += "----" + "\n";
+
+        return info;
+    }
+}
@@ -0,0 +1,214 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.compressed;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexHeader;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a compressed graph (see {@link CortexCompressedGraph}).  Records must be added in sorted order; they are
+ * collected into blocks, and each full block is encoded, compressed and written straight away, so only one block
+ * is ever held in memory.  The block index is written after the last block when the writer is closed.
+ */
+public class CortexCompressedGraphWriter {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final File file;
+    private DataOutputStream out = null;
+    private long position = 0;
+
+    private CortexHeader header;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+
+    private int kmerBits;
+    private int numColors;
+
+    private long[] kmers;
+    private int[] coverages;
+    private byte[] edges;
+    private long[] lastKmer;
+    private int blockRecords = 0;
+    private long numRecords = 0;
+
+    private final List<Long> blockOffsets = new ArrayList<>();
+    private final List<Integer> blockLengths = new ArrayList<>();
+    private final List<long[]> firstKmers = new ArrayList<>();
+
+    public CortexCompressedGraphWriter(File file) {
+        this.file = file;
+    }
+
+    public CortexCompressedGraphWriter(String filePath) {
+        this.file = new File(filePath);
+    }
+
+    public void setHeader(CortexHeader header) { this.header = header; }
+    public CortexHeader getHeader() { return header; }
+
+    /**
+     * Set the number of records per block.  Larger blocks compress better; smaller blocks make random lookups
+     * cheaper.  Must be set before the first record is added.
+     *
+     * @param blockSize  the number of records per block
+     */
+    public void setBlockSize(int blockSize) {
+        if (out != null) {
+            throw new CortexJDKException("Block size must be set before writing to '" + file.getAbsolutePath() + "'");
+        }
+
+        if (blockSize < 1) {
+            throw new CortexJDKException("Block size must be at least 1 (got " + blockSize + ")");
+        }
+
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockSize() { return blockSize; }
+
+    private void initialize() {
+        kmerBits = header.getKmerBits();
+        numColors = header.getNumColors();
+
+        kmers = new long[blockSize*kmerBits];
+        coverages = new int[blockSize*numColors];
+        edges = new byte[blockSize*numColors];
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+
+            out.write(CortexCompressedGraph.MAGIC);
+            out.writeInt(CortexCompressedGraph.FORMAT_VERSION);
+            CortexCompressedGraph.writeHeader(out, header);
+            out.writeInt(blockSize);
+
+            position = out.size();
+        } catch (FileNotFoundException e) {
+            throw new CortexJDKException("Unable to open file '" + file.getAbsolutePath() + "'", e);
+        } catch (IOException e) {
+            closeQuietly();
+            throw new CortexJDKException("Unable to write header to file '" + file.getAbsolutePath() + "'", e);
+        }
+    }
+
+    public void addRecord(CortexRecord record) {
+        if (out == null) { initialize(); }
+
+        int offset = blockRecords*kmerBits;
+        long[] binaryKmer = record.getBinaryKmer();
+        for (int b = 0; b < kmerBits; b++) {
+            kmers[offset + b] = Long.reverseBytes(binaryKmer[b]);
+        }
+
+        if (numRecords > 0 && compareToPrevious(offset) <= 0) {
+            throw new CortexJDKException("Records must be added in sorted order without duplicates (kmer " + record.getKmerAsString() + " is out of order)");
+        }
+
+        System.arraycopy(record.getCoverages(), 0, coverages, blockRecords*numColors, numColors);
+        System.arraycopy(record.getEdges(), 0, edges, blockRecords*numColors, numColors);
+
+        blockRecords++;
+        numRecords++;
+
+        if (blockRecords == blockSize) {
+            flushBlock();
+        }
+    }
+
+    private int compareToPrevious(int offset) {
+        long[] previous = kmers;
+        int previousOffset = offset - kmerBits;
+
+        // The previous record is the last of the block that has just been flushed
+        if (offset == 0) {
+            previous = lastKmer;
+            previousOffset = 0;
+        }
+
+        for (int b = 0; b < kmerBits; b++) {
+            int c = Long.compareUnsigned(kmers[offset + b], previous[previousOffset + b]);
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+
+    private void flushBlock() {
+        byte[] block = CortexCompressedBlock.encode(kmers, coverages, edges, blockRecords, kmerBits, numColors);
+
+        try {
+            out.writeInt(block.length);
+            out.write(block);
+        } catch (IOException e) {
+            closeQuietly();
+            throw new CortexJDKException("Unable to write block to file '" + file.getAbsolutePath() + "'", e);
+        }
+
+        blockOffsets.add(position);
+        blockLengths.add(block.length);
+        firstKmers.add(Arrays.copyOf(kmers, kmerBits));
+
+        lastKmer = Arrays.copyOfRange(kmers, (blockRecords - 1)*kmerBits, blockRecords*kmerBits);
+
+        position += 4 + block.length;
+
+        blockRecords = 0;
+    }
+
+    /**
+     * Write the block index and close the file.  A writer that was never given a header has nothing to write, so
+     * closing it does nothing.
+     */
+    public void close() {
+        if (out == null) {
+            if (header == null) { return; }
+
+            initialize();
+        }
+
+        if (blockRecords > 0) {
+            flushBlock();
+        }
+
+        try {
+            long indexOffset = position;
+
+            out.writeLong(numRecords);
+            out.writeInt(blockOffsets.size());
+
+            for (int i = 0; i < blockOffsets.size(); i++) {
+                out.writeLong(blockOffsets.get(i));
+                out.writeInt(blockLengths.get(i));
+
+                for (int b = 0; b < kmerBits; b++) {
+                    out.writeLong(firstKmers.get(i)[b]);
+                }
+            }
+
+            out.writeLong(indexOffset);
+            out.write(CortexCompressedGraph.MAGIC);
+
+            out.close();
+        } catch (IOException e) {
+            closeQuietly();
+            throw new CortexJDKException("Unable to close '" + file.getAbsolutePath() + "'", e);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            out.close();
+        } catch (IOException e) {}
+    }
+}
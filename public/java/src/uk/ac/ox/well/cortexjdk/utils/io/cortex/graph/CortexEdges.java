@@ -0,0 +1,86 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+/**
+ * Precomputed decodings of a record's per-colour edge byte.  Edges are stored for the canonical kmer, with out-edges
+ * in the low nibble (A in bit 0) and in-edges in the high nibble (A in bit 7).  Walking the reverse complement swaps
+ * the two and complements each base.  Every combination of edge byte, orientation and direction is decoded once,
+ * here, so traversals can read neighbour bases and degrees with an array access instead of testing bits and filling
+ * collections at every step.
+ *
+ * Bases are two-bit bases (A=0, C=1, G=2, T=3) in the orientation being walked: the neighbours of kmer pk are
+ * pk.append(b) going forward and pk.prepend(b) going backward, as in {@link CortexPackedKmer}.
+ */
+public final class CortexEdges {
+    private static final int[][] MASKS = new int[4][256];
+    private static final int[][] DEGREES = new int[4][256];
+    private static final int[][][] BASES = new int[4][256][];
+
+    static {
+        for (int t = 0; t < 4; t++) {
+            boolean isFlipped = (t & 2) != 0;
+            boolean goForward = (t & 1) != 0;
+            boolean useOutEdges = goForward != isFlipped;
+
+            for (int e = 0; e < 256; e++) {
+                int mask = 0;
+
+                for (int base = 0; base < 4; base++) {
+                    if ((e & (1 << (useOutEdges ? base : 7 - base))) != 0) {
+                        mask |= 1 << (isFlipped ? 3 - base : base);
+                    }
+                }
+
+                int[] bases = new int[Integer.bitCount(mask)];
+                for (int b = 0, i = 0; b < 4; b++) {
+                    if ((mask & (1 << b)) != 0) {
+                        bases[i++] = b;
+                    }
+                }
+
+                MASKS[t][e] = mask;
+                DEGREES[t][e] = bases.length;
+                BASES[t][e] = bases;
+            }
+        }
+    }
+
+    private CortexEdges() {}
+
+    private static int table(boolean isFlipped, boolean goForward) { return (isFlipped ? 2 : 0) | (goForward ? 1 : 0); }
+
+    /**
+     * Get the bases of a kmer's neighbours as a bitmask, with bit b set if the neighbour reached with base b exists.
+     *
+     * @param edges      the edge byte for one colour
+     * @param isFlipped  true if the kmer is being walked as the reverse complement of the stored kmer
+     * @param goForward  true for successors, false for predecessors
+     * @return           the neighbour bitmask, from 0 to 15
+     */
+    public static int getAdjacentMask(byte edges, boolean isFlipped, boolean goForward) {
+        return MASKS[table(isFlipped, goForward)][edges & 0xFF];
+    }
+
+    /**
+     * Get the bases of a kmer's neighbours, in ascending order.  The array is shared and must not be modified.
+     *
+     * @param edges      the edge byte for one colour
+     * @param isFlipped  true if the kmer is being walked as the reverse complement of the stored kmer
+     * @param goForward  true for successors, false for predecessors
+     * @return           the neighbour bases
+     */
+    public static int[] getAdjacentBases(byte edges, boolean isFlipped, boolean goForward) {
+        return BASES[table(isFlipped, goForward)][edges & 0xFF];
+    }
+
+    /**
+     * Get the number of a kmer's neighbours.
+     *
+     * @param edges      the edge byte for one colour
+     * @param isFlipped  true if the kmer is being walked as the reverse complement of the stored kmer
+     * @param goForward  true for successors, false for predecessors
+     * @return           the degree, from 0 to 4
+     */
+    public static int getDegree(byte edges, boolean isFlipped, boolean goForward) {
+        return DEGREES[table(isFlipped, goForward)][edges & 0xFF];
+    }
+}
@@ -1,27 +1,22 @@
 package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
 
 import com.carrotsearch.sizeof.RamUsageEstimator;
-import it.unimi.dsi.io.ByteBufferInputStream;
-import org.apache.commons.collections.map.LRUMap;
 import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph;
 import uk.ac.ox.well.cortexjdk.utils.io.utils.BinaryFile;
-import uk.ac.ox.well.cortexjdk.utils.io.utils.BinaryUtils;
 import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class CortexGraph implements DeBruijnGraph {
     private File cortexFile;
-    private BinaryFile in;
+    private CortexGraphRegistry.Entry shared;
 
     private CortexHeader header;
 
@@ -30,12 +25,22 @@ public class CortexGraph implements DeBruijnGraph {
     private long dataOffset;
     private long recordsSeen = 0;
 
-    private ByteBufferInputStream mappedRecordBuffer = null;
+    private CortexGraphMapping mapping = null;
+    private ThreadLocal<CortexRecordView> decodeViews = null;
     private CortexRecord nextRecord = null;
 
-    private LRUMap cache = null;
-    private long cacheHitsByIndex = 0;
-    private long cacheHitsByKmer = 0;
+    private CortexGraphIndex index = null;
+    private volatile Boolean sorted = null;
+    private int fanoutBits = 0;
+    private volatile CortexGraphFanout fanout = null;
+    private double bloomFalsePositiveRate = 0.0;
+    private volatile CortexGraphBloomFilter bloom = null;
+    private volatile CortexGraphUnitigIndex unitigs = null;
+    private volatile boolean unitigsLoaded = false;
+
+    private CortexRecordCache cache = null;
+    private final LongAdder bloomRejections = new LongAdder();
+    private final LongAdder bloomFalsePositives = new LongAdder();
 
     public CortexGraph(String cortexFilePath) {
         this.cortexFile = new File(cortexFilePath);
@@ -47,7 +52,7 @@ public class CortexGraph implements DeBruijnGraph {
         loadCortexGraph(this.cortexFile);
     }
 
-    private byte[] fixStringsWithEarlyTerminators(byte[] string) {
+    private static byte[] fixStringsWithEarlyTerminators(byte[] string) {
         // Sometimes the names have an early terminator character (a bug in the old CORTEX output format).
         int earlyTerminatorPosition = string.length;
         for (int i = string.length - 1; i >= 0; i--) {
@@ -64,105 +69,130 @@ public class CortexGraph implements DeBruijnGraph {
     }
 
     private void loadCortexGraph(File cortexFile) {
-        try {
-            in = new BinaryFile(cortexFile, "r");
+        shared = CortexGraphRegistry.acquire(cortexFile);
 
-            byte[] headerStart = new byte[6];
-            in.read(headerStart);
-            String headerStartStr = new String(headerStart);
-
-            if (!headerStartStr.equalsIgnoreCase("CORTEX")) {
-                throw new CortexJDKException("The file '" + cortexFile.getAbsolutePath() + "' does not appear to be a Cortex graph");
-            }
+        header = shared.header;
+        dataOffset = shared.dataOffset;
+        recordSize = shared.recordSize;
+        numRecords = shared.numRecords;
+        mapping = shared.mapping;
+        cache = shared.cache;
 
-            header = new CortexHeader();
+        decodeViews = ThreadLocal.withInitial(() -> new CortexRecordView(header.getKmerSize(), header.getKmerBits(), header.getNumColors()));
 
-            header.setVersion(in.readUnsignedInt());
+        try {
+            File indexFile = CortexGraphIndex.getIndexFile(cortexFile);
+            if (indexFile.exists()) {
+                index = CortexGraphIndex.load(indexFile, this);
+            }
 
-            if (header.getVersion() != 6) {
-                throw new CortexJDKException("The file '" + cortexFile.getAbsolutePath() + "' is not a version 6 Cortex graph");
+            File markerFile = CortexGraphSortedMarker.getMarkerFile(cortexFile);
+            if (markerFile.exists() && CortexGraphSortedMarker.load(markerFile, this) != null) {
+                sorted = true;
             }
 
-            header.setKmerSize(in.readUnsignedInt());
-            header.setKmerBits(in.readUnsignedInt());
-            header.setNumColors(in.readUnsignedInt());
+            fanoutBits = CortexGraphFanout.getConfiguredBits();
 
-            for (int color = 0; color < header.getNumColors(); color++) {
-                header.addColor(new CortexColor());
+            File bloomFile = CortexGraphBloomFilter.getBloomFilterFile(cortexFile);
+            if (bloomFile.exists()) {
+                bloom = CortexGraphBloomFilter.load(bloomFile, this);
             }
 
-            for (int color = 0; color < header.getNumColors(); color++) {
-                header.getColor(color).setMeanReadLength(in.readUnsignedInt());
+            if (bloom == null) {
+                bloomFalsePositiveRate = CortexGraphBloomFilter.getConfiguredFalsePositiveRate();
             }
 
-            for (int color = 0; color < header.getNumColors(); color++) {
-                header.getColor(color).setTotalSequence(in.readUnsignedLong());
-            }
+            position(0);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
 
-            for (int color = 0; color < header.getNumColors(); color++) {
-                int sampleNameLength = in.readUnsignedInt();
-                byte[] sampleName = new byte[sampleNameLength];
-                in.read(sampleName);
+    /**
+     * Parse the header of a Cortex graph, leaving the file positioned at the first record.
+     *
+     * @param in          the graph file
+     * @param cortexFile  the path of the graph file, for error messages
+     * @return            the parsed header
+     * @throws IOException if the header could not be read
+     */
+    static CortexHeader readHeader(BinaryFile in, File cortexFile) throws IOException {
+        byte[] headerStart = new byte[6];
+        in.read(headerStart);
+        String headerStartStr = new String(headerStart);
+
+        if (!headerStartStr.equalsIgnoreCase("CORTEX")) {
+            throw new CortexJDKException("The file '" + cortexFile.getAbsolutePath() + "' does not appear to be a Cortex graph");
+        }
 
-                sampleName = fixStringsWithEarlyTerminators(sampleName);
-                String sampleNameStr = new String(sampleName);
+        CortexHeader header = new CortexHeader();
 
-                header.getColor(color).setSampleName(sampleNameStr);
-            }
+        header.setVersion(in.readUnsignedInt());
 
-            // Todo: fix this at some point - we're not actually getting the error rate properly
-            for (int color = 0; color < header.getNumColors(); color++) {
-                byte[] errorRate = new byte[16];
-                in.read(errorRate);
-            }
+        if (header.getVersion() != 6) {
+            throw new CortexJDKException("The file '" + cortexFile.getAbsolutePath() + "' is not a version 6 Cortex graph");
+        }
 
-            for (int color = 0; color < header.getNumColors(); color++) {
-                header.getColor(color).setTipClippingApplied(in.readBoolean());
-                header.getColor(color).setLowCovgSupernodesRemoved(in.readBoolean());
-                header.getColor(color).setLowCovgKmersRemoved(in.readBoolean());
-                header.getColor(color).setCleanedAgainstGraph(in.readBoolean());
-                header.getColor(color).setLowCovSupernodesThreshold(in.readUnsignedInt());
-                header.getColor(color).setLowCovKmerThreshold(in.readUnsignedInt());
+        header.setKmerSize(in.readUnsignedInt());
+        header.setKmerBits(in.readUnsignedInt());
+        header.setNumColors(in.readUnsignedInt());
 
-                int graphNameLength = in.readUnsignedInt();
-                byte[] graphName = new byte[graphNameLength];
-                in.read(graphName);
+        for (int color = 0; color < header.getNumColors(); color++) {
+            header.addColor(new CortexColor());
+        }
 
-                graphName = fixStringsWithEarlyTerminators(graphName);
+        for (int color = 0; color < header.getNumColors(); color++) {
+            header.getColor(color).setMeanReadLength(in.readUnsignedInt());
+        }
 
-                header.getColor(color).setCleanedAgainstGraphName(new String(graphName));
-            }
+        for (int color = 0; color < header.getNumColors(); color++) {
+            header.getColor(color).setTotalSequence(in.readUnsignedLong());
+        }
 
-            byte[] headerEnd = new byte[6];
-            in.read(headerEnd);
-            String headerEndStr = new String(headerEnd);
+        for (int color = 0; color < header.getNumColors(); color++) {
+            int sampleNameLength = in.readUnsignedInt();
+            byte[] sampleName = new byte[sampleNameLength];
+            in.read(sampleName);
 
-            if (!headerEndStr.equalsIgnoreCase("CORTEX")) {
-                throw new CortexJDKException("We didn't see a proper header terminator at the expected place in Cortex graph '" + cortexFile.getAbsolutePath() + "'");
-            }
+            sampleName = fixStringsWithEarlyTerminators(sampleName);
+            String sampleNameStr = new String(sampleName);
 
-            long size = in.getChannel().size();
-            dataOffset = in.getFilePointer();
-            long dataSize = size - dataOffset;
+            header.getColor(color).setSampleName(sampleNameStr);
+        }
 
-            recordSize = (8*header.getKmerBits() + 5*header.getNumColors());
-            numRecords = (dataSize / recordSize);
+        // Todo: fix this at some point - we're not actually getting the error rate properly
+        for (int color = 0; color < header.getNumColors(); color++) {
+            byte[] errorRate = new byte[16];
+            in.read(errorRate);
+        }
 
-            mappedRecordBuffer = ByteBufferInputStream.map(in.getChannel(), FileChannel.MapMode.READ_ONLY);
+        for (int color = 0; color < header.getNumColors(); color++) {
+            header.getColor(color).setTipClippingApplied(in.readBoolean());
+            header.getColor(color).setLowCovgSupernodesRemoved(in.readBoolean());
+            header.getColor(color).setLowCovgKmersRemoved(in.readBoolean());
+            header.getColor(color).setCleanedAgainstGraph(in.readBoolean());
+            header.getColor(color).setLowCovSupernodesThreshold(in.readUnsignedInt());
+            header.getColor(color).setLowCovKmerThreshold(in.readUnsignedInt());
 
-//            long maxMem = Runtime.getRuntime().maxMemory();
-//            long memPortion = maxMem / 2;
-//            int numItems = (int) (memPortion / recordSize);
-//            cache = new LRUMap(numItems);
+            int graphNameLength = in.readUnsignedInt();
+            byte[] graphName = new byte[graphNameLength];
+            in.read(graphName);
 
-            cache = new LRUMap(10000);
+            graphName = fixStringsWithEarlyTerminators(graphName);
 
-            position(0);
-        } catch (FileNotFoundException e) {
-            throw new CortexJDKException("Cortex graph file '" + cortexFile.getAbsolutePath() + "' not found: " + e);
-        } catch (IOException e) {
-            throw new CortexJDKException("Error while parsing Cortex graph file '" + cortexFile.getAbsolutePath() + "': " + e);
+            header.getColor(color).setCleanedAgainstGraphName(new String(graphName));
         }
+
+        byte[] headerEnd = new byte[6];
+        in.read(headerEnd);
+        String headerEndStr = new String(headerEnd);
+
+        if (!headerEndStr.equalsIgnoreCase("CORTEX")) {
+            throw new CortexJDKException("We didn't see a proper header terminator at the expected place in Cortex graph '" + cortexFile.getAbsolutePath() + "'");
+        }
+
+        return header;
     }
 
     public long position() { return recordsSeen; }
@@ -172,72 +202,171 @@ public class CortexGraph implements DeBruijnGraph {
             throw new CortexJDKException("Record index is prefix of range (" + i + " vs 0-" + (numRecords - 1) + ")");
         }
 
-        long offset = dataOffset + i*recordSize;
-        mappedRecordBuffer.position(offset);
         recordsSeen = i;
         nextRecord = getNextRecord();
     }
 
+    /**
+     * Fetch a record by index.  Unlike {@link #position(long)}, this does not move the graph's cursor and is safe to
+     * call from many threads at once.
+     *
+     * @param i  the record index
+     * @return   the record, or null if the index is past the end of the graph
+     */
     public CortexRecord getRecord(long i) {
-        position(i);
+        if (i < 0) {
+            throw new CortexJDKException("Record index is prefix of range (" + i + " vs 0-" + (numRecords - 1) + ")");
+        }
+
+        if (i >= numRecords) {
+            return null;
+        }
 
-        return nextRecord;
+        return readRecord(i);
     }
 
     private CortexRecord getNextRecord() {
         if (recordsSeen < getNumRecords()) {
-            try {
-                CortexRecord cr;
-
-                if (cache.containsKey(recordsSeen)) {
-                    cr = getFromCache(recordsSeen);
-                } else {
-                    long newpos = dataOffset + (recordsSeen*recordSize);
-                    if (mappedRecordBuffer.position() != newpos) {
-                        mappedRecordBuffer.position(newpos);
-                    }
+            CortexRecord cr = getRecord(recordsSeen);
 
-                    long[] binaryKmer = new long[header.getKmerBits()];
-                    for (int bits = 0; bits < header.getKmerBits(); bits++) {
-                        byte[] b = new byte[8];
+            recordsSeen++;
 
-                        mappedRecordBuffer.read(b);
+            return cr;
+        }
 
-                        ByteBuffer bb = ByteBuffer.wrap(b);
-                        binaryKmer[bits] = bb.getLong();
-                    }
+        return null;
+    }
 
-                    int[] coverages = new int[header.getNumColors()];
-                    for (int color = 0; color < header.getNumColors(); color++) {
-                        byte[] coverage = new byte[4];
-                        mappedRecordBuffer.read(coverage);
+    private CortexRecord readRecord(long i) {
+        CortexRecordView view = decodeViews.get();
+        decode(i, view);
 
-                        coverages[color] = BinaryUtils.toUnsignedInt(coverage);
-                    }
+        return view.copy();
+    }
 
-                    byte[] edges = new byte[header.getNumColors()];
-                    mappedRecordBuffer.read(edges);
+    void decode(long i, CortexRecordView view) {
+        view.decode(mapping.segment(i), mapping.offset(i), i);
+    }
 
-                    cr = new CortexRecord(binaryKmer, coverages, edges, header.getKmerSize(), header.getKmerBits());
-                    cache.put(recordsSeen, cr);
-                    cache.put(cr.getKmerAsByteKmer(), cr);
-                }
+    /**
+     * Iterate over the graph without allocating a new record for every kmer.  The returned iterators are independent
+     * of this graph's own cursor and of each other, but each one hands back the same {@link CortexRecordView} on
+     * every call to next(), refilled in place.  Use {@link CortexRecordView#copy()} to keep a record.
+     *
+     * @return an iterable over reusable record views
+     */
+    public Iterable<CortexRecordView> views() {
+        return views((int[]) null);
+    }
+
+    /**
+     * Iterate over the graph as {@link #views()} does, decoding only the given colors.  The coverages and edges of
+     * all other colors are skipped without being read, which saves most of the decoding work on graphs with many
+     * colors.  Color i of each view is the i-th color in the list.
+     *
+     * @param colors  the colors to decode, in the order they should appear in each view
+     * @return        an iterable over reusable, color-projected record views
+     */
+    public Iterable<CortexRecordView> views(List<Integer> colors) {
+        return views(getProjection(colors));
+    }
+
+    private Iterable<CortexRecordView> views(int[] colors) {
+        return () -> new Iterator<CortexRecordView>() {
+            private final CortexRecordView view = new CortexRecordView(getKmerSize(), getKmerBits(), getNumColors(), colors);
+            private long index = 0;
+
+            @Override
+            public boolean hasNext() { return index < numRecords; }
+
+            @Override
+            public CortexRecordView next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+
+                decode(index, view);
+                index++;
+
+                return view;
+            }
+        };
+    }
+
+    private int[] getProjection(List<Integer> colors) {
+        int[] projection = new int[colors.size()];
 
-                recordsSeen++;
+        for (int i = 0; i < projection.length; i++) {
+            projection[i] = colors.get(i);
 
-                return cr;
-            } catch (IOException e) {
-                return null;
+            if (projection[i] < 0 || projection[i] >= getNumColors()) {
+                throw new CortexJDKException("Color " + projection[i] + " is not in graph '" + cortexFile.getAbsolutePath() + "' (0-" + (getNumColors() - 1) + ")");
             }
         }
 
-        return null;
+        return projection;
     }
 
+    /**
+     * Iterate over the graph from the first record.  Each call returns a new iterator with its own position, so
+     * concurrent scans and lookups on this graph do not interfere with one another.
+     *
+     * @return an independent iterator over the records in file order
+     */
     public Iterator<CortexRecord> iterator() {
-        position(0);
+        return new Iterator<CortexRecord>() {
+            private long index = 0;
+
+            @Override
+            public boolean hasNext() { return index < numRecords; }
+
+            @Override
+            public CortexRecord next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+
+                return readRecord(index++);
+            }
+        };
+    }
+
+    /**
+     * Stream the records of the graph in file order.  Each record is a separate copy that may be kept or handed to
+     * another thread.
+     *
+     * @return a sequential stream over the records
+     */
+    public Stream<CortexRecord> stream() {
+        return StreamSupport.stream(new CortexRecordSpliterator(this, null, 0, numRecords), false);
+    }
 
-        return this;
+    /**
+     * Stream the records of the graph in file order, decoding only the given colors.
+     *
+     * @param colors  the colors to decode, in the order they should appear in each record
+     * @return        a sequential stream over color-projected records
+     */
+    public Stream<CortexRecord> stream(List<Integer> colors) {
+        return StreamSupport.stream(new CortexRecordSpliterator(this, getProjection(colors), 0, numRecords), false);
+    }
+
+    /**
+     * Stream the records of the graph in parallel.  The graph is split into contiguous ranges of records, each read
+     * through its own view of the shared mapping, so full-graph scans scale with the size of the common fork-join pool
+     * (set -Djava.util.concurrent.ForkJoinPool.common.parallelism to limit it).  Use forEachOrdered() or an ordered
+     * collector where the output must stay in file order.
+     *
+     * @return a parallel stream over the records
+     */
+    public Stream<CortexRecord> parallelStream() {
+        return StreamSupport.stream(new CortexRecordSpliterator(this, null, 0, numRecords), true);
+    }
+
+    /**
+     * Stream the records of the graph in parallel, decoding only the given colors.
+     *
+     * @param colors  the colors to decode, in the order they should appear in each record
+     * @return        a parallel stream over color-projected records
+     */
+    public Stream<CortexRecord> parallelStream(List<Integer> colors) {
+        return StreamSupport.stream(new CortexRecordSpliterator(this, getProjection(colors), 0, numRecords), true);
     }
 
     public boolean hasNext() {
@@ -259,131 +388,374 @@ public class CortexGraph implements DeBruijnGraph {
         throw new UnsupportedOperationException();
     }
 
-    public void close() {
-        try {
-            this.in.close();
-        } catch (IOException e) {
-            throw new CortexJDKException("Error while closing graph file", e);
+    /**
+     * Release this graph's hold on the file.  The file itself is closed once every graph opened on it has been
+     * closed (see {@link CortexGraphRegistry}).  Closing a graph more than once has no further effect.
+     */
+    public synchronized void close() {
+        if (shared != null) {
+            CortexGraphRegistry.release(shared);
+            shared = null;
         }
     }
 
     public CortexRecord findRecord(byte[] bk) {
-        CortexByteKmer kmer = new CortexByteKmer(SequenceUtils.alphanumericallyLowestOrientation(bk));
-        if (cache.containsKey(kmer)) {
-            return getFromCache(kmer);
+        long[] binaryKmer = encodeQuery(SequenceUtils.alphanumericallyLowestOrientation(bk));
+
+        return binaryKmer == null ? null : findRecord(binaryKmer);
+    }
+
+    /**
+     * Find the record for a binary kmer that has already been encoded in its canonical orientation, e.g. by
+     * {@link CortexRecord#encodeBinaryKmer(byte[])} on the alphanumerically lowest orientation of a kmer.  This
+     * saves the encoding step when the same kmer is looked up in several graphs.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the record, or null if the kmer is not in the graph
+     */
+    public CortexRecord findRecord(long[] binaryKmer) {
+        return findRecord(binaryKmer, true);
+    }
+
+    /**
+     * Find the record for a canonical binary kmer that the caller has already tested with {@link #mightContain(long[])},
+     * without probing the Bloom filter a second time.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the record, or null if the kmer is not in the graph
+     */
+    public CortexRecord findCandidateRecord(long[] binaryKmer) {
+        return findRecord(binaryKmer, false);
+    }
+
+    private CortexRecord findRecord(long[] binaryKmer, boolean filter) {
+        if (numRecords == 0 || binaryKmer.length != getKmerBits()) {
+            return null;
+        }
+
+        CortexRecord cr = cache.get(binaryKmer);
+        if (cr != null) {
+            return cr;
         }
 
-        long startIndex = 0;
-        long stopIndex = getNumRecords() - 1;
-        long midIndex = startIndex + (stopIndex - startIndex) / 2;
+        if (filter && !mightContain(binaryKmer)) {
+            return null;
+        }
 
-        while (startIndex != midIndex && midIndex != stopIndex) {
-            long oldRecordsSeen = recordsSeen;
+        cr = searchRecord(binaryKmer);
 
-            CortexRecord startRecord = getRecord(startIndex);
-            CortexRecord midRecord = getRecord(midIndex);
-            CortexRecord stopRecord = getRecord(stopIndex);
+        if (cr != null) {
+            cache.put(cr);
+        } else if (bloom != null) {
+            bloomFalsePositives.increment();
+        }
 
-            recordsSeen = oldRecordsSeen;
+        return cr;
+    }
 
-            CortexByteKmer startKmer = startRecord.getKmerAsByteKmer();
-            CortexByteKmer midKmer = midRecord.getKmerAsByteKmer();
-            CortexByteKmer stopKmer = stopRecord.getKmerAsByteKmer();
+    /**
+     * Test a canonical binary kmer against the graph's Bloom filter, if it has one.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            false if the kmer is definitely not in the graph, true if it may be
+     */
+    public boolean mightContain(long[] binaryKmer) {
+        CortexGraphBloomFilter b = getBloomFilter();
+        if (b != null && !b.mightContain(binaryKmer)) {
+            bloomRejections.increment();
+            return false;
+        }
 
-            if (startKmer.compareTo(stopKmer) > 0) {
-                throw new CortexJDKException("Records are not sorted ('" + startKmer + "' is found before '" + stopKmer + "' but is lexicographically greater)");
+        return true;
+    }
+
+    /**
+     * Find the records for many kmers at once.  On a sorted graph the kmers are sorted and answered in one forward
+     * pass over the file (see {@link CortexGraphMergeJoin}), which turns the random reads of repeated calls to
+     * findRecord() into a near-sequential scan once the batch covers more than a few percent of the graph.  A graph
+     * with a kmer index whose order is not yet known (it has no sort marker and has not been validated) looks each
+     * kmer up through the index instead, rather than paying for a validation pass.
+     *
+     * @param kmers  the kmers to find
+     * @return       the record for each kmer, in the order given, with null for kmers that are not in the graph
+     */
+    public List<CortexRecord> findRecords(Iterable<CortexKmer> kmers) {
+        List<long[]> queries = new ArrayList<>();
+        for (CortexKmer ck : kmers) {
+            queries.add(encodeQuery(ck.getKmerAsBytes()));
+        }
+
+        long[][] binaryKmers = queries.toArray(new long[queries.size()][]);
+
+        CortexGraphBloomFilter b = getBloomFilter();
+        if (b != null) {
+            for (int q = 0; q < binaryKmers.length; q++) {
+                if (binaryKmers[q] != null && !b.mightContain(binaryKmers[q])) {
+                    binaryKmers[q] = null;
+                    bloomRejections.increment();
+                }
+            }
+        }
+
+        long[] indices;
+        if (index != null && !Boolean.TRUE.equals(sorted)) {
+            indices = new long[binaryKmers.length];
+
+            for (int q = 0; q < binaryKmers.length; q++) {
+                indices[q] = binaryKmers[q] == null ? -1 : index.getRecordIndex(binaryKmers[q]);
             }
+        } else {
+            if (!isSorted()) {
+                throw new CortexJDKException("Records are not sorted in Cortex graph '" + cortexFile.getAbsolutePath() + "'");
+            }
+
+            indices = new CortexGraphMergeJoin(mapping, getKmerBits(), numRecords).find(binaryKmers);
+        }
+
+        List<CortexRecord> records = new ArrayList<>(binaryKmers.length);
+        for (int q = 0; q < binaryKmers.length; q++) {
+            CortexRecord cr = indices[q] < 0 ? null : readRecord(indices[q]);
 
-            if (startKmer.compareTo(midKmer) > 0) {
-                throw new CortexJDKException("Records are not sorted ('" + startKmer + "' is found before '" + midKmer + "' but is lexicographically greater)");
+            if (cr != null && !Arrays.equals(cr.getBinaryKmer(), binaryKmers[q])) {
+                cr = null;
             }
 
-            if (kmer.compareTo(stopKmer) > 0 || kmer.compareTo(startKmer) < 0) { return null; }
-            else if (startKmer.equals(kmer)) { return startRecord; }
-            else if (midKmer.equals(kmer)) { return midRecord; }
-            else if (stopKmer.equals(kmer)) { return stopRecord; }
-            else if (kmer.compareTo(startKmer) > 0 && kmer.compareTo(midKmer) < 0) {
-                stopIndex = midIndex;
-                midIndex = startIndex + (stopIndex - startIndex) / 2;
-            } else if (kmer.compareTo(midKmer) > 0 && kmer.compareTo(stopKmer) < 0) {
-                startIndex = midIndex;
-                midIndex = startIndex + ((stopIndex - startIndex) / 2);
+            if (cr == null && binaryKmers[q] != null && b != null) {
+                bloomFalsePositives.increment();
             }
+
+            records.add(cr);
         }
 
-        return null;
+        return records;
     }
 
-    public CortexRecord findRecord(CortexByteKmer bk) { return findRecord(bk.getKmer()); }
-    public CortexRecord findRecord(CortexKmer ck) { return findRecord(ck.getKmerAsBytes()); }
-    public CortexRecord findRecord(String sk) { return findRecord(sk.getBytes()); }
+    private CortexRecord searchRecord(long[] binaryKmer) {
+        if (index != null) {
+            return findIndexedRecord(binaryKmer);
+        }
 
-    public File getFile() { return cortexFile; }
-    public CortexHeader getHeader() { return header; }
-    public int getVersion() { return header.getVersion(); }
-    public int getKmerSize() { return header.getKmerSize(); }
-    public int getKmerBits() { return header.getKmerBits(); }
-    public String getSampleName(int color) { return getColor(color).getSampleName(); }
-    public int getNumColors() { return header.getNumColors(); }
-    public long getNumRecords() { return numRecords; }
-    public List<CortexColor> getColors() { return header.getColors(); }
-    public boolean hasColor(int color) { return header.hasColor(color); }
-    public CortexColor getColor(int color) { return header.getColor(color); }
+        long i = searchRecordIndex(binaryKmer);
 
-    public int getColorForSampleName(String sampleName) {
-        int sampleColor = -1;
-        int sampleCopies = 0;
+        return i < 0 ? null : readRecord(i);
+    }
 
-        for (int color = 0; color < header.getNumColors(); color++) {
-            if (header.getColor(color).getSampleName().equalsIgnoreCase(sampleName)) {
-                sampleColor = color;
-                sampleCopies++;
+    private long searchRecordIndex(long[] binaryKmer) {
+        if (index != null) {
+            return findIndexedRecordIndex(binaryKmer);
+        }
+
+        if (fanoutBits > 0) {
+            return findSortedRecordIndex(binaryKmer);
+        }
+
+        if (!isSorted()) {
+            throw new CortexJDKException("Records are not sorted in Cortex graph '" + cortexFile.getAbsolutePath() + "'");
+        }
+
+        return findBisectedRecordIndex(binaryKmer);
+    }
+
+    /**
+     * Find the index of the record for a canonical binary kmer, for use with {@link #getRecord(long)}.  Unlike
+     * findRecord(), this does not go through the record cache.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the record index, or -1 if the kmer is not in the graph
+     */
+    public long findRecordIndex(long[] binaryKmer) {
+        if (numRecords == 0 || binaryKmer.length != getKmerBits() || !mightContain(binaryKmer)) {
+            return -1;
+        }
+
+        return searchRecordIndex(binaryKmer);
+    }
+
+    /**
+     * Binary search a graph that is known to be sorted.  Only the midpoint record is read at each step, and only its
+     * kmer is compared, so no record is decoded until the caller asks for the one found.
+     */
+    private long findBisectedRecordIndex(long[] bk) {
+        long[] query = new long[bk.length];
+        for (int b = 0; b < bk.length; b++) {
+            query[b] = Long.reverseBytes(bk[b]);
+        }
+
+        long lo = 0, hi = numRecords - 1;
+
+        while (lo <= hi) {
+            long mid = lo + (hi - lo) / 2;
+
+            ByteBuffer segment = mapping.segment(mid);
+            int offset = mapping.offset(mid);
+
+            int c = 0;
+            for (int b = 0; b < query.length && c == 0; b++) {
+                c = Long.compareUnsigned(query[b], Long.reverseBytes(segment.getLong(offset + 8*b)));
+            }
+
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
             }
         }
 
-        if (sampleColor == -1) {
-            try {
-                sampleColor = Integer.valueOf(sampleName);
-                sampleCopies = 1;
-            } catch (NumberFormatException e) {}
+        return -1;
+    }
+
+    /**
+     * Check whether the records of the graph are in kmer order.  The answer comes from the graph's sort marker (see
+     * {@link CortexGraphSortedMarker}) if it has one; otherwise every record is checked once, in parallel, and the
+     * result is remembered.
+     *
+     * @return true if the records are sorted
+     */
+    public boolean isSorted() {
+        Boolean s = sorted;
+
+        if (s == null) {
+            synchronized (this) {
+                s = sorted;
+
+                if (s == null) {
+                    s = CortexGraphSortedMarker.validate(mapping, getKmerBits(), numRecords);
+                    sorted = s;
+                }
+            }
         }
 
-        return (sampleCopies == 1) ? sampleColor : -1;
+        return s;
     }
 
-    public List<Integer> getColorsForSampleNames(List<String> sampleNames) {
-        List<Integer> colors = new ArrayList<>();
+    private CortexRecord findIndexedRecord(long[] bk) {
+        long i = index.getRecordIndex(bk);
+        if (i < 0 || i >= numRecords) {
+            return null;
+        }
+
+        CortexRecordView view = decodeViews.get();
+        decode(i, view);
+
+        if (!Arrays.equals(view.getBinaryKmer(), bk)) {
+            return null;
+        }
 
-        if (sampleNames != null && !sampleNames.isEmpty()) {
-            for (String sampleName : sampleNames) {
-                colors.add(getColorForSampleName(sampleName));
+        return view.copy();
+    }
+
+    private long findIndexedRecordIndex(long[] bk) {
+        long i = index.getRecordIndex(bk);
+        if (i < 0 || i >= numRecords) {
+            return -1;
+        }
+
+        CortexRecordView view = decodeViews.get();
+        decode(i, view);
+
+        return Arrays.equals(view.getBinaryKmer(), bk) ? i : -1;
+    }
+
+    private long findSortedRecordIndex(long[] bk) {
+        if (!isSorted()) {
+            throw new CortexJDKException("Records are not sorted in Cortex graph '" + cortexFile.getAbsolutePath() + "'");
+        }
+
+        return getFanout().find(bk);
+    }
+
+    private CortexGraphFanout getFanout() {
+        CortexGraphFanout f = fanout;
+
+        if (f == null) {
+            synchronized (this) {
+                f = fanout;
+
+                if (f == null) {
+                    f = new CortexGraphFanout(mapping, getKmerSize(), getKmerBits(), numRecords, fanoutBits);
+                    fanout = f;
+                }
             }
         }
 
-        return colors;
+        return f;
     }
 
-    public String toString() {
-        String info = "file: " + cortexFile.getAbsolutePath() + "\n"
-                + "----" + "\n"
-                + "binary version: " + this.getVersion() + "\n"
-                + "kmer size: " + this.getKmerSize() + "\n"
-                + "bitfields: " + this.getKmerBits() + "\n"
-                + "colors: " + this.getNumColors() + "\n";
-
-        for (int color = 0; color < this.getNumColors(); color++) {
-            CortexColor cortexColor = this.getColors().get(color);
-            info += "-- Color " + color + " --\n"
-                    +  "  sample name: '" + cortexColor.getSampleName() + "'\n"
-                    +  "  mean read length: " + cortexColor.getMeanReadLength() + "\n"
-                    +  "  total sequence loaded: " + "(not parsed)" + "\n"
-                    +  "  sequence error rate: " + "(not parsed)" + "\n"
-                    +  "  tip clipping: " + (cortexColor.isTipClippingApplied() ? "yes" : "no") + "\n"
-                    +  "  remove_low_coverage_supernodes: " + (cortexColor.isLowCovgSupernodesRemoved() ? "yes" : "no") + "\n"
-                    +  "  remove_low_coverage_kmers: " + (cortexColor.isLowCovgKmersRemoved() ? "yes" : "no") + "\n"
-                    +  "  cleaned against graph: " + (cortexColor.isCleanedAgainstGraph() ? "yes" : "no") + "\n";
+    /**
+     * Get the unitig index stored next to the graph (see {@link CortexGraphUnitigIndex}), loading it on first use.
+     *
+     * @return the unitig index, or null if the graph has none or it is stale
+     */
+    public CortexGraphUnitigIndex getUnitigIndex() {
+        if (!unitigsLoaded) {
+            synchronized (this) {
+                if (!unitigsLoaded) {
+                    File unitigFile = CortexGraphUnitigIndex.getUnitigIndexFile(cortexFile);
+
+                    if (unitigFile.exists()) {
+                        unitigs = CortexGraphUnitigIndex.load(unitigFile, this);
+                    }
+
+                    unitigsLoaded = true;
+                }
+            }
+        }
+
+        return unitigs;
+    }
+
+    private CortexGraphBloomFilter getBloomFilter() {
+        CortexGraphBloomFilter b = bloom;
+
+        if (b == null && bloomFalsePositiveRate > 0.0) {
+            synchronized (this) {
+                b = bloom;
+
+                if (b == null) {
+                    b = CortexGraphBloomFilter.build(this, bloomFalsePositiveRate);
+                    bloom = b;
+                }
+            }
         }
 
+        return b;
+    }
+
+    private long[] encodeQuery(byte[] kmer) {
+        if (numRecords == 0 || kmer.length != getKmerSize()) {
+            return null;
+        }
+
+        try {
+            return CortexRecord.encodeBinaryKmer(kmer);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    public boolean hasIndex() { return index != null; }
+
+    public CortexRecord findRecord(CortexByteKmer bk) { return findRecord(bk.getKmer()); }
+    public CortexRecord findRecord(CortexKmer ck) { return findRecord(ck.getKmerAsBytes()); }
+    public CortexRecord findRecord(String sk) { return findRecord(sk.getBytes()); }
+
+    public File getFile() { return cortexFile; }
+    public CortexHeader getHeader() { return header; }
+    public int getVersion() { return header.getVersion(); }
+    public int getKmerSize() { return header.getKmerSize(); }
+    public int getKmerBits() { return header.getKmerBits(); }
+    public String getSampleName(int color) { return getColor(color).getSampleName(); }
+    public int getNumColors() { return header.getNumColors(); }
+    public long getNumRecords() { return numRecords; }
+    public List<CortexColor> getColors() { return header.getColors(); }
+    public boolean hasColor(int color) { return header.hasColor(color); }
+    public CortexColor getColor(int color) { return header.getColor(color); }
+
+    public String toString() {
+        String info = getHeaderSummary();
+
         info += "----" + "\n";
         info += "kmers: " + getNumRecords() + "\n";
         info += "----" + "\n";
@@ -393,21 +765,102 @@ public class CortexGraph implements DeBruijnGraph {
         return info;
     }
 
-    private CortexRecord getFromCache(long recordNum) {
-        cacheHitsByIndex++;
-        return (CortexRecord) cache.get(recordNum);
+    /**
+     * Replace the cache used for records found by kmer, e.g. to share one cache between several graphs or to turn
+     * caching off with a zero-budget {@link CortexRecordLRUCache}.
+     *
+     * @param cache  the new cache
+     */
+    public void setCache(CortexRecordCache cache) {
+        this.cache = cache;
+    }
+
+    public CortexRecordCache getCache() {
+        return cache;
     }
 
-    private CortexRecord getFromCache(CortexByteKmer kmer) {
-        cacheHitsByKmer++;
-        return (CortexRecord) cache.get(kmer);
+    public long getCacheHits() {
+        return cache.getHits();
     }
 
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    public long getCacheEvictions() {
+        return cache.getEvictions();
+    }
+
+    /**
+     * @deprecated records found by index are no longer cached, so this is always 0; see {@link #getCacheStatistics()}
+     */
+    @Deprecated
     public long getCacheHitsByIndex() {
-        return cacheHitsByIndex;
+        return 0;
     }
 
+    /**
+     * @deprecated use {@link #getCacheHits()}
+     */
+    @Deprecated
     public long getCacheHitsByKmer() {
-        return cacheHitsByKmer;
+        return getCacheHits();
+    }
+
+    public boolean hasBloomFilter() {
+        return bloom != null || bloomFalsePositiveRate > 0.0;
+    }
+
+    public double getBloomFilterFalsePositiveRate() {
+        CortexGraphBloomFilter b = bloom;
+
+        return b != null ? b.getFalsePositiveRate() : bloomFalsePositiveRate;
+    }
+
+    public long getBloomFilterRejections() {
+        return bloomRejections.sum();
+    }
+
+    public long getBloomFilterFalsePositives() {
+        return bloomFalsePositives.sum();
+    }
+
+    /**
+     * Get the name of the backend the graph's records are read through: "mmap" for a memory map of the file, or
+     * "pread" for positional reads into a pool of blocks (see the 'graphio' system property).
+     *
+     * @return the name of the I/O backend
+     */
+    public String getIOBackend() {
+        return mapping.getName();
+    }
+
+    public long getBlockCacheHits() {
+        return mapping.getBlockHits();
+    }
+
+    public long getBlockCacheMisses() {
+        return mapping.getBlockMisses();
+    }
+
+    public String getCacheStatistics() {
+        long lookups = getCacheHits() + getCacheMisses();
+
+        String stats = String.format("cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d entries",
+                getCacheHits(), getCacheMisses(), lookups == 0 ? 0.0 : 100.0*getCacheHits()/lookups, getCacheEvictions(), cache.size());
+
+        if (hasBloomFilter()) {
+            stats += String.format("; Bloom filter: %d rejected, %d false positives (target rate %s)",
+                    getBloomFilterRejections(), getBloomFilterFalsePositives(), getBloomFilterFalsePositiveRate());
+        }
+
+        if (CortexGraphMapping.PREAD.equals(getIOBackend())) {
+            long blockReads = getBlockCacheHits() + getBlockCacheMisses();
+
+            stats += String.format("; block cache: %d hits, %d misses (%.1f%% hit rate)",
+                    getBlockCacheHits(), getBlockCacheMisses(), blockReads == 0 ? 0.0 : 100.0*getBlockCacheHits()/blockReads);
+        }
+
+        return stats;
     }
 }
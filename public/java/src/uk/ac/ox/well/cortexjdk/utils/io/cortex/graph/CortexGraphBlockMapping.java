@@ -0,0 +1,254 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the records section of a Cortex graph with positional reads (pread) into a pool of blocks, kept in
+ * least-recently-used order.  Blocks are aligned to record boundaries, so the configured block size is rounded down
+ * to a whole number of records and a record never straddles two blocks.
+ *
+ * The pool is shared by every graph file read this way, so its size bounds the heap used by the whole process rather
+ * than by each file: at most 'preadblocks' blocks of 'preadblocksize' bytes (64 MB by default) are held at once,
+ * however many graphs are open.  The pool size is read whenever a file is opened, and the latest value applies to
+ * every file.
+ *
+ * An evicted block is dropped rather than reused, so a buffer that has been handed out stays valid for as long as the
+ * caller holds it.  Reads that miss the pool are made without holding the pool's lock, so concurrent lookups on
+ * different blocks are not serialized.  Once the mapping is closed its blocks are dropped from the pool and further
+ * reads throw.
+ */
+class CortexGraphBlockMapping extends CortexGraphMapping {
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    static final int DEFAULT_BLOCKS = 1024;
+
+    private static final BlockPool POOL = new BlockPool(DEFAULT_BLOCKS);
+
+    private final File file;
+    private volatile FileChannel channel;
+    private volatile boolean closed = false;
+
+    private final long dataOffset;
+    private final long recordSize;
+    private final long numRecords;
+    private final long recordsPerBlock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    CortexGraphBlockMapping(File file, long dataOffset, long recordSize, long numRecords, int blockSize, int numBlocks) throws IOException {
+        if (blockSize < 1 || numBlocks < 1) {
+            throw new CortexJDKException("Block size and number of blocks must both be at least 1 (got " + blockSize + " and " + numBlocks + ")");
+        }
+
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        this.dataOffset = dataOffset;
+        this.recordSize = recordSize;
+        this.numRecords = numRecords;
+        this.recordsPerBlock = Math.max(1, blockSize / recordSize);
+
+        POOL.setCapacity(numBlocks);
+    }
+
+    static int getConfiguredBlockSize() {
+        return getConfiguredInt("preadblocksize", DEFAULT_BLOCK_SIZE);
+    }
+
+    static int getConfiguredBlocks() {
+        return getConfiguredInt("preadblocks", DEFAULT_BLOCKS);
+    }
+
+    private static int getConfiguredInt(String property, int defaultValue) {
+        String value = System.getProperty(property);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new CortexJDKException("Value of '" + property + "' must be an integer (got '" + value + "')", e);
+        }
+    }
+
+    static int getPooledBlocks() { return POOL.size(); }
+
+    @Override
+    ByteBuffer segment(long recordIndex) {
+        if (closed) {
+            throw new CortexJDKException("Cortex graph file '" + file.getAbsolutePath() + "' has been closed");
+        }
+
+        BlockKey key = new BlockKey(this, recordIndex / recordsPerBlock);
+
+        ByteBuffer buffer = POOL.get(key);
+        if (buffer != null) {
+            hits.increment();
+            return buffer;
+        }
+
+        misses.increment();
+
+        buffer = read(key.block);
+        POOL.put(key, buffer);
+
+        // A block read just as the mapping was closed must not outlive it in the pool
+        if (closed) {
+            POOL.remove(key);
+        }
+
+        return buffer;
+    }
+
+    @Override
+    int offset(long recordIndex) { return (int) ((recordIndex % recordsPerBlock) * recordSize); }
+
+    @Override
+    String getName() { return PREAD; }
+
+    @Override
+    long getBlockHits() { return hits.sum(); }
+
+    @Override
+    long getBlockMisses() { return misses.sum(); }
+
+    long getRecordsPerBlock() { return recordsPerBlock; }
+
+    private ByteBuffer read(long block) {
+        long firstRecord = block*recordsPerBlock;
+        long blockRecords = Math.min(recordsPerBlock, numRecords - firstRecord);
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (blockRecords*recordSize));
+        long position = dataOffset + firstRecord*recordSize;
+
+        for (int attempt = 0; ; attempt++) {
+            FileChannel c = getChannel();
+
+            try {
+                while (buffer.hasRemaining()) {
+                    if (c.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("Unexpected end of file at position " + (position + buffer.position()));
+                    }
+                }
+
+                return buffer;
+            } catch (ClosedByInterruptException e) {
+                throw new CortexJDKException("Interrupted while reading Cortex graph file '" + file.getAbsolutePath() + "'", e);
+            } catch (ClosedChannelException e) {
+                // An interrupt on another reading thread closes the channel under every thread using it; reopen it,
+                // unless the mapping itself has been closed
+                if (closed || attempt > 0) {
+                    throw new CortexJDKException("Error while reading Cortex graph file '" + file.getAbsolutePath() + "'", e);
+                }
+
+                buffer.clear();
+            } catch (IOException e) {
+                throw new CortexJDKException("Error while reading Cortex graph file '" + file.getAbsolutePath() + "'", e);
+            }
+        }
+    }
+
+    private FileChannel getChannel() {
+        FileChannel c = channel;
+
+        return !closed && c.isOpen() ? c : reopen();
+    }
+
+    private synchronized FileChannel reopen() {
+        if (closed) {
+            throw new CortexJDKException("Cortex graph file '" + file.getAbsolutePath() + "' has been closed");
+        }
+
+        if (!channel.isOpen()) {
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new CortexJDKException("Unable to reopen Cortex graph file '" + file.getAbsolutePath() + "'", e);
+            }
+        }
+
+        return channel;
+    }
+
+    @Override
+    synchronized void close() throws IOException {
+        closed = true;
+        channel.close();
+
+        POOL.removeAll(this);
+    }
+
+    private static final class BlockKey {
+        private final CortexGraphBlockMapping mapping;
+        private final long block;
+
+        BlockKey(CortexGraphBlockMapping mapping, long block) {
+            this.mapping = mapping;
+            this.block = block;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BlockKey)) { return false; }
+
+            BlockKey k = (BlockKey) o;
+            return mapping == k.mapping && block == k.block;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*System.identityHashCode(mapping) + Long.hashCode(block);
+        }
+    }
+
+    /**
+     * The process-wide pool of blocks, in least-recently-used order across all files.
+     */
+    private static final class BlockPool {
+        private final LinkedHashMap<BlockKey, ByteBuffer> blocks;
+        private int capacity;
+
+        BlockPool(int capacity) {
+            this.capacity = capacity;
+
+            blocks = new LinkedHashMap<BlockKey, ByteBuffer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<BlockKey, ByteBuffer> eldest) { return size() > BlockPool.this.capacity; }
+            };
+        }
+
+        synchronized void setCapacity(int capacity) {
+            this.capacity = capacity;
+
+            while (blocks.size() > capacity) {
+                blocks.remove(blocks.keySet().iterator().next());
+            }
+        }
+
+        synchronized ByteBuffer get(BlockKey key) { return blocks.get(key); }
+
+        synchronized void put(BlockKey key, ByteBuffer buffer) { blocks.put(key, buffer); }
+
+        synchronized void remove(BlockKey key) { blocks.remove(key); }
+
+        synchronized void removeAll(CortexGraphBlockMapping mapping) {
+            blocks.keySet().removeIf(k -> k.mapping == mapping);
+        }
+
+        synchronized int size() { return blocks.size(); }
+    }
+}
@@ -0,0 +1,160 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import it.unimi.dsi.fastutil.io.BinIO;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A Bloom filter over the binary kmers of a Cortex graph, used to reject lookups for absent kmers before touching the
+ * graph file.  A filter can be stored next to the graph (as graph.ctx.bloom) by the IndexGraph command, or built on
+ * the first lookup by setting the 'bloom' system property to the desired false-positive rate (e.g. -Dbloom=0.01).
+ */
+public class CortexGraphBloomFilter implements CortexGraphStamp.Stamped {
+    private static final long serialVersionUID = 1L;
+
+    public static final String EXTENSION = ".bloom";
+
+    private final CortexGraphStamp stamp;
+
+    private final double falsePositiveRate;
+    private final int numHashes;
+    private final long numBits;
+    private final long[] bits;
+
+    private CortexGraphBloomFilter(CortexGraph graph, double falsePositiveRate) {
+        if (falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+            throw new CortexJDKException("Bloom filter false-positive rate must be between 0 and 1 (got " + falsePositiveRate + ")");
+        }
+
+        this.stamp = new CortexGraphStamp(graph);
+        this.falsePositiveRate = falsePositiveRate;
+
+        long n = Math.max(1, graph.getNumRecords());
+        long optimalBits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+
+        if ((optimalBits + 63) / 64 > Integer.MAX_VALUE - 8) {
+            throw new CortexJDKException("Bloom filter for graph '" + graph.getFile().getAbsolutePath() + "' would be too large at a false-positive rate of " + falsePositiveRate);
+        }
+
+        this.bits = new long[(int) ((optimalBits + 63) / 64)];
+        this.numBits = 64L * bits.length;
+        this.numHashes = Math.max(1, (int) Math.round(((double) numBits / n) * Math.log(2)));
+    }
+
+    public static File getBloomFilterFile(File cortexFile) {
+        return new File(cortexFile.getAbsolutePath() + EXTENSION);
+    }
+
+    /**
+     * Get the false-positive rate requested on the command line.
+     *
+     * @return the false-positive rate, or 0 if no filter should be built
+     */
+    static double getConfiguredFalsePositiveRate() {
+        String bloom = System.getProperty("bloom");
+
+        if (bloom == null) {
+            return 0.0;
+        }
+
+        try {
+            return Double.valueOf(bloom);
+        } catch (NumberFormatException e) {
+            throw new CortexJDKException("Bloom filter false-positive rate must be a number (got '" + bloom + "')", e);
+        }
+    }
+
+    /**
+     * Build a filter containing every kmer in a graph.
+     *
+     * @param graph              the graph to summarise
+     * @param falsePositiveRate  the desired false-positive rate
+     * @return                   the filter
+     */
+    public static CortexGraphBloomFilter build(CortexGraph graph, double falsePositiveRate) {
+        CortexGraphBloomFilter bloom = new CortexGraphBloomFilter(graph, falsePositiveRate);
+
+        for (CortexRecordView cv : graph.views()) {
+            bloom.add(cv.getBinaryKmer());
+        }
+
+        return bloom;
+    }
+
+    /**
+     * Load the filter for a graph, checking that it was built from the same version of the graph.  A stale or
+     * unreadable filter is ignored with a warning.
+     *
+     * @param bloomFile  the filter file
+     * @param graph      the graph the filter should describe
+     * @return           the filter, or null if it is stale or unreadable
+     */
+    public static CortexGraphBloomFilter load(File bloomFile, CortexGraph graph) {
+        return CortexGraphStamp.load(bloomFile, CortexGraphBloomFilter.class, graph, "Bloom filter");
+    }
+
+    @Override
+    public CortexGraphStamp getStamp() { return stamp; }
+
+    public void store(File bloomFile) {
+        try {
+            BinIO.storeObject(this, bloomFile);
+        } catch (IOException e) {
+            throw new CortexJDKException("Could not write Bloom filter '" + bloomFile.getAbsolutePath() + "'", e);
+        }
+    }
+
+    private void add(long[] binaryKmer) {
+        long h1 = hash(binaryKmer, 0x9e3779b97f4a7c15L);
+        long h2 = hash(binaryKmer, 0xc2b2ae3d27d4eb4fL) | 1L;
+
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i*h2, numBits);
+            bits[(int) (bit >>> 6)] |= (1L << bit);
+        }
+    }
+
+    /**
+     * Test whether a kmer might be in the graph.  The kmer must be in its canonical orientation.
+     *
+     * @param binaryKmer  the binary kmer
+     * @return            false if the kmer is definitely absent, true if it may be present
+     */
+    public boolean mightContain(long[] binaryKmer) {
+        long h1 = hash(binaryKmer, 0x9e3779b97f4a7c15L);
+        long h2 = hash(binaryKmer, 0xc2b2ae3d27d4eb4fL) | 1L;
+
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Long.remainderUnsigned(h1 + i*h2, numBits);
+
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public double getFalsePositiveRate() { return falsePositiveRate; }
+
+    public int getNumHashes() { return numHashes; }
+
+    public long numBits() { return numBits; }
+
+    private static long hash(long[] binaryKmer, long seed) {
+        long h = seed;
+
+        for (long word : binaryKmer) {
+            h ^= word;
+            h ^= (h >>> 33);
+            h *= 0xff51afd7ed558ccdL;
+            h ^= (h >>> 33);
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= (h >>> 33);
+        }
+
+        return h;
+    }
+}
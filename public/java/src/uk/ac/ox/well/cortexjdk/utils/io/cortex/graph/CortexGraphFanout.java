@@ -0,0 +1,194 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Prefix fan-out table for a sorted Cortex graph.  The table records, for every possible value of the first few bits
+ * of a kmer, the index of the first record with that prefix, so a lookup only has to search the handful of records in
+ * one bucket.  The bucket is then searched by interpolating on the leading 32 bases of the kmer, which for uniformly
+ * distributed kmers lands on or next to the target in one or two probes; after a few probes the search falls back to
+ * plain bisection so that skewed buckets still cost no more than a binary search.
+ *
+ * The table is off by default, and is turned on with the 'fanout' system property (e.g. -Dfanout=20).  Bucket
+ * boundaries are found by bisecting the mapped records rather than scanning them, so building the table only touches
+ * the pages that hold a boundary.  The table trusts the order of the graph; callers must check it first (see
+ * {@link CortexGraph#isSorted()}).
+ */
+class CortexGraphFanout {
+    static final int MIN_BITS = 16;
+    static final int MAX_BITS = 24;
+    private static final int MAX_INTERPOLATION_PROBES = 4;
+
+    private final CortexGraphMapping mapping;
+    private final int kmerBits;
+    private final int firstWordShift;
+    private final int bits;
+    private final long[] starts;
+
+    CortexGraphFanout(CortexGraphMapping mapping, int kmerSize, int kmerBits, long numRecords, int bits) {
+        this.mapping = mapping;
+        this.kmerBits = kmerBits;
+        this.firstWordShift = 64 - 2*(kmerSize - 32*(kmerBits - 1));
+        this.bits = Math.min(bits, 2*Math.min(kmerSize, 32));
+        this.starts = new long[(1 << this.bits) + 1];
+
+        starts[0] = 0;
+        starts[starts.length - 1] = numRecords;
+        fill(0, starts.length - 1);
+    }
+
+    /**
+     * Fill in the bucket starts strictly between two buckets whose starts are already known, by finding the start of
+     * the middle bucket and recursing on each half.  Runs of empty buckets are filled without reading any records.
+     */
+    private void fill(int bLo, int bHi) {
+        if (bHi - bLo <= 1) {
+            return;
+        }
+
+        if (starts[bLo] == starts[bHi]) {
+            Arrays.fill(starts, bLo + 1, bHi, starts[bLo]);
+            return;
+        }
+
+        int bMid = (bLo + bHi) >>> 1;
+        starts[bMid] = lowerBound(bMid, starts[bLo], starts[bHi]);
+
+        fill(bLo, bMid);
+        fill(bMid, bHi);
+    }
+
+    private long lowerBound(int prefix, long lo, long hi) {
+        while (lo < hi) {
+            long mid = lo + (hi - lo) / 2;
+
+            if (prefix(keyAt(mid)) < prefix) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Get the fan-out width requested on the command line.
+     *
+     * @return the number of prefix bits to use, or 0 if the fan-out table is disabled
+     */
+    static int getConfiguredBits() {
+        String fanout = System.getProperty("fanout");
+
+        if (fanout == null) {
+            return 0;
+        }
+
+        try {
+            int bits = Integer.valueOf(fanout);
+
+            if (bits != 0 && (bits < MIN_BITS || bits > MAX_BITS)) {
+                throw new CortexJDKException("Fan-out width must be 0 (disabled) or between " + MIN_BITS + " and " + MAX_BITS + " bits (got " + bits + ")");
+            }
+
+            return bits;
+        } catch (NumberFormatException e) {
+            throw new CortexJDKException("Fan-out width must be an integer (got '" + fanout + "')", e);
+        }
+    }
+
+    int getBits() { return bits; }
+
+    /**
+     * Find the record holding a binary kmer.  The kmer must be in its canonical orientation.
+     *
+     * @param binaryKmer  the binary kmer, as stored in a record
+     * @return            the record index, or -1 if the kmer is not in the graph
+     */
+    long find(long[] binaryKmer) {
+        long[] query = new long[kmerBits];
+        for (int b = 0; b < kmerBits; b++) {
+            query[b] = Long.reverseBytes(binaryKmer[b]);
+        }
+
+        long key = key(query[0], kmerBits > 1 ? query[1] : 0);
+        int prefix = prefix(key);
+
+        long lo = starts[prefix];
+        long hi = starts[prefix + 1] - 1;
+
+        long loKey = ((long) prefix) << (64 - bits);
+        long hiKey = loKey | (-1L >>> bits);
+
+        for (int probes = 0; lo <= hi; probes++) {
+            long mid;
+            if (probes < MAX_INTERPOLATION_PROBES && hi > lo && hiKey != loKey) {
+                double fraction = unsignedToDouble(key - loKey) / unsignedToDouble(hiKey - loKey);
+                mid = lo + (long) (fraction * (hi - lo));
+                mid = Math.max(lo, Math.min(hi, mid));
+            } else {
+                mid = lo + (hi - lo) / 2;
+            }
+
+            int c = compare(query, mid);
+
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                hi = mid - 1;
+                hiKey = keyAt(mid);
+            } else {
+                lo = mid + 1;
+                loKey = keyAt(mid);
+            }
+        }
+
+        return -1;
+    }
+
+    private int prefix(long key) {
+        return (int) (key >>> (64 - bits));
+    }
+
+    private long key(long word0, long word1) {
+        long key = word0 << firstWordShift;
+
+        if (firstWordShift > 0 && kmerBits > 1) {
+            key |= word1 >>> (64 - firstWordShift);
+        }
+
+        return key;
+    }
+
+    private long keyAt(long i) {
+        ByteBuffer segment = mapping.segment(i);
+        int offset = mapping.offset(i);
+
+        long word0 = Long.reverseBytes(segment.getLong(offset));
+        long word1 = kmerBits > 1 ? Long.reverseBytes(segment.getLong(offset + 8)) : 0;
+
+        return key(word0, word1);
+    }
+
+    private int compare(long[] query, long i) {
+        ByteBuffer segment = mapping.segment(i);
+        int offset = mapping.offset(i);
+
+        for (int b = 0; b < kmerBits; b++) {
+            int c = Long.compareUnsigned(query[b], Long.reverseBytes(segment.getLong(offset + 8*b)));
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+
+    private static double unsignedToDouble(long x) {
+        return x >= 0 ? (double) x : ((double) (x >>> 1)) * 2.0;
+    }
+}
@@ -0,0 +1,141 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import it.unimi.dsi.bits.LongArrayBitVector;
+import it.unimi.dsi.bits.TransformationStrategies;
+import it.unimi.dsi.fastutil.io.BinIO;
+import it.unimi.dsi.fastutil.longs.LongBigList;
+import it.unimi.dsi.sux4j.mph.GOVMinimalPerfectHashFunction;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A minimal perfect hash sidecar index for a Cortex graph (stored next to the graph as graph.ctx.mph).  Every binary
+ * kmer in the graph hashes to a distinct slot, and each slot holds the index of the record with that kmer, so a lookup
+ * costs one hash and one record read regardless of whether the graph is sorted.  Kmers that are not in the graph still
+ * hash to some slot; callers must compare the kmer of the record they read back against the query to reject misses.
+ */
+public class CortexGraphIndex implements CortexGraphStamp.Stamped {
+    private static final long serialVersionUID = 1L;
+
+    public static final String EXTENSION = ".mph";
+
+    private final CortexGraphStamp stamp;
+    private final long numRecords;
+
+    private final GOVMinimalPerfectHashFunction<byte[]> mph;
+    private final LongArrayBitVector recordIndicesBits;
+    private final int recordIndexWidth;
+
+    private transient LongBigList recordIndices;
+
+    private CortexGraphIndex(CortexGraph graph, GOVMinimalPerfectHashFunction<byte[]> mph) {
+        this.stamp = new CortexGraphStamp(graph);
+        this.numRecords = graph.getNumRecords();
+        this.mph = mph;
+        this.recordIndexWidth = Math.max(1, 64 - Long.numberOfLeadingZeros(numRecords));
+        this.recordIndicesBits = LongArrayBitVector.getInstance();
+        this.recordIndices = recordIndicesBits.asLongBigList(recordIndexWidth);
+        this.recordIndices.size(numRecords);
+    }
+
+    public static File getIndexFile(File cortexFile) {
+        return new File(cortexFile.getAbsolutePath() + EXTENSION);
+    }
+
+    /**
+     * Build an index over every record in a graph.
+     *
+     * @param graph  the graph to index
+     * @return       the index
+     */
+    public static CortexGraphIndex build(CortexGraph graph) {
+        Iterable<byte[]> keys = () -> new Iterator<byte[]>() {
+            private final Iterator<CortexRecordView> views = graph.views().iterator();
+
+            @Override
+            public boolean hasNext() { return views.hasNext(); }
+
+            @Override
+            public byte[] next() { return toBytes(views.next().getBinaryKmer()); }
+        };
+
+        try {
+            GOVMinimalPerfectHashFunction<byte[]> mph = new GOVMinimalPerfectHashFunction.Builder<byte[]>()
+                    .keys(keys)
+                    .transform(TransformationStrategies.rawByteArray())
+                    .build();
+
+            CortexGraphIndex index = new CortexGraphIndex(graph, mph);
+
+            for (CortexRecordView cv : graph.views()) {
+                index.recordIndices.set(mph.getLong(toBytes(cv.getBinaryKmer())), cv.getIndex());
+            }
+
+            return index;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new CortexJDKException("Could not build kmer index for graph '" + graph.getFile().getAbsolutePath() + "'", e);
+        }
+    }
+
+    /**
+     * Load the index for a graph, checking that it was built from the same version of the graph.  A stale or
+     * unreadable index is ignored with a warning, so the graph can still be opened and re-indexed.
+     *
+     * @param indexFile  the index file
+     * @param graph      the graph the index should describe
+     * @return           the index, or null if it is stale or unreadable
+     */
+    public static CortexGraphIndex load(File indexFile, CortexGraph graph) {
+        CortexGraphIndex index = CortexGraphStamp.load(indexFile, CortexGraphIndex.class, graph, "kmer index");
+
+        if (index == null) {
+            return null;
+        }
+
+        index.recordIndices = index.recordIndicesBits.asLongBigList(index.recordIndexWidth);
+
+        return index;
+    }
+
+    public void store(File indexFile) {
+        try {
+            BinIO.storeObject(this, indexFile);
+        } catch (IOException e) {
+            throw new CortexJDKException("Could not write kmer index '" + indexFile.getAbsolutePath() + "'", e);
+        }
+    }
+
+    /**
+     * Get the index of the only record that could hold a binary kmer.  The kmer must be in its canonical orientation.
+     *
+     * @param binaryKmer  the binary kmer
+     * @return            the candidate record index, or -1 if no record could hold the kmer
+     */
+    public long getRecordIndex(long[] binaryKmer) {
+        long slot = mph.getLong(toBytes(binaryKmer));
+
+        return (slot < 0 || slot >= numRecords) ? -1 : recordIndices.getLong(slot);
+    }
+
+    @Override
+    public CortexGraphStamp getStamp() { return stamp; }
+
+    public long getNumRecords() { return numRecords; }
+
+    public long numBits() { return mph.numBits() + recordIndicesBits.length(); }
+
+    private static byte[] toBytes(long[] binaryKmer) {
+        byte[] bytes = new byte[8*binaryKmer.length];
+
+        for (int b = 0, pos = 0; b < binaryKmer.length; b++) {
+            for (int shift = 56; shift >= 0; shift -= 8, pos++) {
+                bytes[pos] = (byte) (binaryKmer[b] >>> shift);
+            }
+        }
+
+        return bytes;
+    }
+}
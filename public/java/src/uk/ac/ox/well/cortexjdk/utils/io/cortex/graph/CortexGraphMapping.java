@@ -0,0 +1,104 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Random access to the records section of a Cortex graph.  Each record lives in some buffer that holds a whole
+ * number of records, so callers fetch the buffer for a record with segment() and decode it with absolute reads from
+ * offset().
+ *
+ * Two backends are available, chosen per file when it is opened: a memory map of the whole file (see
+ * {@link CortexGraphMemoryMapping}), and positional reads into an LRU pool of blocks (see
+ * {@link CortexGraphBlockMapping}), which behaves better on network filesystems where page faults on a mapped file
+ * are slow and serialized.  The backend can be forced with the 'graphio' system property (-Dgraphio=mmap or
+ * -Dgraphio=pread); by default (-Dgraphio=auto) files on network filesystems are read with positional reads and all
+ * others are mapped.  The block and pool sizes of the positional-read backend are set with the 'preadblocksize'
+ * (bytes per block, 64 KB by default) and 'preadblocks' (blocks in the pool, 1024 by default) system properties.  The
+ * pool is shared by all open graphs, so it holds at most preadblocks x preadblocksize bytes of heap (64 MB by default)
+ * for the whole process, however many graphs are read this way.
+ */
+abstract class CortexGraphMapping {
+    static final String MMAP = "mmap";
+    static final String PREAD = "pread";
+    static final String AUTO = "auto";
+
+    private static final Set<String> NETWORK_FILESYSTEMS = new HashSet<>(Arrays.asList(
+            "nfs", "nfs4", "lustre", "gpfs", "cifs", "smbfs", "smb2", "smb3", "ceph", "fuse.sshfs", "beegfs"
+    ));
+
+    /**
+     * Get the buffer holding a record.
+     *
+     * @param recordIndex  the record index
+     * @return             the buffer holding the record
+     */
+    abstract ByteBuffer segment(long recordIndex);
+
+    /**
+     * Get the position of a record within the buffer returned by {@link #segment(long)}.
+     *
+     * @param recordIndex  the record index
+     * @return             the offset of the record in its buffer
+     */
+    abstract int offset(long recordIndex);
+
+    abstract String getName();
+
+    long getBlockHits() { return 0; }
+
+    long getBlockMisses() { return 0; }
+
+    void close() throws IOException {}
+
+    /**
+     * Open the records section of a graph with the backend configured for the file.
+     *
+     * @param file        the graph file
+     * @param channel     an open channel on the graph file
+     * @param dataOffset  the position of the first record
+     * @param recordSize  the size of one record
+     * @param numRecords  the number of records
+     * @return            the mapping
+     * @throws IOException if the file could not be mapped or read
+     */
+    static CortexGraphMapping open(File file, FileChannel channel, long dataOffset, long recordSize, long numRecords) throws IOException {
+        if (PREAD.equals(getConfiguredBackend(file))) {
+            return new CortexGraphBlockMapping(file, dataOffset, recordSize, numRecords, CortexGraphBlockMapping.getConfiguredBlockSize(), CortexGraphBlockMapping.getConfiguredBlocks());
+        }
+
+        return new CortexGraphMemoryMapping(channel, dataOffset, recordSize, numRecords);
+    }
+
+    /**
+     * Get the backend requested on the command line, resolving 'auto' by the type of filesystem the file is on.
+     *
+     * @param file  the graph file
+     * @return      "mmap" or "pread"
+     */
+    static String getConfiguredBackend(File file) {
+        String backend = System.getProperty("graphio", AUTO);
+
+        if (MMAP.equals(backend) || PREAD.equals(backend)) {
+            return backend;
+        }
+
+        if (!AUTO.equals(backend)) {
+            throw new CortexJDKException("Graph I/O backend must be one of " + MMAP + ", " + PREAD + " or " + AUTO + " (got '" + backend + "')");
+        }
+
+        try {
+            return NETWORK_FILESYSTEMS.contains(Files.getFileStore(file.toPath()).type().toLowerCase()) ? PREAD : MMAP;
+        } catch (IOException e) {
+            return MMAP;
+        }
+    }
+}
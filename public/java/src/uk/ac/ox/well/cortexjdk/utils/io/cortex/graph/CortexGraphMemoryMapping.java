@@ -0,0 +1,42 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory map over the records section of a Cortex graph.  The file is mapped in segments that each hold
+ * a whole number of records, so a record never straddles two buffers and can be decoded with absolute reads.
+ */
+class CortexGraphMemoryMapping extends CortexGraphMapping {
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    private final long recordSize;
+    private final long recordsPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    CortexGraphMemoryMapping(FileChannel channel, long dataOffset, long recordSize, long numRecords) throws IOException {
+        this.recordSize = recordSize;
+        this.recordsPerSegment = Math.max(1, MAX_SEGMENT_SIZE / recordSize);
+
+        int numSegments = (int) ((numRecords + recordsPerSegment - 1) / recordsPerSegment);
+        segments = new MappedByteBuffer[numSegments];
+
+        for (int s = 0; s < numSegments; s++) {
+            long firstRecord = s*recordsPerSegment;
+            long segmentRecords = Math.min(recordsPerSegment, numRecords - firstRecord);
+
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + firstRecord*recordSize, segmentRecords*recordSize);
+        }
+    }
+
+    @Override
+    ByteBuffer segment(long recordIndex) { return segments[(int) (recordIndex / recordsPerSegment)]; }
+
+    @Override
+    int offset(long recordIndex) { return (int) ((recordIndex % recordsPerSegment) * recordSize); }
+
+    @Override
+    String getName() { return MMAP; }
+}
@@ -0,0 +1,139 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Batched lookup of many kmers in a sorted Cortex graph.  The queries are sorted by binary kmer and answered in a
+ * single forward pass over the graph: each query is found by galloping forward from the record that answered the
+ * previous one, doubling the step until it overshoots and then bisecting the last step.  A dense query set therefore
+ * reads the graph almost sequentially, while a sparse one costs O(log gap) record reads per query.
+ */
+class CortexGraphMergeJoin {
+    private final CortexGraphMapping mapping;
+    private final int kmerBits;
+    private final long numRecords;
+
+    CortexGraphMergeJoin(CortexGraphMapping mapping, int kmerBits, long numRecords) {
+        this.mapping = mapping;
+        this.kmerBits = kmerBits;
+        this.numRecords = numRecords;
+    }
+
+    /**
+     * Find the records holding a batch of binary kmers.  The kmers must be in their canonical orientation.
+     *
+     * @param binaryKmers  the binary kmers, as stored in a record; null entries are treated as misses
+     * @return             the record index for each kmer in the order given, or -1 where the kmer is not in the graph
+     */
+    long[] find(long[][] binaryKmers) {
+        long[][] queries = new long[binaryKmers.length][];
+        int[] order = new int[binaryKmers.length];
+        int numQueries = 0;
+
+        for (int q = 0; q < binaryKmers.length; q++) {
+            if (binaryKmers[q] != null) {
+                queries[q] = new long[kmerBits];
+                for (int b = 0; b < kmerBits; b++) {
+                    queries[q][b] = Long.reverseBytes(binaryKmers[q][b]);
+                }
+
+                order[numQueries++] = q;
+            }
+        }
+
+        IntArrays.quickSort(order, 0, numQueries, new AbstractIntComparator() {
+            @Override
+            public int compare(int a, int b) { return CortexGraphMergeJoin.compare(queries[a], queries[b]); }
+        });
+
+        long[] indices = new long[binaryKmers.length];
+        Arrays.fill(indices, -1);
+
+        long lo = 0;
+        for (int i = 0; i < numQueries && lo < numRecords; i++) {
+            long[] query = queries[order[i]];
+
+            lo = gallop(query, lo);
+
+            if (lo < numRecords && compare(query, lo) == 0) {
+                indices[order[i]] = lo;
+            }
+        }
+
+        return indices;
+    }
+
+    /**
+     * Find the first record at or after lo whose kmer is not less than the query.
+     */
+    private long gallop(long[] query, long lo) {
+        if (compare(query, lo) <= 0) {
+            return lo;
+        }
+
+        long below = lo;
+        long step = 1;
+        long hi;
+
+        while (true) {
+            hi = below + step;
+
+            if (hi >= numRecords) {
+                hi = numRecords;
+                break;
+            }
+
+            if (compare(query, hi) <= 0) {
+                break;
+            }
+
+            below = hi;
+            step <<= 1;
+        }
+
+        // The record at 'below' is less than the query, and the record at 'hi' (if any) is not
+        long left = below + 1;
+        while (left < hi) {
+            long mid = left + (hi - left) / 2;
+
+            if (compare(query, mid) > 0) {
+                left = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return hi;
+    }
+
+    private int compare(long[] query, long i) {
+        ByteBuffer segment = mapping.segment(i);
+        int offset = mapping.offset(i);
+
+        for (int b = 0; b < kmerBits; b++) {
+            int c = Long.compareUnsigned(query[b], Long.reverseBytes(segment.getLong(offset + 8*b)));
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+
+    private static int compare(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            int c = Long.compareUnsigned(a[w], b[w]);
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,146 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.utils.BinaryFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide registry of open Cortex graph files.  Graphs opened on the same file share one parsed header, one
+ * read-only mapping and one record cache, so opening a graph that is already open (e.g. once as an argument and
+ * again inside a {@link uk.ac.ox.well.cortexjdk.utils.io.cortex.collection.CortexCollection}) costs neither a
+ * second parse nor a cold cache.  Files are keyed by canonical path and identified by file key, size and
+ * modification time, so a graph that has been rewritten since it was first opened gets a fresh entry.  Entries are
+ * reference counted and the file is closed when the last graph using it is closed.  The registry itself holds entries
+ * only weakly, so graphs that are dropped without being closed can still be garbage collected.
+ */
+class CortexGraphRegistry {
+    private static final Map<File, WeakReference<Entry>> entries = new HashMap<>();
+
+    private CortexGraphRegistry() {}
+
+    /**
+     * Get the shared state for a graph file, opening and parsing the file if no current entry exists.
+     *
+     * @param cortexFile  the graph file
+     * @return            the shared entry, with one more reference held on it
+     */
+    static synchronized Entry acquire(File cortexFile) {
+        if (!cortexFile.exists()) {
+            throw new CortexJDKException("Cortex graph file '" + cortexFile.getAbsolutePath() + "' not found");
+        }
+
+        File canonicalFile;
+        List<Object> identity;
+        try {
+            canonicalFile = cortexFile.getCanonicalFile();
+
+            BasicFileAttributes attrs = Files.readAttributes(canonicalFile.toPath(), BasicFileAttributes.class);
+            identity = Arrays.asList(attrs.fileKey(), attrs.size(), attrs.lastModifiedTime());
+        } catch (IOException e) {
+            throw new CortexJDKException("Error while parsing Cortex graph file '" + cortexFile.getAbsolutePath() + "': " + e);
+        }
+
+        entries.values().removeIf(ref -> ref.get() == null);
+
+        WeakReference<Entry> ref = entries.get(canonicalFile);
+        Entry entry = ref == null ? null : ref.get();
+        if (entry == null || !entry.identity.equals(identity)) {
+            entry = new Entry(canonicalFile, identity);
+            entries.put(canonicalFile, new WeakReference<>(entry));
+        }
+
+        entry.references++;
+
+        return entry;
+    }
+
+    /**
+     * Give up one reference on a shared entry, closing its file once no graph is using it.  Records already mapped
+     * stay readable, as the mapping outlives the channel it was made from.
+     *
+     * @param entry  the entry to release
+     */
+    static synchronized void release(Entry entry) {
+        if (--entry.references > 0) {
+            return;
+        }
+
+        WeakReference<Entry> ref = entries.get(entry.file);
+        if (ref != null && ref.get() == entry) {
+            entries.remove(entry.file);
+        }
+
+        try {
+            entry.mapping.close();
+            entry.in.close();
+        } catch (IOException e) {
+            throw new CortexJDKException("Error while closing graph file", e);
+        }
+    }
+
+    static synchronized int getNumOpenFiles() {
+        entries.values().removeIf(ref -> ref.get() == null);
+
+        return entries.size();
+    }
+
+    static class Entry {
+        private final File file;
+        private final List<Object> identity;
+        private int references = 0;
+
+        final BinaryFile in;
+        final CortexHeader header;
+        final long dataOffset;
+        final long recordSize;
+        final long numRecords;
+        final CortexGraphMapping mapping;
+        final CortexRecordCache cache;
+
+        private Entry(File file, List<Object> identity) {
+            this.file = file;
+            this.identity = identity;
+
+            try {
+                in = new BinaryFile(file, "r");
+            } catch (IOException e) {
+                throw new CortexJDKException("Cortex graph file '" + file.getAbsolutePath() + "' not found: " + e);
+            }
+
+            try {
+                header = CortexGraph.readHeader(in, file);
+
+                long size = in.getChannel().size();
+                dataOffset = in.getFilePointer();
+                long dataSize = size - dataOffset;
+
+                recordSize = (8*header.getKmerBits() + 5*header.getNumColors());
+                numRecords = (dataSize / recordSize);
+
+                mapping = CortexGraphMapping.open(file, in.getChannel(), dataOffset, recordSize, numRecords);
+                cache = new CortexRecordLRUCache(CortexRecordLRUCache.getConfiguredBudget());
+            } catch (IOException e) {
+                closeQuietly();
+                throw new CortexJDKException("Error while parsing Cortex graph file '" + file.getAbsolutePath() + "': " + e);
+            } catch (RuntimeException e) {
+                closeQuietly();
+                throw e;
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                in.close();
+            } catch (IOException e) {}
+        }
+    }
+}
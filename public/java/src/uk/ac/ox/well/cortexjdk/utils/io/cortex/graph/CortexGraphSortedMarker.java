@@ -0,0 +1,113 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import it.unimi.dsi.fastutil.io.BinIO;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.stream.LongStream;
+
+/**
+ * A sidecar marker (stored next to the graph as graph.ctx.sorted) recording that every record of a Cortex graph has
+ * been checked to be in kmer order.  A graph with a marker skips the validation pass on open and goes straight to
+ * lookups that trust the order; without one, the order is validated once, on the first lookup that needs it.  A
+ * marker written for a different version of the graph is ignored with a warning.
+ */
+public class CortexGraphSortedMarker implements CortexGraphStamp.Stamped {
+    private static final long serialVersionUID = 1L;
+
+    public static final String EXTENSION = ".sorted";
+
+    private static final long RECORDS_PER_RANGE = 1L << 20;
+
+    private final CortexGraphStamp stamp;
+
+    private CortexGraphSortedMarker(CortexGraph graph) {
+        this.stamp = new CortexGraphStamp(graph);
+    }
+
+    public static File getMarkerFile(File cortexFile) {
+        return new File(cortexFile.getAbsolutePath() + EXTENSION);
+    }
+
+    /**
+     * Validate the order of a graph and build a marker for it.
+     *
+     * @param graph  the graph to check
+     * @return       the marker
+     * @throws CortexJDKException if the records are not sorted
+     */
+    public static CortexGraphSortedMarker build(CortexGraph graph) {
+        if (!graph.isSorted()) {
+            throw new CortexJDKException("Records are not sorted in Cortex graph '" + graph.getFile().getAbsolutePath() + "'");
+        }
+
+        return new CortexGraphSortedMarker(graph);
+    }
+
+    /**
+     * Load the marker for a graph, checking that it was written for the same version of the graph.  A stale or
+     * unreadable marker is ignored with a warning.
+     *
+     * @param markerFile  the marker file
+     * @param graph       the graph the marker should describe
+     * @return            the marker, or null if it is stale or unreadable
+     */
+    public static CortexGraphSortedMarker load(File markerFile, CortexGraph graph) {
+        return CortexGraphStamp.load(markerFile, CortexGraphSortedMarker.class, graph, "sort marker");
+    }
+
+    @Override
+    public CortexGraphStamp getStamp() { return stamp; }
+
+    public void store(File markerFile) {
+        try {
+            BinIO.storeObject(this, markerFile);
+        } catch (IOException e) {
+            throw new CortexJDKException("Could not write sort marker '" + markerFile.getAbsolutePath() + "'", e);
+        }
+    }
+
+    /**
+     * Check that every record is no greater than the one after it.  The graph is split into ranges of records that
+     * are checked in parallel on the common fork-join pool, and the pass stops early once any range finds a record
+     * out of order.
+     *
+     * @param mapping     the mapped records
+     * @param kmerBits    the number of words per kmer
+     * @param numRecords  the number of records
+     * @return            true if the records are sorted
+     */
+    static boolean validate(CortexGraphMapping mapping, int kmerBits, long numRecords) {
+        long numRanges = (numRecords + RECORDS_PER_RANGE - 1) / RECORDS_PER_RANGE;
+
+        return LongStream.range(0, numRanges).parallel().allMatch(r -> {
+            long first = r*RECORDS_PER_RANGE;
+            long last = Math.min(numRecords - 1, first + RECORDS_PER_RANGE);
+
+            for (long i = first; i < last; i++) {
+                if (compare(mapping, kmerBits, i, i + 1) > 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        });
+    }
+
+    private static int compare(CortexGraphMapping mapping, int kmerBits, long i, long j) {
+        ByteBuffer si = mapping.segment(i), sj = mapping.segment(j);
+        int oi = mapping.offset(i), oj = mapping.offset(j);
+
+        for (int b = 0; b < kmerBits; b++) {
+            int c = Long.compareUnsigned(Long.reverseBytes(si.getLong(oi + 8*b)), Long.reverseBytes(sj.getLong(oj + 8*b)));
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,276 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * External merge sort of a Cortex graph by binary kmer.  Records are read into a run of packed primitive arrays
+ * sized to fit the memory budget, and each full run is sorted on all cores and spilled to a temporary graph file.
+ * The runs are then merged with a binary heap into the output.  A graph that fits in a single run is written
+ * straight to the output without touching the disk.
+ */
+public class CortexGraphSorter {
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final CortexGraph graph;
+    private final int kmerBits;
+    private final int numColors;
+    private final int runSize;
+
+    private File tempDirectory = null;
+
+    /**
+     * @param graph         the graph to sort
+     * @param memoryBudget  the maximum number of bytes to hold in memory for a single run
+     */
+    public CortexGraphSorter(CortexGraph graph, long memoryBudget) {
+        this.graph = graph;
+        this.kmerBits = graph.getKmerBits();
+        this.numColors = graph.getNumColors();
+
+        // Each record in a run costs its kmer words, coverages, edges and one int of sort order
+        long bytesPerRecord = 8L*kmerBits + 5L*numColors + 4L;
+        long maxRunSize = MAX_ARRAY_LENGTH / Math.max(1, Math.max(kmerBits, numColors));
+        long size = Math.min(Math.min(memoryBudget / bytesPerRecord, maxRunSize), Math.max(1, graph.getNumRecords()));
+
+        if (size < 1) {
+            throw new CortexJDKException("Memory budget of " + memoryBudget + " bytes is too small to hold a single record of '" + graph.getFile().getAbsolutePath() + "'");
+        }
+
+        this.runSize = (int) size;
+    }
+
+    /**
+     * Set the directory in which sorted runs are spilled.  Defaults to the system temporary directory.
+     *
+     * @param tempDirectory  the directory for temporary files
+     */
+    public void setTempDirectory(File tempDirectory) { this.tempDirectory = tempDirectory; }
+    public File getTempDirectory() { return tempDirectory; }
+
+    public int getRunSize() { return runSize; }
+    public long getNumRuns() { return (graph.getNumRecords() + runSize - 1) / runSize; }
+
+    /**
+     * Write the records of the graph to the writer in sorted order.  The writer's header is set to the graph's; the
+     * caller remains responsible for closing the writer.
+     *
+     * @param out  the writer for the sorted graph
+     */
+    public void sort(CortexGraphWriter out) {
+        out.setHeader(graph.getHeader());
+
+        List<File> spills = new ArrayList<>();
+
+        try {
+            Run run = new Run(runSize);
+
+            for (CortexRecordView cv : graph.views()) {
+                if (run.size == runSize) {
+                    run.sort();
+                    spills.add(spill(run));
+                    run.clear();
+                }
+
+                run.add(cv);
+            }
+
+            run.sort();
+
+            if (spills.isEmpty()) {
+                run.writeTo(out);
+            } else {
+                spills.add(spill(run));
+
+                // Release the run before the merge so the space is available to the reader buffers
+                run = null;
+
+                merge(spills, out);
+            }
+        } finally {
+            for (File spill : spills) {
+                spill.delete();
+            }
+        }
+    }
+
+    private File spill(Run run) {
+        try {
+            File spill = File.createTempFile("cortexsort", ".ctx", tempDirectory);
+            spill.deleteOnExit();
+
+            CortexGraphWriter cgw = new CortexGraphWriter(spill);
+            cgw.setHeader(graph.getHeader());
+            cgw.setBackgroundWriting(true);
+
+            run.writeTo(cgw);
+
+            cgw.close();
+
+            return spill;
+        } catch (IOException e) {
+            throw new CortexJDKException("Unable to create temporary file for sorting '" + graph.getFile().getAbsolutePath() + "'", e);
+        }
+    }
+
+    private void merge(List<File> spills, CortexGraphWriter out) {
+        int numRuns = spills.size();
+
+        List<CortexGraph> runs = new ArrayList<>();
+        List<Iterator<CortexRecordView>> sources = new ArrayList<>();
+        CortexRecordView[] current = new CortexRecordView[numRuns];
+        long[][] keys = new long[numRuns][kmerBits];
+
+        int[] heap = new int[numRuns];
+        int heapSize = 0;
+
+        try {
+            for (int r = 0; r < numRuns; r++) {
+                CortexGraph cg = new CortexGraph(spills.get(r));
+                runs.add(cg);
+                sources.add(cg.views().iterator());
+
+                if (advance(sources.get(r), r, current, keys)) {
+                    heap[heapSize++] = r;
+                }
+            }
+
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(heap, heapSize, i, keys);
+            }
+
+            while (heapSize > 0) {
+                int r = heap[0];
+
+                out.addRecord(current[r]);
+
+                if (!advance(sources.get(r), r, current, keys)) {
+                    heap[0] = heap[--heapSize];
+                }
+
+                siftDown(heap, heapSize, 0, keys);
+            }
+        } finally {
+            for (CortexGraph cg : runs) {
+                cg.close();
+            }
+        }
+    }
+
+    private boolean advance(Iterator<CortexRecordView> source, int r, CortexRecordView[] current, long[][] keys) {
+        if (!source.hasNext()) {
+            return false;
+        }
+
+        current[r] = source.next();
+
+        long[] binaryKmer = current[r].getBinaryKmer();
+        for (int b = 0; b < kmerBits; b++) {
+            keys[r][b] = Long.reverseBytes(binaryKmer[b]);
+        }
+
+        return true;
+    }
+
+    private void siftDown(int[] heap, int heapSize, int i, long[][] keys) {
+        while (true) {
+            int smallest = i;
+            int left = 2*i + 1;
+            int right = left + 1;
+
+            if (left < heapSize && compare(keys[heap[left]], 0, keys[heap[smallest]], 0) < 0) { smallest = left; }
+            if (right < heapSize && compare(keys[heap[right]], 0, keys[heap[smallest]], 0) < 0) { smallest = right; }
+
+            if (smallest == i) {
+                return;
+            }
+
+            int tmp = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = tmp;
+
+            i = smallest;
+        }
+    }
+
+    private int compare(long[] a, int aOffset, long[] b, int bOffset) {
+        for (int w = 0; w < kmerBits; w++) {
+            int c = Long.compareUnsigned(a[aOffset + w], b[bOffset + w]);
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * A run of records packed into primitive arrays.  Kmer words are held in comparison order so that sorting
+     * needs no decoding, and records are sorted through a permutation rather than moved.
+     */
+    private class Run {
+        private final long[] keys;
+        private final int[] coverages;
+        private final byte[] edges;
+        private final int[] order;
+        private int size = 0;
+
+        Run(int capacity) {
+            keys = new long[capacity*kmerBits];
+            coverages = new int[capacity*numColors];
+            edges = new byte[capacity*numColors];
+            order = new int[capacity];
+        }
+
+        void add(CortexRecord cr) {
+            long[] binaryKmer = cr.getBinaryKmer();
+            for (int b = 0; b < kmerBits; b++) {
+                keys[size*kmerBits + b] = Long.reverseBytes(binaryKmer[b]);
+            }
+
+            System.arraycopy(cr.getCoverages(), 0, coverages, size*numColors, numColors);
+            System.arraycopy(cr.getEdges(), 0, edges, size*numColors, numColors);
+
+            size++;
+        }
+
+        void sort() {
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+
+            IntArrays.parallelQuickSort(order, 0, size, new AbstractIntComparator() {
+                @Override
+                public int compare(int a, int b) { return CortexGraphSorter.this.compare(keys, a*kmerBits, keys, b*kmerBits); }
+            });
+        }
+
+        void writeTo(CortexGraphWriter cgw) {
+            CortexRecordView record = new CortexRecordView(graph.getKmerSize(), kmerBits, numColors);
+            long[] binaryKmer = record.getBinaryKmer();
+
+            for (int i = 0; i < size; i++) {
+                int r = order[i];
+
+                for (int b = 0; b < kmerBits; b++) {
+                    binaryKmer[b] = Long.reverseBytes(keys[r*kmerBits + b]);
+                }
+
+                System.arraycopy(coverages, r*numColors, record.getCoverages(), 0, numColors);
+                System.arraycopy(edges, r*numColors, record.getEdges(), 0, numColors);
+
+                cgw.addRecord(record);
+            }
+        }
+
+        void clear() { size = 0; }
+    }
+}
@@ -0,0 +1,75 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import it.unimi.dsi.fastutil.io.BinIO;
+import uk.ac.ox.well.cortexjdk.Main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * The shape and modification time of a graph file, as recorded by a sidecar (an index, filter or marker stored next
+ * to the graph) when it is built.  A sidecar whose stamp no longer matches its graph was built from a different
+ * version of the file and is ignored with a warning, so that a rewritten graph can still be opened and re-indexed.
+ */
+final class CortexGraphStamp implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int kmerSize;
+    private final int kmerBits;
+    private final long numRecords;
+    private final long graphLength;
+    private final long graphLastModified;
+
+    CortexGraphStamp(CortexGraph graph) {
+        this.kmerSize = graph.getKmerSize();
+        this.kmerBits = graph.getKmerBits();
+        this.numRecords = graph.getNumRecords();
+        this.graphLength = graph.getFile().length();
+        this.graphLastModified = graph.getFile().lastModified();
+    }
+
+    long getNumRecords() { return numRecords; }
+
+    boolean matches(CortexGraph graph) {
+        return kmerSize == graph.getKmerSize() &&
+               kmerBits == graph.getKmerBits() &&
+               numRecords == graph.getNumRecords() &&
+               graphLength == graph.getFile().length() &&
+               graphLastModified == graph.getFile().lastModified();
+    }
+
+    /**
+     * Load a sidecar for a graph, ignoring it if it cannot be read or was built from a different version of the graph.
+     *
+     * @param sidecarFile  the sidecar file
+     * @param type         the sidecar class
+     * @param graph        the graph the sidecar should describe
+     * @param description  what the sidecar is, for the warning
+     * @return             the sidecar, or null if it is unreadable or stale
+     */
+    static <T extends Stamped> T load(File sidecarFile, Class<T> type, CortexGraph graph, String description) {
+        Object sidecar;
+
+        try {
+            sidecar = BinIO.loadObject(sidecarFile);
+        } catch (IOException | ClassNotFoundException e) {
+            Main.getLogger().warn("Ignoring unreadable {} '{}' ({})", description, sidecarFile.getAbsolutePath(), e.getMessage());
+            return null;
+        }
+
+        if (!type.isInstance(sidecar) || !type.cast(sidecar).getStamp().matches(graph)) {
+            Main.getLogger().warn("Ignoring stale {} '{}' (graph '{}' was modified after it was indexed)", description, sidecarFile.getAbsolutePath(), graph.getFile().getAbsolutePath());
+            return null;
+        }
+
+        return type.cast(sidecar);
+    }
+
+    /**
+     * A sidecar that records the stamp of the graph it was built from.
+     */
+    interface Stamped extends Serializable {
+        CortexGraphStamp getStamp();
+    }
+}
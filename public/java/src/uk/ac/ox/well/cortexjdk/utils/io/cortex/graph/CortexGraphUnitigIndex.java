@@ -0,0 +1,386 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import it.unimi.dsi.fastutil.io.BinIO;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * A sidecar index (stored next to the graph as graph.ctx.unitigs by the IndexUnitigs command) of the maximal unitigs
+ * of a Cortex graph in one or more colours.  A unitig is a chain of kmers in which every kmer but the last has exactly
+ * one out-edge in the colour and every kmer but the first has exactly one in-edge, so a traversal that enters one can
+ * only leave at its ends.
+ *
+ * For each colour, unitigs are numbered from 0 and each is stored as the record indices of its kmers, in order, and
+ * whether each kmer appears in its canonical orientation or as its reverse complement.  Every record with coverage in
+ * the colour belongs to exactly one unitig, and the index maps record indices back to unitig positions.  An index
+ * built from a different version of the graph is ignored with a warning.
+ */
+public class CortexGraphUnitigIndex implements CortexGraphStamp.Stamped {
+    private static final long serialVersionUID = 1L;
+
+    public static final String EXTENSION = ".unitigs";
+
+    private static final long RECORDS_PER_RANGE = 1L << 16;
+
+    private final CortexGraphStamp stamp;
+    private final int kmerSize;
+    private final long numRecords;
+
+    private final int[] colors;
+    private final int[][] unitigOffsets;
+    private final long[][] unitigKmers;
+    private final int[][] recordSlots;
+
+    private transient CortexGraph graph;
+
+    private CortexGraphUnitigIndex(CortexGraph graph, int[] colors) {
+        if (graph.getNumRecords() > Integer.MAX_VALUE - 8) {
+            throw new CortexJDKException("Graph '" + graph.getFile().getAbsolutePath() + "' has too many records for a unitig index");
+        }
+
+        this.stamp = new CortexGraphStamp(graph);
+        this.kmerSize = graph.getKmerSize();
+        this.numRecords = graph.getNumRecords();
+
+        this.colors = colors;
+        this.unitigOffsets = new int[colors.length][];
+        this.unitigKmers = new long[colors.length][];
+        this.recordSlots = new int[colors.length][];
+
+        this.graph = graph;
+    }
+
+    public static File getUnitigIndexFile(File cortexFile) {
+        return new File(cortexFile.getAbsolutePath() + EXTENSION);
+    }
+
+    /**
+     * Find the maximal unitigs of a graph in each of the given colours.  The records are split into ranges that are
+     * scanned in parallel on the common fork-join pool, each walking the unitigs that start in its range; kmers left
+     * over form cycles with no start, and are walked afterwards.  The graph must be sorted or have a kmer index.
+     *
+     * @param graph   the graph to index
+     * @param colors  the colours to index
+     * @return        the index
+     */
+    public static CortexGraphUnitigIndex build(CortexGraph graph, Collection<Integer> colors) {
+        int[] cs = colors.stream().mapToInt(Integer::intValue).distinct().toArray();
+
+        for (int c : cs) {
+            if (c < 0 || c >= graph.getNumColors()) {
+                throw new CortexJDKException("Color '" + c + "' is not in graph '" + graph.getFile().getAbsolutePath() + "'");
+            }
+        }
+
+        CortexGraphUnitigIndex unitigs = new CortexGraphUnitigIndex(graph, cs);
+
+        for (int ci = 0; ci < cs.length; ci++) {
+            unitigs.buildColor(ci);
+        }
+
+        return unitigs;
+    }
+
+    /**
+     * Load the index for a graph, checking that it was built from the same version of the graph.  A stale or
+     * unreadable index is ignored with a warning.
+     *
+     * @param unitigFile  the index file
+     * @param graph       the graph the index should describe
+     * @return            the index, or null if it is stale or unreadable
+     */
+    public static CortexGraphUnitigIndex load(File unitigFile, CortexGraph graph) {
+        CortexGraphUnitigIndex unitigs = CortexGraphStamp.load(unitigFile, CortexGraphUnitigIndex.class, graph, "unitig index");
+
+        if (unitigs != null) {
+            unitigs.graph = graph;
+        }
+
+        return unitigs;
+    }
+
+    @Override
+    public CortexGraphStamp getStamp() { return stamp; }
+
+    public void store(File unitigFile) {
+        try {
+            BinIO.storeObject(this, unitigFile);
+        } catch (IOException e) {
+            throw new CortexJDKException("Could not write unitig index '" + unitigFile.getAbsolutePath() + "'", e);
+        }
+    }
+
+    public CortexGraph getGraph() { return graph; }
+
+    public int[] getColors() { return colors.clone(); }
+
+    public boolean hasColor(int color) { return colorIndex(color) >= 0; }
+
+    public int getNumUnitigs(int color) { return unitigOffsets[checkedColorIndex(color)].length - 1; }
+
+    /**
+     * Get the number of kmers in a unitig.
+     *
+     * @param color   the colour
+     * @param unitig  the unitig id
+     * @return        the number of kmers
+     */
+    public int getLength(int color, int unitig) {
+        int[] offsets = unitigOffsets[checkedColorIndex(color)];
+
+        return offsets[unitig + 1] - offsets[unitig];
+    }
+
+    /**
+     * Get the index of the record of a kmer in a unitig, for use with {@link CortexGraph#getRecord(long)}.
+     *
+     * @param color   the colour
+     * @param unitig  the unitig id
+     * @param i       the position of the kmer in the unitig
+     * @return        the record index
+     */
+    public long getRecordIndex(int color, int unitig, int i) { return getEntry(color, unitig, i) >>> 1; }
+
+    /**
+     * Check whether a kmer appears in a unitig as the reverse complement of its record's kmer.
+     *
+     * @param color   the colour
+     * @param unitig  the unitig id
+     * @param i       the position of the kmer in the unitig
+     * @return        true if the kmer is flipped
+     */
+    public boolean isFlipped(int color, int unitig, int i) { return (getEntry(color, unitig, i) & 1) == 1; }
+
+    public CortexRecord getRecord(int color, int unitig, int i) { return graph.getRecord(getRecordIndex(color, unitig, i)); }
+
+    /**
+     * Get a kmer of a unitig, oriented along the unitig.
+     *
+     * @param color   the colour
+     * @param unitig  the unitig id
+     * @param i       the position of the kmer in the unitig
+     * @return        the kmer
+     */
+    public CortexPackedKmer getKmer(int color, int unitig, int i) {
+        return orient(getRecord(color, unitig, i), isFlipped(color, unitig, i));
+    }
+
+    public CortexPackedKmer getStartKmer(int color, int unitig) { return getKmer(color, unitig, 0); }
+
+    public CortexPackedKmer getEndKmer(int color, int unitig) { return getKmer(color, unitig, getLength(color, unitig) - 1); }
+
+    /**
+     * Find the unitig that holds a record.
+     *
+     * @param color        the colour
+     * @param recordIndex  the record index
+     * @return             the unitig id, or -1 if the record has no coverage in the colour
+     */
+    public int findUnitig(int color, long recordIndex) {
+        int ci = checkedColorIndex(color);
+        int slot = recordSlots[ci][(int) recordIndex];
+
+        if (slot < 0) {
+            return -1;
+        }
+
+        int u = Arrays.binarySearch(unitigOffsets[ci], slot);
+
+        return u >= 0 ? u : -u - 2;
+    }
+
+    /**
+     * Find the position of a record in its unitig.
+     *
+     * @param color        the colour
+     * @param recordIndex  the record index
+     * @return             the position, or -1 if the record has no coverage in the colour
+     */
+    public int findPosition(int color, long recordIndex) {
+        int u = findUnitig(color, recordIndex);
+
+        return u < 0 ? -1 : recordSlots[checkedColorIndex(color)][(int) recordIndex] - unitigOffsets[checkedColorIndex(color)][u];
+    }
+
+    private long getEntry(int color, int unitig, int i) {
+        int ci = checkedColorIndex(color);
+
+        if (i < 0 || i >= getLength(color, unitig)) {
+            throw new CortexJDKException("Position " + i + " is outside unitig " + unitig + " (length " + getLength(color, unitig) + ")");
+        }
+
+        return unitigKmers[ci][unitigOffsets[ci][unitig] + i];
+    }
+
+    private int colorIndex(int color) {
+        for (int ci = 0; ci < colors.length; ci++) {
+            if (colors[ci] == color) {
+                return ci;
+            }
+        }
+
+        return -1;
+    }
+
+    private int checkedColorIndex(int color) {
+        int ci = colorIndex(color);
+
+        if (ci < 0) {
+            throw new CortexJDKException("Color '" + color + "' is not in unitig index");
+        }
+
+        return ci;
+    }
+
+    private CortexPackedKmer orient(CortexRecord cr, boolean flipped) {
+        CortexPackedKmer pk = CortexPackedKmer.fromBinaryKmer(cr.getBinaryKmer(), kmerSize);
+
+        return flipped ? pk.reverseComplement() : pk;
+    }
+
+    // Kmers are handled during the build as entries: the record index shifted left by one, with the low bit set if
+    // the kmer is the reverse complement of its record's kmer.  The reverse complement of an entry is entry ^ 1.
+
+    private void buildColor(int ci) {
+        int color = colors[ci];
+        long numRanges = (numRecords + RECORDS_PER_RANGE - 1) / RECORDS_PER_RANGE;
+
+        List<long[]> unitigs = LongStream.range(0, numRanges).parallel().mapToObj(r -> {
+            List<long[]> us = new ArrayList<>();
+
+            for (long i = r*RECORDS_PER_RANGE; i < Math.min(numRecords, (r + 1)*RECORDS_PER_RANGE); i++) {
+                CortexRecord cr = graph.getRecord(i);
+
+                if (cr.getCoverage(color) > 0) {
+                    for (long start : new long[] { i << 1, (i << 1) | 1 }) {
+                        if (isStart(start, cr, color)) {
+                            long[] unitig = walk(start, cr, color, null);
+                            long rcStart = unitig[unitig.length - 1] ^ 1;
+
+                            // Each unitig is found from both of its ends; keep the walk from the lower one
+                            if (start <= rcStart || !isStart(rcStart, graph.getRecord(rcStart >>> 1), color)) {
+                                us.add(unitig);
+                            }
+                        }
+                    }
+                }
+            }
+
+            return us;
+        }).flatMap(List::stream).collect(Collectors.toList());
+
+        int[] slots = new int[(int) numRecords];
+        Arrays.fill(slots, -1);
+
+        List<Integer> offsets = new ArrayList<>();
+        List<long[]> kmers = new ArrayList<>();
+        int numKmers = 0;
+
+        for (long[] unitig : unitigs) {
+            numKmers = addUnitig(unitig, slots, offsets, kmers, numKmers);
+        }
+
+        // Whatever is left is in a cycle of kmers that each have one edge in and one edge out
+        for (long i = 0; i < numRecords; i++) {
+            if (slots[(int) i] < 0) {
+                CortexRecord cr = graph.getRecord(i);
+
+                if (cr.getCoverage(color) > 0) {
+                    numKmers = addUnitig(walk(i << 1, cr, color, slots), slots, offsets, kmers, numKmers);
+                }
+            }
+        }
+
+        offsets.add(numKmers);
+
+        unitigOffsets[ci] = offsets.stream().mapToInt(Integer::intValue).toArray();
+        unitigKmers[ci] = new long[numKmers];
+        for (int u = 0, pos = 0; u < kmers.size(); u++) {
+            System.arraycopy(kmers.get(u), 0, unitigKmers[ci], pos, kmers.get(u).length);
+            pos += kmers.get(u).length;
+        }
+        recordSlots[ci] = slots;
+    }
+
+    private int addUnitig(long[] unitig, int[] slots, List<Integer> offsets, List<long[]> kmers, int numKmers) {
+        if ((long) numKmers + unitig.length > Integer.MAX_VALUE - 8) {
+            throw new CortexJDKException("Graph '" + graph.getFile().getAbsolutePath() + "' has too many kmers for a unitig index");
+        }
+
+        offsets.add(numKmers);
+        kmers.add(unitig);
+
+        for (int i = 0; i < unitig.length; i++) {
+            int r = (int) (unitig[i] >>> 1);
+
+            if (slots[r] < 0) {
+                slots[r] = numKmers + i;
+            }
+        }
+
+        return numKmers + unitig.length;
+    }
+
+    private long[] walk(long start, CortexRecord startRecord, int color, int[] slots) {
+        List<Long> unitig = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+
+        long e = start;
+        CortexRecord cr = startRecord;
+
+        while (true) {
+            unitig.add(e);
+            seen.add(e >>> 1);
+
+            long n = getAdjacent(e, cr, color, true);
+            if (n < 0 || seen.contains(n >>> 1) || (slots != null && slots[(int) (n >>> 1)] >= 0)) {
+                break;
+            }
+
+            CortexRecord ncr = graph.getRecord(n >>> 1);
+            if (getDegree(n, ncr, color, false) != 1) {
+                break;
+            }
+
+            e = n;
+            cr = ncr;
+        }
+
+        return unitig.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private boolean isStart(long e, CortexRecord cr, int color) {
+        long p = getAdjacent(e, cr, color, false);
+
+        return p < 0 || (p >>> 1) == (e >>> 1) || getDegree(p, graph.getRecord(p >>> 1), color, true) != 1;
+    }
+
+    private static int getDegree(long e, CortexRecord cr, int color, boolean goForward) {
+        return cr.getDegree(color, (e & 1) == 1, goForward);
+    }
+
+    private long getAdjacent(long e, CortexRecord cr, int color, boolean goForward) {
+        if (getDegree(e, cr, color, goForward) != 1) {
+            return -1;
+        }
+
+        boolean isFlipped = (e & 1) == 1;
+        int adjBase = CortexEdges.getAdjacentBases(cr.getEdges()[color], isFlipped, goForward)[0];
+
+        CortexPackedKmer pk = orient(cr, isFlipped);
+        CortexPackedKmer adj = goForward ? pk.append(adjBase) : pk.prepend(adjBase);
+        CortexPackedKmer ck = adj.canonical();
+
+        long r = graph.findRecordIndex(ck.getBinaryKmer());
+        if (r < 0 || graph.getRecord(r).getCoverage(color) == 0) {
+            return -1;
+        }
+
+        return (r << 1) | (ck != adj ? 1 : 0);
+    }
+}
@@ -9,14 +9,33 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a Cortex graph.  Records are packed into a large reusable buffer and written out in multi-megabyte chunks.
+ * With background writing enabled, a second buffer is filled while the first is written by a separate thread, so
+ * the caller can keep producing records while the previous chunk is on its way to disk.
+ */
 public class CortexGraphWriter {
+    private static final int BUFFER_SIZE = 4*1024*1024;
+
     private File cortexFile;
     private FileOutputStream fos = null;
     private FileChannel channel;
 
     private CortexHeader header;
 
+    private int recordSize;
+    private ByteBuffer buffer;
+    private ByteBuffer spare;
+
+    private boolean backgroundWriting = false;
+    private ExecutorService writerThread;
+    private Future<?> pendingWrite;
+
     public CortexGraphWriter(File cortexFile) {
         this.cortexFile = cortexFile;
     }
@@ -28,6 +47,20 @@ public class CortexGraphWriter {
     public void setHeader(CortexHeader header) { this.header = header; }
     public CortexHeader getHeader() { return this.header; }
 
+    /**
+     * Write full buffers on a background thread while the next one is filled.  Must be set before the first record
+     * is added.
+     *
+     * @param backgroundWriting  true to write in the background
+     */
+    public void setBackgroundWriting(boolean backgroundWriting) {
+        if (fos != null) {
+            throw new CortexJDKException("Background writing must be set before writing to '" + cortexFile.getAbsolutePath() + "'");
+        }
+
+        this.backgroundWriting = backgroundWriting;
+    }
+
     private void initialize() {
         try {
             fos = new FileOutputStream(cortexFile);
@@ -92,7 +125,24 @@ public class CortexGraphWriter {
 
             bb.flip();
 
-            channel.write(bb);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+
+            recordSize = 8*header.getKmerBits() + 5*header.getNumColors();
+            int capacity = Math.max(1, BUFFER_SIZE / recordSize) * recordSize;
+
+            buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+
+            if (backgroundWriting) {
+                spare = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+
+                writerThread = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "CortexGraphWriter-" + cortexFile.getName());
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
         } catch (FileNotFoundException e) {
             throw new CortexJDKException("Unable to open file '" + cortexFile.getAbsolutePath() + "'", e);
         } catch (IOException e) {
@@ -103,40 +153,89 @@ public class CortexGraphWriter {
     public void addRecord(CortexRecord record) {
         if (fos == null) { initialize(); }
 
-        ByteBuffer bb = ByteBuffer.allocateDirect(8*header.getKmerBits() + header.getNumColors()*5);
-        bb.clear();
-
-        bb.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.remaining() < recordSize) {
+            flushBuffer();
+        }
 
+        // Kmer words are stored big-endian, coverages little-endian
         long[] binaryKmer = record.getBinaryKmer();
         for (int i = 0; i < header.getKmerBits(); i++) {
-            bb.putLong(binaryKmer[i]);
+            buffer.putLong(Long.reverseBytes(binaryKmer[i]));
         }
 
-        bb.order(ByteOrder.LITTLE_ENDIAN);
-
         int[] coverage = record.getCoverages();
         for (int c = 0; c < header.getNumColors(); c++) {
-            bb.putInt(coverage[c]);
+            buffer.putInt(coverage[c]);
         }
 
         byte[] edges = record.getEdges();
         for (int c = 0; c < header.getNumColors(); c++) {
-            bb.put(edges[c]);
+            buffer.put(edges[c]);
         }
+    }
 
-        bb.flip();
+    private void flushBuffer() {
+        buffer.flip();
 
+        if (backgroundWriting) {
+            waitForPendingWrite();
+
+            ByteBuffer full = buffer;
+            buffer = spare;
+            spare = full;
+
+            pendingWrite = writerThread.submit(() -> write(full));
+        } else {
+            write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer bb) {
         try {
-            channel.write(bb);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
         } catch (IOException e) {
-            throw new CortexJDKException("Unable to write record to file '" + cortexFile.getAbsolutePath() + "'", e);
+            throw new CortexJDKException("Unable to write records to file '" + cortexFile.getAbsolutePath() + "'", e);
+        }
+    }
+
+    private void waitForPendingWrite() {
+        if (pendingWrite != null) {
+            try {
+                pendingWrite.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof CortexJDKException) {
+                    throw (CortexJDKException) e.getCause();
+                }
+
+                throw new CortexJDKException("Unable to write records to file '" + cortexFile.getAbsolutePath() + "'", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CortexJDKException("Interrupted while writing to file '" + cortexFile.getAbsolutePath() + "'", e);
+            } finally {
+                pendingWrite = null;
+            }
         }
     }
 
     public void close() {
         if (fos == null) { initialize(); }
 
+        try {
+            if (buffer.position() > 0) {
+                flushBuffer();
+            }
+
+            waitForPendingWrite();
+        } finally {
+            if (writerThread != null) {
+                writerThread.shutdown();
+            }
+        }
+
         try {
             channel.close();
             fos.close();
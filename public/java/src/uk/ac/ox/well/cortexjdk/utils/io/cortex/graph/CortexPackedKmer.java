@@ -0,0 +1,290 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.jetbrains.annotations.NotNull;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.util.Arrays;
+
+/**
+ * An immutable kmer packed two bits per base (A=0, C=1, G=2, T=3).  Kmers of up to 32 bases are held in a single
+ * long; longer kmers use a small array of words, most significant first.  The first base of the kmer is the most
+ * significant, so the packed value orders kmers exactly as their strings do, and the words are the same as those of
+ * a record's binary kmer (see {@link CortexRecord#encodeBinaryKmer(byte[])}) before the byte reversal applied on
+ * disk.
+ *
+ * Reverse complementing, canonicalising and shifting a base in or out are done with bit operations on the words,
+ * without going through strings or byte arrays, which makes this the cheap representation to use while walking a
+ * graph one kmer at a time.  Convert to bytes or strings only where they are needed.
+ */
+public final class CortexPackedKmer implements Comparable<CortexPackedKmer> {
+    private static final byte[] BASES = { 'A', 'C', 'G', 'T' };
+
+    private final int kmerSize;
+    private final long word;
+    private final long[] words;
+
+    private CortexPackedKmer(int kmerSize, long word, long[] words) {
+        this.kmerSize = kmerSize;
+        this.word = word;
+        this.words = words;
+    }
+
+    public CortexPackedKmer(byte[] kmer) {
+        this.kmerSize = kmer.length;
+
+        int numWords = CortexRecord.getKmerBits(kmerSize);
+        long[] packed = new long[numWords];
+
+        for (int i = 0; i < kmerSize; i++) {
+            int w = numWords - 1 - (kmerSize - 1 - i) / 32;
+            packed[w] = (packed[w] << 2) | encodeBase(kmer[i]);
+        }
+
+        this.word = numWords == 1 ? packed[0] : 0;
+        this.words = numWords == 1 ? null : packed;
+    }
+
+    public CortexPackedKmer(String kmer) { this(kmer.getBytes()); }
+
+    /**
+     * Unpack the binary kmer of a record.
+     *
+     * @param binaryKmer  the binary kmer, as stored in a record
+     * @param kmerSize    the kmer size
+     * @return            the packed kmer
+     */
+    public static CortexPackedKmer fromBinaryKmer(long[] binaryKmer, int kmerSize) {
+        if (binaryKmer.length == 1) {
+            return new CortexPackedKmer(kmerSize, Long.reverseBytes(binaryKmer[0]), null);
+        }
+
+        long[] packed = new long[binaryKmer.length];
+        for (int b = 0; b < binaryKmer.length; b++) {
+            packed[b] = Long.reverseBytes(binaryKmer[b]);
+        }
+
+        return new CortexPackedKmer(kmerSize, 0, packed);
+    }
+
+    /**
+     * Encode a nucleotide as a two-bit base.
+     *
+     * @param base  the nucleotide (A, C, G or T, in either case)
+     * @return      the two-bit base
+     */
+    public static int encodeBase(byte base) {
+        switch (base) {
+            case 'A': case 'a': return 0;
+            case 'C': case 'c': return 1;
+            case 'G': case 'g': return 2;
+            case 'T': case 't': return 3;
+            default:
+                throw new CortexJDKException("Nucleotide '" + (char) base + "' is not a valid character nucleotide");
+        }
+    }
+
+    public static byte decodeBase(int base) { return BASES[base]; }
+
+    public int length() { return kmerSize; }
+
+    /**
+     * Get the two-bit base at a position in the kmer.
+     *
+     * @param i  the position, from 0 to length() - 1
+     * @return   the two-bit base
+     */
+    public int getBase(int i) {
+        int fromEnd = kmerSize - 1 - i;
+        long w = words == null ? word : words[words.length - 1 - fromEnd / 32];
+
+        return (int) ((w >>> (2*(fromEnd % 32))) & 0x3);
+    }
+
+    /**
+     * Shift a base onto the end of the kmer, dropping its first base.  This is the kmer that follows this one along
+     * an out-edge labelled with the base.
+     *
+     * @param base  the two-bit base to append
+     * @return      the next kmer
+     */
+    public CortexPackedKmer append(int base) {
+        if (words == null) {
+            return new CortexPackedKmer(kmerSize, ((word << 2) | base) & topMask(), null);
+        }
+
+        int n = words.length;
+        long[] shifted = new long[n];
+
+        for (int i = 0; i < n - 1; i++) {
+            shifted[i] = (words[i] << 2) | (words[i + 1] >>> 62);
+        }
+        shifted[n - 1] = (words[n - 1] << 2) | base;
+        shifted[0] &= topMask();
+
+        return new CortexPackedKmer(kmerSize, 0, shifted);
+    }
+
+    /**
+     * Shift a base onto the start of the kmer, dropping its last base.  This is the kmer that precedes this one along
+     * an in-edge labelled with the base.
+     *
+     * @param base  the two-bit base to prepend
+     * @return      the previous kmer
+     */
+    public CortexPackedKmer prepend(int base) {
+        int topShift = 2*(topBases() - 1);
+
+        if (words == null) {
+            return new CortexPackedKmer(kmerSize, (word >>> 2) | ((long) base << topShift), null);
+        }
+
+        int n = words.length;
+        long[] shifted = new long[n];
+
+        for (int i = n - 1; i > 0; i--) {
+            shifted[i] = (words[i] >>> 2) | (words[i - 1] << 62);
+        }
+        shifted[0] = (words[0] >>> 2) | ((long) base << topShift);
+
+        return new CortexPackedKmer(kmerSize, 0, shifted);
+    }
+
+    public CortexPackedKmer reverseComplement() {
+        if (words == null) {
+            return new CortexPackedKmer(kmerSize, reverseBases(~word) >>> (64 - 2*kmerSize), null);
+        }
+
+        int n = words.length;
+        long[] rc = new long[n];
+
+        for (int i = 0; i < n; i++) {
+            rc[i] = reverseBases(~words[n - 1 - i]);
+        }
+
+        // The complemented padding bits of the first word have been reversed into the low end; shift them out
+        int s = 64*n - 2*kmerSize;
+        if (s > 0) {
+            for (int i = n - 1; i > 0; i--) {
+                rc[i] = (rc[i] >>> s) | (rc[i - 1] << (64 - s));
+            }
+            rc[0] >>>= s;
+        }
+
+        return new CortexPackedKmer(kmerSize, 0, rc);
+    }
+
+    /**
+     * Get the alphanumerically lowest orientation of the kmer, as stored in a graph.
+     *
+     * @return this kmer or its reverse complement, whichever is lower
+     */
+    public CortexPackedKmer canonical() {
+        CortexPackedKmer rc = reverseComplement();
+
+        return compareTo(rc) <= 0 ? this : rc;
+    }
+
+    /**
+     * Get the binary kmer of this kmer's canonical orientation, ready to look up with
+     * {@link uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph#findRecord(long[])}.
+     *
+     * @return the canonical binary kmer
+     */
+    public long[] getCanonicalBinaryKmer() {
+        return canonical().getBinaryKmer();
+    }
+
+    /**
+     * Get the binary kmer of this orientation, in the form stored in a record.
+     *
+     * @return the binary kmer
+     */
+    public long[] getBinaryKmer() {
+        if (words == null) {
+            return new long[] { Long.reverseBytes(word) };
+        }
+
+        long[] binaryKmer = new long[words.length];
+        for (int b = 0; b < words.length; b++) {
+            binaryKmer[b] = Long.reverseBytes(words[b]);
+        }
+
+        return binaryKmer;
+    }
+
+    public byte[] getKmerAsBytes() {
+        byte[] kmer = new byte[kmerSize];
+
+        for (int i = 0; i < kmerSize; i++) {
+            kmer[i] = BASES[getBase(i)];
+        }
+
+        return kmer;
+    }
+
+    public String getKmerAsString() { return new String(getKmerAsBytes()); }
+
+    public CortexByteKmer getKmerAsByteKmer() { return new CortexByteKmer(getKmerAsBytes()); }
+
+    private int topBases() {
+        return kmerSize - 32*(CortexRecord.getKmerBits(kmerSize) - 1);
+    }
+
+    private long topMask() {
+        int topBases = topBases();
+
+        return topBases == 32 ? -1L : (1L << (2*topBases)) - 1;
+    }
+
+    private static long reverseBases(long x) {
+        x = ((x >>> 2) & 0x3333333333333333L) | ((x & 0x3333333333333333L) << 2);
+        x = ((x >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((x & 0x0F0F0F0F0F0F0F0FL) << 4);
+
+        return Long.reverseBytes(x);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CortexPackedKmer that = (CortexPackedKmer) o;
+
+        return kmerSize == that.kmerSize && word == that.word && Arrays.equals(words, that.words);
+    }
+
+    @Override
+    public int hashCode() {
+        long h = words == null ? word : Arrays.hashCode(words);
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+
+        return (int) h ^ kmerSize;
+    }
+
+    @Override
+    public int compareTo(@NotNull CortexPackedKmer o) {
+        if (words == null || o.words == null) {
+            int c = Long.compareUnsigned(word, o.word);
+
+            return c != 0 ? c : Integer.compare(kmerSize, o.kmerSize);
+        }
+
+        for (int b = 0; b < Math.min(words.length, o.words.length); b++) {
+            int c = Long.compareUnsigned(words[b], o.words[b]);
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return Integer.compare(kmerSize, o.kmerSize);
+    }
+
+    @Override
+    public String toString() {
+        return getKmerAsString();
+    }
+}
@@ -12,8 +12,8 @@ public class CortexRecord implements Comparable<CortexRecord> {
     private int[] coverages;
     private byte[] edges;
 
-    private byte[][] lazyLoadedEdgesTable = null;
-    private String[] lazyLoadedEdgeStrings = null;
+    private volatile byte[][] lazyLoadedEdgesTable = null;
+    private volatile String[] lazyLoadedEdgeStrings = null;
 
     public CortexRecord(long[] binaryKmer, int[] coverages, byte[] edges, int kmerSize, int kmerBits) {
         this.binaryKmer = new long[binaryKmer.length];
@@ -28,6 +28,15 @@ public class CortexRecord implements Comparable<CortexRecord> {
         this.kmerBits = kmerBits;
     }
 
+    protected CortexRecord(int kmerSize, int kmerBits, int numColors) {
+        this.binaryKmer = new long[kmerBits];
+        this.coverages = new int[numColors];
+        this.edges = new byte[numColors];
+
+        this.kmerSize = kmerSize;
+        this.kmerBits = kmerBits;
+    }
+
     public CortexRecord(String sk, List<Integer> coverageList, List<Set<String>> inEdgesList, List<Set<String>> outEdgesList) {
         if (coverageList.size() != inEdgesList.size() && coverageList.size() != outEdgesList.size()) {
             throw new CortexJDKException("Coverage, in-edge, and prefix-edge lists must be equal length.");
@@ -109,12 +118,19 @@ public class CortexRecord implements Comparable<CortexRecord> {
 
     public byte[] getEdges() { return edges; }
 
+    protected void resetDecodedEdges() {
+        lazyLoadedEdgesTable = null;
+        lazyLoadedEdgeStrings = null;
+    }
+
     public byte[][] getEdgesAsBytes() {
-        if (lazyLoadedEdgesTable == null) {
+        byte[][] edgesTable = lazyLoadedEdgesTable;
+
+        if (edgesTable == null) {
             int numColors = edges.length;
             byte[] str = {'a', 'c', 'g', 't', 'A', 'C', 'G', 'T'};
 
-            lazyLoadedEdgesTable = new byte[numColors][8];
+            edgesTable = new byte[numColors][8];
             for (int color = 0; color < numColors; color++) {
                 byte edge = edges[color];
 
@@ -123,29 +139,35 @@ public class CortexRecord implements Comparable<CortexRecord> {
 
                 for (int i = 0; i < 4; i++) {
                     int leftEdge = (left & (0x1 << (3 - i)));
-                    lazyLoadedEdgesTable[color][i] = (byte) ((leftEdge != 0) ? str[i] : '.');
+                    edgesTable[color][i] = (byte) ((leftEdge != 0) ? str[i] : '.');
 
                     int rightEdge = (right & (0x1 << i));
-                    lazyLoadedEdgesTable[color][i + 4] = (byte) ((rightEdge != 0) ? str[i + 4] : '.');
+                    edgesTable[color][i + 4] = (byte) ((rightEdge != 0) ? str[i + 4] : '.');
                 }
             }
+
+            lazyLoadedEdgesTable = edgesTable;
         }
 
-        return lazyLoadedEdgesTable;
+        return edgesTable;
     }
 
     public String[] getEdgeAsStrings() {
         byte[][] edgesTable = getEdgesAsBytes();
 
-        if (lazyLoadedEdgeStrings == null) {
-            lazyLoadedEdgeStrings = new String[edges.length];
+        String[] edgeStrings = lazyLoadedEdgeStrings;
+
+        if (edgeStrings == null) {
+            edgeStrings = new String[edges.length];
 
             for (int i = 0; i < edges.length; i++) {
-                lazyLoadedEdgeStrings[i] = new String(edgesTable[i]);
+                edgeStrings[i] = new String(edgesTable[i]);
             }
+
+            lazyLoadedEdgeStrings = edgeStrings;
         }
 
-        return lazyLoadedEdgeStrings;
+        return edgeStrings;
     }
 
     public int[] getCoverages() { return coverages; }
@@ -191,28 +213,7 @@ public class CortexRecord implements Comparable<CortexRecord> {
     }
 
     public Collection<Byte> getInEdgesAsBytes(int color, boolean complement) {
-        Collection<Byte> leftEdges = new ArrayList<>();
-
-        byte[] str = {'A', 'C', 'G', 'T'};
-
-        if (complement) {
-            str = new byte[] {'T', 'G', 'C', 'A'};
-        }
-
-        byte edge = edges[color];
-
-        int left = (edge >> 4);
-
-        for (int i = 0; i < 4; i++) {
-            int leftEdge = (left & (0x1 << (3-i)));
-            if (leftEdge != 0) {
-                byte edgeByte = str[i];
-
-                leftEdges.add(edgeByte);
-            }
-        }
-
-        return leftEdges;
+        return decodeEdges(CortexEdges.getAdjacentBases(edges[color], false, false), complement);
     }
 
     public Collection<String> getInEdgesAsStrings(int color, boolean complement) {
@@ -228,27 +229,17 @@ public class CortexRecord implements Comparable<CortexRecord> {
     }
 
     public Collection<Byte> getOutEdgesAsBytes(int color, boolean complement) {
-        Collection<Byte> rightEdges = new ArrayList<>();
-
-        byte[] str = {'A', 'C', 'G', 'T'};
-
-        if (complement) {
-            str = new byte[] {'T', 'G', 'C', 'A'};
-        }
-
-        byte edge = edges[color];
-
-        int right = (edge & 0xf);
+        return decodeEdges(CortexEdges.getAdjacentBases(edges[color], false, true), complement);
+    }
 
-        for (int i = 0; i < 4; i++) {
-            int rightEdge = (right & (0x1 << i));
+    private static Collection<Byte> decodeEdges(int[] bases, boolean complement) {
+        Collection<Byte> decodedEdges = new ArrayList<>(bases.length);
 
-            if (rightEdge != 0) {
-                rightEdges.add(str[i]);
-            }
+        for (int base : bases) {
+            decodedEdges.add(CortexPackedKmer.decodeBase(complement ? 3 - base : base));
         }
 
-        return rightEdges;
+        return decodedEdges;
     }
 
     public Collection<String> getOutEdgesAsStrings(int color, boolean complement) {
@@ -263,9 +254,34 @@ public class CortexRecord implements Comparable<CortexRecord> {
         return rightEdgesAsStrings;
     }
 
-    public int getInDegree(int color) { return getInEdgesAsBytes(color, false).size(); }
+    public int getInDegree(int color) { return CortexEdges.getDegree(edges[color], false, false); }
+
+    public int getOutDegree(int color) { return CortexEdges.getDegree(edges[color], false, true); }
+
+    /**
+     * Get the neighbours of this record's kmer in one colour as a bitmask of two-bit bases (see
+     * {@link CortexEdges#getAdjacentMask(byte, boolean, boolean)}).
+     *
+     * @param color      the colour
+     * @param isFlipped  true if the kmer is being walked as the reverse complement of the stored kmer
+     * @param goForward  true for successors, false for predecessors
+     * @return           the neighbour bitmask, from 0 to 15
+     */
+    public int getAdjacentMask(int color, boolean isFlipped, boolean goForward) {
+        return CortexEdges.getAdjacentMask(edges[color], isFlipped, goForward);
+    }
 
-    public int getOutDegree(int color) { return getOutEdgesAsBytes(color, false).size(); }
+    /**
+     * Get the number of neighbours of this record's kmer in one colour, in either orientation.
+     *
+     * @param color      the colour
+     * @param isFlipped  true if the kmer is being walked as the reverse complement of the stored kmer
+     * @param goForward  true for successors, false for predecessors
+     * @return           the degree, from 0 to 4
+     */
+    public int getDegree(int color, boolean isFlipped, boolean goForward) {
+        return CortexEdges.getDegree(edges[color], isFlipped, goForward);
+    }
 
     public static byte[] decodeBinaryKmer(long[] kmer, int kmerSize, int kmerBits) {
         byte[] rawKmer = new byte[kmerSize];
@@ -0,0 +1,28 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+/**
+ * A cache of records found by kmer.  Implementations must be safe to use from many threads at once, and are keyed on
+ * the canonical binary kmer of each record.
+ */
+public interface CortexRecordCache {
+    /**
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the cached record, or null if it is not in the cache
+     */
+    CortexRecord get(long[] binaryKmer);
+
+    /**
+     * @param cr  the record to cache, which must not be modified afterwards
+     */
+    void put(CortexRecord cr);
+
+    void clear();
+
+    long size();
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+}
@@ -0,0 +1,154 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import com.carrotsearch.sizeof.RamUsageEstimator;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe LRU record cache bounded by a memory budget rather than an entry count.  The cache is split into
+ * independently locked stripes so that concurrent lookups on different kmers rarely contend; each stripe evicts its
+ * own least-recently used entry.  Each record is stored once, under a key that shares the record's own binary kmer.
+ *
+ * The default budget can be set in megabytes with the 'cache' system property (e.g. -Dcache=256); -Dcache=0 turns
+ * caching off.
+ */
+public class CortexRecordLRUCache implements CortexRecordCache {
+    private static final int NUM_STRIPES = 16;
+    private static final long DEFAULT_BUDGET_MB = 16;
+    private static final long ENTRY_OVERHEAD = 64;
+
+    private final long budgetBytes;
+    private final Stripe[] stripes = new Stripe[NUM_STRIPES];
+
+    private volatile int stripeCapacity = -1;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CortexRecordLRUCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Get the cache budget requested on the command line.
+     *
+     * @return the budget in bytes
+     */
+    public static long getConfiguredBudget() {
+        String cache = System.getProperty("cache");
+
+        if (cache == null) {
+            return DEFAULT_BUDGET_MB * 1024 * 1024;
+        }
+
+        try {
+            return Long.valueOf(cache) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            throw new CortexJDKException("Cache size must be a whole number of megabytes (got '" + cache + "')", e);
+        }
+    }
+
+    private Stripe stripeFor(CortexBinaryKmer key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+
+        return stripes[h & (NUM_STRIPES - 1)];
+    }
+
+    @Override
+    public CortexRecord get(long[] binaryKmer) {
+        CortexBinaryKmer key = new CortexBinaryKmer(binaryKmer);
+        Stripe s = stripeFor(key);
+
+        CortexRecord cr;
+        synchronized (s) {
+            cr = s.get(key);
+        }
+
+        if (cr == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+
+        return cr;
+    }
+
+    @Override
+    public void put(CortexRecord cr) {
+        if (stripeCapacity < 0) {
+            long entryBytes = RamUsageEstimator.sizeOf(cr) + RamUsageEstimator.shallowSizeOf(new CortexBinaryKmer(cr.getBinaryKmer())) + ENTRY_OVERHEAD;
+
+            stripeCapacity = (int) Math.min(Integer.MAX_VALUE, budgetBytes / entryBytes / NUM_STRIPES);
+        }
+
+        if (stripeCapacity == 0) {
+            return;
+        }
+
+        CortexBinaryKmer key = new CortexBinaryKmer(cr.getBinaryKmer());
+        Stripe s = stripeFor(key);
+
+        synchronized (s) {
+            s.put(key, cr);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                s.clear();
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+
+        return size;
+    }
+
+    public long getBudget() { return budgetBytes; }
+
+    @Override
+    public long getHits() { return hits.sum(); }
+
+    @Override
+    public long getMisses() { return misses.sum(); }
+
+    @Override
+    public long getEvictions() { return evictions.sum(); }
+
+    private class Stripe extends LinkedHashMap<CortexBinaryKmer, CortexRecord> {
+        private static final long serialVersionUID = 1L;
+
+        Stripe() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CortexBinaryKmer, CortexRecord> eldest) {
+            if (size() > stripeCapacity) {
+                evictions.increment();
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a range of record indices in a mapped Cortex graph.  Splitting hands the first half of the
+ * remaining range to a new spliterator, so a parallel scan divides the file into contiguous runs of records.  Every
+ * spliterator decodes into its own {@link CortexRecordView}, and records are read from the shared mapping with
+ * absolute reads, so splits can be consumed on different threads without any locking.  When a color projection is
+ * given, only those colors are decoded.
+ */
+class CortexRecordSpliterator implements Spliterator<CortexRecord> {
+    private static final long MIN_SPLIT_SIZE = 1024;
+
+    private final CortexGraph graph;
+    private final int[] colors;
+    private final CortexRecordView view;
+    private long index;
+    private final long fence;
+
+    CortexRecordSpliterator(CortexGraph graph, int[] colors, long origin, long fence) {
+        this.graph = graph;
+        this.colors = colors;
+        this.view = new CortexRecordView(graph.getKmerSize(), graph.getKmerBits(), graph.getNumColors(), colors);
+        this.index = origin;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super CortexRecord> action) {
+        if (index >= fence) {
+            return false;
+        }
+
+        graph.decode(index++, view);
+        action.accept(view.copy());
+
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super CortexRecord> action) {
+        for (; index < fence; index++) {
+            graph.decode(index, view);
+            action.accept(view.copy());
+        }
+    }
+
+    @Override
+    public Spliterator<CortexRecord> trySplit() {
+        long mid = index + (fence - index) / 2;
+
+        if (mid - index < MIN_SPLIT_SIZE) {
+            return null;
+        }
+
+        Spliterator<CortexRecord> prefix = new CortexRecordSpliterator(graph, colors, index, mid);
+        index = mid;
+
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() { return fence - index; }
+
+    @Override
+    public int characteristics() { return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE; }
+}
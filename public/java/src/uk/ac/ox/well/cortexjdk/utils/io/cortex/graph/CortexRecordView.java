@@ -0,0 +1,70 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable, mutable record that is decoded in place from a mapped graph.  Each call to an iterator returned by
+ * {@link CortexGraph#views()} overwrites the same instance, so callers that keep a record beyond the current
+ * iteration step must take an immutable snapshot with {@link #copy()}.
+ *
+ * A view may be restricted to a subset of the graph's colors, in which case only those colors' coverages and edges
+ * are read from the record and color i of the view is the i-th selected color of the graph.
+ */
+public class CortexRecordView extends CortexRecord {
+    private final int sourceNumColors;
+    private final int[] colors;
+
+    private long index = -1;
+
+    public CortexRecordView(int kmerSize, int kmerBits, int numColors) {
+        super(kmerSize, kmerBits, numColors);
+
+        this.sourceNumColors = numColors;
+        this.colors = null;
+    }
+
+    CortexRecordView(int kmerSize, int kmerBits, int sourceNumColors, int[] colors) {
+        super(kmerSize, kmerBits, colors == null ? sourceNumColors : colors.length);
+
+        this.sourceNumColors = sourceNumColors;
+        this.colors = colors;
+    }
+
+    void decode(ByteBuffer buffer, int offset, long index) {
+        long[] binaryKmer = getBinaryKmer();
+        int[] coverages = getCoverages();
+        byte[] edges = getEdges();
+
+        int pos = offset;
+        for (int b = 0; b < binaryKmer.length; b++, pos += 8) {
+            binaryKmer[b] = buffer.getLong(pos);
+        }
+
+        if (colors == null) {
+            for (int c = 0; c < coverages.length; c++, pos += 4) {
+                coverages[c] = Integer.reverseBytes(buffer.getInt(pos));
+            }
+
+            for (int c = 0; c < edges.length; c++, pos++) {
+                edges[c] = buffer.get(pos);
+            }
+        } else {
+            int edgePos = pos + 4*sourceNumColors;
+
+            for (int c = 0; c < colors.length; c++) {
+                coverages[c] = Integer.reverseBytes(buffer.getInt(pos + 4*colors[c]));
+                edges[c] = buffer.get(edgePos + colors[c]);
+            }
+        }
+
+        this.index = index;
+
+        resetDecodedEdges();
+    }
+
+    public long getIndex() { return index; }
+
+    public CortexRecord copy() {
+        return new CortexRecord(getBinaryKmer(), getCoverages(), getEdges(), getKmerSize(), getKmerBits());
+    }
+}
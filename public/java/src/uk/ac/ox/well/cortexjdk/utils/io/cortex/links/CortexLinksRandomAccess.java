@@ -97,8 +97,11 @@ public class CortexLinksRandomAccess implements ConnectivityAnnotations {
             Pair<Long, Integer> p = index.get(convert(key));
             byte[] recbuf = new byte[p.getSecond()];
 
-            bi.seek(p.getFirst());
-            bi.read(recbuf);
+            // The compressed stream is shared by concurrent traversals, so a seek and its read must not interleave
+            synchronized (bi) {
+                bi.seek(p.getFirst());
+                bi.read(recbuf);
+            }
 
             return new CortexLinksRecord(recbuf);
         } catch (IOException e) {
@@ -0,0 +1,295 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.memory;
+
+import com.carrotsearch.sizeof.RamUsageEstimator;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * A Cortex graph held entirely in memory in packed primitive arrays: one long[] of kmer words, and one int[] of
+ * coverages and one byte[] of edges per color.  Kmers are found through an open-addressing hash table of record
+ * indices, so a lookup costs a hash and a short linear probe with no object allocation beyond the returned record.
+ * Records keep the order they had in the source graph.
+ */
+public class CortexMemoryGraph implements DeBruijnGraph {
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private final File cortexFile;
+    private final CortexHeader header;
+
+    private final int kmerSize;
+    private final int kmerBits;
+    private final int numColors;
+    private final int numRecords;
+
+    private final long[] kmers;
+    private final int[][] coverages;
+    private final byte[][] edges;
+    private final int[] slots;
+    private final int slotMask;
+
+    private long recordsSeen = 0;
+
+    public CortexMemoryGraph(String cortexFilePath) {
+        this(new CortexGraph(cortexFilePath), true);
+    }
+
+    public CortexMemoryGraph(File cortexFile) {
+        this(new CortexGraph(cortexFile), true);
+    }
+
+    public CortexMemoryGraph(CortexGraph graph) {
+        this(graph, false);
+    }
+
+    public CortexMemoryGraph(DeBruijnGraph graph) {
+        this(graph, graph, false);
+    }
+
+    private CortexMemoryGraph(CortexGraph graph, boolean closeAfterLoading) {
+        this(graph, graph.views(), closeAfterLoading);
+    }
+
+    /**
+     * Copy the records of a graph into memory.
+     *
+     * @param graph              the graph
+     * @param records            the records to copy (the graph itself, or a cheaper view of its records)
+     * @param closeAfterLoading  true if the graph was opened just to be loaded, and should be closed afterwards
+     */
+    private CortexMemoryGraph(DeBruijnGraph graph, Iterable<? extends CortexRecord> records, boolean closeAfterLoading) {
+        try {
+            this.cortexFile = graph.getFile();
+            this.header = graph.getHeader();
+            this.kmerSize = graph.getKmerSize();
+            this.kmerBits = graph.getKmerBits();
+            this.numColors = graph.getNumColors();
+
+            if (graph.getNumRecords()*kmerBits > Integer.MAX_VALUE - 8 || graph.getNumRecords() / MAX_LOAD_FACTOR > (1 << 29)) {
+                throw new CortexJDKException("Graph '" + cortexFile.getAbsolutePath() + "' has too many records (" + graph.getNumRecords() + ") to load into memory");
+            }
+
+            this.numRecords = (int) graph.getNumRecords();
+
+            kmers = new long[numRecords*kmerBits];
+            coverages = new int[numColors][numRecords];
+            edges = new byte[numColors][numRecords];
+
+            int numSlots = Integer.highestOneBit((int) Math.max(2, numRecords / MAX_LOAD_FACTOR)) << 1;
+            slots = new int[numSlots];
+            slotMask = numSlots - 1;
+
+            int i = 0;
+            for (CortexRecord cr : records) {
+                if (i == numRecords) {
+                    throw new CortexJDKException("Graph '" + cortexFile.getAbsolutePath() + "' has more records than its size suggests");
+                }
+
+                System.arraycopy(cr.getBinaryKmer(), 0, kmers, i*kmerBits, kmerBits);
+
+                for (int c = 0; c < numColors; c++) {
+                    coverages[c][i] = cr.getCoverage(c);
+                    edges[c][i] = cr.getEdges()[c];
+                }
+
+                insert(i);
+                i++;
+            }
+
+            if (i != numRecords) {
+                throw new CortexJDKException("Expected " + numRecords + " records in graph '" + cortexFile.getAbsolutePath() + "', but found " + i);
+            }
+        } finally {
+            if (closeAfterLoading) {
+                graph.close();
+            }
+        }
+    }
+
+    private void insert(int recordIndex) {
+        int slot = hash(kmers, recordIndex*kmerBits) & slotMask;
+
+        while (slots[slot] != 0) {
+            if (kmerEquals(kmers, recordIndex*kmerBits, slots[slot] - 1)) {
+                throw new CortexJDKException("Kmer '" + getRecord(recordIndex).getKmerAsString() + "' appears more than once in graph '" + cortexFile.getAbsolutePath() + "'");
+            }
+
+            slot = (slot + 1) & slotMask;
+        }
+
+        slots[slot] = recordIndex + 1;
+    }
+
+    private int find(long[] binaryKmer) {
+        int slot = hash(binaryKmer, 0) & slotMask;
+
+        for (int entry = slots[slot]; entry != 0; entry = slots[slot]) {
+            if (kmerEquals(binaryKmer, 0, entry - 1)) {
+                return entry - 1;
+            }
+
+            slot = (slot + 1) & slotMask;
+        }
+
+        return -1;
+    }
+
+    private int hash(long[] words, int offset) {
+        long h = 0;
+        for (int b = 0; b < kmerBits; b++) {
+            h = 31*h + words[offset + b];
+        }
+
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+
+        return (int) h;
+    }
+
+    private boolean kmerEquals(long[] words, int offset, int recordIndex) {
+        int recordOffset = recordIndex*kmerBits;
+
+        for (int b = 0; b < kmerBits; b++) {
+            if (words[offset + b] != kmers[recordOffset + b]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public long position() { return recordsSeen; }
+
+    public void position(long i) {
+        if (i < 0) {
+            throw new CortexJDKException("Record index is prefix of range (" + i + " vs 0-" + (numRecords - 1) + ")");
+        }
+
+        recordsSeen = i;
+    }
+
+    public CortexRecord getRecord(long i) {
+        if (i < 0) {
+            throw new CortexJDKException("Record index is prefix of range (" + i + " vs 0-" + (numRecords - 1) + ")");
+        }
+
+        if (i >= numRecords) {
+            return null;
+        }
+
+        int index = (int) i;
+
+        long[] binaryKmer = Arrays.copyOfRange(kmers, index*kmerBits, (index + 1)*kmerBits);
+        int[] recordCoverages = new int[numColors];
+        byte[] recordEdges = new byte[numColors];
+
+        for (int c = 0; c < numColors; c++) {
+            recordCoverages[c] = coverages[c][index];
+            recordEdges[c] = edges[c][index];
+        }
+
+        return new CortexRecord(binaryKmer, recordCoverages, recordEdges, kmerSize, kmerBits);
+    }
+
+    /**
+     * Iterate over the graph from the first record.  Each call returns a new iterator with its own position.
+     *
+     * @return an independent iterator over the records in their original order
+     */
+    public Iterator<CortexRecord> iterator() {
+        return new Iterator<CortexRecord>() {
+            private long index = 0;
+
+            @Override
+            public boolean hasNext() { return index < numRecords; }
+
+            @Override
+            public CortexRecord next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+
+                return getRecord(index++);
+            }
+        };
+    }
+
+    public boolean hasNext() { return recordsSeen < numRecords; }
+
+    public CortexRecord next() { return getRecord(recordsSeen++); }
+
+    public void remove() { throw new UnsupportedOperationException(); }
+
+    public void close() {}
+
+    public CortexRecord findRecord(byte[] bk) {
+        if (bk.length != kmerSize) {
+            return null;
+        }
+
+        long[] binaryKmer;
+        try {
+            binaryKmer = CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation(bk));
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        return findRecord(binaryKmer);
+    }
+
+    /**
+     * Find the record for a binary kmer that has already been encoded in its canonical orientation.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the record, or null if the kmer is not in the graph
+     */
+    public CortexRecord findRecord(long[] binaryKmer) {
+        if (binaryKmer.length != getKmerBits()) {
+            return null;
+        }
+
+        int i = find(binaryKmer);
+
+        return i < 0 ? null : getRecord(i);
+    }
+
+    public CortexRecord findRecord(CortexByteKmer bk) { return findRecord(bk.getKmer()); }
+    public CortexRecord findRecord(CortexKmer ck) { return findRecord(ck.getKmerAsBytes()); }
+    public CortexRecord findRecord(String sk) { return findRecord(sk.getBytes()); }
+
+    public File getFile() { return cortexFile; }
+    public CortexHeader getHeader() { return header; }
+    public int getVersion() { return header.getVersion(); }
+    public int getKmerSize() { return kmerSize; }
+    public int getKmerBits() { return kmerBits; }
+    public String getSampleName(int color) { return getColor(color).getSampleName(); }
+    public int getNumColors() { return numColors; }
+    public long getNumRecords() { return numRecords; }
+    public List<CortexColor> getColors() { return header.getColors(); }
+    public boolean hasColor(int color) { return header.hasColor(color); }
+    public CortexColor getColor(int color) { return header.getColor(color); }
+
+    /**
+     * @return the number of bytes of heap used by the packed records and the hash table
+     */
+    public long sizeOf() {
+        return RamUsageEstimator.sizeOf(kmers) + RamUsageEstimator.sizeOf(coverages) + RamUsageEstimator.sizeOf(edges) + RamUsageEstimator.sizeOf(slots);
+    }
+
+    public String toString() {
+        String info = getHeaderSummary();
+
+        info += "----" + "\n";
+        info += "kmers: " + getNumRecords() + "\n";
+        info += "----" + "\n";
+        info += "size of in-memory graph: " + RamUsageEstimator.humanReadableUnits(sizeOf()) + "\n";
+        info += "size per kmer: " + (numRecords == 0 ? 0 : sizeOf() / numRecords) + " bytes\n";
+
+        return info;
+    }
+}
@@ -0,0 +1,239 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.shard;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphWriter;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecordView;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The manifest of a sorted graph split into shards by kmer range (stored as prefix.manifest).  Each shard is a
+ * complete, sorted Cortex graph carrying the original header, and the manifest lists the shards in kmer order
+ * along with the first and last kmer and the number of records in each.  Shard files are recorded relative to
+ * the manifest, so a manifest and its shards can be moved together.
+ */
+public class CortexShardManifest {
+    public static final String EXTENSION = ".manifest";
+
+    private final List<Shard> shards;
+
+    public static class Shard {
+        private final File file;
+        private final long numRecords;
+        private final String firstKmer;
+        private final String lastKmer;
+
+        Shard(File file, long numRecords, String firstKmer, String lastKmer) {
+            this.file = file;
+            this.numRecords = numRecords;
+            this.firstKmer = firstKmer;
+            this.lastKmer = lastKmer;
+        }
+
+        public File getFile() { return file; }
+        public long getNumRecords() { return numRecords; }
+        public String getFirstKmer() { return firstKmer; }
+        public String getLastKmer() { return lastKmer; }
+    }
+
+    private CortexShardManifest(List<Shard> shards) {
+        this.shards = Collections.unmodifiableList(shards);
+    }
+
+    public static File getManifestFile(File prefix) {
+        return new File(prefix.getAbsolutePath() + EXTENSION);
+    }
+
+    public static File getShardFile(File prefix, int shard) {
+        return new File(prefix.getAbsolutePath() + ".shard" + shard + ".ctx");
+    }
+
+    /**
+     * Split a sorted graph into shards of (nearly) equal numbers of records, writing each shard next to the prefix.
+     * A graph with fewer records than requested shards is split into one shard per record.
+     *
+     * @param graph      the sorted graph to split
+     * @param numShards  the number of shards to write
+     * @param prefix     the path prefix for the shard files
+     * @return           the manifest describing the shards written
+     */
+    public static CortexShardManifest build(CortexGraph graph, int numShards, File prefix) {
+        if (numShards < 1) {
+            throw new CortexJDKException("Number of shards must be at least 1 (got " + numShards + ")");
+        }
+
+        if (graph.getNumRecords() == 0) {
+            throw new CortexJDKException("Cannot shard empty graph '" + graph.getFile().getAbsolutePath() + "'");
+        }
+
+        long recordsPerShard = (graph.getNumRecords() + numShards - 1) / numShards;
+        int kmerBits = graph.getKmerBits();
+
+        List<Shard> shards = new ArrayList<>();
+
+        CortexGraphWriter cgw = null;
+        File shardFile = null;
+        String firstKmer = null;
+        long shardRecords = 0;
+        long[] previousKmer = new long[kmerBits];
+        boolean complete = false;
+
+        try {
+            for (CortexRecordView cv : graph.views()) {
+                long[] binaryKmer = cv.getBinaryKmer();
+
+                if (cv.getIndex() > 0 && compare(binaryKmer, previousKmer) <= 0) {
+                    throw new CortexJDKException("Graph '" + graph.getFile().getAbsolutePath() + "' must be sorted before it is sharded (see the Sort command)");
+                }
+
+                if (shardRecords == recordsPerShard) {
+                    cgw.close();
+                    shards.add(new Shard(shardFile, shardRecords, firstKmer, decode(previousKmer, graph)));
+
+                    cgw = null;
+                }
+
+                if (cgw == null) {
+                    shardFile = getShardFile(prefix, shards.size());
+                    firstKmer = cv.getKmerAsString();
+                    shardRecords = 0;
+
+                    cgw = new CortexGraphWriter(shardFile);
+                    cgw.setHeader(graph.getHeader());
+                    cgw.setBackgroundWriting(true);
+                }
+
+                cgw.addRecord(cv);
+                shardRecords++;
+
+                System.arraycopy(binaryKmer, 0, previousKmer, 0, kmerBits);
+            }
+
+            cgw.close();
+            shards.add(new Shard(shardFile, shardRecords, firstKmer, decode(previousKmer, graph)));
+
+            complete = true;
+        } finally {
+            if (!complete) {
+                discard(cgw, shards, shardFile);
+            }
+        }
+
+        return new CortexShardManifest(shards);
+    }
+
+    /**
+     * Close the shard being written and delete every shard file written so far, so that a failed split leaves no
+     * partial set of shards behind.  Errors here are secondary to the one that stopped the split and are ignored.
+     */
+    private static void discard(CortexGraphWriter cgw, List<Shard> shards, File shardFile) {
+        if (cgw != null) {
+            try {
+                cgw.close();
+            } catch (RuntimeException e) {
+                // the writer is already failing; the file is deleted below either way
+            }
+        }
+
+        for (Shard s : shards) {
+            s.getFile().delete();
+        }
+
+        if (shardFile != null) {
+            shardFile.delete();
+        }
+    }
+
+    /**
+     * Load a manifest, resolving shard files relative to the manifest's directory.
+     *
+     * @param manifestFile  the manifest file
+     * @return              the manifest
+     */
+    public static CortexShardManifest load(File manifestFile) {
+        List<Shard> shards = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifestFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    throw new CortexJDKException("Malformed line in shard manifest '" + manifestFile.getAbsolutePath() + "': " + line);
+                }
+
+                File shardFile = new File(fields[0]);
+                if (!shardFile.isAbsolute()) {
+                    shardFile = new File(manifestFile.getAbsoluteFile().getParentFile(), fields[0]);
+                }
+
+                shards.add(new Shard(shardFile, Long.valueOf(fields[1]), fields[2], fields[3]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new CortexJDKException("Could not read shard manifest '" + manifestFile.getAbsolutePath() + "'", e);
+        }
+
+        if (shards.isEmpty()) {
+            throw new CortexJDKException("Shard manifest '" + manifestFile.getAbsolutePath() + "' does not list any shards");
+        }
+
+        return new CortexShardManifest(shards);
+    }
+
+    public void store(File manifestFile) {
+        File manifestDir = manifestFile.getAbsoluteFile().getParentFile();
+
+        try (PrintStream ps = new PrintStream(manifestFile)) {
+            ps.println("#shard\tnumRecords\tfirstKmer\tlastKmer");
+
+            for (Shard s : shards) {
+                String path = manifestDir.equals(s.getFile().getAbsoluteFile().getParentFile()) ? s.getFile().getName() : s.getFile().getAbsolutePath();
+
+                ps.println(path + "\t" + s.getNumRecords() + "\t" + s.getFirstKmer() + "\t" + s.getLastKmer());
+            }
+        } catch (IOException e) {
+            throw new CortexJDKException("Could not write shard manifest '" + manifestFile.getAbsolutePath() + "'", e);
+        }
+    }
+
+    public List<Shard> getShards() { return shards; }
+    public int getNumShards() { return shards.size(); }
+    public Shard getShard(int shard) { return shards.get(shard); }
+
+    public long getNumRecords() {
+        long numRecords = 0;
+        for (Shard s : shards) {
+            numRecords += s.getNumRecords();
+        }
+
+        return numRecords;
+    }
+
+    private static String decode(long[] binaryKmer, CortexGraph graph) {
+        return new String(CortexRecord.decodeBinaryKmer(binaryKmer, graph.getKmerSize(), graph.getKmerBits()));
+    }
+
+    static int compare(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            int c = Long.compareUnsigned(Long.reverseBytes(a[w]), Long.reverseBytes(b[w]));
+
+            if (c != 0) {
+                return c;
+            }
+        }
+
+        return 0;
+    }
+}
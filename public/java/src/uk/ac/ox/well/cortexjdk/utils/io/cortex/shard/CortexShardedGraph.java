@@ -0,0 +1,254 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.shard;
+
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A sorted graph split into kmer-range shards, read through its manifest.  Lookups binary search the shard
+ * boundaries and are routed to the single shard whose range can hold the kmer.  Shards are opened (and so mapped)
+ * only when first needed, so a process that touches a few kmer ranges maps only the shards covering them.
+ */
+public class CortexShardedGraph implements DeBruijnGraph {
+    private final File manifestFile;
+    private final CortexShardManifest manifest;
+
+    private final long[][] firstKmers;
+    private final long[][] lastKmers;
+    private final long[] offsets;
+    private final AtomicReferenceArray<CortexGraph> shards;
+
+    private final CortexHeader header;
+
+    private long recordsSeen = 0;
+
+    public CortexShardedGraph(String manifestFilePath) {
+        this(new File(manifestFilePath));
+    }
+
+    public CortexShardedGraph(File manifestFile) {
+        this.manifestFile = manifestFile;
+        this.manifest = CortexShardManifest.load(manifestFile);
+
+        int numShards = manifest.getNumShards();
+
+        firstKmers = new long[numShards][];
+        lastKmers = new long[numShards][];
+        offsets = new long[numShards + 1];
+        shards = new AtomicReferenceArray<>(numShards);
+
+        for (int s = 0; s < numShards; s++) {
+            CortexShardManifest.Shard shard = manifest.getShard(s);
+
+            firstKmers[s] = CortexRecord.encodeBinaryKmer(shard.getFirstKmer().getBytes());
+            lastKmers[s] = CortexRecord.encodeBinaryKmer(shard.getLastKmer().getBytes());
+            offsets[s + 1] = offsets[s] + shard.getNumRecords();
+
+            if (s > 0 && CortexShardManifest.compare(firstKmers[s], lastKmers[s - 1]) <= 0) {
+                throw new CortexJDKException("Shards in manifest '" + manifestFile.getAbsolutePath() + "' are not in kmer order");
+            }
+        }
+
+        header = getShard(0).getHeader();
+    }
+
+    public int getNumShards() { return manifest.getNumShards(); }
+
+    public CortexShardManifest getManifest() { return manifest; }
+
+    /**
+     * Get a shard, opening it on first use.
+     *
+     * @param shard  the shard number
+     * @return       the shard's graph
+     */
+    public CortexGraph getShard(int shard) {
+        CortexGraph cg = shards.get(shard);
+
+        if (cg == null) {
+            CortexShardManifest.Shard s = manifest.getShard(shard);
+            CortexGraph opened = new CortexGraph(s.getFile());
+
+            if (opened.getNumRecords() != s.getNumRecords() || (header != null && (opened.getKmerSize() != header.getKmerSize() || opened.getNumColors() != header.getNumColors()))) {
+                opened.close();
+
+                throw new CortexJDKException("Shard '" + s.getFile().getAbsolutePath() + "' does not match manifest '" + manifestFile.getAbsolutePath() + "'");
+            }
+
+            if (shards.compareAndSet(shard, null, opened)) {
+                cg = opened;
+            } else {
+                opened.close();
+                cg = shards.get(shard);
+            }
+        }
+
+        return cg;
+    }
+
+    /**
+     * Find the shard whose kmer range could hold a binary kmer.  The kmer must be in its canonical orientation.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the shard number, or -1 if the kmer falls outside every shard's range
+     */
+    public int getShardIndex(long[] binaryKmer) {
+        int lo = 0, hi = firstKmers.length - 1, found = -1;
+
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (CortexShardManifest.compare(firstKmers[mid], binaryKmer) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return (found >= 0 && CortexShardManifest.compare(binaryKmer, lastKmers[found]) <= 0) ? found : -1;
+    }
+
+    public long position() { return recordsSeen; }
+
+    public void position(long i) {
+        if (i < 0) {
+            throw new CortexJDKException("Record index is prefix of range (" + i + " vs 0-" + (getNumRecords() - 1) + ")");
+        }
+
+        recordsSeen = i;
+    }
+
+    public CortexRecord getRecord(long i) {
+        if (i < 0) {
+            throw new CortexJDKException("Record index is prefix of range (" + i + " vs 0-" + (getNumRecords() - 1) + ")");
+        }
+
+        if (i >= getNumRecords()) {
+            return null;
+        }
+
+        int s = Arrays.binarySearch(offsets, i);
+        if (s < 0) {
+            s = -s - 2;
+        }
+
+        // Skip over any empty shards that start at the same offset
+        while (offsets[s + 1] == i) {
+            s++;
+        }
+
+        return getShard(s).getRecord(i - offsets[s]);
+    }
+
+    /**
+     * Iterate over every shard in kmer order.  Each call returns a new iterator with its own position.
+     *
+     * @return an independent iterator over all records in sorted order
+     */
+    public Iterator<CortexRecord> iterator() {
+        return new Iterator<CortexRecord>() {
+            private int shard = -1;
+            private Iterator<CortexRecord> records = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!records.hasNext() && shard + 1 < getNumShards()) {
+                    shard++;
+                    records = getShard(shard).iterator();
+                }
+
+                return records.hasNext();
+            }
+
+            @Override
+            public CortexRecord next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+
+                return records.next();
+            }
+        };
+    }
+
+    public boolean hasNext() { return recordsSeen < getNumRecords(); }
+
+    public CortexRecord next() { return getRecord(recordsSeen++); }
+
+    public void remove() { throw new UnsupportedOperationException(); }
+
+    public void close() {
+        for (int s = 0; s < shards.length(); s++) {
+            CortexGraph cg = shards.getAndSet(s, null);
+
+            if (cg != null) {
+                cg.close();
+            }
+        }
+    }
+
+    /**
+     * Find the record for a binary kmer that has already been encoded in its canonical orientation.  Only the
+     * shard whose range covers the kmer is opened and searched.
+     *
+     * @param binaryKmer  the canonical binary kmer
+     * @return            the record, or null if the kmer is not in the graph
+     */
+    public CortexRecord findRecord(long[] binaryKmer) {
+        int s = getShardIndex(binaryKmer);
+
+        return s < 0 ? null : getShard(s).findRecord(binaryKmer);
+    }
+
+    public CortexRecord findRecord(byte[] bk) {
+        if (bk.length != getKmerSize()) {
+            return null;
+        }
+
+        long[] binaryKmer;
+        try {
+            binaryKmer = CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation(bk));
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        return findRecord(binaryKmer);
+    }
+
+    public CortexRecord findRecord(CortexByteKmer bk) { return findRecord(bk.getKmer()); }
+    public CortexRecord findRecord(CortexKmer ck) { return findRecord(ck.getKmerAsBytes()); }
+    public CortexRecord findRecord(String sk) { return findRecord(sk.getBytes()); }
+
+    public File getFile() { return manifestFile; }
+    public CortexHeader getHeader() { return header; }
+    public int getVersion() { return header.getVersion(); }
+    public int getKmerSize() { return header.getKmerSize(); }
+    public int getKmerBits() { return header.getKmerBits(); }
+    public String getSampleName(int color) { return getColor(color).getSampleName(); }
+    public int getNumColors() { return header.getNumColors(); }
+    public long getNumRecords() { return offsets[offsets.length - 1]; }
+    public List<CortexColor> getColors() { return header.getColors(); }
+    public boolean hasColor(int color) { return header.hasColor(color); }
+    public CortexColor getColor(int color) { return header.getColor(color); }
+
+    public String toString() {
+        String info = getHeaderSummary();
+
+        info += "----" + "\n";
+        info += "kmers: " + getNumRecords() + "\n";
+        info += "shards: " + getNumShards() + "\n";
+        info += "----" + "\n";
+
+        for (int s = 0; s < getNumShards(); s++) {
+            CortexShardManifest.Shard shard = manifest.getShard(s);
+
+            info += "shard " + s + ": " + shard.getFile().getName() + " (" + shard.getNumRecords() + " kmers, " + shard.getFirstKmer() + " - " + shard.getLastKmer() + ")\n";
+        }
+
+        return info;
+    }
+}
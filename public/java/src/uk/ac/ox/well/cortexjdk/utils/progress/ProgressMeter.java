@@ -31,7 +31,13 @@ public class ProgressMeter {
         update(message);
     }
 
-    public void update(String newMessage) {
+    /**
+     * Count one record and log progress if it is time to.  Safe to call from several threads at once, e.g. from a
+     * parallel stream of records.
+     *
+     * @param newMessage  the message to log with the progress
+     */
+    public synchronized void update(String newMessage) {
         if (currentRecord % updateRecord == 0 || currentRecord == 1 || currentRecord == maxRecord || isTimeToUpdate()) {
             if (maxRecord > 0) {
                 log.info("{}{}/{} ({}%) {}", indent, currentRecord, maxRecord, String.format("%.2f", 100.0*((double)currentRecord)/((double)maxRecord)), newMessage);
@@ -0,0 +1,284 @@
+package uk.ac.ox.well.cortexjdk.utils.traversal;
+
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DirectedWeightedPseudograph;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexKmer;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexPackedKmer;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+
+import java.util.*;
+
+/**
+ * A compact, append-only subgraph of a de Bruijn graph, as built by a traversal.  Vertices are numbered in the order
+ * they are added, and each is held as just its packed kmer and record.  Edges are not objects: two adjacent kmers
+ * differ by a single base, so an edge of a given colour is one bit in a per-vertex, per-colour mask.  Each mask packs
+ * the out-edges of a vertex in its low nibble and its in-edges in its high nibble, one bit per base (A, C, G, T).
+ *
+ * Every edge weighs 1.0, as in the graphs the traversal engine has always returned.  Existing code written against
+ * JGraphT can read the subgraph through {@link #asGraph()}, which creates vertex and edge objects only as they are
+ * asked for, or copy it into a mutable graph with {@link #toGraph()}.
+ */
+public class CortexSubgraph {
+    private final Map<CortexPackedKmer, Integer> ids = new HashMap<>();
+    private final List<CortexPackedKmer> kmers = new ArrayList<>();
+    private final List<CortexRecord> records = new ArrayList<>();
+    private final Map<Integer, Set<String>> sources = new HashMap<>();
+
+    private final List<Integer> colors = new ArrayList<>();
+    private final List<byte[]> edges = new ArrayList<>();
+    private int capacity = 16;
+    private int numEdges = 0;
+
+    public int numVertices() { return kmers.size(); }
+
+    public int numEdges() { return numEdges; }
+
+    public boolean isEmpty() { return kmers.isEmpty(); }
+
+    /**
+     * Add a vertex, unless its kmer is already in the subgraph.
+     *
+     * @param pk            the packed kmer
+     * @param cr            the record for the kmer
+     * @param kmerSources   the link sources that led to the kmer (may be null)
+     * @return              the id of the vertex
+     */
+    public int addVertex(CortexPackedKmer pk, CortexRecord cr, Set<String> kmerSources) {
+        Integer id = ids.get(pk);
+
+        if (id == null) {
+            id = kmers.size();
+
+            ids.put(pk, id);
+            kmers.add(pk);
+            records.add(cr);
+
+            if (kmerSources != null) {
+                sources.put(id, kmerSources);
+            }
+
+            if (kmers.size() > capacity) {
+                capacity *= 2;
+
+                for (int slot = 0; slot < edges.size(); slot++) {
+                    edges.set(slot, Arrays.copyOf(edges.get(slot), capacity));
+                }
+            }
+        }
+
+        return id;
+    }
+
+    public int addVertex(CortexVertex cv) {
+        return addVertex(cv.getPk(), cv.getCr(), cv.getSources());
+    }
+
+    /**
+     * Add an edge between two vertices already in the subgraph.
+     *
+     * @param source  the id of the source vertex
+     * @param target  the id of the target vertex
+     * @param color   the colour of the edge
+     * @return        true if the edge was not already present
+     */
+    public boolean addEdge(int source, int target, int color) {
+        CortexPackedKmer sk = kmers.get(source);
+        CortexPackedKmer tk = kmers.get(target);
+
+        int outBase = tk.getBase(tk.length() - 1);
+        int inBase = sk.getBase(0);
+
+        if (!sk.append(outBase).equals(tk)) {
+            throw new CortexJDKException("Kmers '" + sk + "' and '" + tk + "' are not adjacent");
+        }
+
+        byte[] masks = getMasks(color, true);
+
+        if ((masks[source] & (1 << outBase)) != 0) {
+            return false;
+        }
+
+        masks[source] |= 1 << outBase;
+        masks[target] |= 1 << (4 + inBase);
+        numEdges++;
+
+        return true;
+    }
+
+    public boolean addEdge(CortexVertex source, CortexVertex target, int color) {
+        return addEdge(addVertex(source), addVertex(target), color);
+    }
+
+    /**
+     * Add all the vertices and edges of another subgraph to this one.
+     *
+     * @param other  the subgraph to add
+     */
+    public void addSubgraph(CortexSubgraph other) {
+        int[] remap = new int[other.numVertices()];
+
+        for (int id = 0; id < other.numVertices(); id++) {
+            remap[id] = addVertex(other.kmers.get(id), other.records.get(id), other.sources.get(id));
+        }
+
+        for (int slot = 0; slot < other.colors.size(); slot++) {
+            byte[] masks = other.edges.get(slot);
+
+            for (int id = 0; id < other.numVertices(); id++) {
+                for (int base = 0; base < 4; base++) {
+                    if ((masks[id] & (1 << base)) != 0) {
+                        addEdge(remap[id], remap[other.getSuccessor(id, base)], other.colors.get(slot));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the id of a kmer.
+     *
+     * @param pk  the packed kmer
+     * @return    the id of the kmer's vertex, or -1 if it is not in the subgraph
+     */
+    public int getId(CortexPackedKmer pk) {
+        Integer id = ids.get(pk);
+
+        return id == null ? -1 : id;
+    }
+
+    public CortexPackedKmer getKmer(int id) { return kmers.get(id); }
+
+    public CortexRecord getRecord(int id) { return records.get(id); }
+
+    public Set<String> getSources(int id) { return sources.get(id); }
+
+    /**
+     * Make a vertex object for an id.  A new object is made on every call; vertices for the same id are equal.
+     *
+     * @param id  the vertex id
+     * @return    the vertex
+     */
+    public CortexVertex getVertex(int id) {
+        return new CortexVertex(kmers.get(id), records.get(id), sources.get(id));
+    }
+
+    /**
+     * Get the canonical kmers of all the vertices, from their records.
+     *
+     * @return the vertex kmers, in vertex order
+     */
+    public Set<CortexKmer> getCortexKmers() {
+        Set<CortexKmer> cks = new LinkedHashSet<>();
+        for (CortexRecord cr : records) {
+            cks.add(cr.getCortexKmer());
+        }
+
+        return cks;
+    }
+
+    /**
+     * Get the colours that have at least one edge, in the order their first edges were added.
+     *
+     * @return the edge colours
+     */
+    public List<Integer> getColors() { return Collections.unmodifiableList(colors); }
+
+    /**
+     * Get the out-edges of a vertex in one colour, as a mask with bit i set for an edge to the kmer that appends base
+     * i (A=0, C=1, G=2, T=3).
+     *
+     * @param id     the vertex id
+     * @param color  the edge colour
+     * @return       the out-edge mask
+     */
+    public int getOutEdges(int id, int color) {
+        byte[] masks = getMasks(color, false);
+
+        return masks == null ? 0 : masks[id] & 0xF;
+    }
+
+    /**
+     * Get the in-edges of a vertex in one colour, as a mask with bit i set for an edge from the kmer that prepends
+     * base i.
+     *
+     * @param id     the vertex id
+     * @param color  the edge colour
+     * @return       the in-edge mask
+     */
+    public int getInEdges(int id, int color) {
+        byte[] masks = getMasks(color, false);
+
+        return masks == null ? 0 : (masks[id] >> 4) & 0xF;
+    }
+
+    /**
+     * Get the vertex reached from a vertex by appending a base.
+     *
+     * @param id    the vertex id
+     * @param base  the two-bit base
+     * @return      the id of the next vertex, or -1 if it is not in the subgraph
+     */
+    public int getSuccessor(int id, int base) { return getId(kmers.get(id).append(base)); }
+
+    /**
+     * Get the vertex reached from a vertex by prepending a base.
+     *
+     * @param id    the vertex id
+     * @param base  the two-bit base
+     * @return      the id of the previous vertex, or -1 if it is not in the subgraph
+     */
+    public int getPredecessor(int id, int base) { return getId(kmers.get(id).prepend(base)); }
+
+    /**
+     * Get a read-only JGraphT view of the subgraph.  Vertex and edge objects are made as they are asked for.
+     *
+     * @return the view
+     */
+    public DirectedGraph<CortexVertex, CortexEdge> asGraph() { return new CortexSubgraphView(this); }
+
+    /**
+     * Copy the subgraph into a mutable JGraphT graph.
+     *
+     * @return the copy
+     */
+    public DirectedWeightedPseudograph<CortexVertex, CortexEdge> toGraph() {
+        DirectedWeightedPseudograph<CortexVertex, CortexEdge> g = new DirectedWeightedPseudograph<>(CortexEdge.class);
+
+        List<CortexVertex> vertices = new ArrayList<>(numVertices());
+        for (int id = 0; id < numVertices(); id++) {
+            vertices.add(getVertex(id));
+            g.addVertex(vertices.get(id));
+        }
+
+        for (int slot = 0; slot < colors.size(); slot++) {
+            byte[] masks = edges.get(slot);
+
+            for (int id = 0; id < numVertices(); id++) {
+                for (int base = 0; base < 4; base++) {
+                    if ((masks[id] & (1 << base)) != 0) {
+                        g.addEdge(vertices.get(id), vertices.get(getSuccessor(id, base)), new CortexEdge(colors.get(slot), 1.0));
+                    }
+                }
+            }
+        }
+
+        return g;
+    }
+
+    private byte[] getMasks(int color, boolean create) {
+        int slot = colors.indexOf(color);
+
+        if (slot < 0) {
+            if (!create) {
+                return null;
+            }
+
+            slot = colors.size();
+            colors.add(color);
+            edges.add(new byte[capacity]);
+        }
+
+        return edges.get(slot);
+    }
+}
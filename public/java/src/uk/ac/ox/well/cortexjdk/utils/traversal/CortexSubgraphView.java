@@ -0,0 +1,239 @@
+package uk.ac.ox.well.cortexjdk.utils.traversal;
+
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.EdgeFactory;
+import org.jgrapht.graph.AbstractGraph;
+import org.jgrapht.graph.ClassBasedEdgeFactory;
+
+import java.util.*;
+
+/**
+ * A read-only JGraphT view of a {@link CortexSubgraph}.  Vertices and edges are made on demand from the subgraph's
+ * ids and edge masks rather than stored, and objects made for the same vertex or edge are equal, so the view works
+ * with JGraphT's iterators and path algorithms.  Attempts to modify the view throw UnsupportedOperationException.
+ */
+class CortexSubgraphView extends AbstractGraph<CortexVertex, CortexEdge> implements DirectedGraph<CortexVertex, CortexEdge> {
+    private static final String UNMODIFIABLE = "CortexSubgraph views are unmodifiable";
+
+    private final CortexSubgraph sg;
+
+    CortexSubgraphView(CortexSubgraph sg) { this.sg = sg; }
+
+    private static class SubgraphEdge extends CortexEdge {
+        private static final long serialVersionUID = 1L;
+
+        private final int source;
+        private final int target;
+
+        SubgraphEdge(int source, int target, int color) {
+            super(color, 1.0);
+
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            SubgraphEdge that = (SubgraphEdge) o;
+
+            return source == that.source && target == that.target && getColor() == that.getColor();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = source;
+            result = 31 * result + target;
+            result = 31 * result + getColor();
+            return result;
+        }
+    }
+
+    private int idOf(Object o) {
+        if (!(o instanceof CortexVertex)) {
+            return -1;
+        }
+
+        CortexVertex cv = (CortexVertex) o;
+        int id = sg.getId(cv.getPk());
+
+        return id >= 0 && Objects.equals(sg.getRecord(id), cv.getCr()) && cv.getLocus() == null ? id : -1;
+    }
+
+    private int checkedIdOf(CortexVertex v) {
+        int id = idOf(v);
+
+        if (id < 0) {
+            throw new IllegalArgumentException("no such vertex in graph: " + v);
+        }
+
+        return id;
+    }
+
+    private Set<CortexEdge> edges(int id, boolean outgoing) {
+        Set<CortexEdge> es = new LinkedHashSet<>();
+
+        for (int color : sg.getColors()) {
+            int mask = outgoing ? sg.getOutEdges(id, color) : sg.getInEdges(id, color);
+
+            for (int base = 0; base < 4; base++) {
+                if ((mask & (1 << base)) != 0) {
+                    es.add(outgoing ? new SubgraphEdge(id, sg.getSuccessor(id, base), color) : new SubgraphEdge(sg.getPredecessor(id, base), id, color));
+                }
+            }
+        }
+
+        return es;
+    }
+
+    @Override
+    public Set<CortexVertex> vertexSet() {
+        return new AbstractSet<CortexVertex>() {
+            @Override
+            public Iterator<CortexVertex> iterator() {
+                return new Iterator<CortexVertex>() {
+                    private int id = 0;
+
+                    @Override
+                    public boolean hasNext() { return id < sg.numVertices(); }
+
+                    @Override
+                    public CortexVertex next() {
+                        if (!hasNext()) { throw new NoSuchElementException(); }
+
+                        return sg.getVertex(id++);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) { return idOf(o) >= 0; }
+
+            @Override
+            public int size() { return sg.numVertices(); }
+        };
+    }
+
+    @Override
+    public Set<CortexEdge> edgeSet() {
+        return new AbstractSet<CortexEdge>() {
+            @Override
+            public Iterator<CortexEdge> iterator() {
+                return new Iterator<CortexEdge>() {
+                    private int id = 0;
+                    private Iterator<CortexEdge> es = Collections.emptyIterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!es.hasNext() && id < sg.numVertices()) {
+                            es = edges(id++, true).iterator();
+                        }
+
+                        return es.hasNext();
+                    }
+
+                    @Override
+                    public CortexEdge next() {
+                        if (!hasNext()) { throw new NoSuchElementException(); }
+
+                        return es.next();
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) { return o instanceof CortexEdge && containsEdge((CortexEdge) o); }
+
+            @Override
+            public int size() { return sg.numEdges(); }
+        };
+    }
+
+    @Override
+    public boolean containsVertex(CortexVertex v) { return idOf(v) >= 0; }
+
+    @Override
+    public boolean containsEdge(CortexEdge e) {
+        if (!(e instanceof SubgraphEdge)) {
+            return false;
+        }
+
+        SubgraphEdge se = (SubgraphEdge) e;
+
+        return se.source < sg.numVertices() && se.target < sg.numVertices() && edges(se.source, true).contains(se);
+    }
+
+    @Override
+    public Set<CortexEdge> outgoingEdgesOf(CortexVertex v) { return edges(checkedIdOf(v), true); }
+
+    @Override
+    public Set<CortexEdge> incomingEdgesOf(CortexVertex v) { return edges(checkedIdOf(v), false); }
+
+    @Override
+    public Set<CortexEdge> edgesOf(CortexVertex v) {
+        Set<CortexEdge> es = incomingEdgesOf(v);
+        es.addAll(outgoingEdgesOf(v));
+
+        return es;
+    }
+
+    @Override
+    public int outDegreeOf(CortexVertex v) { return outgoingEdgesOf(v).size(); }
+
+    @Override
+    public int inDegreeOf(CortexVertex v) { return incomingEdgesOf(v).size(); }
+
+    @Override
+    public Set<CortexEdge> getAllEdges(CortexVertex sourceVertex, CortexVertex targetVertex) {
+        int source = idOf(sourceVertex);
+        int target = idOf(targetVertex);
+
+        if (source < 0 || target < 0) {
+            return null;
+        }
+
+        Set<CortexEdge> es = edges(source, true);
+        es.removeIf(e -> ((SubgraphEdge) e).target != target);
+
+        return es;
+    }
+
+    @Override
+    public CortexEdge getEdge(CortexVertex sourceVertex, CortexVertex targetVertex) {
+        Set<CortexEdge> es = getAllEdges(sourceVertex, targetVertex);
+
+        return es == null || es.isEmpty() ? null : es.iterator().next();
+    }
+
+    @Override
+    public CortexVertex getEdgeSource(CortexEdge e) { return sg.getVertex(((SubgraphEdge) e).source); }
+
+    @Override
+    public CortexVertex getEdgeTarget(CortexEdge e) { return sg.getVertex(((SubgraphEdge) e).target); }
+
+    @Override
+    public double getEdgeWeight(CortexEdge e) { return e.getWeight(); }
+
+    @Override
+    public EdgeFactory<CortexVertex, CortexEdge> getEdgeFactory() { return new ClassBasedEdgeFactory<>(CortexEdge.class); }
+
+    @Override
+    public CortexEdge addEdge(CortexVertex sourceVertex, CortexVertex targetVertex) { throw new UnsupportedOperationException(UNMODIFIABLE); }
+
+    @Override
+    public boolean addEdge(CortexVertex sourceVertex, CortexVertex targetVertex, CortexEdge e) { throw new UnsupportedOperationException(UNMODIFIABLE); }
+
+    @Override
+    public boolean addVertex(CortexVertex v) { throw new UnsupportedOperationException(UNMODIFIABLE); }
+
+    @Override
+    public CortexEdge removeEdge(CortexVertex sourceVertex, CortexVertex targetVertex) { throw new UnsupportedOperationException(UNMODIFIABLE); }
+
+    @Override
+    public boolean removeEdge(CortexEdge e) { throw new UnsupportedOperationException(UNMODIFIABLE); }
+
+    @Override
+    public boolean removeVertex(CortexVertex v) { throw new UnsupportedOperationException(UNMODIFIABLE); }
+}
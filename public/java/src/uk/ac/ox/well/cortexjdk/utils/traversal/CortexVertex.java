@@ -1,8 +1,10 @@
 package uk.ac.ox.well.cortexjdk.utils.traversal;
 
 import htsjdk.samtools.util.Interval;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexByteKmer;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexKmer;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexPackedKmer;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
 
 import java.util.Set;
@@ -12,10 +14,13 @@ import java.util.Set;
  */
 public class CortexVertex {
     private CortexByteKmer sk;
+    private CortexPackedKmer pk;
     //private String sk;
     private CortexRecord cr;
     private Interval locus;
     private Set<String> kmerSources;
+    private int kmerHash;
+    private boolean kmerHashed = false;
 
     public CortexVertex(CortexByteKmer sk, CortexRecord cr) {
         this.sk = sk;
@@ -41,9 +46,46 @@ public class CortexVertex {
         this.kmerSources = kmerSources;
     }
 
-    public String getSk() { return new String(sk.getKmer()); }
+    /**
+     * Create a vertex from a packed kmer.  The kmer is only unpacked to bases if they are asked for, so vertices made
+     * while traversing a graph cost no more than the packed kmer itself.
+     *
+     * @param pk  the packed kmer
+     * @param cr  the record for the kmer
+     */
+    public CortexVertex(CortexPackedKmer pk, CortexRecord cr) {
+        this.pk = pk;
+        this.cr = cr;
+    }
+
+    public CortexVertex(CortexPackedKmer pk, CortexRecord cr, Set<String> kmerSources) {
+        this.pk = pk;
+        this.cr = cr;
+        this.kmerSources = kmerSources;
+    }
 
-    public CortexByteKmer getBk() { return sk; }
+    public String getSk() { return new String(getBk().getKmer()); }
+
+    public CortexByteKmer getBk() {
+        if (sk == null) {
+            sk = pk.getKmerAsByteKmer();
+        }
+
+        return sk;
+    }
+
+    /**
+     * Get the kmer of this vertex in packed form.
+     *
+     * @return the packed kmer
+     */
+    public CortexPackedKmer getPk() {
+        if (pk == null) {
+            pk = new CortexPackedKmer(sk.getKmer());
+        }
+
+        return pk;
+    }
 
     public CortexRecord getCr() { return cr; }
 
@@ -68,7 +110,9 @@ public class CortexVertex {
 
         CortexVertex that = (CortexVertex) o;
 
-        if (sk != null ? !sk.equals(that.sk) : that.sk != null) return false;
+        if (sk == null && that.sk == null) {
+            if (!pk.equals(that.pk)) return false;
+        } else if (!getBk().equals(that.getBk())) return false;
         if (cr != null ? !cr.equals(that.cr) : that.cr != null) return false;
         return locus != null ? locus.equals(that.locus) : that.locus == null;
 
@@ -76,16 +120,32 @@ public class CortexVertex {
 
     @Override
     public int hashCode() {
-        int result = sk != null ? sk.hashCode() : 0;
+        int result = getKmerHashCode();
         result = 31 * result + (cr != null ? cr.hashCode() : 0);
         result = 31 * result + (locus != null ? locus.hashCode() : 0);
         return result;
     }
 
+    private int getKmerHashCode() {
+        if (!kmerHashed) {
+            // Hash the packed kmer wherever there is one, so vertices made from bases and from packed kmers agree
+            // without unpacking every traversed kmer to bases
+            try {
+                kmerHash = getPk().hashCode();
+            } catch (CortexJDKException e) {
+                kmerHash = sk.hashCode();
+            }
+
+            kmerHashed = true;
+        }
+
+        return kmerHash;
+    }
+
     @Override
     public String toString() {
         return "CortexVertex{" +
-                "sk='" + new String(sk.getKmer()) + '\'' +
+                "sk='" + getSk() + '\'' +
                 ", cr=" + cr +
                 ", locus=" + locus +
                 ", kmerSources=" + kmerSources +
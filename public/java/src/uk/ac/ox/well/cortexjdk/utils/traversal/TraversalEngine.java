@@ -2,17 +2,15 @@ package uk.ac.ox.well.cortexjdk.utils.traversal;
 
 import org.apache.commons.math3.util.Pair;
 import org.jetbrains.annotations.Nullable;
-import org.jgrapht.DirectedGraph;
-import org.jgrapht.Graphs;
-import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DirectedWeightedPseudograph;
 import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexEdges;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexKmer;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexPackedKmer;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexByteKmer;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.links.CortexLinks;
-import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.TraversalStoppingRule;
 
 import java.util.*;
@@ -27,10 +25,12 @@ public class TraversalEngine {
 
     public TraversalEngine(TraversalEngineConfiguration ec) { this.ec = ec; }
 
-    private CortexByteKmer curKmer = null;
-    private CortexByteKmer prevKmer;
-    private CortexByteKmer nextKmer;
-    private Set<CortexByteKmer> seen;
+    // Kmers are carried through a traversal in packed form, and only unpacked to bases at the edges of the API
+    private CortexPackedKmer curKmer = null;
+    private CortexPackedKmer prevKmer;
+    private CortexPackedKmer nextKmer;
+    private Set<CortexPackedKmer> seen;
+    private UnitigCursor cursor;
 
     private Set<String> kmerSources;
     private Set<CortexLinks> specificLinksFiles;
@@ -50,26 +50,42 @@ public class TraversalEngine {
     }
 
     public DirectedWeightedPseudograph<CortexVertex, CortexEdge> dfs(String seed) {
+        CortexSubgraph dfs = dfsSubgraph(seed);
+
+        return dfs != null ? dfs.toGraph() : null;
+    }
+
+    /**
+     * Explore the graph from a seed kmer as {@link #dfs(String)} does, but return the result in compact form.  This
+     * is much smaller than a JGraphT graph for large explorations; read it with {@link CortexSubgraph#asGraph()} where
+     * JGraphT algorithms are needed.
+     *
+     * @param seed  the kmer to start from
+     * @return      the explored subgraph, or null if the traversal did not succeed
+     */
+    public CortexSubgraph dfsSubgraph(String seed) {
         validateConfiguration(seed);
 
-        DirectedGraph<CortexVertex, CortexEdge> dfsr = (ec.getTraversalDirection() == BOTH || ec.getTraversalDirection() == REVERSE) ? dfs(seed, false, 0, new HashSet<>()) : null;
-        DirectedGraph<CortexVertex, CortexEdge> dfsf = (ec.getTraversalDirection() == BOTH || ec.getTraversalDirection() == FORWARD) ? dfs(seed, true,  0, new HashSet<>()) : null;
+        CortexPackedKmer pk = new CortexPackedKmer(seed);
 
-        DirectedGraph<CortexVertex, CortexEdge> dfs = null;
+        CortexSubgraph dfsr = (ec.getTraversalDirection() == BOTH || ec.getTraversalDirection() == REVERSE) ? dfs(pk, false, 0, new HashSet<>()) : null;
+        CortexSubgraph dfsf = (ec.getTraversalDirection() == BOTH || ec.getTraversalDirection() == FORWARD) ? dfs(pk, true,  0, new HashSet<>()) : null;
+
+        CortexSubgraph dfs = null;
 
         if (ec.getGraphCombinationOperator() == OR) {
             if (dfsr != null || dfsf != null) {
-                dfs = new DefaultDirectedGraph<>(CortexEdge.class);
+                dfs = new CortexSubgraph();
 
-                if (dfsr != null) { Graphs.addGraph(dfs, dfsr); }
-                if (dfsf != null) { Graphs.addGraph(dfs, dfsf); }
+                if (dfsr != null) { dfs.addSubgraph(dfsr); }
+                if (dfsf != null) { dfs.addSubgraph(dfsf); }
             }
         } else {
             if (dfsr != null && dfsf != null) {
-                dfs = new DefaultDirectedGraph<>(CortexEdge.class);
+                dfs = new CortexSubgraph();
 
-                Graphs.addGraph(dfs, dfsr);
-                Graphs.addGraph(dfs, dfsf);
+                dfs.addSubgraph(dfsr);
+                dfs.addSubgraph(dfsf);
             }
         }
 
@@ -132,20 +148,24 @@ public class TraversalEngine {
             dwp.addEdge(cv0, cv1, new CortexEdge(altColor, 1.0));
         }
 
+        CortexPackedKmer[] adjKmers = new CortexPackedKmer[4];
+
         for (CortexVertex cv : walk) {
-            Map<Integer, Set<CortexByteKmer>> nextKmers = TraversalEngine.getAllNextKmers(cv.getCr(), !cv.getCk().getKmerAsString().equals(cv.getSk()));
-            Map<Integer, Set<CortexByteKmer>> prevKmers = TraversalEngine.getAllPrevKmers(cv.getCr(), !cv.getCk().getKmerAsString().equals(cv.getSk()));
+            CortexPackedKmer pk = cv.getPk();
+            boolean isFlipped = !CortexPackedKmer.fromBinaryKmer(cv.getCr().getBinaryKmer(), pk.length()).equals(pk);
 
             for (int refColor : refColors) {
-                for (CortexByteKmer nextKmer : nextKmers.get(refColor)) {
-                    CortexVertex nv = new CortexVertex(nextKmer, graph.findRecord(nextKmer));
+                int numNext = getAdjacentKmers(pk, cv.getCr(), refColor, isFlipped, true, adjKmers);
+                for (int i = 0; i < numNext; i++) {
+                    CortexVertex nv = new CortexVertex(adjKmers[i], graph.findRecord(adjKmers[i].getCanonicalBinaryKmer()));
 
                     dwp.addVertex(nv);
                     dwp.addEdge(cv, nv, new CortexEdge(refColor, 1.0));
                 }
 
-                for (CortexByteKmer prevKmer : prevKmers.get(refColor)) {
-                    CortexVertex pv = new CortexVertex(prevKmer, graph.findRecord(prevKmer));
+                int numPrev = getAdjacentKmers(pk, cv.getCr(), refColor, isFlipped, false, adjKmers);
+                for (int i = 0; i < numPrev; i++) {
+                    CortexVertex pv = new CortexVertex(adjKmers[i], graph.findRecord(adjKmers[i].getCanonicalBinaryKmer()));
 
                     dwp.addVertex(pv);
                     dwp.addEdge(pv, cv, new CortexEdge(refColor, 1.0));
@@ -167,26 +187,32 @@ public class TraversalEngine {
     }
 
     @Nullable
-    private DirectedGraph<CortexVertex, CortexEdge> dfs(String sk, boolean goForward, int currentTraversalDepth, Set<CortexVertex> visited) {
-        DirectedGraph<CortexVertex, CortexEdge> g = new DefaultDirectedGraph<>(CortexEdge.class);
+    private CortexSubgraph dfs(CortexPackedKmer sk, boolean goForward, int currentTraversalDepth, Set<CortexPackedKmer> visited) {
+        CortexSubgraph g = new CortexSubgraph();
 
         if (!ec.getLinks().isEmpty()) {
             seek(sk);
         }
 
-        CortexRecord cr = ec.getGraph().findRecord(sk);
+        CortexRecord cr = findRecord(sk);
 
         if (cr == null) { throw new CortexJDKException("Record '" + sk + "' does not exist in graph."); }
 
-        CortexVertex cv = new CortexVertex(new CortexByteKmer(sk), cr);
+        CortexVertex cv = new CortexVertex(sk, cr);
 
         Set<CortexVertex> avs;
 
         TraversalStoppingRule<CortexVertex, CortexEdge> stoppingRule = instantiateStopper(ec.getStoppingRule());
 
+        UnitigCursor uc = null;
+
         do {
-            Set<CortexVertex> pvs = getPrevVertices(cv.getBk());
-            Set<CortexVertex> nvs = getNextVertices(cv.getBk());
+            // Inside a unitig, both neighbours come straight from the unitig index
+            uc = getUnitigCursor(uc, cv.getPk());
+            boolean inUnitig = uc != null && uc.hasAdjacent(false) && uc.hasAdjacent(true);
+
+            Set<CortexVertex> pvs = inUnitig ? getAdjacentVertices(uc, false) : getAdjacentVertices(cv.getPk(), false);
+            Set<CortexVertex> nvs = inUnitig ? getAdjacentVertices(uc, true)  : getAdjacentVertices(cv.getPk(), true);
             avs = goForward ? nvs : pvs;
 
             if (!ec.getLinks().isEmpty()) {
@@ -213,37 +239,41 @@ public class TraversalEngine {
                 connectVertex(g, cv, avs,  null);
             }
 
-            visited.add(cv);
+            visited.add(cv.getPk());
 
             // Avoid traversing infinite loops by removing from traversal consideration
             // those vertices that have already been incorporated into the graph.
             Set<CortexVertex> seen = new HashSet<>();
             for (CortexVertex av : avs) {
-                if (visited.contains(av)) {
+                if (visited.contains(av.getPk())) {
                     seen.add(av);
                 }
             }
             avs.removeAll(seen);
 
             // Decide if we should keep exploring the graph or not
-            if (stoppingRule.keepGoing(cv, goForward, ec.getTraversalColor(), ec.getJoiningColors(), currentTraversalDepth, g.vertexSet().size(), avs.size(), false, ec.getPreviousTraversal(), ec.getRois())) {
+            if (stoppingRule.keepGoing(cv, goForward, ec.getTraversalColor(), ec.getJoiningColors(), currentTraversalDepth, g.numVertices(), avs.size(), false, ec.getPreviousTraversal(), ec.getRois())) {
                 if (avs.size() == 1) {
                     cv = avs.iterator().next();
+
+                    if (uc != null && uc.hasAdjacent(goForward)) {
+                        uc = uc.getAdjacent(goForward);
+                    }
                 } else if (avs.size() != 1) {
                     boolean childrenWereSuccessful = false;
 
                     for (CortexVertex av : avs) {
-                        DirectedGraph<CortexVertex, CortexEdge> branch = dfs(av.getSk(), goForward, currentTraversalDepth + 1, visited);
+                        CortexSubgraph branch = dfs(av.getPk(), goForward, currentTraversalDepth + 1, visited);
 
                         if (branch != null) {
-                            Graphs.addGraph(g, branch);
+                            g.addSubgraph(branch);
                             childrenWereSuccessful = true;
                         } else {
                             // could mark a rejected traversal here rather than just throwing it away
                         }
                     }
 
-                    if (childrenWereSuccessful || stoppingRule.hasTraversalSucceeded(cv, goForward, ec.getTraversalColor(), ec.getJoiningColors(), currentTraversalDepth, g.vertexSet().size(), avs.size(), true, ec.getPreviousTraversal(), ec.getRois())) {
+                    if (childrenWereSuccessful || stoppingRule.hasTraversalSucceeded(cv, goForward, ec.getTraversalColor(), ec.getJoiningColors(), currentTraversalDepth, g.numVertices(), avs.size(), true, ec.getPreviousTraversal(), ec.getRois())) {
                         return g;
                     } else {
                         // could mark a rejected traversal here rather than just throwing it away
@@ -259,181 +289,134 @@ public class TraversalEngine {
         return null;
     }
 
-    private void connectVertex(DirectedGraph<CortexVertex, CortexEdge> g, CortexVertex cv, Set<CortexVertex> pvs, Set<CortexVertex> nvs) {
+    private void connectVertex(CortexSubgraph g, CortexVertex cv, Set<CortexVertex> pvs, Set<CortexVertex> nvs) {
         g.addVertex(cv);
 
         if (pvs != null) {
             for (CortexVertex pv : pvs) {
-                g.addVertex(pv);
-                g.addEdge(pv, cv, new CortexEdge(ec.getTraversalColor(), 1.0));
+                g.addEdge(pv, cv, ec.getTraversalColor());
             }
         }
 
         if (nvs != null) {
             for (CortexVertex nv : nvs) {
-                g.addVertex(nv);
-                g.addEdge(cv, nv, new CortexEdge(ec.getTraversalColor(), 1.0));
+                g.addEdge(cv, nv, ec.getTraversalColor());
             }
         }
     }
 
-    private Set<CortexVertex> getPrevVertices(CortexByteKmer sk) {
-        Set<CortexVertex> prevVertices = new HashSet<>();
-
-        Map<Integer, Set<CortexByteKmer>> prevKmers = getAllPrevKmers(sk);
-
-        if (prevKmers.get(ec.getTraversalColor()).size() > 0) {
-            for (CortexByteKmer prevKmer : prevKmers.get(ec.getTraversalColor())) {
-                prevVertices.add(new CortexVertex(prevKmer, ec.getGraph().findRecord(prevKmer)));
-            }
-        } else {
-            Map<CortexByteKmer, Set<Integer>> inKmerMap = new HashMap<>();
-
-            for (int c : ec.getRecruitmentColors()) {
-                Set<CortexByteKmer> inKmers = prevKmers.get(c);
-
-                for (CortexByteKmer inKmer : inKmers) {
-                    if (!inKmerMap.containsKey(inKmer)) {
-                        inKmerMap.put(inKmer, new HashSet<>());
-                    }
+    private CortexRecord findRecord(CortexPackedKmer pk) {
+        return ec.getGraph().findRecord(pk.getCanonicalBinaryKmer());
+    }
 
-                    inKmerMap.get(inKmer).add(c);
-                }
-            }
+    /**
+     * Get a cursor for a kmer in the unitig index, reusing the given cursor if it is already there.
+     *
+     * @param uc  the cursor to reuse (may be null)
+     * @param pk  the kmer
+     * @return    the cursor, or null if there is no unitig index or the kmer is not indexed in the traversal colour
+     */
+    private UnitigCursor getUnitigCursor(UnitigCursor uc, CortexPackedKmer pk) {
+        if (ec.getUnitigs() == null) {
+            return null;
+        }
 
-            for (CortexByteKmer prevKmer : inKmerMap.keySet()) {
-                prevVertices.add(new CortexVertex(prevKmer, ec.getGraph().findRecord(prevKmer)));
-            }
+        if (uc != null && uc.getColor() == ec.getTraversalColor() && uc.isAt(pk)) {
+            return uc;
         }
 
-        return prevVertices;
+        return UnitigCursor.locate(ec.getUnitigs(), ec.getTraversalColor(), pk);
     }
 
-    private Set<CortexVertex> getNextVertices(CortexByteKmer sk) {
-        Set<CortexVertex> nextVertices = new HashSet<>();
-
-        Map<Integer, Set<CortexByteKmer>> nextKmers = getAllNextKmers(sk);
-        if (nextKmers.get(ec.getTraversalColor()).size() > 0) {
-            for (CortexByteKmer nextKmer : nextKmers.get(ec.getTraversalColor())) {
-                nextVertices.add(new CortexVertex(nextKmer, ec.getGraph().findRecord(nextKmer)));
-            }
-        } else {
-            Map<CortexByteKmer, Set<Integer>> outKmerMap = new HashMap<>();
-
-            for (int c : ec.getRecruitmentColors()) {
-                Set<CortexByteKmer> outKmers = nextKmers.get(c);
+    private Set<CortexVertex> getAdjacentVertices(UnitigCursor uc, boolean goForward) {
+        Set<CortexVertex> adjVertices = new HashSet<>();
+        adjVertices.add(uc.getAdjacent(goForward).getVertex());
 
-                for (CortexByteKmer outKmer : outKmers) {
-                    if (!outKmerMap.containsKey(outKmer)) {
-                        outKmerMap.put(outKmer, new HashSet<>());
-                    }
+        return adjVertices;
+    }
 
-                    outKmerMap.get(outKmer).add(c);
-                }
-            }
+    private Set<CortexPackedKmer> getAdjacentKmers(UnitigCursor uc, CortexPackedKmer pk, boolean goForward) {
+        if (uc != null && uc.getColor() == ec.getTraversalColor() && uc.hasAdjacent(goForward)) {
+            Set<CortexPackedKmer> adjKmers = new HashSet<>();
+            adjKmers.add(uc.getAdjacent(goForward).getKmer());
 
-            for (CortexByteKmer nextKmer : outKmerMap.keySet()) {
-                nextVertices.add(new CortexVertex(nextKmer, ec.getGraph().findRecord(nextKmer)));
-            }
+            return adjKmers;
         }
 
-        return nextVertices;
+        return getAdjacentKmers(pk, goForward);
     }
 
-    private static Map<Integer, Set<CortexByteKmer>> getAllPrevKmers(CortexRecord cr, boolean isFlipped) {
-        Map<Integer, Set<CortexByteKmer>> prevKmers = new HashMap<>();
+    private Set<CortexVertex> getAdjacentVertices(CortexPackedKmer pk, boolean goForward) {
+        Set<CortexVertex> adjVertices = new HashSet<>();
 
-        if (cr != null) {
-            byte[] sk = !isFlipped ? cr.getKmerAsBytes() : SequenceUtils.reverseComplement(cr.getKmerAsBytes());
-            Map<Integer, Set<Byte>> inEdges = getInEdges(cr, isFlipped);
-
-            for (int c = 0; c < cr.getNumColors(); c++) {
-                Set<CortexByteKmer> inKmers = new HashSet<>();
-
-                for (byte inEdge : inEdges.get(c)) {
-                    byte[] inKmer = new byte[sk.length];
-                    inKmer[0] = inEdge;
-                    System.arraycopy(sk, 0, inKmer, 1, sk.length - 1);
-
-                    inKmers.add(new CortexByteKmer(inKmer));
-                }
-
-                prevKmers.put(c, inKmers);
-            }
+        for (CortexPackedKmer adjKmer : getAdjacentKmers(pk, goForward)) {
+            adjVertices.add(new CortexVertex(adjKmer, findRecord(adjKmer)));
         }
 
-        return prevKmers;
+        return adjVertices;
     }
 
-    private Map<Integer, Set<CortexByteKmer>> getAllPrevKmers(CortexByteKmer sk) {
-        CortexKmer ck = new CortexKmer(sk.getKmer());
-        CortexRecord cr = ec.getGraph().findRecord(ck);
-
-        return getAllPrevKmers(cr, ck.isFlipped());
-    }
-
-    private static Map<Integer, Set<CortexByteKmer>> getAllNextKmers(CortexRecord cr, boolean isFlipped) {
-        Map<Integer, Set<CortexByteKmer>> nextKmers = new HashMap<>();
-
-        if (cr != null) {
-            byte[] sk = !isFlipped ? cr.getKmerAsBytes() : SequenceUtils.reverseComplement(cr.getKmerAsBytes());
-            Map<Integer, Set<Byte>> outEdges = getOutEdges(cr, isFlipped);
+    private Set<CortexPackedKmer> getAdjacentKmers(CortexPackedKmer pk, boolean goForward) {
+        int mask = getAdjacentMask(pk, goForward);
 
-            for (int c = 0; c < cr.getNumColors(); c++) {
-                Set<CortexByteKmer> outKmers = new HashSet<>();
-
-                for (byte outEdge : outEdges.get(c)) {
-                    byte[] outKmer = new byte[sk.length];
-                    System.arraycopy(sk, 1, outKmer, 0, sk.length - 1);
-                    outKmer[outKmer.length - 1] = outEdge;
-
-                    outKmers.add(new CortexByteKmer(outKmer));
-                }
-
-                nextKmers.put(c, outKmers);
+        Set<CortexPackedKmer> adjKmers = new HashSet<>(4);
+        for (int base = 0; base < 4; base++) {
+            if ((mask & (1 << base)) != 0) {
+                adjKmers.add(goForward ? pk.append(base) : pk.prepend(base));
             }
         }
 
-        return nextKmers;
+        return adjKmers;
     }
 
-    private Map<Integer, Set<CortexByteKmer>> getAllNextKmers(CortexByteKmer sk) {
-        CortexKmer ck = new CortexKmer(sk.getKmer());
-        CortexRecord cr = ec.getGraph().findRecord(ck);
-
-        return getAllNextKmers(cr, ck.isFlipped());
-    }
+    /**
+     * Get the neighbours of a kmer as a bitmask of two-bit bases, with bit b set if pk.append(b) (going forward) or
+     * pk.prepend(b) (going backward) is a neighbour.  Neighbours come from the traversal colour or, if it has none,
+     * from the recruitment colours.
+     *
+     * @param pk         the kmer, in the orientation it is being walked
+     * @param goForward  true for successors, false for predecessors
+     * @return           the neighbour bitmask, or 0 if the kmer is not in the graph
+     */
+    public int getAdjacentMask(CortexPackedKmer pk, boolean goForward) {
+        CortexPackedKmer ck = pk.canonical();
+        CortexRecord cr = ec.getGraph().findRecord(ck.getBinaryKmer());
+
+        if (cr == null) {
+            return 0;
+        }
 
-    private static Map<Integer, Set<Byte>> getInEdges(CortexRecord cr, boolean kmerIsFlipped) {
-        Map<Integer, Set<Byte>> inEdges = new HashMap<>();
+        int mask = cr.getAdjacentMask(ec.getTraversalColor(), ck != pk, goForward);
 
-        if (!kmerIsFlipped) {
-            for (int c = 0; c < cr.getNumColors(); c++) {
-                inEdges.put(c, new HashSet<>(cr.getInEdgesAsBytes(c, false)));
-            }
-        } else {
-            for (int c = 0; c < cr.getNumColors(); c++) {
-                inEdges.put(c, new HashSet<>(cr.getOutEdgesAsBytes(c, true)));
+        if (mask == 0) {
+            for (int c : ec.getRecruitmentColors()) {
+                mask |= cr.getAdjacentMask(c, ck != pk, goForward);
             }
         }
 
-        return inEdges;
+        return mask;
     }
 
-    private static Map<Integer, Set<Byte>> getOutEdges(CortexRecord cr, boolean kmerIsFlipped) {
-        Map<Integer, Set<Byte>> outEdges = new HashMap<>();
-
-        if (!kmerIsFlipped) {
-            for (int c = 0; c < cr.getNumColors(); c++) {
-                outEdges.put(c, new HashSet<>(cr.getOutEdgesAsBytes(c, false)));
-            }
-        } else {
-            for (int c = 0; c < cr.getNumColors(); c++) {
-                outEdges.put(c, new HashSet<>(cr.getInEdgesAsBytes(c, true)));
-            }
+    /**
+     * Write the neighbours of a kmer in one colour into a buffer.  Nothing is allocated besides the neighbouring
+     * kmers themselves.
+     *
+     * @param pk         the kmer, in the orientation it is being walked
+     * @param cr         the kmer's record
+     * @param color      the colour
+     * @param isFlipped  true if pk is the reverse complement of the record's kmer
+     * @param goForward  true for successors, false for predecessors
+     * @param adjKmers   the buffer, with room for at least four kmers
+     * @return           the number of neighbours written
+     */
+    public static int getAdjacentKmers(CortexPackedKmer pk, CortexRecord cr, int color, boolean isFlipped, boolean goForward, CortexPackedKmer[] adjKmers) {
+        int[] bases = CortexEdges.getAdjacentBases(cr.getEdges()[color], isFlipped, goForward);
+
+        for (int i = 0; i < bases.length; i++) {
+            adjKmers[i] = goForward ? pk.append(bases[i]) : pk.prepend(bases[i]);
         }
 
-        return outEdges;
+        return bases.length;
     }
 
     public static int outDegree(DirectedWeightedPseudograph<CortexVertex, CortexEdge> g, CortexVertex v) {
@@ -461,7 +444,7 @@ public class TraversalEngine {
     public CortexVertex next() {
         if (nextKmer == null) { throw new NoSuchElementException("No single next kmer from cursor '" + curKmer + "'"); }
         if (specificLinksFiles == null || !goForward) {
-            if (!goForward) { seek(new String(curKmer.getKmer())); }
+            if (!goForward) { seek(curKmer); }
 
             initializeLinkStore(true);
             goForward = true;
@@ -469,33 +452,31 @@ public class TraversalEngine {
 
         linkStore.incrementAge();
 
-        CortexRecord cr = ec.getGraph().findRecord(nextKmer);
+        UnitigCursor nc = getUnitigCursor(cursor != null && cursor.hasAdjacent(true) ? cursor.getAdjacent(true) : null, nextKmer);
+
+        CortexRecord cr = nc != null ? nc.getRecord() : findRecord(nextKmer);
         CortexVertex cv = new CortexVertex(nextKmer, cr, kmerSources);
 
         prevKmer = curKmer;
         curKmer = nextKmer;
+        cursor = nc;
 
-        Set<CortexVertex> nextKmers = getNextVertices(curKmer);
+        Set<CortexPackedKmer> nextKmers = getAdjacentKmers(cursor, curKmer, true);
         nextKmer = null;
         kmerSources = null;
 
-        if (nextKmers.size() == 1 && (!seen.contains(nextKmers.iterator().next().getBk()) || linkStore.isActive())) {
-            nextKmer = nextKmers.iterator().next().getBk();
+        if (nextKmers.size() == 1 && (!seen.contains(nextKmers.iterator().next()) || linkStore.isActive())) {
+            nextKmer = nextKmers.iterator().next();
 
             seen.add(nextKmer);
         } else if (nextKmers.size() > 1) {
-            Pair<CortexByteKmer, Set<String>> akp = getAdjacentKmer(curKmer, nextKmers, true);
+            Pair<CortexPackedKmer, Set<String>> akp = getAdjacentKmer(curKmer, nextKmers, true);
             nextKmer = akp != null ? akp.getFirst() : null;
             kmerSources = akp != null ? akp.getSecond() : null;
         }
 
         if (!ec.getLinks().isEmpty()) {
-            for (CortexLinks lm : specificLinksFiles) {
-                CortexKmer ck = new CortexKmer(curKmer.getKmer());
-                if (lm.containsKey(ck)) {
-                    linkStore.add(curKmer, lm.get(ck), true, lm.getSource());
-                }
-            }
+            addLinks(true);
         }
 
         return cv;
@@ -504,7 +485,7 @@ public class TraversalEngine {
     public CortexVertex previous() {
         if (prevKmer == null) { throw new NoSuchElementException("No single prev kmer from cursor '" + curKmer + "'"); }
         if (specificLinksFiles == null || goForward) {
-            if (goForward) { seek(new String(curKmer.getKmer())); }
+            if (goForward) { seek(curKmer); }
 
             initializeLinkStore(false);
             goForward = false;
@@ -512,61 +493,47 @@ public class TraversalEngine {
 
         linkStore.incrementAge();
 
-        CortexRecord cr = ec.getGraph().findRecord(new CortexKmer(prevKmer.getKmer()));
+        UnitigCursor pc = getUnitigCursor(cursor != null && cursor.hasAdjacent(false) ? cursor.getAdjacent(false) : null, prevKmer);
+
+        CortexRecord cr = pc != null ? pc.getRecord() : findRecord(prevKmer);
         CortexVertex cv = new CortexVertex(prevKmer, cr, kmerSources);
 
         nextKmer = curKmer;
         curKmer = prevKmer;
+        cursor = pc;
 
-        Set<CortexVertex> prevKmers = getPrevVertices(curKmer);
+        Set<CortexPackedKmer> prevKmers = getAdjacentKmers(cursor, curKmer, false);
         prevKmer = null;
         kmerSources = null;
 
-        if (prevKmers.size() == 1 && (!seen.contains(prevKmers.iterator().next().getBk()) || linkStore.isActive())) {
-            prevKmer = prevKmers.iterator().next().getBk();
+        if (prevKmers.size() == 1 && (!seen.contains(prevKmers.iterator().next()) || linkStore.isActive())) {
+            prevKmer = prevKmers.iterator().next();
 
             seen.add(prevKmer);
         } else if (prevKmers.size() > 1) {
-            Pair<CortexByteKmer, Set<String>> akp = getAdjacentKmer(curKmer, prevKmers, false);
+            Pair<CortexPackedKmer, Set<String>> akp = getAdjacentKmer(curKmer, prevKmers, false);
             prevKmer = akp != null ? akp.getFirst() : null;
             kmerSources = akp != null ? akp.getSecond() : null;
         }
 
         if (!ec.getLinks().isEmpty()) {
-            for (CortexLinks lm : specificLinksFiles) {
-                CortexKmer ck = new CortexKmer(curKmer.getKmer());
-                if (lm.containsKey(ck)) {
-                    linkStore.add(curKmer, lm.get(ck), false, lm.getSource());
-                }
-            }
+            addLinks(false);
         }
 
         return cv;
     }
 
-    private Pair<CortexByteKmer, Set<String>> getAdjacentKmer(CortexByteKmer kmer, Set<CortexVertex> adjKmers, boolean goForward) {
+    private Pair<CortexPackedKmer, Set<String>> getAdjacentKmer(CortexPackedKmer kmer, Set<CortexPackedKmer> adjKmers, boolean goForward) {
         Pair<String, Set<String>> choicePair = linkStore.getNextJunctionChoice();
         String choice = choicePair.getFirst();
         Set<String> sources = choicePair.getSecond();
 
         if (choice != null) {
-            Set<CortexByteKmer> adjKmersStr = new HashSet<>();
-            for (CortexVertex cv : adjKmers) {
-                adjKmersStr.add(cv.getBk());
-            }
+            int base = CortexPackedKmer.encodeBase(choice.getBytes()[0]);
 
-            byte[] bAdjKmer = new byte[kmer.length()];
-            if (goForward) {
-                System.arraycopy(kmer.getKmer(), 1, bAdjKmer, 0, kmer.length() - 1);
-                bAdjKmer[bAdjKmer.length - 1] = choice.getBytes()[0];
-            } else {
-                bAdjKmer[0] = choice.getBytes()[0];
-                System.arraycopy(kmer.getKmer(), 0, bAdjKmer, 1, kmer.length() - 1);
-            }
-
-            CortexByteKmer adjKmer = new CortexByteKmer(bAdjKmer);
+            CortexPackedKmer adjKmer = goForward ? kmer.append(base) : kmer.prepend(base);
 
-            if (adjKmersStr.contains(adjKmer)) {
+            if (adjKmers.contains(adjKmer)) {
                 return new Pair<>(adjKmer, sources);
             }
         }
@@ -574,6 +541,17 @@ public class TraversalEngine {
         return null;
     }
 
+    private void addLinks(boolean goForward) {
+        CortexByteKmer bk = curKmer.getKmerAsByteKmer();
+        CortexKmer ck = new CortexKmer(bk.getKmer());
+
+        for (CortexLinks lm : specificLinksFiles) {
+            if (lm.containsKey(ck)) {
+                linkStore.add(bk, lm.get(ck), goForward, lm.getSource());
+            }
+        }
+    }
+
     private void initializeLinkStore(boolean goForward) {
         specificLinksFiles = new HashSet<>();
         if (!ec.getLinks().isEmpty()) {
@@ -581,9 +559,10 @@ public class TraversalEngine {
                 if (lm.getHeader().getSampleNameForColor(0).equals(ec.getGraph().getSampleName(ec.getTraversalColor()))) {
                     specificLinksFiles.add(lm);
 
-                    CortexKmer ck = new CortexKmer(curKmer.getKmer());
+                    CortexByteKmer bk = curKmer.getKmerAsByteKmer();
+                    CortexKmer ck = new CortexKmer(bk.getKmer());
                     if (lm.containsKey(ck)) {
-                        linkStore.add(curKmer, lm.get(ck), goForward, lm.getSource());
+                        linkStore.add(bk, lm.get(ck), goForward, lm.getSource());
                     }
                 }
             }
@@ -592,63 +571,61 @@ public class TraversalEngine {
 
     public void seek(String sk) {
         if (sk != null) {
-            curKmer = new CortexByteKmer(sk.getBytes());
+            seek(new CortexPackedKmer(sk));
+        }
+    }
 
-            Set<CortexVertex> prevKmers = getPrevVertices(curKmer);
-            prevKmer = (prevKmers.size() == 1) ? prevKmers.iterator().next().getBk() : null;
+    private void seek(CortexPackedKmer sk) {
+        curKmer = sk;
+        cursor = getUnitigCursor(cursor, curKmer);
 
-            Set<CortexVertex> nextKmers = getNextVertices(curKmer);
-            nextKmer = (nextKmers.size() == 1) ? nextKmers.iterator().next().getBk() : null;
+        Set<CortexPackedKmer> prevKmers = getAdjacentKmers(cursor, curKmer, false);
+        prevKmer = (prevKmers.size() == 1) ? prevKmers.iterator().next() : null;
 
-            linkStore = new LinkStore();
-            seen = new HashSet<>();
-            specificLinksFiles = null;
-        }
+        Set<CortexPackedKmer> nextKmers = getAdjacentKmers(cursor, curKmer, true);
+        nextKmer = (nextKmers.size() == 1) ? nextKmers.iterator().next() : null;
+
+        linkStore = new LinkStore();
+        seen = new HashSet<>();
+        specificLinksFiles = null;
     }
 
     public boolean hasNext() { return nextKmer != null; }
 
     public boolean hasPrevious() { return prevKmer != null; }
 
-    private DirectedWeightedPseudograph<CortexVertex, CortexEdge> addSecondaryColors(DirectedGraph<CortexVertex, CortexEdge> g) {
-        DirectedWeightedPseudograph<CortexVertex, CortexEdge> m = new DirectedWeightedPseudograph<>(CortexEdge.class);
-
+    private CortexSubgraph addSecondaryColors(CortexSubgraph g) {
         Set<Integer> displayColors = new HashSet<>(ec.getSecondaryColors());
         if (displayColors.isEmpty()) {
-            Graphs.addGraph(m, g);
-        } else {
-            Map<CortexByteKmer, Map<Integer, Set<CortexByteKmer>>> pkscache = new HashMap<>();
-            Map<CortexByteKmer, Map<Integer, Set<CortexByteKmer>>> nkscache = new HashMap<>();
-
-            for (int c : displayColors) {
-                DirectedGraph<CortexVertex, CortexEdge> g2 = new DefaultDirectedGraph<>(CortexEdge.class);
-
-                for (CortexVertex v : g.vertexSet()) {
-                    Map<Integer, Set<CortexByteKmer>> pks = pkscache.containsKey(v.getBk()) ? pkscache.get(v.getBk()) : getAllPrevKmers(v.getBk());
-                    Map<Integer, Set<CortexByteKmer>> nks = nkscache.containsKey(v.getBk()) ? nkscache.get(v.getBk()) : getAllNextKmers(v.getBk());
+            return g;
+        }
 
-                    pkscache.put(v.getBk(), pks);
-                    nkscache.put(v.getBk(), nks);
+        CortexSubgraph m = new CortexSubgraph();
 
-                    g2.addVertex(v);
+        CortexPackedKmer[] adjKmers = new CortexPackedKmer[4];
 
-                    for (CortexByteKmer pk : pks.get(c)) {
-                        CortexVertex pv = new CortexVertex(pk, ec.getGraph().findRecord(pk));
+        for (int c : displayColors) {
+            CortexSubgraph g2 = new CortexSubgraph();
 
-                        g2.addVertex(pv);
-                        g2.addEdge(pv, v, new CortexEdge(c, 1.0));
-                    }
+            for (int id = 0; id < g.numVertices(); id++) {
+                CortexPackedKmer vk = g.getKmer(id);
+                CortexRecord vr = g.getRecord(id);
+                boolean isFlipped = vk.canonical() != vk;
 
-                    for (CortexByteKmer nk : nks.get(c)) {
-                        CortexVertex nv = new CortexVertex(nk, ec.getGraph().findRecord(nk));
+                int v = g2.addVertex(vk, vr, g.getSources(id));
 
-                        g2.addVertex(nv);
-                        g2.addEdge(v, nv, new CortexEdge(c, 1.0));
-                    }
+                int numPrev = getAdjacentKmers(vk, vr, c, isFlipped, false, adjKmers);
+                for (int i = 0; i < numPrev; i++) {
+                    g2.addEdge(g2.addVertex(adjKmers[i], findRecord(adjKmers[i]), null), v, c);
                 }
 
-                Graphs.addGraph(m, g2);
+                int numNext = getAdjacentKmers(vk, vr, c, isFlipped, true, adjKmers);
+                for (int i = 0; i < numNext; i++) {
+                    g2.addEdge(v, g2.addVertex(adjKmers[i], findRecord(adjKmers[i]), null), c);
+                }
             }
+
+            m.addSubgraph(g2);
         }
 
         return m;
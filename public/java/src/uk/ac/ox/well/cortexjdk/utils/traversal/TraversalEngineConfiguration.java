@@ -3,6 +3,7 @@ package uk.ac.ox.well.cortexjdk.utils.traversal;
 import org.jgrapht.graph.DirectedWeightedPseudograph;
 import uk.ac.ox.well.cortexjdk.utils.alignment.kmer.KmerLookup;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphUnitigIndex;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.links.CortexLinks;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.TraversalStoppingRule;
 
@@ -32,8 +33,38 @@ public class TraversalEngineConfiguration {
     private DeBruijnGraph graph;
     private DeBruijnGraph rois;
     private Set<CortexLinks> links = new HashSet<>();
+    private CortexGraphUnitigIndex unitigs;
 //    private Set<KmerLookup> kls = new HashSet<>();
 
+    public TraversalEngineConfiguration() {}
+
+    /**
+     * Copy a configuration, so that engines running on separate threads can each change their own.  The graphs, links,
+     * unitig index and previous traversal are shared with the original; the color sets are copied.
+     *
+     * @param other  the configuration to copy
+     */
+    public TraversalEngineConfiguration(TraversalEngineConfiguration other) {
+        gco = other.gco;
+        td = other.td;
+        connectAllNeighbors = other.connectAllNeighbors;
+        discardFailedBranches = other.discardFailedBranches;
+        markFailedBranches = other.markFailedBranches;
+
+        traversalColor = other.traversalColor;
+        joiningColors = new TreeSet<>(other.joiningColors);
+        recruitmentColors = new TreeSet<>(other.recruitmentColors);
+        secondaryColors = new TreeSet<>(other.secondaryColors);
+
+        previousTraversal = other.previousTraversal;
+        stoppingRule = other.stoppingRule;
+
+        graph = other.graph;
+        rois = other.rois;
+        links = new HashSet<>(other.links);
+        unitigs = other.unitigs;
+    }
+
     public GraphCombinationOperator getGraphCombinationOperator() { return gco; }
     public void setGraphCombinationOperator(GraphCombinationOperator gco) { this.gco = gco; }
 
@@ -80,6 +111,15 @@ public class TraversalEngineConfiguration {
     public DeBruijnGraph getRois() { return rois; }
     public void setRois(DeBruijnGraph rois) { this.rois = rois; }
 
+    /**
+     * A unitig index for the graph turns on unitig jumping: inside a unitig of the traversal colour, neighbouring
+     * kmers are read from the index rather than looked up.  The stopping rule is still consulted at every kmer, as
+     * stoppers may depend on coverage in other colours or on the ROIs, so walks and depth-first searches visit exactly
+     * the kmers they would without the index.
+     */
+    public CortexGraphUnitigIndex getUnitigs() { return unitigs; }
+    public void setUnitigs(CortexGraphUnitigIndex unitigs) { this.unitigs = unitigs; }
+
 //    public Set<KmerLookup> getReferences() { return kls; }
 //    public void setReferences(Set<KmerLookup> kls) { this.kls = kls; }
 }
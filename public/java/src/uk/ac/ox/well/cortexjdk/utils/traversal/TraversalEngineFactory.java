@@ -4,6 +4,7 @@ import org.jgrapht.graph.DirectedWeightedPseudograph;
 import uk.ac.ox.well.cortexjdk.utils.alignment.kmer.KmerLookup;
 import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.DeBruijnGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphUnitigIndex;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.links.CortexLinks;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.TraversalStoppingRule;
 
@@ -40,6 +41,7 @@ public class TraversalEngineFactory {
     public TraversalEngineFactory rois(DeBruijnGraph rois) { configuration.setRois(rois); return this; }
     public TraversalEngineFactory links(CortexLinks... links) { Arrays.stream(links).forEach(l -> configuration.getLinks().add(l)); return this; }
     public TraversalEngineFactory links(Collection<CortexLinks> links) { configuration.getLinks().addAll(links); return this; }
+    public TraversalEngineFactory unitigs(CortexGraphUnitigIndex unitigs) { configuration.setUnitigs(unitigs); return this; }
 //    public TraversalEngineFactory references(KmerLookup... lookups) { Arrays.stream(lookups).forEach(r -> configuration.getReferences().add(r)); return this; }
 //    public TraversalEngineFactory references(Collection<KmerLookup> lookups) { configuration.getReferences().addAll(lookups); return this; }
 
@@ -49,6 +51,7 @@ public class TraversalEngineFactory {
         configuration.getSecondaryColors().forEach(c -> { if (c < 0) throw new CortexJDKException("Secondary colors must be greater than 0 (provided " + c + ")"); });
 
         if (configuration.getGraph() == null) { throw new CortexJDKException("Must provide graph to traverse."); }
+        if (configuration.getUnitigs() != null && configuration.getUnitigs().getGraph() != configuration.getGraph()) { throw new CortexJDKException("Unitig index must be for the graph being traversed."); }
 
         return new TraversalEngine(configuration);
     }
@@ -0,0 +1,146 @@
+package uk.ac.ox.well.cortexjdk.utils.traversal;
+
+import org.apache.commons.math3.util.Pair;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexKmer;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Runs traversals from a sequence of seed kmers on a pool of worker threads.  Each worker has its own
+ * {@link TraversalEngine}, made from a copy of a template configuration, so a traversal may change its engine's
+ * configuration without affecting the others.
+ *
+ * Results are handed to the consumer on the calling thread, one per seed and in seed order.  The consumer returns the
+ * kmers it claims, and a seed that has been claimed by an earlier seed's result is skipped.  Workers run ahead of the
+ * consumer, skipping seeds that are already claimed when they start; a result for a seed claimed while its traversal
+ * was running is discarded.  The consumer therefore sees exactly what a single-threaded loop over the seeds would
+ * have seen, whatever the number of threads.
+ *
+ * @param <R> the type of a traversal's result
+ */
+public class TraversalExecutor<R> {
+    private static final int SEEDS_PER_THREAD = 64;
+
+    private final TraversalEngineConfiguration template;
+    private final BiFunction<TraversalEngine, String, R> traversal;
+    private final int numThreads;
+
+    private final Set<CortexKmer> claimed = ConcurrentHashMap.newKeySet();
+
+    @FunctionalInterface
+    public interface ResultConsumer<R> {
+        /**
+         * Handle the result of the traversal from one seed.
+         *
+         * @param seed    the seed kmer
+         * @param result  the traversal's result, or null if the seed was already claimed or the traversal found nothing
+         * @return        the kmers to claim (may be empty or null)
+         */
+        Collection<CortexKmer> accept(String seed, R result);
+    }
+
+    /**
+     * Create an executor.
+     *
+     * @param template    the configuration to copy for each worker's engine
+     * @param traversal   the traversal to run from each seed, for example TraversalEngine::dfsSubgraph
+     * @param numThreads  the number of worker threads (1 runs every traversal on the calling thread)
+     */
+    public TraversalExecutor(TraversalEngineConfiguration template, BiFunction<TraversalEngine, String, R> traversal, int numThreads) {
+        if (numThreads < 1) {
+            throw new CortexJDKException("Number of threads must be at least 1 (got " + numThreads + ")");
+        }
+
+        this.template = template;
+        this.traversal = traversal;
+        this.numThreads = numThreads;
+    }
+
+    public boolean isClaimed(CortexKmer ck) { return claimed.contains(ck); }
+
+    public Set<CortexKmer> getClaimedKmers() { return Collections.unmodifiableSet(claimed); }
+
+    /**
+     * Run a traversal from each seed, passing the results to the consumer in seed order.
+     *
+     * @param seeds     the seed kmers
+     * @param consumer  the consumer of the results
+     */
+    public void execute(Iterable<String> seeds, ResultConsumer<R> consumer) {
+        if (numThreads == 1) {
+            TraversalEngine e = makeEngine();
+
+            for (String seed : seeds) {
+                commit(seed, isClaimed(seed) ? null : traversal.apply(e, seed), consumer);
+            }
+
+            return;
+        }
+
+        AtomicInteger threadNum = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "TraversalExecutor-" + threadNum.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+
+        ThreadLocal<TraversalEngine> engines = ThreadLocal.withInitial(this::makeEngine);
+
+        // Bound the number of traversals queued or finished but not yet consumed
+        Deque<Pair<String, Future<R>>> pending = new ArrayDeque<>();
+        int window = SEEDS_PER_THREAD*numThreads;
+
+        try {
+            for (String seed : seeds) {
+                if (pending.size() >= window) {
+                    commit(pending.removeFirst(), consumer);
+                }
+
+                pending.addLast(new Pair<>(seed, pool.submit(() -> isClaimed(seed) ? null : traversal.apply(engines.get(), seed))));
+            }
+
+            while (!pending.isEmpty()) {
+                commit(pending.removeFirst(), consumer);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private TraversalEngine makeEngine() {
+        return new TraversalEngineFactory()
+                .configuration(new TraversalEngineConfiguration(template))
+                .make();
+    }
+
+    private boolean isClaimed(String seed) {
+        return !claimed.isEmpty() && claimed.contains(new CortexKmer(seed));
+    }
+
+    private void commit(Pair<String, Future<R>> p, ResultConsumer<R> consumer) {
+        try {
+            commit(p.getFirst(), p.getSecond().get(), consumer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CortexJDKException("Interrupted while waiting for traversal from '" + p.getFirst() + "'", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new CortexJDKException("Traversal from '" + p.getFirst() + "' failed", e.getCause());
+        }
+    }
+
+    private void commit(String seed, R result, ResultConsumer<R> consumer) {
+        Collection<CortexKmer> claims = consumer.accept(seed, isClaimed(seed) ? null : result);
+
+        if (claims != null) {
+            claimed.addAll(claims);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package uk.ac.ox.well.cortexjdk.utils.traversal;
+
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraphUnitigIndex;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexPackedKmer;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+
+/**
+ * A position in a unitig of a {@link CortexGraphUnitigIndex}, as seen by a traversal that may be walking the unitig
+ * in either orientation.  Moving along the unitig reads the next record by index, so no kmer lookup is needed until
+ * the traversal reaches one of the unitig's ends.  A cursor never moves; instead it makes (and remembers) cursors for
+ * its neighbours, but not for the cursor that made it, so a long walk does not keep every kmer behind it alive.
+ */
+class UnitigCursor {
+    private final CortexGraphUnitigIndex unitigs;
+    private final int color;
+    private final int unitig;
+    private final int pos;
+    private final boolean alongUnitig;
+
+    private final CortexPackedKmer kmer;
+    private final CortexRecord record;
+
+    private UnitigCursor next;
+    private UnitigCursor prev;
+
+    private UnitigCursor(CortexGraphUnitigIndex unitigs, int color, int unitig, int pos, boolean alongUnitig, CortexPackedKmer kmer, CortexRecord record) {
+        this.unitigs = unitigs;
+        this.color = color;
+        this.unitig = unitig;
+        this.pos = pos;
+        this.alongUnitig = alongUnitig;
+        this.kmer = kmer;
+        this.record = record;
+    }
+
+    /**
+     * Find the unitig position of a kmer.
+     *
+     * @param unitigs  the unitig index
+     * @param color    the traversal colour
+     * @param pk       the kmer, in the orientation it is being walked
+     * @return         the cursor, or null if the colour is not indexed or the kmer has no coverage in it
+     */
+    static UnitigCursor locate(CortexGraphUnitigIndex unitigs, int color, CortexPackedKmer pk) {
+        if (!unitigs.hasColor(color)) {
+            return null;
+        }
+
+        CortexPackedKmer ck = pk.canonical();
+        long r = unitigs.getGraph().findRecordIndex(ck.getBinaryKmer());
+        int u = r < 0 ? -1 : unitigs.findUnitig(color, r);
+
+        if (u < 0) {
+            return null;
+        }
+
+        int pos = unitigs.findPosition(color, r);
+        boolean alongUnitig = (ck != pk) == unitigs.isFlipped(color, u, pos);
+
+        return new UnitigCursor(unitigs, color, u, pos, alongUnitig, pk, unitigs.getGraph().getRecord(r));
+    }
+
+    int getColor() { return color; }
+
+    CortexPackedKmer getKmer() { return kmer; }
+
+    CortexRecord getRecord() { return record; }
+
+    CortexVertex getVertex() { return new CortexVertex(kmer, record); }
+
+    boolean isAt(CortexPackedKmer pk) { return kmer.equals(pk); }
+
+    /**
+     * Check whether the kmer has a single neighbour in a direction that is also in the unitig.
+     *
+     * @param goForward  the direction, relative to the orientation the kmer is being walked
+     * @return           true if the unitig continues that way
+     */
+    boolean hasAdjacent(boolean goForward) {
+        int p = pos + (goForward == alongUnitig ? 1 : -1);
+
+        return p >= 0 && p < unitigs.getLength(color, unitig);
+    }
+
+    /**
+     * Move one kmer along the unitig.  The caller must check {@link #hasAdjacent(boolean)} first.
+     *
+     * @param goForward  the direction, relative to the orientation the kmer is being walked
+     * @return           the cursor at the neighbouring kmer
+     */
+    UnitigCursor getAdjacent(boolean goForward) {
+        UnitigCursor uc = goForward ? next : prev;
+
+        if (uc == null) {
+            int p = pos + (goForward == alongUnitig ? 1 : -1);
+
+            CortexRecord cr = unitigs.getRecord(color, unitig, p);
+            CortexPackedKmer pk = CortexPackedKmer.fromBinaryKmer(cr.getBinaryKmer(), cr.getKmerSize());
+            if (unitigs.isFlipped(color, unitig, p) == alongUnitig) {
+                pk = pk.reverseComplement();
+            }
+
+            uc = new UnitigCursor(unitigs, color, unitig, p, alongUnitig, pk, cr);
+
+            if (goForward) {
+                next = uc;
+            } else {
+                prev = uc;
+            }
+        }
+
+        return uc;
+    }
+}
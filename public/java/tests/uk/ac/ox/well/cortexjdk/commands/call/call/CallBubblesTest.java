@@ -0,0 +1,162 @@
+package uk.ac.ox.well.cortexjdk.commands.call.call;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.alignment.kmer.KmerLookup;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.caller.Bubble;
+import uk.ac.ox.well.cortexjdk.utils.caller.BubbleCaller;
+import uk.ac.ox.well.cortexjdk.utils.caller.BubbleCallerFactory;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.links.CortexLinks;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalExecutor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.*;
+
+public class CallBubblesTest {
+    private static final int KMER_SIZE = 11;
+
+    private CortexGraph graph;
+    private CortexGraph roi;
+    private HashMap<String, KmerLookup> references;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        Random rng = new Random(0);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append("ACGT".charAt(rng.nextInt(4)));
+        }
+
+        // The child carries two SNPs relative to the reference
+        String ref = sb.toString();
+        String kid = ref.substring(0, 100) + (ref.charAt(100) == 'A' ? 'C' : 'A') + ref.substring(101, 200) + (ref.charAt(200) == 'G' ? 'T' : 'G') + ref.substring(201);
+
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("ref", Collections.singletonList(ref));
+        haplotypes.put("kid", Collections.singletonList(kid));
+        graph = TempGraphAssembler.buildGraph(haplotypes, KMER_SIZE);
+
+        List<String> novelKmers = new ArrayList<>();
+        for (CortexRecord cr : graph) {
+            if (cr.getCoverage(0) == 0) {
+                novelKmers.add(cr.getKmerAsString());
+            }
+        }
+
+        Map<String, Collection<String>> rois = new LinkedHashMap<>();
+        rois.put("kid", novelKmers);
+        roi = TempGraphAssembler.buildGraph(rois, KMER_SIZE);
+
+        references = new HashMap<>();
+        references.put("ref", makeReference(ref));
+    }
+
+    private KmerLookup makeReference(String seq) throws IOException {
+        File dir = Files.createTempDirectory("callbubbles").toFile();
+        dir.deleteOnExit();
+
+        File fasta = new File(dir, "ref.fa");
+        Files.write(fasta.toPath(), (">chr1\n" + seq + "\n").getBytes());
+        Files.write(new File(dir, "ref.fa.fai").toPath(), ("chr1\t" + seq.length() + "\t6\t" + seq.length() + "\t" + (seq.length() + 1) + "\n").getBytes());
+        Files.write(new File(dir, "ref.dict").toPath(), ("@HD\tVN:1.5\n@SQ\tSN:chr1\tLN:" + seq.length() + "\n").getBytes());
+
+        File db = KmerLookup.createIndex(fasta, "ref", KMER_SIZE, null);
+
+        for (File f : new File[] { fasta, new File(dir, "ref.fa.fai"), new File(dir, "ref.dict"), db }) {
+            f.deleteOnExit();
+        }
+
+        return new KmerLookup(fasta);
+    }
+
+    private List<String> callBubbles(int numThreads) {
+        BubbleCaller bc = new BubbleCallerFactory()
+                .alternateColor(graph.getColorForSampleName("kid"))
+                .referenceColors(graph.getColorForSampleName("ref"))
+                .references(references)
+                .graph(graph)
+                .rois(roi)
+                .make();
+
+        ThreadLocal<BubbleCaller> callers = ThreadLocal.withInitial(() -> new BubbleCaller(bc.getConfiguration()));
+
+        List<String> seeds = new ArrayList<>();
+        for (CortexRecord cr : roi) {
+            seeds.add(cr.getKmerAsString());
+        }
+
+        List<String> results = new ArrayList<>();
+        new TraversalExecutor<Set<Bubble>>(bc.getOpeningConfiguration(), (e, seed) -> callers.get().call(e, seed), numThreads).execute(seeds, (seed, bs) -> {
+            List<String> bubbles = new ArrayList<>();
+            for (Bubble b : bs) {
+                bubbles.add(b.toString());
+            }
+            Collections.sort(bubbles);
+
+            results.add(seed + " " + bubbles);
+
+            return null;
+        });
+
+        return results;
+    }
+
+    private List<String> runCallBubbles(int numThreads) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        File rout = File.createTempFile("remaining", ".ctx");
+        rout.deleteOnExit();
+
+        CallBubbles cb = new CallBubbles();
+        cb.GRAPH = graph;
+        cb.LINKS = new ArrayList<CortexLinks>();
+        cb.ROI = roi;
+        cb.CHILD = "kid";
+        cb.REFERENCES = references;
+        cb.NUM_THREADS = numThreads;
+        cb.out = new PrintStream(bytes);
+        cb.rout = rout;
+
+        cb.execute();
+        cb.out.close();
+
+        List<String> output = new ArrayList<>(Arrays.asList(bytes.toString().split("\n")));
+        for (CortexRecord cr : new CortexGraph(rout)) {
+            output.add(cr.toString());
+        }
+
+        return output;
+    }
+
+    @Test
+    public void bubblesDoNotDependOnThreadCountTest() {
+        List<String> results1 = callBubbles(1);
+
+        Assert.assertEquals(results1.size(), (int) roi.getNumRecords());
+        Assert.assertTrue(results1.stream().anyMatch(r -> !r.endsWith("[]")));
+
+        for (int numThreads : Arrays.asList(2, 4)) {
+            Assert.assertEquals(callBubbles(numThreads), results1);
+        }
+    }
+
+    @Test
+    public void outputDoesNotDependOnThreadCountTest() throws IOException {
+        List<String> output1 = runCallBubbles(1);
+
+        Assert.assertEquals(output1.size(), 1 + (int) roi.getNumRecords());
+
+        for (int numThreads : Arrays.asList(2, 4)) {
+            Assert.assertEquals(runCallBubbles(numThreads), output1);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package uk.ac.ox.well.cortexjdk.commands.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempRandomGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexKmer;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class SetOperationTest {
+    private List<CortexRecord> records;
+    private List<CortexRecord> first;
+    private List<CortexRecord> second;
+
+    @BeforeClass
+    public void setup() {
+        records = TempRandomGraphAssembler.makeRecords(1000, 31, 1);
+        Collections.sort(records);
+
+        // Records 400 to 599 are in both graphs
+        first = records.subList(0, 600);
+        second = records.subList(400, 1000);
+    }
+
+    @Test
+    public void unionTest() throws IOException {
+        Assert.assertEquals(apply("union", 1, first, second), getKmers(records));
+    }
+
+    @Test
+    public void intersectTest() throws IOException {
+        File out = run("intersect", 1, first, second);
+
+        Assert.assertEquals(getKmers(new CortexGraph(out)), getKmers(records.subList(400, 600)));
+
+        for (CortexRecord cr : new CortexGraph(out)) {
+            CortexRecord expected = records.get(Collections.binarySearch(records, cr));
+
+            Assert.assertEquals(cr.getCoverage(0), expected.getCoverage(0));
+            Assert.assertEquals(cr.getCoverage(1), expected.getCoverage(0));
+            Assert.assertEquals(cr.getEdges()[1], expected.getEdges()[0]);
+        }
+    }
+
+    @Test
+    public void subtractTest() throws IOException {
+        Assert.assertEquals(apply("subtract", 1, first, second), getKmers(records.subList(0, 400)));
+        Assert.assertEquals(apply("subtract", 1, second, first), getKmers(records.subList(600, 1000)));
+    }
+
+    @Test
+    public void minCoverageTest() throws IOException {
+        Set<CortexKmer> expected = new TreeSet<>();
+        for (CortexRecord cr : records) {
+            if (cr.getCoverage(0) >= 50) {
+                expected.add(cr.getCortexKmer());
+            }
+        }
+
+        Assert.assertEquals(apply("union", 50, first, second), expected);
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void unsortedGraphThrowsException() throws IOException {
+        List<CortexRecord> unsorted = new ArrayList<>(first);
+        Collections.reverse(unsorted);
+
+        run("union", 1, unsorted, second);
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void unknownOperationThrowsException() throws IOException {
+        run("xor", 1, first, second);
+    }
+
+    private Set<CortexKmer> apply(String operation, int minCoverage, List<CortexRecord> a, List<CortexRecord> b) throws IOException {
+        return getKmers(new CortexGraph(run(operation, minCoverage, a, b)));
+    }
+
+    private File run(String operation, int minCoverage, List<CortexRecord> a, List<CortexRecord> b) throws IOException {
+        File out = File.createTempFile("setop", ".ctx");
+        out.deleteOnExit();
+
+        SetOperation so = new SetOperation();
+        so.GRAPHS = new ArrayList<>();
+        so.GRAPHS.add(new CortexGraph(TempRandomGraphAssembler.writeGraph(a, 31, 1)));
+        so.GRAPHS.add(new CortexGraph(TempRandomGraphAssembler.writeGraph(b, 31, 1)));
+        so.OPERATION = operation;
+        so.MIN_COVERAGE = minCoverage;
+        so.out = out;
+
+        so.execute();
+
+        return out;
+    }
+
+    private Set<CortexKmer> getKmers(Iterable<CortexRecord> records) {
+        Set<CortexKmer> kmers = new TreeSet<>();
+        for (CortexRecord cr : records) {
+            kmers.add(cr.getCortexKmer());
+        }
+
+        return kmers;
+    }
+}
@@ -4,8 +4,11 @@ import org.junit.Assert;
 import org.testng.annotations.Test;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecordView;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -92,4 +95,37 @@ public class CortexCollectionTest {
             }
         }
     }
+
+    @Test
+    public void testViewsMatchIteration() {
+        CortexCollection cc = new CortexCollection("testdata/graph.list.txt");
+
+        List<CortexRecord> records = new ArrayList<>();
+        for (CortexRecord cr : cc) {
+            records.add(cr);
+        }
+
+        int index = 0;
+        for (CortexRecordView cv : cc.views()) {
+            Assert.assertEquals(records.get(index), cv.copy());
+            Assert.assertEquals(records.get(index).getEdgesAsString(1), cv.getEdgesAsString(1));
+
+            index++;
+        }
+
+        Assert.assertEquals(records.size(), index);
+    }
+
+    @Test
+    public void testFindRecordIsCached() {
+        CortexCollection cc = new CortexCollection("testdata/graph.list.txt");
+
+        for (CortexRecord cr : cc) {
+            CortexRecord first = cc.findRecord(cr.getKmerAsString());
+            CortexRecord second = cc.findRecord(cr.getKmerAsString());
+
+            Assert.assertEquals(cr, first);
+            Assert.assertSame(first, second);
+        }
+    }
 }
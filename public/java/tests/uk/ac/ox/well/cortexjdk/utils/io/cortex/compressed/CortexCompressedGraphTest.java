@@ -0,0 +1,142 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.compressed;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempRandomGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class CortexCompressedGraphTest {
+    @Test
+    public void roundTripSingleWordKmers() throws IOException {
+        roundTrip(31, 2);
+    }
+
+    @Test
+    public void roundTripMultiWordSparseKmers() throws IOException {
+        roundTrip(47, 100);
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void unsortedRecordsThrowException() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeSparseRecords(100, 31, 1);
+        Collections.sort(records, Collections.reverseOrder());
+
+        File tempFile = File.createTempFile("unsorted", CortexCompressedGraph.EXTENSION);
+        tempFile.deleteOnExit();
+
+        CortexCompressedGraphWriter ccw = new CortexCompressedGraphWriter(tempFile);
+        ccw.setHeader(TempRandomGraphAssembler.constructCortexHeader(31, 1));
+
+        for (CortexRecord cr : records) {
+            ccw.addRecord(cr);
+        }
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void uncompressedGraphThrowsException() {
+        File graphFile = TempRandomGraphAssembler.writeGraph(TempRandomGraphAssembler.makeRecords(10, 31, 1), 31, 1);
+
+        new CortexCompressedGraph(graphFile);
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void truncatedGraphThrowsException() throws IOException {
+        File tempFile = writeCompressedGraph();
+
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+
+        new CortexCompressedGraph(tempFile);
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void corruptTrailerThrowsException() throws IOException {
+        File tempFile = writeCompressedGraph();
+
+        // Point the block index past the end of the file, leaving the trailing magic intact
+        try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.seek(raf.length() - 8 - CortexCompressedGraph.MAGIC.length);
+            raf.writeLong(raf.length());
+        }
+
+        new CortexCompressedGraph(tempFile);
+    }
+
+    @Test
+    public void closingWriterWithoutHeaderDoesNothing() throws IOException {
+        File tempFile = File.createTempFile("empty", CortexCompressedGraph.EXTENSION);
+        Assert.assertTrue(tempFile.delete());
+
+        new CortexCompressedGraphWriter(tempFile).close();
+
+        Assert.assertFalse(tempFile.exists());
+    }
+
+    private File writeCompressedGraph() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeSparseRecords(100, 31, 1);
+        Collections.sort(records);
+
+        File tempFile = File.createTempFile("compressed", CortexCompressedGraph.EXTENSION);
+        tempFile.deleteOnExit();
+
+        CortexCompressedGraphWriter ccw = new CortexCompressedGraphWriter(tempFile);
+        ccw.setHeader(TempRandomGraphAssembler.constructCortexHeader(31, 1));
+
+        for (CortexRecord cr : records) {
+            ccw.addRecord(cr);
+        }
+
+        ccw.close();
+
+        return tempFile;
+    }
+
+    private void roundTrip(int kmerSize, int numColors) throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeSparseRecords(1000, kmerSize, numColors);
+        Collections.sort(records);
+
+        File tempFile = File.createTempFile("compressed", CortexCompressedGraph.EXTENSION);
+        tempFile.deleteOnExit();
+
+        CortexCompressedGraphWriter ccw = new CortexCompressedGraphWriter(tempFile);
+        ccw.setHeader(TempRandomGraphAssembler.constructCortexHeader(kmerSize, numColors));
+        ccw.setBlockSize(64);
+
+        for (CortexRecord cr : records) {
+            ccw.addRecord(cr);
+        }
+
+        ccw.close();
+
+        CortexCompressedGraph ccg = new CortexCompressedGraph(tempFile);
+
+        Assert.assertEquals(ccg.getNumRecords(), records.size());
+        Assert.assertEquals(ccg.getNumBlocks(), 16);
+        Assert.assertEquals(ccg.getKmerSize(), kmerSize);
+        Assert.assertEquals(ccg.getNumColors(), numColors);
+        Assert.assertEquals(ccg.getSampleName(numColors - 1), "sample" + (numColors - 1));
+
+        Iterator<CortexRecord> it = ccg.iterator();
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(it.next(), records.get(i));
+            Assert.assertEquals(ccg.getRecord(i), records.get(i));
+            Assert.assertEquals(ccg.findRecord(records.get(i).getCortexKmer()), records.get(i));
+        }
+        Assert.assertFalse(it.hasNext());
+
+        for (CortexRecord cr : TempRandomGraphAssembler.makeSparseRecords(100, kmerSize, numColors)) {
+            if (!records.contains(cr)) {
+                Assert.assertNull(ccg.findRecord(cr.getCortexKmer()));
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+import uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngine;
+
+import java.util.*;
+
+public class CortexEdgesTest {
+    private static final String KMER = "AAGTCGT";
+
+    private String toEdgeString(int e) {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < 4; i++) {
+            sb.append((e & (1 << (7 - i))) != 0 ? "acgt".charAt(i) : '.');
+        }
+
+        for (int i = 0; i < 4; i++) {
+            sb.append((e & (1 << i)) != 0 ? "ACGT".charAt(i) : '.');
+        }
+
+        return sb.toString();
+    }
+
+    private Set<String> getExpectedNeighbours(String edgeString, boolean isFlipped, boolean goForward) {
+        Set<String> neighbours = new HashSet<>();
+
+        for (int i = 0; i < 4; i++) {
+            if (edgeString.charAt(i) != '.') {
+                String pv = Character.toUpperCase(edgeString.charAt(i)) + KMER.substring(0, KMER.length() - 1);
+                if (isFlipped == goForward) {
+                    neighbours.add(isFlipped ? SequenceUtils.reverseComplement(pv) : pv);
+                }
+            }
+
+            if (edgeString.charAt(i + 4) != '.') {
+                String nv = KMER.substring(1) + edgeString.charAt(i + 4);
+                if (isFlipped != goForward) {
+                    neighbours.add(isFlipped ? SequenceUtils.reverseComplement(nv) : nv);
+                }
+            }
+        }
+
+        return neighbours;
+    }
+
+    @Test
+    public void tablesMatchEdgeStringsTest() {
+        CortexPackedKmer[] adjKmers = new CortexPackedKmer[4];
+
+        for (int e = 0; e < 256; e++) {
+            String edgeString = toEdgeString(e);
+            CortexRecord cr = new CortexRecord(KMER + " 1 " + edgeString);
+
+            Assert.assertEquals(cr.getEdges()[0], (byte) e);
+            Assert.assertEquals(cr.getInDegree(0), Integer.bitCount(e >> 4));
+            Assert.assertEquals(cr.getOutDegree(0), Integer.bitCount(e & 0xF));
+            Assert.assertEquals(String.join("", cr.getInEdgesAsStrings(0, false)), edgeString.substring(0, 4).replace(".", "").toUpperCase());
+            Assert.assertEquals(String.join("", cr.getOutEdgesAsStrings(0, false)), edgeString.substring(4).replace(".", ""));
+
+            for (boolean isFlipped : Arrays.asList(false, true)) {
+                CortexPackedKmer pk = new CortexPackedKmer(isFlipped ? SequenceUtils.reverseComplement(KMER) : KMER);
+
+                for (boolean goForward : Arrays.asList(false, true)) {
+                    Set<String> expected = getExpectedNeighbours(edgeString, isFlipped, goForward);
+
+                    int n = TraversalEngine.getAdjacentKmers(pk, cr, 0, isFlipped, goForward, adjKmers);
+                    Set<String> actual = new HashSet<>();
+                    for (int i = 0; i < n; i++) {
+                        actual.add(adjKmers[i].getKmerAsString());
+                    }
+
+                    Assert.assertEquals(actual, expected);
+                    Assert.assertEquals(cr.getDegree(0, isFlipped, goForward), expected.size());
+                    Assert.assertEquals(Integer.bitCount(cr.getAdjacentMask(0, isFlipped, goForward)), expected.size());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempRandomGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CortexGraphBlockMappingTest {
+    @Test
+    public void recordsMatchMemoryMappingTest() throws IOException {
+        List<CortexRecord> records = makeRecords(1000);
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 31, 2);
+
+        // 16 records per block and a pool of 4 blocks, so lookups across the graph must evict
+        CortexGraph cg = openGraph(graphFile, "pread", 16*(8 + 5*2), 4);
+        Assert.assertEquals(cg.getIOBackend(), "pread");
+
+        List<CortexRecord> scanned = new ArrayList<>();
+        for (CortexRecord cr : cg) {
+            scanned.add(cr);
+        }
+        Assert.assertEquals(scanned, records);
+
+        for (CortexRecord cr : records) {
+            Assert.assertEquals(cg.findRecord(cr.getCortexKmer()), cr);
+        }
+
+        Assert.assertTrue(cg.getBlockCacheHits() > 0);
+        Assert.assertTrue(cg.getBlockCacheMisses() >= (records.size() + 15) / 16);
+
+        cg.close();
+    }
+
+    @Test
+    public void repeatedReadsHitThePoolTest() throws IOException {
+        List<CortexRecord> records = makeRecords(100);
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 31, 2);
+
+        CortexGraph cg = openGraph(graphFile, "pread", 1 << 16, 16);
+
+        cg.getRecord(10);
+        long misses = cg.getBlockCacheMisses();
+        long hits = cg.getBlockCacheHits();
+
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(cg.getRecord(i), records.get(i));
+        }
+
+        // The whole graph fits in one block, so nothing more is read from the file
+        Assert.assertEquals(cg.getBlockCacheMisses(), misses);
+        Assert.assertEquals(cg.getBlockCacheHits(), hits + records.size());
+
+        cg.close();
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void readingAfterCloseThrowsExceptionTest() throws IOException {
+        List<CortexRecord> records = makeRecords(100);
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 31, 2);
+
+        CortexGraph cg = openGraph(graphFile, "pread", 8 + 5*2, 1);
+        Assert.assertEquals(cg.getRecord(0), records.get(0));
+        cg.close();
+
+        cg.getRecord(0);
+    }
+
+    @Test
+    public void poolIsSharedBetweenGraphsTest() throws IOException {
+        List<CortexRecord> first = makeRecords(200);
+        List<CortexRecord> second = makeRecords(300);
+
+        // 16 records per block and a pool of 4 blocks for the whole process, however many graphs are open
+        CortexGraph a = openGraph(TempRandomGraphAssembler.writeGraph(first, 31, 2), "pread", 16*(8 + 5*2), 4);
+        CortexGraph b = openGraph(TempRandomGraphAssembler.writeGraph(second, 31, 2), "pread", 16*(8 + 5*2), 4);
+
+        for (int i = 0; i < first.size(); i++) {
+            Assert.assertEquals(a.getRecord(i), first.get(i));
+            Assert.assertEquals(b.getRecord(i), second.get(i));
+            Assert.assertTrue(CortexGraphBlockMapping.getPooledBlocks() <= 4);
+        }
+
+        a.close();
+        b.close();
+
+        // Closed graphs give their blocks back
+        Assert.assertEquals(CortexGraphBlockMapping.getPooledBlocks(), 0);
+    }
+
+    @Test
+    public void interruptedReadThrowsExceptionTest() throws IOException {
+        List<CortexRecord> records = makeRecords(100);
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 31, 2);
+
+        CortexGraph cg = openGraph(graphFile, "pread", 8 + 5*2, 1);
+
+        // One record per block, so this record has not been read yet
+        Thread.currentThread().interrupt();
+        try {
+            cg.getRecord(50);
+            Assert.fail("An interrupted read should not be retried");
+        } catch (CortexJDKException e) {
+            Assert.assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+
+        // The interrupt closed the channel; later reads reopen it
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(cg.getRecord(i), records.get(i));
+        }
+
+        cg.close();
+    }
+
+    @Test
+    public void memoryMappingIsSelectableTest() throws IOException {
+        CortexGraph cg = openGraph(TempRandomGraphAssembler.writeGraph(makeRecords(10), 31, 2), "mmap", 1 << 16, 16);
+
+        Assert.assertEquals(cg.getIOBackend(), "mmap");
+        Assert.assertEquals(cg.getBlockCacheMisses(), 0);
+
+        cg.close();
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void unknownBackendThrowsException() throws IOException {
+        openGraph(TempRandomGraphAssembler.writeGraph(makeRecords(10), 31, 2), "mapped", 1 << 16, 16);
+    }
+
+    private CortexGraph openGraph(File graphFile, String backend, int blockSize, int numBlocks) {
+        System.setProperty("graphio", backend);
+        System.setProperty("preadblocksize", String.valueOf(blockSize));
+        System.setProperty("preadblocks", String.valueOf(numBlocks));
+
+        try {
+            return new CortexGraph(graphFile);
+        } finally {
+            System.clearProperty("graphio");
+            System.clearProperty("preadblocksize");
+            System.clearProperty("preadblocks");
+        }
+    }
+
+    private List<CortexRecord> makeRecords(int numRecords) {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(numRecords, 31, 2);
+        Collections.sort(records);
+
+        return records;
+    }
+}
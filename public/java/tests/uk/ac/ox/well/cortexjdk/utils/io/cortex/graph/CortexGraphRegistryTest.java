@@ -0,0 +1,92 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempRandomGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.memory.CortexMemoryGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CortexGraphRegistryTest {
+    @Test
+    public void graphsOnOneFileShareStateTest() throws IOException {
+        List<CortexRecord> records = makeRecords(100);
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 31, 1);
+
+        CortexGraph a = new CortexGraph(graphFile);
+        CortexGraph b = new CortexGraph(new File(graphFile.getParentFile(), "." + File.separator + graphFile.getName()));
+
+        Assert.assertSame(a.getHeader(), b.getHeader());
+        Assert.assertSame(a.getCache(), b.getCache());
+
+        // Each graph keeps its own cursor
+        Assert.assertEquals(a.next(), records.get(0));
+        Assert.assertEquals(a.next(), records.get(1));
+        Assert.assertEquals(b.next(), records.get(0));
+
+        // A lookup through one graph warms the cache for the other
+        a.findRecord(records.get(50).getCortexKmer());
+        long hits = b.getCacheHits();
+        Assert.assertEquals(b.findRecord(records.get(50).getCortexKmer()), records.get(50));
+        Assert.assertEquals(b.getCacheHits(), hits + 1);
+
+        a.close();
+        a.close();
+
+        // The file stays open for the remaining graph
+        Assert.assertEquals(b.findRecord(records.get(10).getCortexKmer()), records.get(10));
+
+        CortexGraph c = new CortexGraph(graphFile);
+        Assert.assertSame(c.getHeader(), b.getHeader());
+
+        b.close();
+        c.close();
+
+        CortexGraph d = new CortexGraph(graphFile);
+        Assert.assertNotSame(d.getHeader(), b.getHeader());
+        d.close();
+    }
+
+    @Test
+    public void memoryGraphReleasesFileAfterLoadingTest() throws IOException {
+        File graphFile = TempRandomGraphAssembler.writeGraph(makeRecords(100), 31, 1);
+
+        CortexMemoryGraph mg = new CortexMemoryGraph(graphFile);
+
+        // The graph opened to load the records has been closed, so this one opens the file afresh
+        CortexGraph a = new CortexGraph(graphFile);
+        Assert.assertNotSame(a.getHeader(), mg.getHeader());
+        Assert.assertEquals(mg.getNumRecords(), a.getNumRecords());
+
+        a.close();
+    }
+
+    @Test
+    public void rewrittenFileIsReopenedTest() throws IOException {
+        File graphFile = TempRandomGraphAssembler.writeGraph(makeRecords(10), 31, 1);
+
+        CortexGraph a = new CortexGraph(graphFile);
+
+        List<CortexRecord> records = makeRecords(20);
+        TempRandomGraphAssembler.writeGraph(records, 31, 1, graphFile);
+
+        CortexGraph b = new CortexGraph(graphFile);
+        Assert.assertEquals(a.getNumRecords(), 10);
+        Assert.assertEquals(b.getNumRecords(), 20);
+        Assert.assertEquals(b.getRecord(19), records.get(19));
+
+        a.close();
+        b.close();
+    }
+
+    private List<CortexRecord> makeRecords(int numRecords) {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(numRecords, 31, 1);
+        Collections.sort(records);
+
+        return records;
+    }
+}
@@ -0,0 +1,178 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempRandomGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class CortexGraphSortedMarkerTest {
+    @Test
+    public void sortedGraphIsValidatedTest() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 47, 1);
+        Collections.sort(records);
+
+        CortexGraph cg = new CortexGraph(TempRandomGraphAssembler.writeGraph(records, 47, 1));
+        Assert.assertTrue(cg.isSorted());
+        cg.close();
+    }
+
+    @Test
+    public void unsortedGraphIsDetectedTest() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 47, 1);
+        Collections.sort(records);
+        Collections.swap(records, 500, 501);
+
+        CortexGraph cg = new CortexGraph(TempRandomGraphAssembler.writeGraph(records, 47, 1));
+        Assert.assertFalse(cg.isSorted());
+        cg.close();
+    }
+
+    @Test
+    public void findRecordWithoutFanoutTest() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 47, 1);
+        Collections.sort(records);
+
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 47, 1);
+
+        System.setProperty("fanout", "0");
+        CortexGraph cg = new CortexGraph(graphFile);
+        System.clearProperty("fanout");
+
+        for (CortexRecord cr : records) {
+            Assert.assertEquals(cg.findRecord(cr.getCortexKmer()), cr);
+        }
+
+        for (CortexRecord cr : TempRandomGraphAssembler.makeRecords(100, 47, 1)) {
+            if (!records.contains(cr)) {
+                Assert.assertNull(cg.findRecord(cr.getCortexKmer()));
+            }
+        }
+
+        cg.close();
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void findRecordWithoutFanoutOnUnsortedGraphThrowsException() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 47, 1);
+        Collections.sort(records, Collections.reverseOrder());
+
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 47, 1);
+
+        System.setProperty("fanout", "0");
+        CortexGraph cg = new CortexGraph(graphFile);
+        System.clearProperty("fanout");
+
+        cg.findRecord(records.get(0).getCortexKmer());
+    }
+
+    @Test
+    public void findRecordWithFanoutTest() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 47, 1);
+        Collections.sort(records);
+
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 47, 1);
+
+        System.setProperty("fanout", "16");
+        CortexGraph cg = new CortexGraph(graphFile);
+        System.clearProperty("fanout");
+
+        for (CortexRecord cr : records) {
+            Assert.assertEquals(cg.findRecord(cr.getCortexKmer()), cr);
+        }
+
+        for (CortexRecord cr : TempRandomGraphAssembler.makeRecords(100, 47, 1)) {
+            if (!records.contains(cr)) {
+                Assert.assertNull(cg.findRecord(cr.getCortexKmer()));
+            }
+        }
+
+        cg.close();
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void findRecordWithFanoutOnGraphUnsortedBeyondFirst32BasesThrowsException() throws IOException {
+        Random rng = new Random(0);
+
+        List<CortexRecord> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] kmer = new byte[47];
+            for (int j = 0; j < kmer.length; j++) {
+                kmer[j] = j < 40 ? (byte) 'A' : "ACGT".getBytes()[rng.nextInt(4)];
+            }
+            kmer[kmer.length - 1] = 'C';
+
+            records.add(new CortexRecord(CortexRecord.encodeBinaryKmer(kmer), new int[] { 1 }, new byte[] { 0 }, 47, 2));
+        }
+        Collections.sort(records, Collections.reverseOrder());
+
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 47, 1);
+
+        System.setProperty("fanout", "16");
+        CortexGraph cg = new CortexGraph(graphFile);
+        System.clearProperty("fanout");
+
+        cg.findRecord(records.get(0).getCortexKmer());
+    }
+
+    @Test
+    public void markerIsStoredAndLoadedTest() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 47, 1);
+        Collections.sort(records);
+
+        CortexGraph cg = new CortexGraph(TempRandomGraphAssembler.writeGraph(records, 47, 1));
+
+        File markerFile = CortexGraphSortedMarker.getMarkerFile(cg.getFile());
+        markerFile.deleteOnExit();
+
+        CortexGraphSortedMarker.build(cg).store(markerFile);
+
+        CortexGraph reopened = new CortexGraph(cg.getFile());
+        Assert.assertTrue(reopened.isSorted());
+        Assert.assertNotNull(CortexGraphSortedMarker.load(markerFile, reopened));
+
+        cg.close();
+        reopened.close();
+    }
+
+    @Test
+    public void staleMarkerIsIgnoredTest() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 47, 1);
+        Collections.sort(records);
+
+        File graphFile = TempRandomGraphAssembler.writeGraph(records, 47, 1);
+
+        File markerFile = CortexGraphSortedMarker.getMarkerFile(graphFile);
+        markerFile.deleteOnExit();
+
+        CortexGraph cg = new CortexGraph(graphFile);
+        CortexGraphSortedMarker.build(cg).store(markerFile);
+        cg.close();
+
+        // Same number of records and the same length, but no longer sorted
+        long lastModified = graphFile.lastModified();
+        Collections.reverse(records);
+        TempRandomGraphAssembler.writeGraph(records, 47, 1, graphFile);
+        Assert.assertTrue(graphFile.setLastModified(lastModified - 60000));
+
+        CortexGraph rewritten = new CortexGraph(graphFile);
+        Assert.assertNull(CortexGraphSortedMarker.load(markerFile, rewritten));
+        Assert.assertFalse(rewritten.isSorted());
+
+        rewritten.close();
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void markerForUnsortedGraphThrowsException() throws IOException {
+        List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 47, 1);
+        Collections.sort(records, Collections.reverseOrder());
+
+        CortexGraphSortedMarker.build(new CortexGraph(TempRandomGraphAssembler.writeGraph(records, 47, 1)));
+    }
+}
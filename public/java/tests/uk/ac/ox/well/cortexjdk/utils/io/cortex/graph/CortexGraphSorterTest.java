@@ -0,0 +1,58 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempRandomGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CortexGraphSorterTest {
+    @Test
+    public void sortInMemoryTest() {
+        sortAndCompare(1, 1L << 30, 1);
+    }
+
+    @Test
+    public void sortWithSpilledRunsTest() {
+        // Ten records per run forces a multi-way merge of the spilled runs
+        sortAndCompare(3, 10*(8 + 5*3 + 4), 100);
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void tooSmallMemoryBudgetThrowsException() throws IOException {
+        new CortexGraphSorter(new CortexGraph(TempRandomGraphAssembler.writeGraph(TempRandomGraphAssembler.makeRecords(10, 31, 1), 31, 1)), 1);
+    }
+
+    private void sortAndCompare(int numColors, long memoryBudget, int expectedNumRuns) {
+        try {
+            List<CortexRecord> records = TempRandomGraphAssembler.makeRecords(1000, 31, numColors);
+            CortexGraph cg = new CortexGraph(TempRandomGraphAssembler.writeGraph(records, 31, numColors));
+
+            CortexGraphSorter sorter = new CortexGraphSorter(cg, memoryBudget);
+            Assert.assertEquals(sorter.getNumRuns(), expectedNumRuns);
+
+            File sortedFile = File.createTempFile("sorted-graph", ".ctx");
+            sortedFile.deleteOnExit();
+
+            CortexGraphWriter cgw = new CortexGraphWriter(sortedFile);
+            sorter.sort(cgw);
+            cgw.close();
+
+            Collections.sort(records);
+
+            List<CortexRecord> sorted = new ArrayList<>();
+            for (CortexRecord cr : new CortexGraph(sortedFile)) {
+                sorted.add(cr);
+            }
+
+            Assert.assertEquals(sorted, records);
+        } catch (IOException e) {
+            throw new CortexJDKException("Could not create temp file", e);
+        }
+    }
+}
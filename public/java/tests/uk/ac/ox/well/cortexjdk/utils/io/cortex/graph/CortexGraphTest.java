@@ -3,10 +3,16 @@ package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempGraphAssembler;
 import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
 import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class CortexGraphTest {
     private class SimpleCortexRecord {
@@ -218,6 +224,71 @@ public class CortexGraphTest {
         }
     }
 
+    @Test
+    public void viewsAreCorrect() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.ctx");
+
+        int index = 0;
+        for (CortexRecordView cv : cg.views()) {
+            SimpleCortexRecord scr = recs.get(index);
+
+            Assert.assertEquals(scr.equals(cv), true, "Cortex record view says '" + cv + "' but test record says '" + scr + "'");
+            Assert.assertEquals(cv.copy(), cg.getRecord(index));
+
+            index++;
+        }
+
+        Assert.assertEquals(index, recs.size());
+    }
+
+    @Test
+    public void streamsAreCorrect() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.ctx");
+
+        List<CortexRecord> expected = new ArrayList<>();
+        for (CortexRecord cr : cg) {
+            expected.add(cr);
+        }
+
+        Assert.assertEquals(cg.stream().collect(Collectors.toList()), expected);
+        Assert.assertEquals(cg.parallelStream().collect(Collectors.toList()), expected);
+        Assert.assertEquals(cg.parallelStream().filter(cr -> cr.getCoverage(0) > 0).count(), expected.stream().filter(cr -> cr.getCoverage(0) > 0).count());
+    }
+
+    @Test
+    public void projectedViewsAreCorrect() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.ctx");
+
+        int index = 0;
+        for (CortexRecordView cv : cg.views(Arrays.asList(1, 0))) {
+            SimpleCortexRecord scr = recs.get(index);
+
+            Assert.assertEquals(cv.getNumColors(), 2);
+            Assert.assertEquals(cv.getKmerAsString(), scr.kmer);
+            Assert.assertEquals(cv.getCoverage(0), scr.coverage[1]);
+            Assert.assertEquals(cv.getCoverage(1), scr.coverage[0]);
+            Assert.assertEquals(cv.getEdgeAsStrings()[0], scr.edges[1]);
+            Assert.assertEquals(cv.getEdgeAsStrings()[1], scr.edges[0]);
+
+            index++;
+        }
+
+        Assert.assertEquals(index, recs.size());
+
+        List<CortexRecord> projected = cg.parallelStream(Collections.singletonList(1)).collect(Collectors.toList());
+        for (int i = 0; i < projected.size(); i++) {
+            Assert.assertEquals(projected.get(i).getNumColors(), 1);
+            Assert.assertEquals(projected.get(i).getCoverage(0), recs.get(i).coverage[1]);
+        }
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void projectionToMissingColorThrowsException() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.ctx");
+
+        cg.views(Collections.singletonList(2));
+    }
+
     @Test
     public void constructRecordsFromString() {
         CortexGraph cg = new CortexGraph("testdata/smallgraph.ctx");
@@ -337,6 +408,65 @@ public class CortexGraphTest {
         }
     }
 
+    @Test
+    public void testSortedFindRecordWithoutFanout() {
+        System.setProperty("fanout", "0");
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.sorted.ctx");
+        System.clearProperty("fanout");
+
+        for (SimpleCortexRecord scr : recs) {
+            CortexRecord cr = cg.findRecord(scr.kmer);
+
+            Assert.assertNotNull(cr);
+            Assert.assertEquals(scr.equals(cr), true);
+        }
+    }
+
+    @Test
+    public void testConcurrentFindRecord() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.sorted.ctx");
+
+        Iterator<CortexRecord> it = cg.iterator();
+
+        recs.parallelStream().forEach(scr -> {
+            CortexRecord cr = cg.findRecord(scr.kmer);
+
+            Assert.assertNotNull(cr);
+            Assert.assertEquals(scr.equals(cr), true);
+        });
+
+        int numRecords = 0;
+        while (it.hasNext()) {
+            it.next();
+            numRecords++;
+        }
+
+        Assert.assertEquals(numRecords, cg.getNumRecords());
+    }
+
+    @Test
+    public void testFindRecords() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.sorted.ctx");
+
+        List<CortexKmer> kmers = new ArrayList<>();
+        for (int i = recs.size() - 1; i >= 0; i--) {
+            kmers.add(new CortexKmer(SequenceUtils.reverseComplement(recs.get(i).kmer)));
+            kmers.add(new CortexKmer("TTTTTTTTTTTTTTTTTTTTTTTTTTTTTTT"));
+        }
+
+        List<CortexRecord> crs = cg.findRecords(kmers);
+
+        Assert.assertEquals(crs.size(), kmers.size());
+
+        for (int i = 0; i < recs.size(); i++) {
+            SimpleCortexRecord scr = recs.get(recs.size() - 1 - i);
+
+            Assert.assertNotNull(crs.get(2*i));
+            Assert.assertEquals(scr.equals(crs.get(2*i)), true);
+            Assert.assertNull(crs.get(2*i + 1));
+        }
+    }
+
     @Test
     public void testFindNonExistentRecord() {
         CortexGraph cg = new CortexGraph("testdata/smallgraph.sorted.ctx");
@@ -347,4 +477,103 @@ public class CortexGraphTest {
 
         Assert.assertNull(cr);
     }
+
+    @Test
+    public void testIndexedFindRecord() throws IOException {
+        File unsortedCopy = File.createTempFile("smallgraph", ".ctx");
+        unsortedCopy.deleteOnExit();
+        Files.copy(new File("testdata/smallgraph.ctx").toPath(), unsortedCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        File indexFile = CortexGraphIndex.getIndexFile(unsortedCopy);
+        indexFile.deleteOnExit();
+        CortexGraphIndex.build(new CortexGraph(unsortedCopy)).store(indexFile);
+
+        CortexGraph cg = new CortexGraph(unsortedCopy);
+        Assert.assertTrue(cg.hasIndex());
+
+        for (SimpleCortexRecord scr : recs) {
+            CortexRecord cr = cg.findRecord(scr.kmer);
+
+            Assert.assertNotNull(cr);
+            Assert.assertEquals(scr.equals(cr), true);
+
+            Assert.assertEquals(scr.equals(cg.findRecord(SequenceUtils.reverseComplement(scr.kmer))), true);
+        }
+
+        Assert.assertNull(cg.findRecord("NTTTTGGGGTATTTGCAGTATTTGGAATAAA"));
+    }
+
+    @Test
+    public void testStaleIndexIsIgnored() {
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("test", Collections.singletonList("AGTTCGAATCTGGGCTATATGCT"));
+
+        File graphFile = TempGraphAssembler.buildGraph(haplotypes, 7).getFile();
+
+        File indexFile = CortexGraphIndex.getIndexFile(graphFile);
+        indexFile.deleteOnExit();
+        CortexGraphIndex.build(new CortexGraph(graphFile)).store(indexFile);
+
+        Assert.assertTrue(new CortexGraph(graphFile).hasIndex());
+
+        // Same length and records, but a different version of the file
+        Assert.assertTrue(graphFile.setLastModified(graphFile.lastModified() - 60000));
+
+        CortexGraph cg = new CortexGraph(graphFile);
+        Assert.assertFalse(cg.hasIndex());
+        Assert.assertNotNull(cg.findRecord("AGTTCGA"));
+    }
+
+    @Test
+    public void testStaleBloomFilterIsIgnored() {
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("test", Collections.singletonList("AGTTCGAATCTGGGCTATATGCT"));
+
+        File graphFile = TempGraphAssembler.buildGraph(haplotypes, 7).getFile();
+
+        File bloomFile = CortexGraphBloomFilter.getBloomFilterFile(graphFile);
+        bloomFile.deleteOnExit();
+        CortexGraphBloomFilter.build(new CortexGraph(graphFile), 0.01).store(bloomFile);
+
+        Assert.assertTrue(new CortexGraph(graphFile).hasBloomFilter());
+
+        Assert.assertTrue(graphFile.setLastModified(graphFile.lastModified() - 60000));
+
+        CortexGraph cg = new CortexGraph(graphFile);
+        Assert.assertFalse(cg.hasBloomFilter());
+        Assert.assertNotNull(cg.findRecord("AGTTCGA"));
+    }
+
+    @Test
+    public void testCandidateLookupSkipsBloomFilter() {
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("test", Collections.singletonList("AGTTCGAATCTGGGCTATATGCT"));
+
+        File graphFile = TempGraphAssembler.buildGraph(haplotypes, 7).getFile();
+
+        File bloomFile = CortexGraphBloomFilter.getBloomFilterFile(graphFile);
+        bloomFile.deleteOnExit();
+        CortexGraphBloomFilter.build(new CortexGraph(graphFile), 0.01).store(bloomFile);
+
+        CortexGraph cg = new CortexGraph(graphFile);
+        long[] present = CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation("AGTTCGA".getBytes()));
+        long[] absent = CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation("CCCCCCC".getBytes()));
+
+        Assert.assertNotNull(cg.findCandidateRecord(present));
+        Assert.assertNull(cg.findCandidateRecord(absent));
+        Assert.assertEquals(cg.getBloomFilterRejections(), 0);
+
+        Assert.assertNull(cg.findRecord(absent));
+        Assert.assertEquals(cg.getBloomFilterRejections(), 1);
+    }
+
+    @Test
+    public void testBloomFilterHasNoFalseNegatives() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.sorted.ctx");
+        CortexGraphBloomFilter bloom = CortexGraphBloomFilter.build(cg, 0.01);
+
+        for (SimpleCortexRecord scr : recs) {
+            Assert.assertTrue(bloom.mightContain(CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation(scr.kmer.getBytes()))));
+        }
+    }
 }
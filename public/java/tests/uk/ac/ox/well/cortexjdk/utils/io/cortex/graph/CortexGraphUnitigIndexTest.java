@@ -0,0 +1,121 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class CortexGraphUnitigIndexTest {
+    private CortexGraph makeGraph(int kmerSize, String... sequences) {
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("test", Arrays.asList(sequences));
+
+        return TempGraphAssembler.buildGraph(haplotypes, kmerSize);
+    }
+
+    private Set<String> getUnitigSequences(CortexGraphUnitigIndex unitigs, int color) {
+        Set<String> seqs = new HashSet<>();
+
+        for (int u = 0; u < unitigs.getNumUnitigs(color); u++) {
+            StringBuilder sb = new StringBuilder(unitigs.getStartKmer(color, u).getKmerAsString());
+            for (int i = 1; i < unitigs.getLength(color, u); i++) {
+                String sk = unitigs.getKmer(color, u, i).getKmerAsString();
+                sb.append(sk.charAt(sk.length() - 1));
+            }
+
+            String seq = sb.toString();
+            seqs.add(SequenceUtils.alphanumericallyLowestOrientation(seq));
+        }
+
+        return seqs;
+    }
+
+    private void assertEveryKmerIsIndexedOnce(CortexGraph g, CortexGraphUnitigIndex unitigs, int color) {
+        int numKmers = 0;
+        for (int u = 0; u < unitigs.getNumUnitigs(color); u++) {
+            for (int i = 0; i < unitigs.getLength(color, u); i++) {
+                long r = unitigs.getRecordIndex(color, u, i);
+
+                Assert.assertEquals(unitigs.findUnitig(color, r), u);
+                Assert.assertEquals(unitigs.findPosition(color, r), i);
+                Assert.assertEquals(unitigs.getKmer(color, u, i).canonical().getKmerAsString(), g.getRecord(r).getKmerAsString());
+
+                numKmers++;
+            }
+        }
+
+        Assert.assertEquals(numKmers, g.getNumRecords());
+    }
+
+    @Test
+    public void linearGraphIsOneUnitigTest() {
+        CortexGraph g = makeGraph(7, "AGTTCGAATCTGCGCTATATGCT");
+        CortexGraphUnitigIndex unitigs = CortexGraphUnitigIndex.build(g, Collections.singletonList(0));
+
+        Assert.assertEquals(unitigs.getNumUnitigs(0), 1);
+        Assert.assertEquals(unitigs.getLength(0, 0), 17);
+        Assert.assertEquals(getUnitigSequences(unitigs, 0), Collections.singleton(SequenceUtils.alphanumericallyLowestOrientation("AGTTCGAATCTGCGCTATATGCT")));
+        assertEveryKmerIsIndexedOnce(g, unitigs, 0);
+    }
+
+    @Test
+    public void bubbleIsSplitAtBranchesTest() {
+        CortexGraph g = makeGraph(7, "AGTTCGAATCTGGGCTATATGCT", "AGTTCGAATCTGAGCTATATGCT");
+        CortexGraphUnitigIndex unitigs = CortexGraphUnitigIndex.build(g, Collections.singletonList(0));
+
+        Set<String> expected = new HashSet<>();
+        for (String seq : Arrays.asList("AGTTCGAATCTG", "AATCTGGGCTATA", "AATCTGAGCTATA", "GCTATATGCT")) {
+            expected.add(SequenceUtils.alphanumericallyLowestOrientation(seq));
+        }
+
+        Assert.assertEquals(getUnitigSequences(unitigs, 0), expected);
+        assertEveryKmerIsIndexedOnce(g, unitigs, 0);
+    }
+
+    @Test
+    public void cycleIsOneUnitigTest() {
+        String cycle = "ACGGATTCAGC";
+        CortexGraph g = makeGraph(5, cycle + cycle.substring(0, 4));
+        CortexGraphUnitigIndex unitigs = CortexGraphUnitigIndex.build(g, Collections.singletonList(0));
+
+        Assert.assertEquals(unitigs.getNumUnitigs(0), 1);
+        Assert.assertEquals(unitigs.getLength(0, 0), cycle.length());
+        assertEveryKmerIsIndexedOnce(g, unitigs, 0);
+    }
+
+    @Test
+    public void indexRoundTripsThroughFileTest() throws IOException {
+        CortexGraph g = makeGraph(7, "AGTTCGAATCTGGGCTATATGCT", "AGTTCGAATCTGAGCTATATGCT");
+        CortexGraphUnitigIndex unitigs = CortexGraphUnitigIndex.build(g, Collections.singletonList(0));
+
+        File unitigFile = CortexGraphUnitigIndex.getUnitigIndexFile(g.getFile());
+        unitigFile.deleteOnExit();
+        unitigs.store(unitigFile);
+
+        CortexGraph h = new CortexGraph(g.getFile());
+        CortexGraphUnitigIndex loaded = h.getUnitigIndex();
+
+        Assert.assertNotNull(loaded);
+        Assert.assertSame(loaded.getGraph(), h);
+        Assert.assertEquals(getUnitigSequences(loaded, 0), getUnitigSequences(unitigs, 0));
+        assertEveryKmerIsIndexedOnce(h, loaded, 0);
+    }
+
+    @Test
+    public void staleIndexIsIgnoredTest() throws IOException {
+        CortexGraph g = makeGraph(7, "AGTTCGAATCTGGGCTATATGCT", "AGTTCGAATCTGAGCTATATGCT");
+
+        File unitigFile = CortexGraphUnitigIndex.getUnitigIndexFile(g.getFile());
+        unitigFile.deleteOnExit();
+        CortexGraphUnitigIndex.build(g, Collections.singletonList(0)).store(unitigFile);
+
+        // Same length, different modification time: the graph was rewritten after it was indexed
+        Assert.assertTrue(g.getFile().setLastModified(g.getFile().lastModified() - 60000));
+
+        Assert.assertNull(new CortexGraph(g.getFile()).getUnitigIndex());
+    }
+}
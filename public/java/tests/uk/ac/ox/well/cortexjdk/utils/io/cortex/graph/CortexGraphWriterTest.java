@@ -6,7 +6,10 @@ import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 public class CortexGraphWriterTest {
     @Test
@@ -64,4 +67,68 @@ public class CortexGraphWriterTest {
             throw new CortexJDKException("Could not create temp file", e);
         }
     }
+
+    @Test
+    public void writeBufferedGraphInBackgroundTest() {
+        try {
+            File tempFile = File.createTempFile("buffered-graph", ".ctx");
+            tempFile.deleteOnExit();
+
+            // Enough records to fill the write buffer several times over
+            Random rng = new Random(0);
+            List<CortexRecord> records = new ArrayList<>();
+            for (int i = 0; i < 1000000; i++) {
+                records.add(new CortexRecord(new long[] { rng.nextLong() >>> 2 }, new int[] { rng.nextInt(100) }, new byte[] { (byte) rng.nextInt(256) }, 31, 1));
+            }
+
+            CortexGraphWriter cgw = new CortexGraphWriter(tempFile);
+            cgw.setHeader(makeHeader());
+            cgw.setBackgroundWriting(true);
+
+            for (CortexRecord cr : records) {
+                cgw.addRecord(cr);
+            }
+
+            cgw.close();
+
+            CortexGraph cg = new CortexGraph(tempFile);
+
+            Assert.assertEquals(cg.getNumRecords(), records.size());
+
+            int index = 0;
+            for (CortexRecordView cv : cg.views()) {
+                Assert.assertEquals(cv.copy(), records.get(index));
+                index++;
+            }
+        } catch (IOException e) {
+            throw new CortexJDKException("Could not create temp file", e);
+        }
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void setBackgroundWritingAfterFirstRecordThrowsException() throws IOException {
+        File tempFile = File.createTempFile("buffered-graph", ".ctx");
+        tempFile.deleteOnExit();
+
+        CortexGraphWriter cgw = new CortexGraphWriter(tempFile);
+        cgw.setHeader(makeHeader());
+        cgw.close();
+
+        cgw.setBackgroundWriting(true);
+    }
+
+    private CortexHeader makeHeader() {
+        CortexColor color = new CortexColor();
+        color.setSampleName("sample");
+        color.setCleanedAgainstGraphName("");
+
+        CortexHeader header = new CortexHeader();
+        header.setVersion(6);
+        header.setKmerSize(31);
+        header.setKmerBits(1);
+        header.setNumColors(1);
+        header.addColor(color);
+
+        return header;
+    }
 }
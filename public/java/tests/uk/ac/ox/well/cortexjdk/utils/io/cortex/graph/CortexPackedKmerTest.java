@@ -0,0 +1,110 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class CortexPackedKmerTest {
+    @DataProvider(name = "kmerSizes")
+    public Object[][] kmerSizes() {
+        return new Object[][] { { 1 }, { 21 }, { 31 }, { 32 }, { 33 }, { 47 }, { 63 }, { 64 }, { 95 } };
+    }
+
+    @Test(dataProvider = "kmerSizes")
+    public void roundTripsThroughBytesTest(int kmerSize) {
+        Random rng = new Random(kmerSize);
+
+        for (int i = 0; i < 100; i++) {
+            byte[] kmer = randomKmer(rng, kmerSize);
+            CortexPackedKmer pk = new CortexPackedKmer(kmer);
+
+            Assert.assertEquals(pk.length(), kmerSize);
+            Assert.assertEquals(pk.getKmerAsBytes(), kmer);
+            Assert.assertEquals(pk.getKmerAsByteKmer(), new CortexByteKmer(kmer));
+        }
+    }
+
+    @Test(dataProvider = "kmerSizes")
+    public void reverseComplementAndCanonicalMatchSequenceUtilsTest(int kmerSize) {
+        Random rng = new Random(kmerSize);
+
+        for (int i = 0; i < 100; i++) {
+            byte[] kmer = randomKmer(rng, kmerSize);
+            CortexPackedKmer pk = new CortexPackedKmer(kmer);
+
+            Assert.assertEquals(pk.reverseComplement().getKmerAsBytes(), SequenceUtils.reverseComplement(kmer));
+            Assert.assertEquals(pk.canonical().getKmerAsBytes(), SequenceUtils.alphanumericallyLowestOrientation(kmer));
+            Assert.assertEquals(pk.reverseComplement().reverseComplement(), pk);
+        }
+    }
+
+    @Test(dataProvider = "kmerSizes")
+    public void appendAndPrependShiftBasesTest(int kmerSize) {
+        Random rng = new Random(kmerSize);
+
+        for (int i = 0; i < 100; i++) {
+            byte[] kmer = randomKmer(rng, kmerSize);
+            CortexPackedKmer pk = new CortexPackedKmer(kmer);
+
+            for (int base = 0; base < 4; base++) {
+                byte[] next = new byte[kmerSize];
+                System.arraycopy(kmer, 1, next, 0, kmerSize - 1);
+                next[kmerSize - 1] = CortexPackedKmer.decodeBase(base);
+
+                byte[] prev = new byte[kmerSize];
+                System.arraycopy(kmer, 0, prev, 1, kmerSize - 1);
+                prev[0] = CortexPackedKmer.decodeBase(base);
+
+                Assert.assertEquals(pk.append(base), new CortexPackedKmer(next));
+                Assert.assertEquals(pk.prepend(base), new CortexPackedKmer(prev));
+            }
+        }
+    }
+
+    @Test(dataProvider = "kmerSizes")
+    public void binaryKmerMatchesRecordEncodingTest(int kmerSize) {
+        Random rng = new Random(kmerSize);
+
+        for (int i = 0; i < 100; i++) {
+            byte[] kmer = randomKmer(rng, kmerSize);
+            CortexPackedKmer pk = new CortexPackedKmer(kmer);
+
+            long[] binaryKmer = CortexRecord.encodeBinaryKmer(kmer);
+
+            Assert.assertTrue(Arrays.equals(pk.getBinaryKmer(), binaryKmer));
+            Assert.assertTrue(Arrays.equals(pk.getCanonicalBinaryKmer(), CortexRecord.encodeBinaryKmer(SequenceUtils.alphanumericallyLowestOrientation(kmer))));
+            Assert.assertEquals(CortexPackedKmer.fromBinaryKmer(binaryKmer, kmerSize), pk);
+        }
+    }
+
+    @Test(dataProvider = "kmerSizes")
+    public void orderMatchesStringOrderTest(int kmerSize) {
+        Random rng = new Random(kmerSize);
+
+        for (int i = 0; i < 100; i++) {
+            String a = new String(randomKmer(rng, kmerSize));
+            String b = new String(randomKmer(rng, kmerSize));
+
+            Assert.assertEquals(Integer.signum(new CortexPackedKmer(a).compareTo(new CortexPackedKmer(b))), Integer.signum(a.compareTo(b)));
+        }
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void invalidBaseThrowsException() {
+        new CortexPackedKmer("ACGTN");
+    }
+
+    private byte[] randomKmer(Random rng, int kmerSize) {
+        byte[] kmer = new byte[kmerSize];
+        for (int j = 0; j < kmerSize; j++) {
+            kmer[j] = "ACGT".getBytes()[rng.nextInt(4)];
+        }
+
+        return kmer;
+    }
+}
@@ -0,0 +1,54 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.graph;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CortexRecordLRUCacheTest {
+    private CortexRecord makeRecord(String kmer) {
+        return new CortexRecord(kmer + " 5 ....A...");
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        CortexRecordLRUCache cache = new CortexRecordLRUCache(1024*1024);
+
+        CortexRecord cr = makeRecord("ACGTACGTACGTACGTACGTACGTACGTACG");
+        cache.put(cr);
+
+        Assert.assertEquals(cache.get(cr.getBinaryKmer().clone()), cr);
+        Assert.assertNull(cache.get(makeRecord("CCGTACGTACGTACGTACGTACGTACGTACG").getBinaryKmer()));
+
+        Assert.assertEquals(cache.getHits(), 1);
+        Assert.assertEquals(cache.getMisses(), 1);
+        Assert.assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void testEvictionsRespectBudget() {
+        CortexRecordLRUCache cache = new CortexRecordLRUCache(16*1024);
+
+        byte[] bases = {'A', 'C', 'G', 'T'};
+        for (int i = 0; i < 1024; i++) {
+            byte[] kmer = "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA".getBytes();
+            for (int j = 0, n = i; j < 5; j++, n /= 4) {
+                kmer[j] = bases[n % 4];
+            }
+
+            cache.put(makeRecord(new String(kmer)));
+        }
+
+        Assert.assertTrue(cache.size() < 1024);
+        Assert.assertEquals(cache.size() + cache.getEvictions(), 1024);
+    }
+
+    @Test
+    public void testZeroBudgetDisablesCaching() {
+        CortexRecordLRUCache cache = new CortexRecordLRUCache(0);
+
+        CortexRecord cr = makeRecord("ACGTACGTACGTACGTACGTACGTACGTACG");
+        cache.put(cr);
+
+        Assert.assertNull(cache.get(cr.getBinaryKmer()));
+        Assert.assertEquals(cache.size(), 0);
+    }
+}
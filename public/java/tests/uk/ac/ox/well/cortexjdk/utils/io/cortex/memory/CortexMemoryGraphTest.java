@@ -0,0 +1,41 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.memory;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+
+import java.util.Iterator;
+
+public class CortexMemoryGraphTest {
+    @Test
+    public void recordsMatchGraphOnDisk() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.ctx");
+        CortexMemoryGraph mg = new CortexMemoryGraph("testdata/smallgraph.ctx");
+
+        Assert.assertEquals(mg.getNumRecords(), cg.getNumRecords());
+        Assert.assertEquals(mg.getNumColors(), cg.getNumColors());
+        Assert.assertEquals(mg.getKmerSize(), cg.getKmerSize());
+
+        Iterator<CortexRecord> it = cg.iterator();
+        for (CortexRecord mr : mg) {
+            Assert.assertEquals(mr, it.next());
+        }
+
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testFindRecord() {
+        CortexGraph cg = new CortexGraph("testdata/smallgraph.ctx");
+        CortexMemoryGraph mg = new CortexMemoryGraph(cg);
+
+        for (CortexRecord cr : cg) {
+            Assert.assertEquals(mg.findRecord(cr.getKmerAsString()), cr);
+            Assert.assertEquals(mg.findRecord(SequenceUtils.reverseComplement(cr.getKmerAsString())), cr);
+        }
+
+        Assert.assertNull(mg.findRecord("NTTTTGGGGTATTTGCAGTATTTGGAATAAA"));
+    }
+}
@@ -0,0 +1,122 @@
+package uk.ac.ox.well.cortexjdk.utils.io.cortex.shard;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempRandomGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class CortexShardedGraphTest {
+    private List<CortexRecord> records;
+    private File tempDir;
+    private CortexShardedGraph sg;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("shards").toFile();
+        tempDir.deleteOnExit();
+
+        records = TempRandomGraphAssembler.makeRecords(1001, 31, 1);
+        Collections.sort(records);
+
+        CortexGraph cg = writeGraph(records, new File(tempDir, "sorted.ctx"));
+
+        File prefix = new File(tempDir, "sorted");
+        CortexShardManifest manifest = CortexShardManifest.build(cg, 4, prefix);
+        manifest.store(CortexShardManifest.getManifestFile(prefix));
+
+        for (CortexShardManifest.Shard s : manifest.getShards()) {
+            s.getFile().deleteOnExit();
+        }
+        CortexShardManifest.getManifestFile(prefix).deleteOnExit();
+
+        sg = new CortexShardedGraph(CortexShardManifest.getManifestFile(prefix));
+    }
+
+    @Test
+    public void manifestDescribesShards() {
+        Assert.assertEquals(sg.getNumShards(), 4);
+        Assert.assertEquals(sg.getNumRecords(), records.size());
+
+        int first = 0;
+        for (CortexShardManifest.Shard s : sg.getManifest().getShards()) {
+            Assert.assertEquals(s.getFirstKmer(), records.get(first).getKmerAsString());
+            Assert.assertEquals(s.getLastKmer(), records.get(first + (int) s.getNumRecords() - 1).getKmerAsString());
+
+            first += s.getNumRecords();
+        }
+    }
+
+    @Test
+    public void recordsMatchSourceGraph() {
+        Iterator<CortexRecord> it = sg.iterator();
+
+        for (int i = 0; i < records.size(); i++) {
+            Assert.assertEquals(it.next(), records.get(i));
+            Assert.assertEquals(sg.getRecord(i), records.get(i));
+        }
+
+        Assert.assertFalse(it.hasNext());
+        Assert.assertNull(sg.getRecord(records.size()));
+    }
+
+    @Test
+    public void findRecordIsRoutedToShard() {
+        for (CortexRecord cr : records) {
+            Assert.assertEquals(sg.findRecord(cr.getCortexKmer()), cr);
+        }
+
+        for (CortexRecord cr : TempRandomGraphAssembler.makeRecords(100, 31, 1)) {
+            if (!records.contains(cr)) {
+                Assert.assertNull(sg.findRecord(cr.getCortexKmer()));
+            }
+        }
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void shardingUnsortedGraphThrowsException() throws IOException {
+        List<CortexRecord> unsorted = TempRandomGraphAssembler.makeRecords(100, 31, 1);
+        Collections.sort(unsorted, Collections.reverseOrder());
+
+        CortexGraph cg = writeGraph(unsorted, new File(tempDir, "unsorted.ctx"));
+
+        CortexShardManifest.getShardFile(new File(tempDir, "unsorted"), 0).deleteOnExit();
+
+        CortexShardManifest.build(cg, 2, new File(tempDir, "unsorted"));
+    }
+
+    @Test
+    public void failedShardingLeavesNoShardFiles() {
+        List<CortexRecord> unsorted = TempRandomGraphAssembler.makeRecords(100, 31, 1);
+        Collections.sort(unsorted);
+        Collections.swap(unsorted, 98, 99);
+
+        CortexGraph cg = writeGraph(unsorted, new File(tempDir, "lateunsorted.ctx"));
+        File prefix = new File(tempDir, "lateunsorted");
+
+        try {
+            CortexShardManifest.build(cg, 4, prefix);
+            Assert.fail("Sharding an unsorted graph should fail");
+        } catch (CortexJDKException e) {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertFalse(CortexShardManifest.getShardFile(prefix, i).exists());
+            }
+        }
+    }
+
+    private CortexGraph writeGraph(List<CortexRecord> records, File graphFile) {
+        graphFile.deleteOnExit();
+
+        TempRandomGraphAssembler.writeGraph(records, 31, 1, graphFile);
+
+        return new CortexGraph(graphFile);
+    }
+}
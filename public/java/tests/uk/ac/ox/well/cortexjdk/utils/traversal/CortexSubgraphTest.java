@@ -0,0 +1,139 @@
+package uk.ac.ox.well.cortexjdk.utils.traversal;
+
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+import org.jgrapht.graph.DirectedWeightedPseudograph;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexPackedKmer;
+import uk.ac.ox.well.cortexjdk.utils.stoppingrules.ExplorationStopper;
+
+import java.util.*;
+
+import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.TraversalDirection.BOTH;
+
+public class CortexSubgraphTest {
+    private TraversalEngine makeEngine(CortexGraph g) {
+        return new TraversalEngineFactory()
+                .traversalColor(g.getColorForSampleName("kid"))
+                .secondaryColors(g.getColorsForSampleNames(Arrays.asList("mom", "dad", "kid")))
+                .combinationOperator(TraversalEngineConfiguration.GraphCombinationOperator.AND)
+                .traversalDirection(BOTH)
+                .connectAllNeighbors(false)
+                .stoppingRule(ExplorationStopper.class)
+                .graph(g)
+                .make();
+    }
+
+    private CortexGraph makeGraph() {
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("mom", Collections.singletonList("AGTTCGAATCTGGGCTATATGCT"));
+        haplotypes.put("dad", Collections.singletonList("AGTTCGAATCTGGGCTATATGCT"));
+        haplotypes.put("kid", Collections.singletonList("AGTTCGAATCTGCGCTATATGCT"));
+
+        return TempGraphAssembler.buildGraph(haplotypes, 7);
+    }
+
+    private Set<String> describeEdges(DirectedGraph<CortexVertex, CortexEdge> g) {
+        Set<String> edges = new HashSet<>();
+        for (CortexEdge e : g.edgeSet()) {
+            edges.add(g.getEdgeSource(e).getSk() + " " + g.getEdgeTarget(e).getSk() + " " + e.getColor() + " " + g.getEdgeWeight(e));
+        }
+
+        return edges;
+    }
+
+    @Test
+    public void viewMatchesCopyTest() {
+        TraversalEngine e = makeEngine(makeGraph());
+
+        CortexSubgraph sg = e.dfsSubgraph("TCTGCGC");
+        DirectedGraph<CortexVertex, CortexEdge> view = sg.asGraph();
+        DirectedWeightedPseudograph<CortexVertex, CortexEdge> copy = e.dfs("TCTGCGC");
+
+        Assert.assertEquals(view.vertexSet(), copy.vertexSet());
+        Assert.assertEquals(view.edgeSet().size(), copy.edgeSet().size());
+        Assert.assertEquals(describeEdges(view), describeEdges(copy));
+
+        for (CortexVertex v : copy.vertexSet()) {
+            Assert.assertTrue(view.containsVertex(v));
+            Assert.assertEquals(view.inDegreeOf(v), copy.inDegreeOf(v));
+            Assert.assertEquals(view.outDegreeOf(v), copy.outDegreeOf(v));
+
+            for (CortexEdge edge : view.outgoingEdgesOf(v)) {
+                Assert.assertTrue(view.containsEdge(edge));
+                Assert.assertTrue(view.incomingEdgesOf(view.getEdgeTarget(edge)).contains(edge));
+            }
+        }
+    }
+
+    @Test
+    public void viewSupportsPathFindingTest() {
+        CortexGraph g = makeGraph();
+        DirectedGraph<CortexVertex, CortexEdge> view = makeEngine(g).dfsSubgraph("TCTGCGC").asGraph();
+
+        CortexVertex source = null, sink = null;
+        for (CortexVertex v : view.vertexSet()) {
+            if (v.getSk().equals("TCGAATC")) { source = v; }
+            if (v.getSk().equals("GCTATAT")) { sink = v; }
+        }
+
+        GraphPath<CortexVertex, CortexEdge> path = DijkstraShortestPath.findPathBetween(view, source, sink);
+        Assert.assertNotNull(path);
+        Assert.assertEquals(TraversalEngine.toContig(path.getVertexList()).length(), 7 + path.getLength());
+
+        PathFinder pf = new PathFinder(view, g.getColorForSampleName("kid"));
+        Assert.assertTrue(TraversalEngine.toContig(pf.getPathFinder(source, sink).getVertexList()).contains("TCTGCGC"));
+    }
+
+    @Test
+    public void edgesAreStoredOncePerColorTest() {
+        CortexSubgraph sg = new CortexSubgraph();
+
+        CortexPackedKmer a = new CortexPackedKmer("ACGTACG");
+        CortexPackedKmer b = a.append(CortexPackedKmer.encodeBase((byte) 'T'));
+
+        int ia = sg.addVertex(a, null, null);
+        int ib = sg.addVertex(b, null, null);
+
+        Assert.assertTrue(sg.addEdge(ia, ib, 0));
+        Assert.assertFalse(sg.addEdge(ia, ib, 0));
+        Assert.assertTrue(sg.addEdge(ia, ib, 2));
+        Assert.assertEquals(sg.addVertex(a, null, null), ia);
+
+        Assert.assertEquals(sg.numVertices(), 2);
+        Assert.assertEquals(sg.numEdges(), 2);
+        Assert.assertEquals(sg.getOutEdges(ia, 0), 1 << 3);
+        Assert.assertEquals(sg.getInEdges(ib, 2), 1);
+        Assert.assertEquals(sg.getOutEdges(ia, 1), 0);
+        Assert.assertEquals(sg.getSuccessor(ia, 3), ib);
+        Assert.assertEquals(sg.getPredecessor(ib, 0), ia);
+
+        CortexSubgraph merged = new CortexSubgraph();
+        merged.addSubgraph(sg);
+        merged.addSubgraph(sg);
+
+        Assert.assertEquals(merged.numVertices(), 2);
+        Assert.assertEquals(merged.numEdges(), 2);
+        Assert.assertEquals(merged.asGraph().getAllEdges(merged.getVertex(0), merged.getVertex(1)).size(), 2);
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void nonAdjacentEdgeThrowsException() {
+        CortexSubgraph sg = new CortexSubgraph();
+
+        sg.addEdge(sg.addVertex(new CortexPackedKmer("ACGTACG"), null, null), sg.addVertex(new CortexPackedKmer("TTTTTTT"), null, null), 0);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void viewIsUnmodifiableTest() {
+        CortexSubgraph sg = new CortexSubgraph();
+        sg.addVertex(new CortexPackedKmer("ACGTACG"), null, null);
+
+        sg.asGraph().removeVertex(sg.getVertex(0));
+    }
+}
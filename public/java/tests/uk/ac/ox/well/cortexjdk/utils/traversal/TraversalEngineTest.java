@@ -13,6 +13,8 @@ import uk.ac.ox.well.cortexjdk.utils.assembler.TempGraphAssembler;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.*;
 import uk.ac.ox.well.cortexjdk.utils.io.cortex.links.CortexLinks;
 import uk.ac.ox.well.cortexjdk.utils.sequence.SequenceUtils;
+import uk.ac.ox.well.cortexjdk.utils.stoppingrules.BubbleClosingStopper;
+import uk.ac.ox.well.cortexjdk.utils.stoppingrules.BubbleOpeningStopper;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.ContigStopper;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.CycleCollapsingContigStopper;
 import uk.ac.ox.well.cortexjdk.utils.stoppingrules.DestinationStopper;
@@ -23,6 +25,7 @@ import java.util.*;
 
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.GraphCombinationOperator.OR;
 import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.TraversalDirection.BOTH;
+import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.TraversalDirection.FORWARD;
 
 /**
  * Created by kiran on 10/05/2017.
@@ -657,6 +660,161 @@ public class TraversalEngineTest {
         Assert.assertEquals(sb.toString(), "GCTATATGCT");
     }
 
+    @Test
+    public void testUnitigJumpingWalksMatchKmerByKmerWalks() {
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("mom", Collections.singletonList("AGTTCTGATCTGGGCTATATGCT"));
+        haplotypes.put("dad", Arrays.asList("AGTTCGAATCTGGGCTATATGCT", "AGTTCGAATCTGAGCTATATGCT"));
+        haplotypes.put("kid", Arrays.asList("GGATCAGTCCAGTCCAGTCCAGTCCCCCCT", "AGTTCTG", "ATGGCTA"));
+
+        CortexGraph g = TempGraphAssembler.buildGraph(haplotypes, 5);
+        CortexGraphUnitigIndex unitigs = CortexGraphUnitigIndex.build(g, Arrays.asList(0, 1, 2));
+
+        TraversalEngine e = new TraversalEngineFactory()
+                .recruitmentColors(g.getColorsForSampleNames(Arrays.asList("mom", "dad")))
+                .graph(g)
+                .make();
+
+        TraversalEngine u = new TraversalEngineFactory()
+                .recruitmentColors(g.getColorsForSampleNames(Arrays.asList("mom", "dad")))
+                .graph(g)
+                .unitigs(unitigs)
+                .make();
+
+        for (int c = 0; c < g.getNumColors(); c++) {
+            e.getConfiguration().setTraversalColor(c);
+            u.getConfiguration().setTraversalColor(c);
+
+            for (CortexRecord cr : g) {
+                if (cr.getCoverage(c) > 0) {
+                    for (String seed : Arrays.asList(cr.getKmerAsString(), SequenceUtils.reverseComplement(cr.getKmerAsString()))) {
+                        Assert.assertEquals(u.walk(seed), e.walk(seed));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnitigJumpingDfsMatchesKmerByKmerDfs() {
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("mom", Collections.singletonList("AGTTCGAATCTGGGCTATATGCT"));
+        haplotypes.put("dad", Collections.singletonList("AGTTCGAATCTGGGCTATATGCT"));
+        haplotypes.put("kid", Collections.singletonList("AGTTCGAATCTGCGCTATATGCT"));
+
+        CortexGraph g = TempGraphAssembler.buildGraph(haplotypes, 7);
+
+        List<Set<CortexVertex>> results = new ArrayList<>();
+        for (CortexGraphUnitigIndex unitigs : Arrays.asList(null, CortexGraphUnitigIndex.build(g, Arrays.asList(0, 1, 2)))) {
+            TraversalEngine e = new TraversalEngineFactory()
+                    .traversalColor(g.getColorForSampleName("kid"))
+                    .joiningColors(g.getColorsForSampleNames(Arrays.asList("mom", "dad")))
+                    .combinationOperator(TraversalEngineConfiguration.GraphCombinationOperator.AND)
+                    .traversalDirection(BOTH)
+                    .connectAllNeighbors(true)
+                    .stoppingRule(ExplorationStopper.class)
+                    .graph(g)
+                    .unitigs(unitigs)
+                    .make();
+
+            DirectedWeightedPseudograph<CortexVertex, CortexEdge> dfs = e.dfs("TCTGCGC");
+
+            Assert.assertNotNull(dfs);
+            results.add(dfs.vertexSet());
+        }
+
+        Assert.assertEquals(results.get(1), results.get(0));
+    }
+
+    private Set<CortexVertex> dfsWithUnitigs(TraversalEngineFactory f, CortexGraph g, boolean useUnitigs, String seed) {
+        TraversalEngine e = f.unitigs(useUnitigs ? CortexGraphUnitigIndex.build(g, Arrays.asList(0, 1)) : null).make();
+
+        DirectedWeightedPseudograph<CortexVertex, CortexEdge> dfs = e.dfs(seed);
+
+        return dfs == null ? null : dfs.vertexSet();
+    }
+
+    @Test
+    public void testUnitigJumpingDfsMatchesKmerByKmerDfsWithBubbleStoppers() {
+        Random rng = new Random(0);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 120; i++) {
+            sb.append("ACGT".charAt(rng.nextInt(4)));
+        }
+
+        // The kid's haplotype is a single unitig in its colour, so the parent joins and leaves it mid-unitig
+        String mom = sb.toString();
+        String kid = mom.substring(0, 60) + (mom.charAt(60) == 'A' ? 'C' : 'A') + mom.substring(61);
+
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("mom", Collections.singletonList(mom));
+        haplotypes.put("kid", Collections.singletonList(kid));
+        CortexGraph g = TempGraphAssembler.buildGraph(haplotypes, 11);
+
+        List<String> novelKmers = new ArrayList<>();
+        for (CortexRecord cr : g) {
+            if (cr.getCoverage(0) == 0) {
+                novelKmers.add(cr.getKmerAsString());
+            }
+        }
+
+        Map<String, Collection<String>> rois = new LinkedHashMap<>();
+        rois.put("kid", novelKmers);
+        CortexGraph roi = TempGraphAssembler.buildGraph(rois, 11);
+
+        for (String seed : novelKmers) {
+            List<Set<CortexVertex>> results = new ArrayList<>();
+
+            for (boolean useUnitigs : Arrays.asList(false, true)) {
+                TraversalEngineFactory f = new TraversalEngineFactory()
+                        .traversalColor(g.getColorForSampleName("kid"))
+                        .joiningColors(g.getColorForSampleName("mom"))
+                        .traversalDirection(BOTH)
+                        .combinationOperator(TraversalEngineConfiguration.GraphCombinationOperator.AND)
+                        .stoppingRule(BubbleOpeningStopper.class)
+                        .rois(roi)
+                        .graph(g);
+
+                results.add(dfsWithUnitigs(f, g, useUnitigs, seed));
+            }
+
+            Assert.assertNotNull(results.get(0));
+            Assert.assertEquals(results.get(1), results.get(0));
+        }
+
+        // Close from a kmer before the variant to one after it, along the parent's haplotype
+        String source = mom.substring(40, 51);
+        String sink = mom.substring(75, 86);
+
+        DirectedWeightedPseudograph<CortexVertex, CortexEdge> previous = new DirectedWeightedPseudograph<>(CortexEdge.class);
+        previous.addVertex(new CortexVertex(new CortexByteKmer(sink), g.findRecord(sink)));
+
+        List<Set<CortexVertex>> results = new ArrayList<>();
+        for (boolean useUnitigs : Arrays.asList(false, true)) {
+            TraversalEngineFactory f = new TraversalEngineFactory()
+                    .traversalColor(g.getColorForSampleName("mom"))
+                    .joiningColors(g.getColorForSampleName("mom"))
+                    .traversalDirection(FORWARD)
+                    .combinationOperator(OR)
+                    .stoppingRule(BubbleClosingStopper.class)
+                    .previousTraversal(previous)
+                    .graph(g);
+
+            results.add(dfsWithUnitigs(f, g, useUnitigs, source));
+        }
+
+        // The search stops at the sink rather than running on to the end of the parent's haplotype
+        Set<String> closed = new HashSet<>();
+        for (CortexVertex cv : results.get(0)) {
+            closed.add(cv.getSk());
+        }
+
+        Assert.assertTrue(closed.contains(sink));
+        Assert.assertFalse(closed.contains(mom.substring(mom.length() - 11)));
+        Assert.assertEquals(results.get(1), results.get(0));
+    }
+
     @NotNull
     private Map<CortexKmer, String> loadSeedsAndExpectedContigs(String expFile) {
         FastaSequenceFile ssf = new FastaSequenceFile(new File(expFile), false);
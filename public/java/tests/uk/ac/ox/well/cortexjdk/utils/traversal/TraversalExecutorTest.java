@@ -0,0 +1,104 @@
+package uk.ac.ox.well.cortexjdk.utils.traversal;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import uk.ac.ox.well.cortexjdk.utils.assembler.TempGraphAssembler;
+import uk.ac.ox.well.cortexjdk.utils.exceptions.CortexJDKException;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexGraph;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexKmer;
+import uk.ac.ox.well.cortexjdk.utils.io.cortex.graph.CortexRecord;
+import uk.ac.ox.well.cortexjdk.utils.stoppingrules.ExplorationStopper;
+
+import java.util.*;
+
+import static uk.ac.ox.well.cortexjdk.utils.traversal.TraversalEngineConfiguration.TraversalDirection.BOTH;
+
+public class TraversalExecutorTest {
+    private CortexGraph makeGraph() {
+        Map<String, Collection<String>> haplotypes = new LinkedHashMap<>();
+        haplotypes.put("kid", Arrays.asList("AGTTCGAATCTGCGCTATATGCT", "CCATGGACTTAGGACCATTGAC", "TTGCAAGGCTGAACTCGGTA"));
+
+        return TempGraphAssembler.buildGraph(haplotypes, 7);
+    }
+
+    private TraversalEngineConfiguration makeTemplate(CortexGraph g) {
+        return new TraversalEngineFactory()
+                .traversalColor(g.getColorForSampleName("kid"))
+                .traversalDirection(BOTH)
+                .connectAllNeighbors(false)
+                .stoppingRule(ExplorationStopper.class)
+                .graph(g)
+                .make()
+                .getConfiguration();
+    }
+
+    private List<String> getSeeds(CortexGraph g) {
+        List<String> seeds = new ArrayList<>();
+        for (CortexRecord cr : g) {
+            seeds.add(cr.getKmerAsString());
+        }
+
+        return seeds;
+    }
+
+    private List<String> run(CortexGraph g, int numThreads, Set<CortexKmer> claimed) {
+        TraversalExecutor<CortexSubgraph> ex = new TraversalExecutor<>(makeTemplate(g), TraversalEngine::dfsSubgraph, numThreads);
+
+        List<String> results = new ArrayList<>();
+        ex.execute(getSeeds(g), (seed, sg) -> {
+            results.add(seed + " " + (sg == null ? "-" : sg.getCortexKmers()));
+
+            return sg == null ? null : sg.getCortexKmers();
+        });
+
+        claimed.addAll(ex.getClaimedKmers());
+
+        return results;
+    }
+
+    @Test
+    public void resultsDoNotDependOnThreadCountTest() {
+        CortexGraph g = makeGraph();
+
+        Set<CortexKmer> claimed1 = new HashSet<>();
+        List<String> results1 = run(g, 1, claimed1);
+
+        for (int numThreads : Arrays.asList(2, 4)) {
+            Set<CortexKmer> claimedN = new HashSet<>();
+            List<String> resultsN = run(g, numThreads, claimedN);
+
+            Assert.assertEquals(resultsN, results1);
+            Assert.assertEquals(claimedN, claimed1);
+        }
+
+        Assert.assertEquals(claimed1.size(), (int) g.getNumRecords());
+    }
+
+    @Test
+    public void claimedSeedsAreSkippedTest() {
+        CortexGraph g = makeGraph();
+
+        List<String> results = run(g, 4, new HashSet<>());
+
+        int numTraversals = 0;
+        for (String result : results) {
+            if (!result.endsWith("-")) {
+                numTraversals++;
+            }
+        }
+
+        Assert.assertEquals(results.size(), (int) g.getNumRecords());
+        Assert.assertEquals(numTraversals, 3);
+    }
+
+    @Test(expectedExceptions = CortexJDKException.class)
+    public void traversalExceptionsArePropagatedTest() {
+        CortexGraph g = makeGraph();
+
+        TraversalExecutor<CortexSubgraph> ex = new TraversalExecutor<>(makeTemplate(g), (e, seed) -> {
+            throw new CortexJDKException("Failed on '" + seed + "'");
+        }, 4);
+
+        ex.execute(getSeeds(g), (seed, sg) -> null);
+    }
+}